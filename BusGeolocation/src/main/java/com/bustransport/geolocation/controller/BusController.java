@@ -1,6 +1,8 @@
 package com.bustransport.geolocation.controller;
 
 import com.bustransport.geolocation.dto.response.BusLocationDTO;
+import com.bustransport.geolocation.dto.response.LiveTrackingDTO;
+import com.bustransport.geolocation.dto.response.StopArrivalDTO;
 import com.bustransport.geolocation.entity.Bus;
 import com.bustransport.geolocation.repository.BusRepository;
 import com.bustransport.geolocation.service.BusLocationService;
@@ -41,6 +43,24 @@ public class BusController {
         return ResponseEntity.ok(busLocationService.getCurrentLocation(busId));
     }
 
+    @GetMapping("/{busId}/live")
+    @Operation(summary = "Get live tracking of a bus with its next stop and ETA")
+    public ResponseEntity<LiveTrackingDTO> getLiveTracking(@PathVariable Long busId) {
+        return ResponseEntity.ok(busLocationService.getLiveTracking(busId));
+    }
+
+    @GetMapping("/{busId}/predictions")
+    @Operation(summary = "Get predicted arrivals of a bus at the stops ahead")
+    public ResponseEntity<List<StopArrivalDTO>> getPredictedArrivals(@PathVariable Long busId) {
+        return ResponseEntity.ok(busLocationService.getPredictedArrivals(busId));
+    }
+
+    @GetMapping("/arrivals")
+    @Operation(summary = "Get predicted bus arrivals at a stop")
+    public ResponseEntity<List<StopArrivalDTO>> getStopArrivals(@RequestParam Long stopId) {
+        return ResponseEntity.ok(busLocationService.getStopArrivals(stopId));
+    }
+
     @GetMapping("/route")
     @Operation(summary = "Get buses on a route")
     public ResponseEntity<List<Bus>> getBusesByRoute(@RequestParam Long routeId) {
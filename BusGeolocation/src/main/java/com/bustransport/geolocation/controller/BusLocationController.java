@@ -1,13 +1,17 @@
 package com.bustransport.geolocation.controller;
 
 import com.bustransport.geolocation.dto.request.TelemetryIngestDTO;
+import com.bustransport.geolocation.dto.response.BatchIngestResultDTO;
 import com.bustransport.geolocation.dto.response.BusLocationDTO;
+import com.bustransport.geolocation.dto.response.LocationTraceDTO;
 import com.bustransport.geolocation.service.BusLocationService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -28,6 +32,20 @@ public class BusLocationController {
         return ResponseEntity.ok(locationService.ingestTelemetry(telemetry));
     }
 
+    @PostMapping("/ingest/batch")
+    @Operation(summary = "Ingest a batch of GPS telemetry points",
+        description = "Points are written asynchronously. A 429 response gives the index to resend from.")
+    public ResponseEntity<BatchIngestResultDTO> ingestTelemetryBatch(
+            @RequestBody List<@Valid TelemetryIngestDTO> telemetry) {
+        BatchIngestResultDTO result = locationService.ingestTelemetryBatch(telemetry);
+        if (result.getRetryFrom() != null) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(result);
+        }
+        return ResponseEntity.accepted().body(result);
+    }
+
     @GetMapping("/bus/{busId}/current")
     @Operation(summary = "Get current location of a bus")
     public ResponseEntity<BusLocationDTO> getCurrentLocation(@PathVariable Long busId) {
@@ -43,6 +61,15 @@ public class BusLocationController {
         return ResponseEntity.ok(locationService.getLocationHistory(busId, startTime, endTime));
     }
 
+    @GetMapping("/bus/{busId}/traces")
+    @Operation(summary = "Get compacted trip traces for a bus")
+    public ResponseEntity<List<LocationTraceDTO>> getTraces(
+            @PathVariable Long busId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime startTime,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime endTime) {
+        return ResponseEntity.ok(locationService.getTraces(busId, startTime, endTime));
+    }
+
     @GetMapping("/active")
     @Operation(summary = "Get all active bus locations")
     public ResponseEntity<List<BusLocationDTO>> getAllActiveBusLocations() {
@@ -0,0 +1,33 @@
+package com.bustransport.geolocation.controller;
+
+import com.bustransport.geolocation.realtime.VehiclePositionsFeed;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/gtfs-rt")
+@RequiredArgsConstructor
+@Tag(name = "GTFS-Realtime", description = "GTFS-Realtime protobuf feeds")
+public class GtfsRealtimeController {
+
+    private static final MediaType PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+
+    private final VehiclePositionsFeed vehiclePositionsFeed;
+
+    @GetMapping("/vehicle-positions")
+    @Operation(summary = "Get the VehiclePositions feed (GTFS-Realtime protobuf)")
+    public ResponseEntity<byte[]> getVehiclePositions() {
+        VehiclePositionsFeed.Feed feed = vehiclePositionsFeed.getFeed();
+        // Spring answers If-Modified-Since with 304 based on the Last-Modified header set here
+        return ResponseEntity.ok()
+            .contentType(PROTOBUF)
+            .lastModified(feed.timestampMillis())
+            .body(feed.body());
+    }
+}
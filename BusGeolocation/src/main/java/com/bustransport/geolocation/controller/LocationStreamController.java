@@ -0,0 +1,30 @@
+package com.bustransport.geolocation.controller;
+
+import com.bustransport.geolocation.dto.request.ViewportDTO;
+import com.bustransport.geolocation.websocket.LocationWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.messaging.handler.annotation.Payload;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Controller;
+
+/**
+ * STOMP messages a map client sends to choose the buses streamed to
+ * {@code /user/queue/locations}
+ */
+@Controller
+@RequiredArgsConstructor
+public class LocationStreamController {
+
+    private final LocationWebSocketHandler locationWebSocketHandler;
+
+    @MessageMapping("/viewport")
+    public void setViewport(@Payload ViewportDTO viewport, SimpMessageHeaderAccessor headers) {
+        locationWebSocketHandler.setViewport(headers.getSessionId(), viewport);
+    }
+
+    @MessageMapping("/viewport/clear")
+    public void clearViewport(SimpMessageHeaderAccessor headers) {
+        locationWebSocketHandler.clearViewport(headers.getSessionId());
+    }
+}
@@ -0,0 +1,17 @@
+package com.bustransport.geolocation.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ViewportDTO {
+    private Double minLat;
+    private Double minLon;
+    private Double maxLat;
+    private Double maxLon;
+}
@@ -0,0 +1,20 @@
+package com.bustransport.geolocation.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchIngestResultDTO {
+    private Integer received;
+    private Integer accepted;
+    private List<String> unknownDevices;
+    private List<RejectedPointDTO> rejected; // points that will not be stored, unknown devices included
+    private Integer retryFrom; // index of the first point to send again, null when the whole batch was taken
+}
@@ -0,0 +1,18 @@
+package com.bustransport.geolocation.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LocationDeltaDTO {
+    private Long id; // bus id
+    private Double lat;
+    private Double lon;
+    private Double heading;
+    private Double speed; // km/h
+}
@@ -0,0 +1,20 @@
+package com.bustransport.geolocation.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class LocationFrameDTO {
+    private Long timestamp; // epoch millis of the tick
+    private List<LocationDeltaDTO> buses; // buses that moved since the previous frame
+    private List<Long> removed; // buses that left the subscribed viewport or route
+}
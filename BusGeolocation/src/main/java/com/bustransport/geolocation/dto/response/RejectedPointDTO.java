@@ -0,0 +1,16 @@
+package com.bustransport.geolocation.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class RejectedPointDTO {
+    private Integer index; // position in the submitted batch
+    private String deviceId;
+    private String reason;
+}
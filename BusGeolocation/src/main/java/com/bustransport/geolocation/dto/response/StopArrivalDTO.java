@@ -0,0 +1,25 @@
+package com.bustransport.geolocation.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StopArrivalDTO {
+    private Long stopId;
+    private String stopName;
+    private Integer stopSequence;
+    private Long busId;
+    private String busNumber;
+    private Long routeId;
+    private LocalDateTime predictedArrival;
+    private Integer etaMinutes;
+    private Integer distanceMeters;
+    private Integer delaySeconds; // null when the start of the run was not observed
+}
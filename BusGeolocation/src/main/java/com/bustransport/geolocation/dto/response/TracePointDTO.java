@@ -0,0 +1,19 @@
+package com.bustransport.geolocation.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TracePointDTO {
+    private BigDecimal latitude;
+    private BigDecimal longitude;
+    private LocalDateTime recordedAt;
+}
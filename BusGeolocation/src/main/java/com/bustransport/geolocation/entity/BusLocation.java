@@ -11,7 +11,10 @@ import java.time.LocalDateTime;
 @Table(name = "bus_locations", indexes = {
     @Index(name = "idx_location_bus", columnList = "bus_id"),
     @Index(name = "idx_location_recorded", columnList = "recordedAt"),
-    @Index(name = "idx_location_bus_time", columnList = "bus_id, recordedAt")
+    @Index(name = "idx_location_created", columnList = "createdAt")
+}, uniqueConstraints = {
+    // One fix per bus and time, so a resent point is stored once; also serves per-bus time ranges
+    @UniqueConstraint(name = "uk_location_bus_time", columnNames = {"bus_id", "recordedAt"})
 })
 @Getter
 @Setter
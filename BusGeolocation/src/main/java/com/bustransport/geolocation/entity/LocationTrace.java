@@ -32,7 +32,7 @@ public class LocationTrace {
     private Long routeId;
 
     @Column(columnDefinition = "TEXT")
-    private String locationsJson; // JSON array of location points
+    private String encodedPath; // Simplified path, see TracePolyline
 
     @Column(nullable = false)
     private LocalDateTime startTime;
@@ -0,0 +1,329 @@
+package com.bustransport.geolocation.eta;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Predicts when each bus reaches the remaining stops of its route. Every
+ * position is projected onto the route's stop sequence next to the previous
+ * projection; the distance covered since then updates the running speed of
+ * the segments passed for that hour of the day, and the arrivals ahead are
+ * re-predicted from those speeds. One update costs O(stops ahead); queries
+ * only read the latest predictions.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EtaEngine {
+
+    // Observed speeds outside this range are GPS noise
+    private static final double MIN_SPEED_MPS = 0.5;
+    private static final double MAX_SPEED_MPS = 25;
+    // Share of a segment a bus must have covered for its speed to count
+    private static final double MIN_SEGMENT_COVERAGE = 0.25;
+    // Moving back further than this starts a new run
+    private static final double NEW_RUN_METERS = 500;
+    // A bus this close to the first stop is (still) at the start of a run
+    private static final double START_RADIUS_METERS = 50;
+    private static final long ROUTE_RETRY_MS = 60_000;
+
+    private final RouteClient routeClient;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    @Value("${eta.max-offset-meters:150}")
+    private double maxOffsetMeters;
+
+    @Value("${eta.ewma-alpha:0.2}")
+    private double ewmaAlpha;
+
+    @Value("${eta.max-observation-gap-seconds:300}")
+    private int maxObservationGapSecs;
+
+    @Value("${eta.on-schedule-tolerance-seconds:120}")
+    private int onScheduleToleranceSecs;
+
+    @Value("${gtfs-realtime.vehicle-max-age-minutes:5}")
+    private int vehicleMaxAgeMinutes;
+
+    private final Map<Long, SegmentSpeeds> routes = new ConcurrentHashMap<>();
+    private final Map<Long, Long> routeRetryAt = new ConcurrentHashMap<>();
+    private final Set<Long> loadingRoutes = ConcurrentHashMap.newKeySet();
+    private final ExecutorService routeLoader = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "eta-route-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Map<Long, BusProgress> buses = new ConcurrentHashMap<>();
+    private final Map<Long, Map<Long, StopArrival>> arrivalsByStop = new ConcurrentHashMap<>();
+
+    /**
+     * Predicted arrival of a bus at a stop ahead
+     *
+     * @param stopSequence 1-based position of the stop on the route
+     * @param delaySecs    running time lost against the timetable since the
+     *                     run started, null if the start was not observed
+     */
+    public record StopArrival(long stopId, String stopName, int stopSequence, long busId, String busNumber,
+                              long routeId, LocalDateTime predictedArrival, double distanceMeters,
+                              Integer delaySecs) {
+    }
+
+    /**
+     * Where a bus is on its route and what it is predicted to reach next
+     *
+     * @param anchorDistance meters from the first stop at {@code anchorTime};
+     *                       small backward moves keep the previous anchor
+     * @param runStart       last time the bus was seen at the first stop
+     * @param onSchedule     delay within {@code eta.on-schedule-tolerance-seconds},
+     *                       null if the delay is not known
+     */
+    public record BusProgress(long busId, String busNumber, long routeId, RouteLine line, int segment,
+                              double anchorDistance, LocalDateTime anchorTime, LocalDateTime runStart,
+                              LocalDateTime lastSeen, Integer delaySecs, Boolean onSchedule,
+                              List<StopArrival> arrivals) {
+
+        public Optional<StopArrival> nextStop() {
+            return arrivals.isEmpty() ? Optional.empty() : Optional.of(arrivals.get(0));
+        }
+    }
+
+    /**
+     * Applies a new position of a bus; out-of-order positions are ignored
+     */
+    public void update(BusLocation location) {
+        Bus bus = location.getBus();
+        SegmentSpeeds speeds = routes.get(bus.getRouteId());
+        if (speeds == null) {
+            requestRoute(bus.getRouteId());
+            return;
+        }
+        BusProgress previous = buses.get(bus.getId());
+        if (previous != null && location.getRecordedAt().isBefore(previous.lastSeen())) {
+            return;
+        }
+        BusProgress next = advance(bus, speeds, previous, location);
+        if (next == null) {
+            if (previous != null) {
+                buses.remove(bus.getId());
+                replaceArrivals(previous.arrivals(), List.of());
+            }
+            return;
+        }
+        buses.put(bus.getId(), next);
+        replaceArrivals(previous != null ? previous.arrivals() : List.of(), next.arrivals());
+        try {
+            messagingTemplate.convertAndSend("/topic/bus/" + bus.getId() + "/eta", next.arrivals());
+        } catch (Exception e) {
+            log.error("Error broadcasting arrival predictions", e);
+        }
+    }
+
+    public Optional<BusProgress> getProgress(Long busId) {
+        return Optional.ofNullable(buses.get(busId));
+    }
+
+    /**
+     * Predicted arrivals at a stop, soonest first
+     */
+    public List<StopArrival> getArrivals(Long stopId) {
+        Map<Long, StopArrival> arrivals = arrivalsByStop.get(stopId);
+        if (arrivals == null) {
+            return List.of();
+        }
+        return arrivals.values().stream()
+            .sorted(Comparator.comparing(StopArrival::predictedArrival))
+            .toList();
+    }
+
+    private BusProgress advance(Bus bus, SegmentSpeeds speeds, BusProgress previous, BusLocation location) {
+        RouteLine line = speeds.getLine();
+        boolean sameLine = previous != null && previous.line() == line;
+        RouteLine.Projection projection = line.project(location.getLatitude().doubleValue(),
+            location.getLongitude().doubleValue(), sameLine ? previous.segment() : -1, maxOffsetMeters);
+        if (projection.offset() > maxOffsetMeters) {
+            // Off the route: no prediction
+            return null;
+        }
+
+        LocalDateTime now = location.getRecordedAt();
+        int segment = projection.segment();
+        double distance = projection.distance();
+        LocalDateTime anchorTime = now;
+        LocalDateTime runStart = sameLine ? previous.runStart() : null;
+        if (sameLine) {
+            double moved = distance - previous.anchorDistance();
+            if (moved < -NEW_RUN_METERS) {
+                runStart = null;
+            } else if (moved <= 0) {
+                // Standing or GPS jitter: keep measuring from the previous anchor
+                segment = previous.segment();
+                distance = previous.anchorDistance();
+                anchorTime = previous.anchorTime();
+            } else {
+                observe(speeds, previous, distance, now);
+            }
+        }
+        if (distance <= START_RADIUS_METERS) {
+            runStart = now;
+        }
+
+        Integer delaySecs = null;
+        if (runStart != null) {
+            int elapsedSecs = (int) Duration.between(runStart, now).getSeconds();
+            delaySecs = elapsedSecs - scheduledSecsAt(line, segment, distance);
+        }
+        Boolean onSchedule = delaySecs != null ? delaySecs <= onScheduleToleranceSecs : null;
+        List<StopArrival> arrivals = predict(bus, speeds, segment, distance, now, delaySecs);
+        return new BusProgress(bus.getId(), bus.getBusNumber(), line.getRouteId(), line, segment, distance,
+            anchorTime, runStart, now, delaySecs, onSchedule, arrivals);
+    }
+
+    /**
+     * Updates the speed of every segment covered since the previous anchor
+     */
+    private void observe(SegmentSpeeds speeds, BusProgress previous, double distance, LocalDateTime now) {
+        double secs = Duration.between(previous.anchorTime(), now).toMillis() / 1000.0;
+        if (secs <= 0 || secs > maxObservationGapSecs) {
+            return;
+        }
+        double speed = (distance - previous.anchorDistance()) / secs;
+        if (speed < MIN_SPEED_MPS || speed > MAX_SPEED_MPS) {
+            return;
+        }
+        RouteLine line = speeds.getLine();
+        int hour = previous.anchorTime().getHour();
+        for (int s = previous.segment(); s < line.segmentCount() && line.distance(s) < distance; s++) {
+            double covered = Math.min(distance, line.distance(s + 1)) - Math.max(previous.anchorDistance(),
+                line.distance(s));
+            if (covered >= MIN_SEGMENT_COVERAGE * line.segmentLength(s)) {
+                speeds.observe(s, hour, speed);
+            }
+        }
+    }
+
+    private List<StopArrival> predict(Bus bus, SegmentSpeeds speeds, int segment, double distance,
+                                      LocalDateTime now, Integer delaySecs) {
+        RouteLine line = speeds.getLine();
+        List<StopArrival> arrivals = new ArrayList<>(line.stopCount() - segment - 1);
+        double secs = 0;
+        double position = distance;
+        for (int stop = segment + 1; stop < line.stopCount(); stop++) {
+            int hour = now.plusSeconds((long) secs).getHour();
+            secs += (line.distance(stop) - position) / speeds.speed(stop - 1, hour);
+            position = line.distance(stop);
+            arrivals.add(new StopArrival(line.stopId(stop), line.stopName(stop), stop + 1, bus.getId(),
+                bus.getBusNumber(), line.getRouteId(), now.plusSeconds(Math.round(secs)),
+                line.distance(stop) - distance, delaySecs));
+        }
+        return arrivals;
+    }
+
+    private static int scheduledSecsAt(RouteLine line, int segment, double distance) {
+        double length = line.segmentLength(segment);
+        double share = length > 0 ? (distance - line.distance(segment)) / length : 0;
+        return (int) Math.round(line.scheduledSecs(segment)
+            + share * (line.scheduledSecs(segment + 1) - line.scheduledSecs(segment)));
+    }
+
+    /**
+     * Swaps the predictions of one bus in the per-stop index, touching only
+     * the stops involved
+     */
+    private void replaceArrivals(List<StopArrival> previous, List<StopArrival> next) {
+        Set<Long> kept = new HashSet<>(next.size() * 2);
+        for (StopArrival arrival : next) {
+            kept.add(arrival.stopId());
+            arrivalsByStop.computeIfAbsent(arrival.stopId(), key -> new ConcurrentHashMap<>())
+                .put(arrival.busId(), arrival);
+        }
+        for (StopArrival arrival : previous) {
+            if (!kept.contains(arrival.stopId())) {
+                Map<Long, StopArrival> arrivals = arrivalsByStop.get(arrival.stopId());
+                if (arrivals != null) {
+                    arrivals.remove(arrival.busId(), arrival);
+                }
+            }
+        }
+    }
+
+    /**
+     * Drops the predictions of buses that stopped reporting
+     */
+    @Scheduled(fixedDelay = 60_000)
+    public void evictStale() {
+        LocalDateTime before = LocalDateTime.now().minusMinutes(vehicleMaxAgeMinutes);
+        for (BusProgress progress : buses.values()) {
+            if (progress.lastSeen().isBefore(before) && buses.remove(progress.busId(), progress)) {
+                replaceArrivals(progress.arrivals(), List.of());
+            }
+        }
+        arrivalsByStop.values().removeIf(Map::isEmpty);
+    }
+
+    /**
+     * Picks up changes to the stop sequences of known routes
+     */
+    @Scheduled(fixedDelayString = "${eta.route-refresh-ms:1800000}",
+               initialDelayString = "${eta.route-refresh-ms:1800000}")
+    public void refreshRoutes() {
+        routes.keySet().forEach(this::loadRoute);
+    }
+
+    private void requestRoute(Long routeId) {
+        Long retryAt = routeRetryAt.get(routeId);
+        if ((retryAt == null || retryAt <= System.currentTimeMillis()) && loadingRoutes.add(routeId)) {
+            routeLoader.execute(() -> {
+                try {
+                    loadRoute(routeId);
+                } finally {
+                    loadingRoutes.remove(routeId);
+                }
+            });
+        }
+    }
+
+    private void loadRoute(Long routeId) {
+        try {
+            RouteClient.RouteResponse route = routeClient.getRoute(routeId);
+            RouteLine line = route != null ? RouteLine.of(route) : null;
+            if (line == null) {
+                log.warn("Route {} has fewer than two located stops, no arrival predictions", routeId);
+                routeRetryAt.put(routeId, System.currentTimeMillis() + ROUTE_RETRY_MS);
+                return;
+            }
+            routes.merge(routeId, new SegmentSpeeds(line, ewmaAlpha), (existing, loaded) -> existing.withLine(line));
+            routeRetryAt.remove(routeId);
+            log.debug("Loaded route {} with {} stops for arrival predictions", routeId, line.stopCount());
+        } catch (RestClientException e) {
+            log.warn("Could not load route {} from the route service: {}", routeId, e.getMessage());
+            routeRetryAt.put(routeId, System.currentTimeMillis() + ROUTE_RETRY_MS);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        routeLoader.shutdownNow();
+    }
+}
@@ -0,0 +1,41 @@
+package com.bustransport.geolocation.eta;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalTime;
+import java.util.List;
+
+/**
+ * Reads route stop sequences from the route service
+ */
+@Component
+@RequiredArgsConstructor
+public class RouteClient {
+
+    private final RestTemplate restTemplate;
+
+    @Value("${route.service.url:http://route-service:8085}")
+    private String routeServiceUrl;
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record RouteResponse(Long id, String routeNumber, String name, List<RouteStopResponse> stops) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record RouteStopResponse(Integer stopSequence, BigDecimal distanceFromStart, LocalTime timeFromStart,
+                                    StopResponse stop) {
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record StopResponse(Long id, String name, BigDecimal latitude, BigDecimal longitude) {
+    }
+
+    public RouteResponse getRoute(Long routeId) {
+        return restTemplate.getForObject(routeServiceUrl + "/api/v1/routes/{id}", RouteResponse.class, routeId);
+    }
+}
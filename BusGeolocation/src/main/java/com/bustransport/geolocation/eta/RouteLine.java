@@ -0,0 +1,197 @@
+package com.bustransport.geolocation.eta;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Stop sequence of a route as a polyline through its stops, with the
+ * distance and scheduled running time from the first stop to each stop.
+ * Immutable once built.
+ */
+public final class RouteLine {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000d;
+    // Used when a route stop has neither timeFromStart nor distanceFromStart,
+    // as in the route service timetable
+    private static final int DEFAULT_SECONDS_BETWEEN_STOPS = 120;
+    private static final double DEFAULT_BUS_SPEED_MPS = 20.0 / 3.6;
+    // Segments searched around the previous position before a full scan
+    private static final int SEARCH_BEHIND = 1;
+    private static final int SEARCH_AHEAD = 3;
+
+    private final long routeId;
+    private final String routeName;
+    private final long[] stopIds;
+    private final String[] stopNames;
+    private final double[] lats;
+    private final double[] lons;
+    private final double[] distances;
+    private final int[] scheduledSecs;
+
+    /**
+     * Where a position falls on the line
+     *
+     * @param segment  index of the stop the segment starts at
+     * @param distance meters from the first stop along the line
+     * @param offset   meters between the position and the line
+     */
+    public record Projection(int segment, double distance, double offset) {
+    }
+
+    private RouteLine(long routeId, String routeName, long[] stopIds, String[] stopNames, double[] lats,
+                      double[] lons, double[] distances, int[] scheduledSecs) {
+        this.routeId = routeId;
+        this.routeName = routeName;
+        this.stopIds = stopIds;
+        this.stopNames = stopNames;
+        this.lats = lats;
+        this.lons = lons;
+        this.distances = distances;
+        this.scheduledSecs = scheduledSecs;
+    }
+
+    /**
+     * @return the line, or null if the route has fewer than two located stops
+     */
+    public static RouteLine of(RouteClient.RouteResponse route) {
+        List<RouteClient.RouteStopResponse> stops = route.stops() == null ? List.of() : route.stops().stream()
+            .filter(rs -> rs.stop() != null && rs.stop().latitude() != null && rs.stop().longitude() != null)
+            .sorted(Comparator.comparing(RouteClient.RouteStopResponse::stopSequence,
+                Comparator.nullsLast(Comparator.naturalOrder())))
+            .toList();
+        int n = stops.size();
+        if (n < 2) {
+            return null;
+        }
+        long[] stopIds = new long[n];
+        String[] stopNames = new String[n];
+        double[] lats = new double[n];
+        double[] lons = new double[n];
+        double[] distances = new double[n];
+        int[] scheduledSecs = new int[n];
+        for (int i = 0; i < n; i++) {
+            RouteClient.RouteStopResponse routeStop = stops.get(i);
+            stopIds[i] = routeStop.stop().id();
+            stopNames[i] = routeStop.stop().name();
+            lats[i] = routeStop.stop().latitude().doubleValue();
+            lons[i] = routeStop.stop().longitude().doubleValue();
+            if (i == 0) {
+                continue;
+            }
+            double straight = distanceMeters(lats[i - 1], lons[i - 1], lats[i], lons[i]);
+            double fromStart = routeStop.distanceFromStart() != null
+                ? routeStop.distanceFromStart().doubleValue() * 1000 : -1;
+            distances[i] = fromStart > distances[i - 1] ? fromStart : distances[i - 1] + straight;
+            int secs = routeStop.timeFromStart() != null ? routeStop.timeFromStart().toSecondOfDay() : -1;
+            if (secs <= scheduledSecs[i - 1]) {
+                double meters = distances[i] - distances[i - 1];
+                secs = scheduledSecs[i - 1] + (meters > 0
+                    ? (int) Math.ceil(meters / DEFAULT_BUS_SPEED_MPS) : DEFAULT_SECONDS_BETWEEN_STOPS);
+            }
+            scheduledSecs[i] = secs;
+        }
+        return new RouteLine(route.id(), route.name(), stopIds, stopNames, lats, lons, distances, scheduledSecs);
+    }
+
+    /**
+     * Nearest point on the line, looking first at the segments around
+     * {@code hint} and scanning the whole line only if the position is not
+     * within {@code maxOffsetMeters} of them
+     *
+     * @param hint segment of the previous projection, or -1
+     */
+    public Projection project(double lat, double lon, int hint, double maxOffsetMeters) {
+        if (hint >= 0) {
+            Projection near = nearest(lat, lon, Math.max(0, hint - SEARCH_BEHIND),
+                Math.min(segmentCount(), hint + SEARCH_AHEAD + 1));
+            if (near.offset() <= maxOffsetMeters) {
+                return near;
+            }
+        }
+        return nearest(lat, lon, 0, segmentCount());
+    }
+
+    private Projection nearest(double lat, double lon, int fromSegment, int toSegment) {
+        double metersPerLat = Math.toRadians(EARTH_RADIUS_METERS);
+        double metersPerLon = metersPerLat * Math.cos(Math.toRadians(lat));
+        Projection best = null;
+        for (int s = fromSegment; s < toSegment; s++) {
+            // Local plane centred on the position
+            double ax = (lons[s] - lon) * metersPerLon;
+            double ay = (lats[s] - lat) * metersPerLat;
+            double bx = (lons[s + 1] - lon) * metersPerLon;
+            double by = (lats[s + 1] - lat) * metersPerLat;
+            double dx = bx - ax;
+            double dy = by - ay;
+            double lengthSquared = dx * dx + dy * dy;
+            double t = lengthSquared == 0 ? 0 : Math.max(0, Math.min(1, -(ax * dx + ay * dy) / lengthSquared));
+            double offset = Math.hypot(ax + t * dx, ay + t * dy);
+            if (best == null || offset < best.offset()) {
+                best = new Projection(s, distances[s] + t * (distances[s + 1] - distances[s]), offset);
+            }
+        }
+        return best;
+    }
+
+    public long getRouteId() {
+        return routeId;
+    }
+
+    public String getRouteName() {
+        return routeName;
+    }
+
+    public int stopCount() {
+        return stopIds.length;
+    }
+
+    public int segmentCount() {
+        return stopIds.length - 1;
+    }
+
+    public long stopId(int stop) {
+        return stopIds[stop];
+    }
+
+    public String stopName(int stop) {
+        return stopNames[stop];
+    }
+
+    /**
+     * Meters from the first stop
+     */
+    public double distance(int stop) {
+        return distances[stop];
+    }
+
+    /**
+     * Scheduled seconds from the first stop
+     */
+    public int scheduledSecs(int stop) {
+        return scheduledSecs[stop];
+    }
+
+    public double segmentLength(int segment) {
+        return distances[segment + 1] - distances[segment];
+    }
+
+    /**
+     * Scheduled speed over a segment in m/s; never zero, since predictions
+     * divide by it
+     */
+    public double scheduledSpeed(int segment) {
+        int secs = scheduledSecs[segment + 1] - scheduledSecs[segment];
+        double length = segmentLength(segment);
+        // Two stops at the same place would otherwise give a speed of 0
+        return secs > 0 && length > 0 ? length / secs : DEFAULT_BUS_SPEED_MPS;
+    }
+
+    private static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return EARTH_RADIUS_METERS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -0,0 +1,61 @@
+package com.bustransport.geolocation.eta;
+
+import java.util.Arrays;
+
+/**
+ * Running speed of every segment of a route per hour of the day, as an
+ * exponentially weighted moving average of the speeds buses were observed
+ * at. Hours without observations fall back to the scheduled speed.
+ */
+public class SegmentSpeeds {
+
+    private static final int HOURS = 24;
+
+    private final RouteLine line;
+    private final double alpha;
+    // [segment * HOURS + hour], NaN until observed
+    private final double[] speeds;
+
+    public SegmentSpeeds(RouteLine line, double alpha) {
+        this.line = line;
+        this.alpha = alpha;
+        this.speeds = new double[line.segmentCount() * HOURS];
+        Arrays.fill(speeds, Double.NaN);
+    }
+
+    public RouteLine getLine() {
+        return line;
+    }
+
+    /**
+     * Expected speed over a segment in m/s
+     */
+    public synchronized double speed(int segment, int hour) {
+        double speed = speeds[segment * HOURS + hour];
+        return Double.isNaN(speed) ? line.scheduledSpeed(segment) : speed;
+    }
+
+    public synchronized void observe(int segment, int hour, double metersPerSecond) {
+        int index = segment * HOURS + hour;
+        double previous = speeds[index];
+        speeds[index] = Double.isNaN(previous) ? metersPerSecond : previous + alpha * (metersPerSecond - previous);
+    }
+
+    /**
+     * Carries the estimates over to a new version of the same route when its
+     * stops did not change
+     */
+    public synchronized SegmentSpeeds withLine(RouteLine newLine) {
+        SegmentSpeeds updated = new SegmentSpeeds(newLine, alpha);
+        if (newLine.stopCount() == line.stopCount()) {
+            boolean sameStops = true;
+            for (int stop = 0; stop < line.stopCount() && sameStops; stop++) {
+                sameStops = newLine.stopId(stop) == line.stopId(stop);
+            }
+            if (sameStops) {
+                System.arraycopy(speeds, 0, updated.speeds, 0, speeds.length);
+            }
+        }
+        return updated;
+    }
+}
@@ -0,0 +1,15 @@
+package com.bustransport.geolocation.event;
+
+import com.bustransport.geolocation.entity.BusLocation;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a position is saved inside a transaction; live consumers
+ * only see it once that transaction commits
+ */
+@Getter
+@AllArgsConstructor
+public class LocationStoredEvent {
+    private final BusLocation location;
+}
@@ -0,0 +1,71 @@
+package com.bustransport.geolocation.ingest;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.repository.BusRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory map from GPS device to bus, so ingesting a point does not cost a
+ * query. The whole fleet is reloaded periodically to pick up route and
+ * status changes; a device missing from the map is looked up once, and an
+ * unknown device is not looked up again for a minute.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DeviceDirectory {
+
+    private static final long UNKNOWN_RETRY_MS = 60_000;
+
+    private final BusRepository busRepository;
+
+    private final Map<String, Bus> busesByDevice = new ConcurrentHashMap<>();
+    private final Map<String, Long> unknownUntil = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${ingest.device-refresh-ms:300000}")
+    public void reload() {
+        Map<String, Bus> fleet = busRepository.findAll().stream()
+            .collect(Collectors.toMap(Bus::getDeviceId, Function.identity()));
+        busesByDevice.putAll(fleet);
+        busesByDevice.keySet().retainAll(fleet.keySet());
+        unknownUntil.clear();
+        log.debug("Loaded {} devices into the ingest directory", fleet.size());
+    }
+
+    public Optional<Bus> resolve(String deviceId) {
+        Bus bus = busesByDevice.get(deviceId);
+        if (bus != null) {
+            return Optional.of(bus);
+        }
+        long now = System.currentTimeMillis();
+        Long retryAt = unknownUntil.get(deviceId);
+        if (retryAt != null && retryAt > now) {
+            return Optional.empty();
+        }
+        Optional<Bus> found = busRepository.findByDeviceId(deviceId);
+        found.ifPresentOrElse(
+            b -> {
+                busesByDevice.put(deviceId, b);
+                unknownUntil.remove(deviceId);
+            },
+            () -> unknownUntil.put(deviceId, now + UNKNOWN_RETRY_MS));
+        return found;
+    }
+
+    /**
+     * Drops a bus that turned out to be gone from the database, so its next
+     * point is looked up again instead of failing its insert
+     */
+    public void forget(Bus bus) {
+        busesByDevice.remove(bus.getDeviceId());
+    }
+}
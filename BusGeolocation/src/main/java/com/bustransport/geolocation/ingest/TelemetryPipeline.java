@@ -0,0 +1,295 @@
+package com.bustransport.geolocation.ingest;
+
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.realtime.LocationPublisher;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers ingested positions in a bounded ring buffer and writes them with
+ * one JDBC batch insert per flush, either when {@code batch-size} points are
+ * waiting or {@code flush-interval-ms} after the previous flush. A point
+ * resent by a device is written once, by the unique (bus, fix time) key even
+ * when the resend lands in a later flush, and the live consumers (latest
+ * positions, realtime feed, arrival predictions) only see the latest newly
+ * written point of each bus per flush. Invalid points are dropped before the insert, and
+ * a batch that still fails is written row by row so only the offending rows
+ * are lost. When the buffer stays full for {@code offer-timeout-ms} the
+ * caller is told to retry, so a burst slows the devices down instead of
+ * exhausting memory.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TelemetryPipeline {
+
+    private static final String INSERT_SQL = "INSERT INTO bus_locations "
+        + "(bus_id, latitude, longitude, speed, heading, altitude, accuracy, recorded_at, odometer, created_at) "
+        + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) ON CONFLICT DO NOTHING";
+    private static final long SHUTDOWN_TIMEOUT_MS = 10_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final LocationPublisher locationPublisher;
+    private final DeviceDirectory deviceDirectory;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${ingest.buffer-capacity:65536}")
+    private int bufferCapacity;
+
+    @Value("${ingest.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${ingest.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${ingest.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<BusLocation> buffer;
+    private Thread flusher;
+    private volatile boolean running;
+
+    private Counter acceptedPoints;
+    private Counter rejectedPoints;
+    private Counter persistedPoints;
+    private Counter failedPoints;
+    private Counter duplicatePoints;
+    private Counter invalidPoints;
+    private Timer flushTimer;
+
+    @PostConstruct
+    public void start() {
+        buffer = new ArrayBlockingQueue<>(bufferCapacity);
+        acceptedPoints = pointCounter("accepted");
+        rejectedPoints = pointCounter("rejected");
+        persistedPoints = pointCounter("persisted");
+        failedPoints = pointCounter("failed");
+        duplicatePoints = pointCounter("duplicate");
+        invalidPoints = pointCounter("invalid");
+        flushTimer = Timer.builder("telemetry.ingest.flush").register(meterRegistry);
+        Gauge.builder("telemetry.ingest.buffer.size", buffer, Collection::size).register(meterRegistry);
+
+        running = true;
+        flusher = new Thread(this::run, "telemetry-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    /**
+     * Writes what is still buffered before the datasource goes away
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        flusher.join(SHUTDOWN_TIMEOUT_MS);
+        if (!buffer.isEmpty()) {
+            log.warn("Discarding {} telemetry points on shutdown", buffer.size());
+        }
+    }
+
+    /**
+     * Queues a position for the next flush, waiting up to
+     * {@code offer-timeout-ms} for room in the buffer
+     *
+     * @return false when the buffer is still full and the point was not taken
+     */
+    public boolean offer(BusLocation location) throws InterruptedException {
+        if (running && buffer.offer(location, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+            acceptedPoints.increment();
+            return true;
+        }
+        rejectedPoints.increment();
+        return false;
+    }
+
+    private void run() {
+        List<BusLocation> batch = new ArrayList<>(batchSize);
+        while (running || !buffer.isEmpty()) {
+            try {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    long waitNanos = deadline - System.nanoTime();
+                    BusLocation next = waitNanos > 0 ? buffer.poll(waitNanos, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    buffer.drainTo(batch, batchSize - batch.size());
+                }
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.error("Error flushing telemetry batch", e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<BusLocation> batch) {
+        List<BusLocation> rows = valid(withoutResends(batch));
+        if (rows.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        List<BusLocation> written;
+        int failed = 0;
+        try {
+            int[][] counts = transactionTemplate.execute(status ->
+                jdbcTemplate.batchUpdate(INSERT_SQL, rows, rows.size(), TelemetryPipeline::bind));
+            written = inserted(rows, counts);
+        } catch (DataAccessException e) {
+            // One bad row fails the whole batch: find it by writing the rows one at a time
+            log.warn("Batch insert of {} telemetry points failed, retrying row by row: {}", rows.size(),
+                e.getMessage());
+            written = new ArrayList<>(rows.size());
+            failed = insertEach(rows, written);
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+        publish(written);
+        // Counted once the live consumers have the points, so the metrics never run ahead of them
+        persistedPoints.increment(written.size());
+        failedPoints.increment(failed);
+        duplicatePoints.increment(rows.size() - written.size() - failed);
+    }
+
+    /**
+     * The rows the store did not already hold; a driver that cannot tell
+     * reports {@link java.sql.Statement#SUCCESS_NO_INFO} and the row counts
+     * as written
+     */
+    private static List<BusLocation> inserted(List<BusLocation> rows, int[][] counts) {
+        List<BusLocation> written = new ArrayList<>(rows.size());
+        int row = 0;
+        for (int[] batch : counts) {
+            for (int count : batch) {
+                if (count != 0) {
+                    written.add(rows.get(row));
+                }
+                row++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * @return the number of rows that could not be written
+     */
+    private int insertEach(List<BusLocation> rows, List<BusLocation> written) {
+        int failed = 0;
+        for (BusLocation location : rows) {
+            try {
+                if (jdbcTemplate.update(INSERT_SQL, ps -> bind(ps, location)) > 0) {
+                    written.add(location);
+                }
+            } catch (DataIntegrityViolationException e) {
+                // Most likely a bus deleted since the device directory loaded it
+                deviceDirectory.forget(location.getBus());
+                failed++;
+                log.warn("Dropped telemetry point of bus {} at {}: {}", location.getBus().getId(),
+                    location.getRecordedAt(), e.getMessage());
+            } catch (DataAccessException e) {
+                failed++;
+                log.error("Dropped telemetry point of bus {} at {}", location.getBus().getId(),
+                    location.getRecordedAt(), e);
+            }
+        }
+        return failed;
+    }
+
+    private void publish(List<BusLocation> rows) {
+        latestPerBus(rows).forEach(locationPublisher::publish);
+    }
+
+    private static void bind(PreparedStatement ps, BusLocation location) throws SQLException {
+        ps.setLong(1, location.getBus().getId());
+        ps.setBigDecimal(2, location.getLatitude());
+        ps.setBigDecimal(3, location.getLongitude());
+        ps.setBigDecimal(4, location.getSpeed());
+        ps.setBigDecimal(5, location.getHeading());
+        ps.setBigDecimal(6, location.getAltitude());
+        ps.setBigDecimal(7, location.getAccuracy());
+        ps.setTimestamp(8, Timestamp.valueOf(location.getRecordedAt()));
+        ps.setBigDecimal(9, location.getOdometer());
+        ps.setTimestamp(10, Timestamp.valueOf(location.getCreatedAt()));
+    }
+
+    /**
+     * Drops points that would fail the insert; producers other than the
+     * batch endpoint do not validate before offering
+     */
+    private List<BusLocation> valid(List<BusLocation> rows) {
+        List<BusLocation> valid = new ArrayList<>(rows.size());
+        for (BusLocation location : rows) {
+            String rejection = TelemetryValidator.rejection(location);
+            if (rejection == null) {
+                valid.add(location);
+            } else {
+                invalidPoints.increment();
+                log.warn("Dropped telemetry point at {}: {}", location.getRecordedAt(), rejection);
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Drops points a device sent more than once (same bus, same fix time)
+     */
+    private static List<BusLocation> withoutResends(List<BusLocation> batch) {
+        Set<String> seen = new HashSet<>(batch.size() * 2);
+        List<BusLocation> rows = new ArrayList<>(batch.size());
+        for (BusLocation location : batch) {
+            if (seen.add(location.getBus().getId() + "@" + location.getRecordedAt())) {
+                rows.add(location);
+            }
+        }
+        return rows;
+    }
+
+    private static Collection<BusLocation> latestPerBus(List<BusLocation> rows) {
+        Map<Long, BusLocation> latest = new LinkedHashMap<>();
+        for (BusLocation location : rows) {
+            latest.merge(location.getBus().getId(), location, (previous, next) ->
+                next.getRecordedAt().isBefore(previous.getRecordedAt()) ? previous : next);
+        }
+        return latest.values();
+    }
+
+    private Counter pointCounter(String outcome) {
+        return Counter.builder("telemetry.ingest.points")
+            .tag("outcome", outcome)
+            .register(meterRegistry);
+    }
+}
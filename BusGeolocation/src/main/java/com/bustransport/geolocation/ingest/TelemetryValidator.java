@@ -0,0 +1,66 @@
+package com.bustransport.geolocation.ingest;
+
+import com.bustransport.geolocation.entity.BusLocation;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Checks a position against the bus_locations columns before it is queued,
+ * so one bad reading cannot fail the batch insert it would share with
+ * hundreds of good ones
+ */
+public final class TelemetryValidator {
+
+    private static final BigDecimal MAX_LATITUDE = BigDecimal.valueOf(90);
+    private static final BigDecimal MAX_LONGITUDE = BigDecimal.valueOf(180);
+    private static final BigDecimal FULL_TURN = BigDecimal.valueOf(360);
+
+    private TelemetryValidator() {
+    }
+
+    /**
+     * @return why the position cannot be stored, or null if it can
+     */
+    public static String rejection(BusLocation location) {
+        if (location.getBus() == null || location.getBus().getId() == null) {
+            return "unknown bus";
+        }
+        if (location.getRecordedAt() == null) {
+            return "missing timestamp";
+        }
+        if (location.getLatitude() == null || location.getLatitude().abs().compareTo(MAX_LATITUDE) > 0) {
+            return "latitude out of range";
+        }
+        if (location.getLongitude() == null || location.getLongitude().abs().compareTo(MAX_LONGITUDE) > 0) {
+            return "longitude out of range";
+        }
+        if (location.getSpeed() == null || location.getSpeed().signum() < 0 || !fits(location.getSpeed(), 5, 2)) {
+            return "speed out of range";
+        }
+        if (location.getHeading() == null || location.getHeading().signum() < 0
+                || location.getHeading().compareTo(FULL_TURN) > 0) {
+            return "heading out of range";
+        }
+        if (location.getAltitude() != null && !fits(location.getAltitude(), 6, 2)) {
+            return "altitude out of range";
+        }
+        if (location.getAccuracy() != null
+                && (location.getAccuracy().signum() < 0 || !fits(location.getAccuracy(), 5, 2))) {
+            return "accuracy out of range";
+        }
+        if (location.getOdometer() != null && !fits(location.getOdometer(), 10, 2)) {
+            return "odometer out of range";
+        }
+        return null;
+    }
+
+    /**
+     * Whether the value, rounded the way the database rounds it, fits a
+     * numeric(precision, scale) column
+     */
+    static boolean fits(BigDecimal value, int precision, int scale) {
+        BigDecimal rounded = value.setScale(scale, RoundingMode.HALF_UP);
+        return rounded.precision() - rounded.scale() <= precision - scale;
+    }
+}
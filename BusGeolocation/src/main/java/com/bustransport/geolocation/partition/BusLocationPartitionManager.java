@@ -0,0 +1,302 @@
+package com.bustransport.geolocation.partition;
+
+import com.bustransport.geolocation.trace.TraceCompactor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAdjusters;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps {@code bus_locations} range-partitioned on {@code recorded_at}, one
+ * partition per day or week. Partitions for the coming periods are created
+ * ahead of time and whole partitions are dropped once they fall out of the
+ * retention window, so history reads prune to the periods they cover and
+ * retention never deletes rows one by one. A default partition takes points
+ * outside every range (clock skew, maintenance missed); their rows move into
+ * the period partition when it is created. Nothing is dropped before
+ * {@link TraceCompactor} has rolled its points into trip traces.
+ * <p>
+ * Hibernate creates the table unpartitioned; at the first startup it is
+ * converted in place: the existing table becomes the partition for
+ * everything up to the end of the current period and keeps its indexes,
+ * unique keys and foreign keys.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class BusLocationPartitionManager {
+
+    private static final String TABLE = "bus_locations";
+    private static final String LEGACY_PARTITION = TABLE + "_legacy";
+    private static final String DEFAULT_PARTITION = TABLE + "_default";
+    private static final String ID_SEQUENCE = TABLE + "_id_seq";
+    private static final Pattern BOUND = Pattern.compile("'(\\d{4}-\\d{2}-\\d{2})");
+    private static final Pattern INDEX_TABLE = Pattern.compile(" ON (ONLY )?(\\S+\\.)?" + TABLE + " ");
+
+    public enum Interval {
+        DAILY, WEEKLY
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final TraceCompactor traceCompactor;
+
+    @Value("${locations.partitioning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${locations.partitioning.interval:DAILY}")
+    private Interval interval;
+
+    @Value("${locations.partitioning.precreate:7}")
+    private int precreate;
+
+    @Value("${locations.retention-days:30}")
+    private int retentionDays;
+
+    /**
+     * A partition and its range; {@code from} is null for MINVALUE, both
+     * bounds are null for the default partition
+     */
+    private record Partition(String name, LocalDate from, LocalDate to) {
+
+        boolean isDefault() {
+            return from == null && to == null;
+        }
+
+        boolean overlaps(LocalDate start, LocalDate end) {
+            return !isDefault() && (from == null || from.isBefore(end)) && to.isAfter(start);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void initialize() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            String kind = tableKind();
+            if ("r".equals(kind)) {
+                convert();
+            } else if (kind == null) {
+                log.warn("Table {} does not exist, partitioning skipped", TABLE);
+                return;
+            }
+        } catch (DataAccessException e) {
+            log.error("Error partitioning {}", TABLE, e);
+            return;
+        }
+        maintain();
+    }
+
+    @Scheduled(cron = "${locations.partitioning.maintenance-cron:0 5 0 * * *}")
+    public void maintain() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            if (!"p".equals(tableKind())) {
+                return;
+            }
+            createUpcoming();
+            if (retentionDays > 0) {
+                dropExpired(LocalDate.now().minusDays(retentionDays));
+            }
+        } catch (DataAccessException e) {
+            log.error("Error maintaining {} partitions", TABLE, e);
+        }
+    }
+
+    /**
+     * Turns the plain table into the partition of everything recorded up to
+     * the end of the current period, or of its newest point's period when
+     * that is later. Attaching scans the old table once to check the bound.
+     */
+    private void convert() {
+        LocalDate boundary = transactionTemplate.execute(status -> {
+            jdbcTemplate.execute("LOCK TABLE " + TABLE + " IN ACCESS EXCLUSIVE MODE");
+            LocalDateTime newest = jdbcTemplate.queryForObject(
+                "SELECT MAX(recorded_at) FROM " + TABLE, LocalDateTime.class);
+            LocalDate today = LocalDate.now();
+            LocalDate end = advance(periodStart(newest == null || newest.toLocalDate().isBefore(today)
+                ? today : newest.toLocalDate()), 1);
+            Long nextId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) + 1 FROM " + TABLE, Long.class);
+            // Constraint indexes (the id primary key) cannot span partitions
+            List<Map<String, Object>> indexes = jdbcTemplate.queryForList(
+                "SELECT i.indexname, i.indexdef FROM pg_indexes i "
+                    + "WHERE i.schemaname = current_schema() AND i.tablename = ? "
+                    + "AND NOT EXISTS (SELECT 1 FROM pg_constraint c WHERE c.conname = i.indexname)", TABLE);
+            // LIKE copies neither, so the bus_id reference and the unique fix key are declared again on the parent
+            List<Map<String, Object>> constraints = jdbcTemplate.queryForList(
+                "SELECT conname, contype::text AS contype, pg_get_constraintdef(oid) AS condef FROM pg_constraint "
+                    + "WHERE conrelid = to_regclass(?) AND contype IN ('f', 'u')", TABLE);
+
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " RENAME TO " + LEGACY_PARTITION);
+            for (Map<String, Object> index : indexes) {
+                jdbcTemplate.execute("ALTER INDEX " + index.get("indexname") + " RENAME TO "
+                    + index.get("indexname") + "_legacy");
+            }
+            for (Map<String, Object> constraint : constraints) {
+                // Its index takes the name too, and index names are unique per schema
+                if ("u".equals(constraint.get("contype"))) {
+                    jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " RENAME CONSTRAINT "
+                        + constraint.get("conname") + " TO " + constraint.get("conname") + "_legacy");
+                }
+            }
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN id DROP IDENTITY IF EXISTS");
+            jdbcTemplate.execute("ALTER TABLE " + LEGACY_PARTITION + " ALTER COLUMN id DROP DEFAULT");
+
+            jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS " + ID_SEQUENCE);
+            jdbcTemplate.queryForObject("SELECT setval('" + ID_SEQUENCE + "', ?, false)", Long.class, nextId);
+            jdbcTemplate.execute("CREATE TABLE " + TABLE + " (LIKE " + LEGACY_PARTITION
+                + " INCLUDING DEFAULTS) PARTITION BY RANGE (recorded_at)");
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ALTER COLUMN id SET DEFAULT nextval('" + ID_SEQUENCE + "')");
+            jdbcTemplate.execute("ALTER SEQUENCE " + ID_SEQUENCE + " OWNED BY " + TABLE + ".id");
+
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + LEGACY_PARTITION
+                + " FOR VALUES FROM (MINVALUE) TO ('" + end + "')");
+            // Same definitions on the parent adopt the renamed indexes instead of rebuilding them
+            for (Map<String, Object> index : indexes) {
+                String definition = (String) index.get("indexdef");
+                jdbcTemplate.execute(INDEX_TABLE.matcher(definition).replaceFirst(" ON " + TABLE + " "));
+            }
+            // The old table's matching constraints are adopted rather than built or validated again
+            for (Map<String, Object> constraint : constraints) {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " ADD CONSTRAINT " + constraint.get("conname")
+                    + " " + constraint.get("condef"));
+            }
+            jdbcTemplate.execute("CREATE TABLE " + DEFAULT_PARTITION + " PARTITION OF " + TABLE + " DEFAULT");
+            return end;
+        });
+        log.info("Converted {} to a partitioned table; existing rows form partition {} (before {})",
+            TABLE, LEGACY_PARTITION, boundary);
+    }
+
+    private void createUpcoming() {
+        List<Partition> existing = partitions();
+        LocalDate start = periodStart(LocalDate.now());
+        for (int i = 0; i <= precreate; i++) {
+            LocalDate from = advance(start, i);
+            LocalDate to = advance(from, 1);
+            if (existing.stream().anyMatch(partition -> partition.overlaps(from, to))) {
+                continue;
+            }
+            String name = TABLE + "_p" + from.format(DateTimeFormatter.BASIC_ISO_DATE);
+            try {
+                createPartition(name, from, to, existing.stream().anyMatch(Partition::isDefault));
+                log.info("Created partition {} for [{}, {})", name, from, to);
+            } catch (DataAccessException e) {
+                log.warn("Could not create partition {}: {}", name, e.getMostSpecificCause().getMessage());
+            }
+        }
+    }
+
+    /**
+     * Builds the partition detached, moves in the rows the default partition
+     * holds for its range, then attaches it; attaching adds the parent's
+     * indexes and foreign keys
+     */
+    private void createPartition(String name, LocalDate from, LocalDate to, boolean hasDefault) {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE " + TABLE + " INCLUDING DEFAULTS)");
+            if (hasDefault) {
+                int moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION
+                    + " WHERE recorded_at >= ? AND recorded_at < ? RETURNING *) "
+                    + "INSERT INTO " + name + " SELECT * FROM moved", from.atStartOfDay(), to.atStartOfDay());
+                if (moved > 0) {
+                    log.info("Moved {} rows from {} into {}", moved, DEFAULT_PARTITION, name);
+                }
+            }
+            jdbcTemplate.execute("ALTER TABLE " + TABLE + " ATTACH PARTITION " + name
+                + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+        });
+    }
+
+    private void dropExpired(LocalDate cutoff) {
+        for (Partition partition : partitions()) {
+            if (partition.to() == null || partition.to().isAfter(cutoff)) {
+                continue;
+            }
+            if (!traceCompactor.canDropBefore(partition.to().atStartOfDay())) {
+                log.info("Keeping partition {} until its trips are compacted", partition.name());
+                continue;
+            }
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.execute("ALTER TABLE " + TABLE + " DETACH PARTITION " + partition.name());
+                jdbcTemplate.execute("DROP TABLE " + partition.name());
+            });
+            log.info("Dropped partition {} (before {})", partition.name(), partition.to());
+        }
+        if (!traceCompactor.canDropBefore(cutoff.atStartOfDay())) {
+            return;
+        }
+        int purged = jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE recorded_at < ?",
+            cutoff.atStartOfDay());
+        if (purged > 0) {
+            log.info("Purged {} expired rows from {}", purged, DEFAULT_PARTITION);
+        }
+    }
+
+    /**
+     * pg_class relkind of the table: "p" partitioned, "r" plain, null missing
+     */
+    private String tableKind() {
+        List<String> kinds = jdbcTemplate.queryForList(
+            "SELECT relkind::text FROM pg_class WHERE oid = to_regclass(?)", String.class, TABLE);
+        return kinds.isEmpty() ? null : kinds.get(0);
+    }
+
+    private List<Partition> partitions() {
+        return jdbcTemplate.query(
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) FROM pg_inherits i "
+                + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = to_regclass(?)",
+            (rs, rowNum) -> toPartition(rs.getString(1), rs.getString(2)), TABLE);
+    }
+
+    /**
+     * Reads bounds such as {@code FOR VALUES FROM (MINVALUE) TO ('2024-05-06 00:00:00')}
+     */
+    private static Partition toPartition(String name, String bound) {
+        if (bound.contains("DEFAULT")) {
+            return new Partition(name, null, null);
+        }
+        Matcher matcher = BOUND.matcher(bound);
+        LocalDate from = null;
+        LocalDate to = null;
+        if (!bound.contains("MINVALUE") && matcher.find()) {
+            from = LocalDate.parse(matcher.group(1));
+        }
+        if (matcher.find()) {
+            to = LocalDate.parse(matcher.group(1));
+        }
+        return new Partition(name, from, to);
+    }
+
+    private LocalDate periodStart(LocalDate date) {
+        return interval == Interval.WEEKLY
+            ? date.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY))
+            : date;
+    }
+
+    private LocalDate advance(LocalDate start, int periods) {
+        return interval == Interval.WEEKLY ? start.plusWeeks(periods) : start.plusDays(periods);
+    }
+}
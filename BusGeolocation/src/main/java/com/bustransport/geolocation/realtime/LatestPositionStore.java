@@ -0,0 +1,61 @@
+package com.bustransport.geolocation.realtime;
+
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.repository.BusLocationRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Latest known position of every bus, so the live map and current-location
+ * reads never scan the location history. Rebuilt from the database at
+ * startup and then fed by every ingest path; reads do not lock. Positions
+ * written by the batch ingest pipeline carry no id.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class LatestPositionStore {
+
+    private final BusLocationRepository locationRepository;
+
+    private final Map<Long, BusLocation> positions = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void load() {
+        locationRepository.findLatestPerBus().forEach(this::update);
+        log.info("Loaded the latest position of {} buses", positions.size());
+    }
+
+    /**
+     * Records a position unless a later one of the same bus is already known
+     */
+    public void update(BusLocation location) {
+        positions.merge(location.getBus().getId(), location,
+            (previous, next) -> next.getRecordedAt().isBefore(previous.getRecordedAt()) ? previous : next);
+    }
+
+    public Optional<BusLocation> get(Long busId) {
+        return Optional.ofNullable(positions.get(busId));
+    }
+
+    /**
+     * Latest positions recorded at or after {@code since}
+     */
+    public List<BusLocation> getAllSince(LocalDateTime since) {
+        return positions.values().stream()
+            .filter(location -> !location.getRecordedAt().isBefore(since))
+            .toList();
+    }
+}
@@ -0,0 +1,38 @@
+package com.bustransport.geolocation.realtime;
+
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.eta.EtaEngine;
+import com.bustransport.geolocation.event.LocationStoredEvent;
+import com.bustransport.geolocation.websocket.LocationWebSocketHandler;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+/**
+ * Hands a stored position to every live consumer: the latest positions,
+ * the GTFS-Realtime feed, the WebSocket stream and the arrival predictions.
+ * All ingest paths publish through here, so a new consumer is wired once;
+ * a position saved inside a transaction comes as a {@link LocationStoredEvent}
+ * so nothing is broadcast that a rollback takes back.
+ */
+@Component
+@RequiredArgsConstructor
+public class LocationPublisher {
+
+    private final LatestPositionStore latestPositionStore;
+    private final VehiclePositionsFeed vehiclePositionsFeed;
+    private final LocationWebSocketHandler locationWebSocketHandler;
+    private final EtaEngine etaEngine;
+
+    public void publish(BusLocation location) {
+        latestPositionStore.update(location);
+        vehiclePositionsFeed.update(location);
+        locationWebSocketHandler.update(location);
+        etaEngine.update(location);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onLocationStored(LocationStoredEvent event) {
+        publish(event.getLocation());
+    }
+}
@@ -0,0 +1,144 @@
+package com.bustransport.geolocation.realtime;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.util.ProtobufWriter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * GTFS-Realtime VehiclePositions feed. Every ingested position replaces the
+ * pre-encoded entity of its bus, so building the feed only concatenates
+ * bytes. The feed is re-encoded at most once per second and only when a
+ * position arrived or an entry may have gone stale; every caller gets the
+ * same byte array.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class VehiclePositionsFeed {
+
+    private static final long MIN_ENCODE_INTERVAL_MS = 1000;
+    // Stale positions are dropped even when nothing new arrives
+    private static final long MAX_FEED_AGE_MS = 60_000;
+
+    // gtfs-realtime.proto enum values
+    private static final int FULL_DATASET = 0;
+
+    private final LatestPositionStore latestPositionStore;
+
+    @Value("${gtfs-realtime.vehicle-max-age-minutes:5}")
+    private int vehicleMaxAgeMinutes;
+
+    private final Map<Long, EncodedVehicle> vehicles = new ConcurrentHashMap<>();
+
+    private volatile boolean dirty = true;
+    private volatile Feed current = new Feed(new byte[0], 0);
+
+    /**
+     * An encoded FeedMessage and the time it was encoded
+     */
+    public record Feed(byte[] body, long timestampMillis) {
+    }
+
+    private record EncodedVehicle(byte[] entity, long recordedAtMillis) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        LocalDateTime since = LocalDateTime.now().minusMinutes(vehicleMaxAgeMinutes);
+        latestPositionStore.getAllSince(since).forEach(this::update);
+        log.info("Loaded {} vehicle positions into the GTFS-Realtime feed", vehicles.size());
+    }
+
+    /**
+     * Records the latest position of a bus. Older positions arriving out of
+     * order are ignored.
+     */
+    public void update(BusLocation location) {
+        Bus bus = location.getBus();
+        long recordedAt = toMillis(location.getRecordedAt());
+        EncodedVehicle encoded = new EncodedVehicle(encodeEntity(bus, location, recordedAt), recordedAt);
+        vehicles.merge(bus.getId(), encoded,
+            (previous, next) -> next.recordedAtMillis() >= previous.recordedAtMillis() ? next : previous);
+        dirty = true;
+    }
+
+    public Feed getFeed() {
+        Feed feed = current;
+        long now = System.currentTimeMillis();
+        if (now - feed.timestampMillis() < MIN_ENCODE_INTERVAL_MS
+                || (!dirty && now - feed.timestampMillis() < MAX_FEED_AGE_MS)) {
+            return feed;
+        }
+        synchronized (this) {
+            if (current != feed) {
+                return current;
+            }
+            dirty = false;
+            current = encode(now);
+            return current;
+        }
+    }
+
+    private Feed encode(long now) {
+        long cutoff = now - vehicleMaxAgeMinutes * 60_000L;
+        vehicles.values().removeIf(vehicle -> vehicle.recordedAtMillis() < cutoff);
+
+        ProtobufWriter message = new ProtobufWriter(current.body().length + 256);
+        message.message(1, new ProtobufWriter()
+            .string(1, "2.0")
+            .enumValue(2, FULL_DATASET)
+            .uint64(3, now / 1000));
+        for (EncodedVehicle vehicle : vehicles.values()) {
+            message.raw(vehicle.entity());
+        }
+        return new Feed(message.toByteArray(), now);
+    }
+
+    /**
+     * One FeedEntity with a VehiclePosition; speed is converted to m/s and
+     * the odometer to meters as the specification requires
+     */
+    private byte[] encodeEntity(Bus bus, BusLocation location, long recordedAt) {
+        ProtobufWriter position = new ProtobufWriter()
+            .floatValue(1, location.getLatitude().floatValue())
+            .floatValue(2, location.getLongitude().floatValue())
+            .floatValue(3, location.getHeading().floatValue());
+        if (location.getOdometer() != null) {
+            position.doubleValue(4, location.getOdometer().doubleValue() * 1000);
+        }
+        position.floatValue(5, location.getSpeed().floatValue() / 3.6f);
+
+        ProtobufWriter vehicle = new ProtobufWriter()
+            .string(1, String.valueOf(bus.getId()))
+            .string(2, bus.getBusNumber());
+        if (bus.getPlateNumber() != null) {
+            vehicle.string(3, bus.getPlateNumber());
+        }
+
+        ProtobufWriter vehiclePosition = new ProtobufWriter()
+            .message(1, new ProtobufWriter().string(5, String.valueOf(bus.getRouteId())))
+            .message(2, position)
+            .uint64(5, recordedAt / 1000)
+            .message(8, vehicle);
+        return new ProtobufWriter()
+            .message(2, new ProtobufWriter()
+                .string(1, "bus-" + bus.getId())
+                .message(4, vehiclePosition))
+            .toByteArray();
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -13,16 +13,46 @@ import java.util.Optional;
 @Repository
 public interface BusLocationRepository extends JpaRepository<BusLocation, Long> {
     
-    @Query("SELECT bl FROM BusLocation bl WHERE bl.bus.id = :busId ORDER BY bl.recordedAt DESC LIMIT 1")
-    Optional<BusLocation> findLatestByBusId(@Param("busId") Long busId);
-    
+    // The range on recordedAt limits the scan to the partitions of the requested period
+    @Query("SELECT bl FROM BusLocation bl WHERE bl.bus.id = :busId " +
+           "AND bl.recordedAt >= :startTime AND bl.recordedAt <= :endTime ORDER BY bl.recordedAt")
     List<BusLocation> findByBusIdAndRecordedAtBetween(
-        Long busId, LocalDateTime startTime, LocalDateTime endTime);
+        @Param("busId") Long busId, @Param("startTime") LocalDateTime startTime,
+        @Param("endTime") LocalDateTime endTime);
     
-    @Query("SELECT bl FROM BusLocation bl WHERE bl.recordedAt >= :sinceTime " +
-           "AND bl.id IN (SELECT MAX(bl2.id) FROM BusLocation bl2 GROUP BY bl2.bus.id)")
-    List<BusLocation> findAllLatestLocations(@Param("sinceTime") LocalDateTime sinceTime);
+    // Served by the unique (bus_id, recordedAt) key
+    Optional<BusLocation> findByBusIdAndRecordedAt(Long busId, LocalDateTime recordedAt);
     
-    void deleteByRecordedAtBefore(LocalDateTime cutoffTime);
-}
+    @Query("SELECT MIN(bl.recordedAt) FROM BusLocation bl WHERE bl.bus.id = :busId AND bl.recordedAt > :after")
+    Optional<LocalDateTime> findFirstRecordedAtAfter(@Param("busId") Long busId, @Param("after") LocalDateTime after);
+    
+    @Query("SELECT bl FROM BusLocation bl WHERE bl.bus.id = :busId " +
+           "AND bl.recordedAt > :after AND bl.recordedAt <= :until ORDER BY bl.recordedAt")
+    List<BusLocation> findTracePoints(
+        @Param("busId") Long busId, @Param("after") LocalDateTime after, @Param("until") LocalDateTime until);
+    
+    /**
+     * Earliest point per bus among those stored since {@code arrivedSince}
+     * but recorded before {@code recordedBefore}; the range on createdAt
+     * uses its index
+     */
+    @Query("SELECT bl.bus.id AS busId, MIN(bl.recordedAt) AS recordedAt FROM BusLocation bl " +
+           "WHERE bl.createdAt >= :arrivedSince AND bl.recordedAt < :recordedBefore GROUP BY bl.bus.id")
+    List<EarliestPoint> findEarliestArrivedSince(
+        @Param("arrivedSince") LocalDateTime arrivedSince, @Param("recordedBefore") LocalDateTime recordedBefore);
+    
+    @Query("SELECT COUNT(bl) > 0 FROM BusLocation bl " +
+           "WHERE bl.createdAt >= :arrivedSince AND bl.recordedAt < :recordedBefore")
+    boolean existsArrivedSince(
+        @Param("arrivedSince") LocalDateTime arrivedSince, @Param("recordedBefore") LocalDateTime recordedBefore);
+    
+    // One index probe per bus on (bus_id, recordedAt); only run to rebuild the latest-position store
+    @Query("SELECT bl FROM BusLocation bl JOIN FETCH bl.bus b " +
+           "WHERE bl.recordedAt = (SELECT MAX(bl2.recordedAt) FROM BusLocation bl2 WHERE bl2.bus = b)")
+    List<BusLocation> findLatestPerBus();
 
+    interface EarliestPoint {
+        Long getBusId();
+        LocalDateTime getRecordedAt();
+    }
+}
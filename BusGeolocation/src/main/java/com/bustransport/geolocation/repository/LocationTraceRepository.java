@@ -2,12 +2,15 @@ package com.bustransport.geolocation.repository;
 
 import com.bustransport.geolocation.entity.LocationTrace;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface LocationTraceRepository extends JpaRepository<LocationTrace, Long> {
@@ -23,6 +26,23 @@ public interface LocationTraceRepository extends JpaRepository<LocationTrace, Lo
     List<LocationTrace> findRecentTracesByBusId(
         @Param("busId") Long busId, @Param("limit") int limit);
     
+    @Query("SELECT lt FROM LocationTrace lt WHERE lt.bus.id = :busId " +
+           "AND lt.startTime <= :endTime AND lt.endTime >= :startTime ORDER BY lt.startTime")
+    List<LocationTrace> findOverlapping(
+        @Param("busId") Long busId, @Param("startTime") LocalDateTime startTime,
+        @Param("endTime") LocalDateTime endTime);
+    
+    @Query("SELECT MAX(lt.endTime) FROM LocationTrace lt WHERE lt.bus.id = :busId")
+    Optional<LocalDateTime> findLastEndTime(@Param("busId") Long busId);
+    
+    @Query("SELECT MAX(lt.createdAt) FROM LocationTrace lt")
+    Optional<LocalDateTime> findLastCreatedAt();
+    
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM LocationTrace lt WHERE lt.bus.id = :busId AND lt.endTime >= :endTime")
+    int deleteEndingFrom(@Param("busId") Long busId, @Param("endTime") LocalDateTime endTime);
+    
     void deleteByEndTimeBefore(LocalDateTime cutoffTime);
 }
 
@@ -1,18 +1,41 @@
 package com.bustransport.geolocation.service;
 
 import com.bustransport.geolocation.dto.request.TelemetryIngestDTO;
+import com.bustransport.geolocation.dto.response.BatchIngestResultDTO;
 import com.bustransport.geolocation.dto.response.BusLocationDTO;
+import com.bustransport.geolocation.dto.response.LiveTrackingDTO;
+import com.bustransport.geolocation.dto.response.LocationTraceDTO;
+import com.bustransport.geolocation.dto.response.RejectedPointDTO;
+import com.bustransport.geolocation.dto.response.StopArrivalDTO;
+import com.bustransport.geolocation.dto.response.TracePointDTO;
 import com.bustransport.geolocation.entity.Bus;
 import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.entity.LocationTrace;
+import com.bustransport.geolocation.eta.EtaEngine;
+import com.bustransport.geolocation.event.LocationStoredEvent;
+import com.bustransport.geolocation.ingest.DeviceDirectory;
+import com.bustransport.geolocation.ingest.TelemetryPipeline;
+import com.bustransport.geolocation.ingest.TelemetryValidator;
+import com.bustransport.geolocation.realtime.LatestPositionStore;
 import com.bustransport.geolocation.repository.BusLocationRepository;
 import com.bustransport.geolocation.repository.BusRepository;
+import com.bustransport.geolocation.repository.LocationTraceRepository;
+import com.bustransport.geolocation.trace.TracePolyline;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -23,12 +46,25 @@ public class BusLocationService {
 
     private final BusLocationRepository locationRepository;
     private final BusRepository busRepository;
+    private final LocationTraceRepository traceRepository;
+    private final LatestPositionStore latestPositionStore;
+    private final ApplicationEventPublisher eventPublisher;
+    private final EtaEngine etaEngine;
+    private final DeviceDirectory deviceDirectory;
+    private final TelemetryPipeline telemetryPipeline;
 
     @Transactional
     public BusLocationDTO ingestTelemetry(TelemetryIngestDTO telemetry) {
         Bus bus = busRepository.findByDeviceId(telemetry.getDeviceId())
             .orElseThrow(() -> new RuntimeException("Bus not found for device: " + telemetry.getDeviceId()));
 
+        // A resent point is answered with the stored one and not published again
+        Optional<BusLocation> stored = locationRepository.findByBusIdAndRecordedAt(bus.getId(),
+            telemetry.getTimestamp());
+        if (stored.isPresent()) {
+            return toDTO(stored.get());
+        }
+
         BusLocation location = BusLocation.builder()
             .bus(bus)
             .latitude(telemetry.getLatitude())
@@ -42,11 +78,91 @@ public class BusLocationService {
             .build();
 
         BusLocation saved = locationRepository.save(location);
+        eventPublisher.publishEvent(new LocationStoredEvent(saved));
         return toDTO(saved);
     }
 
+    /**
+     * Queues a batch of points for the ingest pipeline; they are written and
+     * published asynchronously. Points of unknown devices and points that do
+     * not fit the location columns are skipped and listed as rejected; when
+     * the pipeline is saturated the rest of the batch is left to the caller.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public BatchIngestResultDTO ingestTelemetryBatch(List<TelemetryIngestDTO> batch) {
+        LocalDateTime receivedAt = LocalDateTime.now();
+        Set<String> unknownDevices = new LinkedHashSet<>();
+        List<RejectedPointDTO> rejected = new ArrayList<>();
+        int accepted = 0;
+        Integer retryFrom = null;
+        try {
+            for (int i = 0; i < batch.size(); i++) {
+                TelemetryIngestDTO telemetry = batch.get(i);
+                Optional<Bus> bus = deviceDirectory.resolve(telemetry.getDeviceId());
+                if (bus.isEmpty()) {
+                    unknownDevices.add(telemetry.getDeviceId());
+                    rejected.add(rejection(i, telemetry, "unknown device"));
+                    continue;
+                }
+                BusLocation location = toLocation(bus.get(), telemetry, receivedAt);
+                String reason = TelemetryValidator.rejection(location);
+                if (reason != null) {
+                    rejected.add(rejection(i, telemetry, reason));
+                    continue;
+                }
+                if (!telemetryPipeline.offer(location)) {
+                    retryFrom = i;
+                    break;
+                }
+                accepted++;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while queueing telemetry", e);
+        }
+
+        return BatchIngestResultDTO.builder()
+            .received(batch.size())
+            .accepted(accepted)
+            .unknownDevices(new ArrayList<>(unknownDevices))
+            .rejected(rejected)
+            .retryFrom(retryFrom)
+            .build();
+    }
+
+    private static RejectedPointDTO rejection(int index, TelemetryIngestDTO telemetry, String reason) {
+        return RejectedPointDTO.builder()
+            .index(index)
+            .deviceId(telemetry.getDeviceId())
+            .reason(reason)
+            .build();
+    }
+
+    private static BusLocation toLocation(Bus bus, TelemetryIngestDTO telemetry, LocalDateTime receivedAt) {
+        BusLocation location = BusLocation.builder()
+            .bus(bus)
+            .latitude(telemetry.getLatitude())
+            .longitude(telemetry.getLongitude())
+            .altitude(telemetry.getAltitude())
+            .recordedAt(telemetry.getTimestamp())
+            .odometer(telemetry.getOdometer())
+            .createdAt(receivedAt)
+            .build();
+        // Optional readings keep the column defaults
+        if (telemetry.getSpeed() != null) {
+            location.setSpeed(telemetry.getSpeed());
+        }
+        if (telemetry.getHeading() != null) {
+            location.setHeading(telemetry.getHeading());
+        }
+        if (telemetry.getAccuracy() != null) {
+            location.setAccuracy(telemetry.getAccuracy());
+        }
+        return location;
+    }
+
     public BusLocationDTO getCurrentLocation(Long busId) {
-        BusLocation location = locationRepository.findLatestByBusId(busId)
+        BusLocation location = latestPositionStore.get(busId)
             .orElseThrow(() -> new RuntimeException("No location found for bus: " + busId));
         return toDTO(location);
     }
@@ -58,14 +174,100 @@ public class BusLocationService {
             .collect(Collectors.toList());
     }
 
+    /**
+     * Compacted trips of a bus overlapping the period, for playback beyond
+     * the raw point retention
+     */
+    public List<LocationTraceDTO> getTraces(Long busId, LocalDateTime startTime, LocalDateTime endTime) {
+        return traceRepository.findOverlapping(busId, startTime, endTime)
+            .stream()
+            .map(trace -> toDTO(busId, trace))
+            .collect(Collectors.toList());
+    }
+
     public List<BusLocationDTO> getAllActiveBusLocations() {
         LocalDateTime since = LocalDateTime.now().minusMinutes(5);
-        return locationRepository.findAllLatestLocations(since)
+        return latestPositionStore.getAllSince(since)
             .stream()
             .map(this::toDTO)
             .collect(Collectors.toList());
     }
 
+    public LiveTrackingDTO getLiveTracking(Long busId) {
+        BusLocation location = latestPositionStore.get(busId)
+            .orElseThrow(() -> new RuntimeException("No location found for bus: " + busId));
+        Bus bus = location.getBus();
+        LiveTrackingDTO.LiveTrackingDTOBuilder tracking = LiveTrackingDTO.builder()
+            .busId(bus.getId())
+            .busNumber(bus.getBusNumber())
+            .routeId(bus.getRouteId())
+            .currentLocation(toDTO(location))
+            .lastUpdate(location.getRecordedAt());
+
+        etaEngine.getProgress(busId).ifPresent(progress -> {
+            tracking.routeName(progress.line().getRouteName());
+            progress.nextStop().ifPresent(next -> tracking
+                .nextStopName(next.stopName())
+                .nextStopETA(etaMinutes(next)));
+            tracking.onSchedule(progress.onSchedule());
+        });
+        return tracking.build();
+    }
+
+    public List<StopArrivalDTO> getPredictedArrivals(Long busId) {
+        return etaEngine.getProgress(busId)
+            .map(progress -> progress.arrivals().stream().map(this::toDTO).collect(Collectors.toList()))
+            .orElse(List.of());
+    }
+
+    public List<StopArrivalDTO> getStopArrivals(Long stopId) {
+        return etaEngine.getArrivals(stopId).stream()
+            .map(this::toDTO)
+            .collect(Collectors.toList());
+    }
+
+    private static int etaMinutes(EtaEngine.StopArrival arrival) {
+        long secs = Duration.between(LocalDateTime.now(), arrival.predictedArrival()).getSeconds();
+        return (int) Math.max(0, Math.round(secs / 60.0));
+    }
+
+    private StopArrivalDTO toDTO(EtaEngine.StopArrival arrival) {
+        return StopArrivalDTO.builder()
+            .stopId(arrival.stopId())
+            .stopName(arrival.stopName())
+            .stopSequence(arrival.stopSequence())
+            .busId(arrival.busId())
+            .busNumber(arrival.busNumber())
+            .routeId(arrival.routeId())
+            .predictedArrival(arrival.predictedArrival())
+            .etaMinutes(etaMinutes(arrival))
+            .distanceMeters((int) Math.round(arrival.distanceMeters()))
+            .delaySeconds(arrival.delaySecs())
+            .build();
+    }
+
+    private LocationTraceDTO toDTO(Long busId, LocationTrace trace) {
+        List<TracePointDTO> points = trace.getEncodedPath() == null ? List.of()
+            : TracePolyline.decode(trace.getEncodedPath(), trace.getStartTime()).stream()
+                .map(point -> TracePointDTO.builder()
+                    .latitude(BigDecimal.valueOf(point.latitude()))
+                    .longitude(BigDecimal.valueOf(point.longitude()))
+                    .recordedAt(point.time())
+                    .build())
+                .collect(Collectors.toList());
+        return LocationTraceDTO.builder()
+            .id(trace.getId())
+            .busId(busId)
+            .routeId(trace.getRouteId())
+            .startTime(trace.getStartTime())
+            .endTime(trace.getEndTime())
+            .totalDistance(trace.getTotalDistance())
+            .totalStops(trace.getTotalStops())
+            .averageSpeed(trace.getAverageSpeed())
+            .points(points)
+            .build();
+    }
+
     private BusLocationDTO toDTO(BusLocation location) {
         return BusLocationDTO.builder()
             .id(location.getId())
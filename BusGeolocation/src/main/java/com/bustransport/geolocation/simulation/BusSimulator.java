@@ -6,14 +6,14 @@ import com.bustransport.geolocation.entity.GeofenceAlert;
 import com.bustransport.geolocation.enums.AlertSeverity;
 import com.bustransport.geolocation.enums.AlertType;
 import com.bustransport.geolocation.enums.BusStatus;
+import com.bustransport.geolocation.realtime.LatestPositionStore;
+import com.bustransport.geolocation.realtime.LocationPublisher;
 import com.bustransport.geolocation.repository.BusLocationRepository;
 import com.bustransport.geolocation.repository.BusRepository;
 import com.bustransport.geolocation.repository.GeofenceAlertRepository;
-import com.bustransport.geolocation.websocket.LocationWebSocketHandler;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -31,7 +31,8 @@ public class BusSimulator {
     private final BusRepository busRepository;
     private final BusLocationRepository locationRepository;
     private final GeofenceAlertRepository alertRepository;
-    private final SimpMessagingTemplate messagingTemplate;
+    private final LatestPositionStore latestPositionStore;
+    private final LocationPublisher locationPublisher;
 
     @Value("${simulation.enabled:true}")
     private boolean simulationEnabled;
@@ -71,22 +72,20 @@ public class BusSimulator {
     private void simulateBusMovement(Bus bus) {
         try {
             // Get last known location or create initial one
-            BusLocation lastLocation = locationRepository
-                .findLatestByBusId(bus.getId())
-                .orElse(createInitialLocation(bus));
+            BusLocation lastLocation = latestPositionStore
+                .get(bus.getId())
+                .orElseGet(() -> createInitialLocation(bus));
 
             // Calculate new position
             BusLocation newLocation = calculateNextPosition(bus, lastLocation);
 
             // Save location
             locationRepository.save(newLocation);
+            locationPublisher.publish(newLocation);
 
             // Check for alerts
             checkAndGenerateAlerts(bus, newLocation);
 
-            // Broadcast via WebSocket
-            broadcastLocation(newLocation);
-
             log.debug("Updated location for bus {}: ({}, {})",
                 bus.getBusNumber(), newLocation.getLatitude(), newLocation.getLongitude());
 
@@ -215,21 +214,6 @@ public class BusSimulator {
         }
     }
 
-    private void broadcastLocation(BusLocation location) {
-        try {
-            messagingTemplate.convertAndSend(
-                "/topic/bus-locations",
-                location
-            );
-            messagingTemplate.convertAndSend(
-                "/topic/bus/" + location.getBus().getId(),
-                location
-            );
-        } catch (Exception e) {
-            log.error("Error broadcasting location", e);
-        }
-    }
-
     private BigDecimal randomLatitude() {
         double lat = PARIS_LAT_MIN + (PARIS_LAT_MAX - PARIS_LAT_MIN) * random.nextDouble();
         return new BigDecimal(lat).setScale(7, RoundingMode.HALF_UP);
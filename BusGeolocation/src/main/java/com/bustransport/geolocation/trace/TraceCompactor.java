@@ -0,0 +1,247 @@
+package com.bustransport.geolocation.trace;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.entity.LocationTrace;
+import com.bustransport.geolocation.repository.BusLocationRepository;
+import com.bustransport.geolocation.repository.BusLocationRepository.EarliestPoint;
+import com.bustransport.geolocation.repository.BusRepository;
+import com.bustransport.geolocation.repository.LocationTraceRepository;
+import com.bustransport.geolocation.trace.TracePolyline.Point;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Rolls raw positions into one {@link LocationTrace} per trip: a run of
+ * points of a bus with no gap longer than {@code trip-gap-minutes}, capped at
+ * {@code max-trip-hours}. A trip is compacted once no point arrived for the
+ * gap, so the running trip of each bus is left for a later pass. Each bus
+ * resumes after the end of its last trace, so a pass that fails halfway is
+ * picked up by the next one without duplicates. A point stored after the
+ * trace covering its time reopens that trace: it and the later ones are
+ * deleted and compacted again. Raw points stay until their partition
+ * expires, and only once this job has caught up with them.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TraceCompactor {
+
+    private static final double EARTH_RADIUS_METERS = 6_371_000d;
+    private static final LocalDateTime EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+    // Points are stamped on arrival and may be committed a little later
+    private static final Duration ARRIVAL_MARGIN = Duration.ofMinutes(1);
+    // Below this reported speed a bus counts as halted
+    private static final BigDecimal HALT_SPEED_KMH = new BigDecimal("3");
+    private static final BigDecimal MAX_AVERAGE_SPEED = new BigDecimal("999.99");
+
+    private final BusRepository busRepository;
+    private final BusLocationRepository locationRepository;
+    private final LocationTraceRepository traceRepository;
+
+    @Value("${traces.compaction-enabled:true}")
+    private boolean enabled;
+
+    @Value("${traces.trip-gap-minutes:10}")
+    private int tripGapMinutes;
+
+    @Value("${traces.max-trip-hours:6}")
+    private int maxTripHours;
+
+    @Value("${traces.simplify-tolerance-meters:10}")
+    private double toleranceMeters;
+
+    // Every point recorded before this is part of a stored trace; null until a pass completed
+    private volatile LocalDateTime compactedBefore;
+
+    // Start of the last complete pass: points stored since then were not seen by it
+    private volatile LocalDateTime passStartedAt;
+
+    /**
+     * @param openTripStart first point of the trip still running, null if none
+     */
+    private record BusCompaction(int traces, LocalDateTime openTripStart) {
+    }
+
+    @Scheduled(cron = "${traces.compaction-cron:0 */15 * * * *}")
+    public void compact() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime startedAt = LocalDateTime.now();
+        LocalDateTime closedBefore = startedAt.minusMinutes(tripGapMinutes);
+        LocalDateTime compactedUntil = closedBefore;
+        boolean complete = true;
+        int traces = 0;
+        Map<Long, LocalDateTime> latePoints = latePoints();
+        for (Bus bus : busRepository.findAll()) {
+            try {
+                BusCompaction result = compactBus(bus, closedBefore, latePoints.get(bus.getId()));
+                traces += result.traces();
+                if (result.openTripStart() != null && result.openTripStart().isBefore(compactedUntil)) {
+                    compactedUntil = result.openTripStart();
+                }
+            } catch (Exception e) {
+                complete = false;
+                log.error("Error compacting the trips of bus {}", bus.getBusNumber(), e);
+            }
+        }
+        if (complete) {
+            passStartedAt = startedAt;
+            compactedBefore = compactedUntil;
+        }
+        if (traces > 0) {
+            log.info("Compacted {} trips into location traces", traces);
+        }
+    }
+
+    /**
+     * Whether raw points recorded before {@code time} may be dropped: they are
+     * all part of a stored trace, no point stored since the last pass reopens
+     * a trace that starts before it, or compaction is turned off
+     */
+    public boolean canDropBefore(LocalDateTime time) {
+        if (!enabled) {
+            return true;
+        }
+        LocalDateTime before = compactedBefore;
+        if (before == null || time.isAfter(before)) {
+            return false;
+        }
+        // A reopened trip may start up to a gap and a whole trip before the late point
+        return !locationRepository.existsArrivedSince(passStartedAt.minus(ARRIVAL_MARGIN),
+            time.plusHours(maxTripHours).plusMinutes(tripGapMinutes));
+    }
+
+    /**
+     * Earliest point per bus stored since the last pass, or since the last
+     * trace was saved after a restart, among those recorded before that
+     * pass; none before anything was compacted
+     */
+    private Map<Long, LocalDateTime> latePoints() {
+        LocalDateTime since = passStartedAt != null ? passStartedAt : traceRepository.findLastCreatedAt().orElse(null);
+        if (since == null) {
+            return Map.of();
+        }
+        return locationRepository.findEarliestArrivedSince(since.minus(ARRIVAL_MARGIN), since).stream()
+            .collect(Collectors.toMap(EarliestPoint::getBusId, EarliestPoint::getRecordedAt));
+    }
+
+    private BusCompaction compactBus(Bus bus, LocalDateTime closedBefore, LocalDateTime latePoint) {
+        LocalDateTime after = traceRepository.findLastEndTime(bus.getId()).orElse(EPOCH);
+        if (latePoint != null && !latePoint.isAfter(after)) {
+            // The trip it belongs to may end up to a gap before it
+            int reopened = traceRepository.deleteEndingFrom(bus.getId(), latePoint.minusMinutes(tripGapMinutes));
+            log.info("Reopened {} trips of bus {} for a point recorded at {} that arrived late",
+                reopened, bus.getBusNumber(), latePoint);
+            after = traceRepository.findLastEndTime(bus.getId()).orElse(EPOCH);
+        }
+        int saved = 0;
+        while (true) {
+            Optional<LocalDateTime> first = locationRepository.findFirstRecordedAtAfter(bus.getId(), after);
+            if (first.isEmpty()) {
+                return new BusCompaction(saved, null);
+            }
+            LocalDateTime windowEnd = first.get().plusHours(maxTripHours);
+            List<List<BusLocation>> trips = splitTrips(
+                locationRepository.findTracePoints(bus.getId(), after, windowEnd));
+            for (int i = 0; i < trips.size(); i++) {
+                List<BusLocation> trip = trips.get(i);
+                LocalDateTime end = trip.get(trip.size() - 1).getRecordedAt();
+                if (i == trips.size() - 1) {
+                    if (end.isAfter(closedBefore)) {
+                        return new BusCompaction(saved, trip.get(0).getRecordedAt());
+                    }
+                    // Could go on past the window: read it again from its start, unless it fills the window
+                    if (i > 0 && !end.plusMinutes(tripGapMinutes).isBefore(windowEnd)) {
+                        break;
+                    }
+                }
+                // A lone point is not a trip
+                if (trip.size() > 1) {
+                    traceRepository.save(toTrace(bus, trip));
+                    saved++;
+                }
+                after = end;
+            }
+        }
+    }
+
+    private List<List<BusLocation>> splitTrips(List<BusLocation> points) {
+        List<List<BusLocation>> trips = new ArrayList<>();
+        List<BusLocation> trip = new ArrayList<>();
+        for (BusLocation point : points) {
+            if (!trip.isEmpty() && trip.get(trip.size() - 1).getRecordedAt()
+                    .plusMinutes(tripGapMinutes).isBefore(point.getRecordedAt())) {
+                trips.add(trip);
+                trip = new ArrayList<>();
+            }
+            trip.add(point);
+        }
+        if (!trip.isEmpty()) {
+            trips.add(trip);
+        }
+        return trips;
+    }
+
+    private LocationTrace toTrace(Bus bus, List<BusLocation> trip) {
+        List<Point> points = new ArrayList<>(trip.size());
+        double meters = 0;
+        int halts = 0;
+        boolean wasHalted = true;
+        for (int i = 0; i < trip.size(); i++) {
+            BusLocation location = trip.get(i);
+            Point point = new Point(location.getLatitude().doubleValue(), location.getLongitude().doubleValue(),
+                location.getRecordedAt());
+            boolean halted = location.getSpeed() != null && location.getSpeed().compareTo(HALT_SPEED_KMH) < 0;
+            // GPS drift while standing is not distance
+            if (i > 0 && !(halted && wasHalted)) {
+                meters += distanceMeters(points.get(i - 1), point);
+            }
+            if (halted && !wasHalted) {
+                halts++;
+            }
+            wasHalted = halted;
+            points.add(point);
+        }
+
+        LocalDateTime start = points.get(0).time();
+        LocalDateTime end = points.get(points.size() - 1).time();
+        double hours = Duration.between(start, end).getSeconds() / 3600.0;
+        double km = meters / 1000;
+        return LocationTrace.builder()
+            .bus(bus)
+            .routeId(bus.getRouteId())
+            .encodedPath(TracePolyline.encode(TraceSimplifier.simplify(points, toleranceMeters), start))
+            .startTime(start)
+            .endTime(end)
+            .totalDistance(BigDecimal.valueOf(km).setScale(2, RoundingMode.HALF_UP))
+            .totalStops(halts)
+            .averageSpeed(hours > 0
+                ? BigDecimal.valueOf(km / hours).setScale(2, RoundingMode.HALF_UP).min(MAX_AVERAGE_SPEED)
+                : null)
+            .build();
+    }
+
+    private static double distanceMeters(Point from, Point to) {
+        double dLat = Math.toRadians(to.latitude() - from.latitude());
+        double dLon = Math.toRadians(to.longitude() - from.longitude());
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                   Math.cos(Math.toRadians(from.latitude())) * Math.cos(Math.toRadians(to.latitude())) *
+                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return EARTH_RADIUS_METERS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -0,0 +1,78 @@
+package com.bustransport.geolocation.trace;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoded polyline (the Google format, 1e-5 degree precision) extended with
+ * a third value per point, the seconds since the start of the trace. Each
+ * value is stored as the difference to the previous point, so a point
+ * usually takes 6 to 10 characters.
+ */
+public final class TracePolyline {
+
+    private static final double SCALE = 1e5;
+
+    private TracePolyline() {
+    }
+
+    public record Point(double latitude, double longitude, LocalDateTime time) {
+    }
+
+    public static String encode(List<Point> points, LocalDateTime start) {
+        StringBuilder out = new StringBuilder(points.size() * 10);
+        long prevLat = 0;
+        long prevLon = 0;
+        long prevSecs = 0;
+        for (Point point : points) {
+            long lat = Math.round(point.latitude() * SCALE);
+            long lon = Math.round(point.longitude() * SCALE);
+            long secs = Duration.between(start, point.time()).getSeconds();
+            writeValue(out, lat - prevLat);
+            writeValue(out, lon - prevLon);
+            writeValue(out, secs - prevSecs);
+            prevLat = lat;
+            prevLon = lon;
+            prevSecs = secs;
+        }
+        return out.toString();
+    }
+
+    public static List<Point> decode(String encoded, LocalDateTime start) {
+        List<Point> points = new ArrayList<>();
+        int[] pos = {0};
+        long lat = 0;
+        long lon = 0;
+        long secs = 0;
+        while (pos[0] < encoded.length()) {
+            lat += readValue(encoded, pos);
+            lon += readValue(encoded, pos);
+            secs += readValue(encoded, pos);
+            points.add(new Point(lat / SCALE, lon / SCALE, start.plusSeconds(secs)));
+        }
+        return points;
+    }
+
+    private static void writeValue(StringBuilder out, long value) {
+        long zigzag = value < 0 ? ~(value << 1) : value << 1;
+        while (zigzag >= 0x20) {
+            out.append((char) ((0x20 | (zigzag & 0x1f)) + 63));
+            zigzag >>= 5;
+        }
+        out.append((char) (zigzag + 63));
+    }
+
+    private static long readValue(String encoded, int[] pos) {
+        long result = 0;
+        int shift = 0;
+        int chunk;
+        do {
+            chunk = encoded.charAt(pos[0]++) - 63;
+            result |= (long) (chunk & 0x1f) << shift;
+            shift += 5;
+        } while (chunk >= 0x20);
+        return (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+    }
+}
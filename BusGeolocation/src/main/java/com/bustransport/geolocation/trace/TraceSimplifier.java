@@ -0,0 +1,80 @@
+package com.bustransport.geolocation.trace;
+
+import com.bustransport.geolocation.trace.TracePolyline.Point;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Douglas-Peucker simplification of a trace. Points are projected to meters
+ * around the first point (equirectangular, accurate at city scale); the
+ * first and last points are always kept.
+ */
+public final class TraceSimplifier {
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(6_371_000d);
+
+    private TraceSimplifier() {
+    }
+
+    public static List<Point> simplify(List<Point> points, double toleranceMeters) {
+        int n = points.size();
+        if (n < 3) {
+            return points;
+        }
+        double metersPerLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(points.get(0).latitude()));
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = points.get(i).longitude() * metersPerLon;
+            ys[i] = points.get(i).latitude() * METERS_PER_DEGREE;
+        }
+
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+        // Explicit stack: a long straight trace would recurse once per point
+        Deque<int[]> ranges = new ArrayDeque<>();
+        ranges.push(new int[]{0, n - 1});
+        double toleranceSq = toleranceMeters * toleranceMeters;
+        while (!ranges.isEmpty()) {
+            int[] range = ranges.pop();
+            int first = range[0];
+            int last = range[1];
+            int farthest = -1;
+            double farthestSq = toleranceSq;
+            for (int i = first + 1; i < last; i++) {
+                double d = segmentDistanceSq(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (d > farthestSq) {
+                    farthestSq = d;
+                    farthest = i;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                ranges.push(new int[]{first, farthest});
+                ranges.push(new int[]{farthest, last});
+            }
+        }
+
+        List<Point> simplified = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (keep[i]) {
+                simplified.add(points.get(i));
+            }
+        }
+        return simplified;
+    }
+
+    private static double segmentDistanceSq(double px, double py, double ax, double ay, double bx, double by) {
+        double dx = bx - ax;
+        double dy = by - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSq));
+        double ex = px - (ax + t * dx);
+        double ey = py - (ay + t * dy);
+        return ex * ex + ey * ey;
+    }
+}
@@ -0,0 +1,106 @@
+package com.bustransport.geolocation.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Minimal protocol buffers wire-format writer, enough to emit GTFS-Realtime
+ * messages without generated classes. Nested messages are written into their
+ * own writer and embedded as length-delimited fields; already encoded fields
+ * can be appended as they are.
+ */
+public final class ProtobufWriter {
+
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+
+    private final ByteArrayOutputStream out;
+
+    public ProtobufWriter() {
+        this(64);
+    }
+
+    public ProtobufWriter(int expectedSize) {
+        this.out = new ByteArrayOutputStream(expectedSize);
+    }
+
+    public ProtobufWriter uint64(int field, long value) {
+        tag(field, VARINT);
+        varint(value);
+        return this;
+    }
+
+    /**
+     * Signed int32 as protobuf encodes it: negative values take ten bytes
+     */
+    public ProtobufWriter int32(int field, int value) {
+        return uint64(field, value);
+    }
+
+    public ProtobufWriter enumValue(int field, int value) {
+        return uint64(field, value);
+    }
+
+    public ProtobufWriter floatValue(int field, float value) {
+        tag(field, FIXED32);
+        int bits = Float.floatToIntBits(value);
+        for (int i = 0; i < 4; i++) {
+            out.write(bits >>> (8 * i));
+        }
+        return this;
+    }
+
+    public ProtobufWriter doubleValue(int field, double value) {
+        tag(field, FIXED64);
+        long bits = Double.doubleToLongBits(value);
+        for (int i = 0; i < 8; i++) {
+            out.write((int) (bits >>> (8 * i)));
+        }
+        return this;
+    }
+
+    public ProtobufWriter string(int field, String value) {
+        return bytes(field, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public ProtobufWriter bytes(int field, byte[] value) {
+        tag(field, LENGTH_DELIMITED);
+        varint(value.length);
+        out.writeBytes(value);
+        return this;
+    }
+
+    public ProtobufWriter message(int field, ProtobufWriter message) {
+        return bytes(field, message.toByteArray());
+    }
+
+    /**
+     * Appends fields that were encoded earlier, e.g. cached repeated entities
+     */
+    public ProtobufWriter raw(byte[] encodedFields) {
+        out.writeBytes(encodedFields);
+        return this;
+    }
+
+    public int size() {
+        return out.size();
+    }
+
+    public byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    private void tag(int field, int wireType) {
+        varint((long) field << 3 | wireType);
+    }
+
+    private void varint(long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+}
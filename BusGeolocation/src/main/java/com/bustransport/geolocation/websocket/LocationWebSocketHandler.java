@@ -1,10 +1,350 @@
 package com.bustransport.geolocation.websocket;
 
+import com.bustransport.geolocation.dto.request.ViewportDTO;
+import com.bustransport.geolocation.dto.response.LocationDeltaDTO;
+import com.bustransport.geolocation.dto.response.LocationFrameDTO;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.realtime.LatestPositionStore;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Live location fan-out over STOMP. Positions are coalesced per bus and sent
+ * once per tick as compact delta frames holding only the buses that moved:
+ * <ul>
+ *   <li>{@code /topic/bus-locations}: the whole fleet</li>
+ *   <li>{@code /topic/routes/{routeId}/locations}: the buses of a route,
+ *   listing the buses moved to another route</li>
+ *   <li>{@code /topic/bus/{busId}}: a single bus</li>
+ *   <li>{@code /user/queue/locations}: the buses inside the viewport the
+ *   session sent to {@code /app/viewport}, starting with a snapshot and
+ *   listing the buses that left it</li>
+ * </ul>
+ * Viewports are indexed in a grid of {@code grid-cell-degrees} cells, so a
+ * moved bus is only matched against the sessions watching its cell, and a
+ * topic frame is only built when the topic has subscribers.
+ */
 @Component
+@RequiredArgsConstructor
+@Slf4j
 public class LocationWebSocketHandler {
-    // Placeholder for WebSocket handler logic
-    // Used by BusSimulator for broadcasting
-}
 
+    private static final String FLEET_TOPIC = "/topic/bus-locations";
+    private static final String VIEWPORT_QUEUE = "/queue/locations";
+    // Viewports spanning more cells (zoomed far out) are checked against every moved bus instead
+    private static final int MAX_VIEWPORT_CELLS = 2_500;
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final LatestPositionStore latestPositionStore;
+
+    @Value("${websocket.grid-cell-degrees:0.01}")
+    private double cellDegrees;
+
+    @Value("${gtfs-realtime.vehicle-max-age-minutes:5}")
+    private int vehicleMaxAgeMinutes;
+
+    private final Map<Long, Position> pending = new ConcurrentHashMap<>();
+    private final Map<Long, Position> lastSent = new ConcurrentHashMap<>();
+
+    private final Map<String, Viewport> viewports = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> sessionsByCell = new ConcurrentHashMap<>();
+    private final Set<String> unindexedSessions = ConcurrentHashMap.newKeySet();
+
+    // Session -> subscription id -> destination, to count subscribers per destination
+    private final Map<String, Map<String, String>> subscriptions = new ConcurrentHashMap<>();
+    private final Map<String, Integer> subscriberCounts = new ConcurrentHashMap<>();
+
+    private record Position(LocationDeltaDTO delta, Long routeId, LocalDateTime recordedAt) {
+    }
+
+    /**
+     * @param cells grid cells covered, null when the viewport is too large to index
+     */
+    private record Viewport(double minLat, double minLon, double maxLat, double maxLon, long[] cells) {
+
+        boolean contains(LocationDeltaDTO delta) {
+            return delta.getLat() >= minLat && delta.getLat() <= maxLat
+                && delta.getLon() >= minLon && delta.getLon() <= maxLon;
+        }
+    }
+
+    /**
+     * Queues a position for the next frame; only the latest one per bus is sent
+     */
+    public void update(BusLocation location) {
+        Position position = new Position(toDelta(location), location.getBus().getRouteId(),
+            location.getRecordedAt());
+        pending.merge(location.getBus().getId(), position,
+            (previous, next) -> next.recordedAt().isBefore(previous.recordedAt()) ? previous : next);
+    }
+
+    @Scheduled(fixedDelayString = "${websocket.broadcast-interval-ms:1000}")
+    public void broadcast() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Position> moved = new ArrayList<>();
+        for (Long busId : pending.keySet()) {
+            Position position = pending.remove(busId);
+            Position previous = lastSent.get(busId);
+            if (position != null && (previous == null || !position.recordedAt().isBefore(previous.recordedAt()))) {
+                moved.add(position);
+            }
+        }
+        long timestamp = System.currentTimeMillis();
+        try {
+            if (hasSubscribers(FLEET_TOPIC)) {
+                send(FLEET_TOPIC, frame(timestamp, moved.stream().map(Position::delta).toList(), List.of()));
+            }
+            Map<Long, List<LocationDeltaDTO>> byRoute = moved.stream()
+                .filter(position -> position.routeId() != null)
+                .collect(Collectors.groupingBy(Position::routeId,
+                    Collectors.mapping(Position::delta, Collectors.toList())));
+            Map<Long, List<Long>> leftRoute = leftRoute(moved);
+            Set<Long> routeIds = new HashSet<>(byRoute.keySet());
+            routeIds.addAll(leftRoute.keySet());
+            for (Long routeId : routeIds) {
+                String topic = "/topic/routes/" + routeId + "/locations";
+                if (hasSubscribers(topic)) {
+                    send(topic, frame(timestamp, byRoute.getOrDefault(routeId, List.of()),
+                        leftRoute.getOrDefault(routeId, List.of())));
+                }
+            }
+            for (Position position : moved) {
+                String topic = "/topic/bus/" + position.delta().getId();
+                if (hasSubscribers(topic)) {
+                    send(topic, frame(timestamp, List.of(position.delta()), List.of()));
+                }
+            }
+            if (!viewports.isEmpty()) {
+                sendViewportFrames(moved, timestamp);
+            }
+        } catch (Exception e) {
+            log.error("Error broadcasting locations", e);
+        }
+        moved.forEach(position -> lastSent.put(position.delta().getId(), position));
+    }
+
+    /**
+     * Replaces the viewport of a session and sends it the buses inside
+     */
+    public void setViewport(String sessionId, ViewportDTO request) {
+        clearViewport(sessionId);
+        if (request == null || request.getMinLat() == null || request.getMinLon() == null
+                || request.getMaxLat() == null || request.getMaxLon() == null
+                || request.getMinLat() > request.getMaxLat() || request.getMinLon() > request.getMaxLon()) {
+            return;
+        }
+        long latCells = cellIndex(request.getMaxLat()) - cellIndex(request.getMinLat()) + 1;
+        long lonCells = cellIndex(request.getMaxLon()) - cellIndex(request.getMinLon()) + 1;
+        long[] cells = null;
+        if (latCells * lonCells <= MAX_VIEWPORT_CELLS) {
+            cells = new long[(int) (latCells * lonCells)];
+            int i = 0;
+            for (long lat = cellIndex(request.getMinLat()); lat <= cellIndex(request.getMaxLat()); lat++) {
+                for (long lon = cellIndex(request.getMinLon()); lon <= cellIndex(request.getMaxLon()); lon++) {
+                    cells[i++] = cellKey(lat, lon);
+                }
+            }
+        }
+        Viewport viewport = new Viewport(request.getMinLat(), request.getMinLon(),
+            request.getMaxLat(), request.getMaxLon(), cells);
+        viewports.put(sessionId, viewport);
+        if (cells == null) {
+            unindexedSessions.add(sessionId);
+        } else {
+            for (long cell : cells) {
+                sessionsByCell.computeIfAbsent(cell, key -> ConcurrentHashMap.newKeySet()).add(sessionId);
+            }
+        }
+
+        LocalDateTime since = LocalDateTime.now().minusMinutes(vehicleMaxAgeMinutes);
+        List<LocationDeltaDTO> snapshot = latestPositionStore.getAllSince(since).stream()
+            .map(LocationWebSocketHandler::toDelta)
+            .filter(viewport::contains)
+            .toList();
+        sendToSession(sessionId, frame(System.currentTimeMillis(), snapshot, List.of()));
+    }
+
+    public void clearViewport(String sessionId) {
+        Viewport viewport = viewports.remove(sessionId);
+        if (viewport == null) {
+            return;
+        }
+        unindexedSessions.remove(sessionId);
+        if (viewport.cells() != null) {
+            for (long cell : viewport.cells()) {
+                sessionsByCell.computeIfPresent(cell, (key, sessions) -> {
+                    sessions.remove(sessionId);
+                    return sessions.isEmpty() ? null : sessions;
+                });
+            }
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String sessionId = accessor.getSessionId();
+        String subscriptionId = accessor.getSubscriptionId();
+        String destination = accessor.getDestination();
+        if (sessionId == null || subscriptionId == null || destination == null) {
+            return;
+        }
+        subscriptions.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        subscriberCounts.merge(destination, 1, Integer::sum);
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        Map<String, String> sessionSubscriptions = subscriptions.get(accessor.getSessionId());
+        if (sessionSubscriptions != null && accessor.getSubscriptionId() != null) {
+            String destination = sessionSubscriptions.remove(accessor.getSubscriptionId());
+            if (destination != null) {
+                removeSubscriber(destination);
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        Map<String, String> sessionSubscriptions = subscriptions.remove(event.getSessionId());
+        if (sessionSubscriptions != null) {
+            sessionSubscriptions.values().forEach(this::removeSubscriber);
+        }
+        clearViewport(event.getSessionId());
+    }
+
+    /**
+     * Buses reassigned since their last frame, by the route they were last sent on
+     */
+    private Map<Long, List<Long>> leftRoute(List<Position> moved) {
+        Map<Long, List<Long>> left = new HashMap<>();
+        for (Position position : moved) {
+            Position previous = lastSent.get(position.delta().getId());
+            if (previous != null && previous.routeId() != null
+                    && !previous.routeId().equals(position.routeId())) {
+                left.computeIfAbsent(previous.routeId(), key -> new ArrayList<>()).add(position.delta().getId());
+            }
+        }
+        return left;
+    }
+
+    private void sendViewportFrames(List<Position> moved, long timestamp) {
+        Map<String, List<LocationDeltaDTO>> updates = new HashMap<>();
+        Map<String, List<Long>> removed = new HashMap<>();
+        for (Position position : moved) {
+            Set<String> watching = watchers(position.delta());
+            for (String sessionId : watching) {
+                updates.computeIfAbsent(sessionId, key -> new ArrayList<>()).add(position.delta());
+            }
+            Position previous = lastSent.get(position.delta().getId());
+            if (previous != null) {
+                for (String sessionId : watchers(previous.delta())) {
+                    if (!watching.contains(sessionId)) {
+                        removed.computeIfAbsent(sessionId, key -> new ArrayList<>()).add(position.delta().getId());
+                    }
+                }
+            }
+        }
+        Set<String> sessions = new HashSet<>(updates.keySet());
+        sessions.addAll(removed.keySet());
+        for (String sessionId : sessions) {
+            sendToSession(sessionId, frame(timestamp,
+                updates.getOrDefault(sessionId, List.of()), removed.getOrDefault(sessionId, List.of())));
+        }
+    }
+
+    /**
+     * Sessions whose viewport contains the position
+     */
+    private Set<String> watchers(LocationDeltaDTO delta) {
+        Set<String> watching = new HashSet<>();
+        Set<String> candidates = sessionsByCell.get(cellKey(cellIndex(delta.getLat()), cellIndex(delta.getLon())));
+        if (candidates != null) {
+            addIfInside(watching, candidates, delta);
+        }
+        addIfInside(watching, unindexedSessions, delta);
+        return watching;
+    }
+
+    private void addIfInside(Set<String> watching, Set<String> sessions, LocationDeltaDTO delta) {
+        for (String sessionId : sessions) {
+            Viewport viewport = viewports.get(sessionId);
+            if (viewport != null && viewport.contains(delta)) {
+                watching.add(sessionId);
+            }
+        }
+    }
+
+    private boolean hasSubscribers(String destination) {
+        return subscriberCounts.containsKey(destination);
+    }
+
+    private void removeSubscriber(String destination) {
+        subscriberCounts.computeIfPresent(destination, (key, count) -> count > 1 ? count - 1 : null);
+    }
+
+    private void send(String destination, LocationFrameDTO frame) {
+        messagingTemplate.convertAndSend(destination, frame);
+    }
+
+    /**
+     * Sessions connect without a user, so the frame is addressed by session id
+     */
+    private void sendToSession(String sessionId, LocationFrameDTO frame) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setLeaveMutable(true);
+        MessageHeaders headers = accessor.getMessageHeaders();
+        messagingTemplate.convertAndSendToUser(sessionId, VIEWPORT_QUEUE, frame, headers);
+    }
+
+    private long cellIndex(double degrees) {
+        return (long) Math.floor(degrees / cellDegrees);
+    }
+
+    private static long cellKey(long latIndex, long lonIndex) {
+        return (latIndex << 32) | (lonIndex & 0xffffffffL);
+    }
+
+    private static LocationFrameDTO frame(long timestamp, List<LocationDeltaDTO> buses, List<Long> removed) {
+        return LocationFrameDTO.builder()
+            .timestamp(timestamp)
+            .buses(buses)
+            .removed(removed)
+            .build();
+    }
+
+    private static LocationDeltaDTO toDelta(BusLocation location) {
+        return LocationDeltaDTO.builder()
+            .id(location.getBus().getId())
+            .lat(location.getLatitude().doubleValue())
+            .lon(location.getLongitude().doubleValue())
+            .heading(location.getHeading() != null ? location.getHeading().doubleValue() : null)
+            .speed(location.getSpeed() != null ? location.getSpeed().doubleValue() : null)
+            .build();
+    }
+}
@@ -0,0 +1,122 @@
+package com.bustransport.geolocation.eta;
+
+import com.bustransport.geolocation.eta.RouteClient.RouteResponse;
+import com.bustransport.geolocation.eta.RouteClient.RouteStopResponse;
+import com.bustransport.geolocation.eta.RouteClient.StopResponse;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class RouteLineTest {
+
+    // 0.01 degrees of longitude on the equator
+    private static final double STEP_METERS = 1111.95;
+
+    @Test
+    void needsTwoLocatedStops() {
+        assertThat(RouteLine.of(route(stop(1, 0, "0", "0", null, null)))).isNull();
+        assertThat(RouteLine.of(route(
+            stop(1, 0, "0", "0", null, null),
+            new RouteStopResponse(2, null, null, new StopResponse(2L, "No position", null, null))))).isNull();
+    }
+
+    @Test
+    void ordersStopsAndFallsBackToStraightLinesAndDefaultSpeed() {
+        RouteLine line = RouteLine.of(route(
+            stop(3, 3, "0", "0.02", null, null),
+            stop(1, 1, "0", "0", null, null),
+            stop(2, 2, "0", "0.01", new BigDecimal("1.5"), LocalTime.of(0, 5))));
+
+        assertThat(line.stopId(0)).isEqualTo(1);
+        assertThat(line.stopId(2)).isEqualTo(3);
+        // Given distance and time, then the straight line at 20 km/h
+        assertThat(line.distance(1)).isEqualTo(1500);
+        assertThat(line.scheduledSecs(1)).isEqualTo(300);
+        assertThat(line.distance(2)).isCloseTo(1500 + STEP_METERS, within(1.0));
+        assertThat(line.scheduledSecs(2)).isEqualTo(300 + (int) Math.ceil(line.segmentLength(1) / (20 / 3.6)));
+        assertThat(line.scheduledSpeed(0)).isEqualTo(5.0);
+    }
+
+    @Test
+    void zeroLengthSegmentsRunAtTheDefaultSpeed() {
+        RouteLine line = RouteLine.of(route(
+            stop(1, 1, "0", "0", null, null),
+            stop(2, 2, "0", "0", null, LocalTime.of(0, 2)),
+            stop(3, 3, "0", "0.01", null, LocalTime.of(0, 6))));
+
+        assertThat(line.segmentLength(0)).isZero();
+        assertThat(line.scheduledSpeed(0)).isEqualTo(20 / 3.6);
+        assertThat(line.scheduledSpeed(1)).isCloseTo(STEP_METERS / 240, within(0.01));
+    }
+
+    @Test
+    void projectsOntoTheNearestSegment() {
+        RouteLine line = RouteLine.of(route(
+            stop(1, 1, "0", "0", null, null),
+            stop(2, 2, "0", "0.01", null, null),
+            stop(3, 3, "0", "0.02", null, null)));
+
+        // 100 m north of the middle of the second segment
+        RouteLine.Projection projection = line.project(0.0009, 0.015, -1, 50);
+
+        assertThat(projection.segment()).isEqualTo(1);
+        assertThat(projection.distance()).isCloseTo(1.5 * STEP_METERS, within(1.0));
+        assertThat(projection.offset()).isCloseTo(100, within(1.0));
+
+        // Past the last stop: clamped to its end
+        RouteLine.Projection beyond = line.project(0, 0.03, -1, 50);
+        assertThat(beyond.segment()).isEqualTo(1);
+        assertThat(beyond.distance()).isCloseTo(2 * STEP_METERS, within(1.0));
+    }
+
+    @Test
+    void prefersTheSegmentsAroundTheHint() {
+        // Out and back along the same road, the way back 5 m to the north
+        RouteLine line = RouteLine.of(route(
+            stop(1, 1, "0", "0", null, null),
+            stop(2, 2, "0", "0.01", null, null),
+            stop(3, 3, "0", "0.02", null, null),
+            stop(4, 4, "0.00005", "0.01", null, null),
+            stop(5, 5, "0.00005", "0", null, null)));
+
+        assertThat(line.project(0, 0.005, -1, 30).segment()).isZero();
+        assertThat(line.project(0, 0.005, 0, 30).segment()).isZero();
+        RouteLine.Projection back = line.project(0, 0.005, 3, 30);
+        assertThat(back.segment()).isEqualTo(3);
+        assertThat(back.distance()).isCloseTo(3.5 * STEP_METERS, within(1.0));
+    }
+
+    @Test
+    void scansTheWholeLineWhenTheHintIsTooFar() {
+        RouteLine line = RouteLine.of(route(
+            stop(1, 1, "0", "0", null, null),
+            stop(2, 2, "0", "0.01", null, null),
+            stop(3, 3, "0", "0.02", null, null),
+            stop(4, 4, "0", "0.03", null, null),
+            stop(5, 5, "0", "0.04", null, null),
+            stop(6, 6, "0", "0.05", null, null),
+            stop(7, 7, "0", "0.06", null, null)));
+
+        // Segments 4 and 5 are searched first, the bus is on segment 0
+        RouteLine.Projection projection = line.project(0, 0.005, 5, 30);
+
+        assertThat(projection.segment()).isZero();
+        assertThat(projection.offset()).isLessThan(1);
+    }
+
+    static RouteResponse route(RouteStopResponse... stops) {
+        return new RouteResponse(10L, "10", "Central - Harbour", new ArrayList<>(List.of(stops)));
+    }
+
+    static RouteStopResponse stop(int sequence, long id, String lat, String lon, BigDecimal kmFromStart,
+                                  LocalTime timeFromStart) {
+        return new RouteStopResponse(sequence, kmFromStart, timeFromStart,
+            new StopResponse(id, "Stop " + id, new BigDecimal(lat), new BigDecimal(lon)));
+    }
+}
@@ -0,0 +1,68 @@
+package com.bustransport.geolocation.eta;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalTime;
+
+import static com.bustransport.geolocation.eta.RouteLineTest.route;
+import static com.bustransport.geolocation.eta.RouteLineTest.stop;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class SegmentSpeedsTest {
+
+    private final RouteLine line = RouteLine.of(route(
+        stop(1, 1, "0", "0", null, null),
+        stop(2, 2, "0", "0.01", null, LocalTime.of(0, 4)),
+        stop(3, 3, "0", "0.02", null, LocalTime.of(0, 6))));
+
+    @Test
+    void usesTheScheduledSpeedUntilObserved() {
+        SegmentSpeeds speeds = new SegmentSpeeds(line, 0.25);
+
+        assertThat(speeds.speed(0, 8)).isEqualTo(line.scheduledSpeed(0));
+        assertThat(speeds.speed(1, 8)).isEqualTo(line.scheduledSpeed(1));
+    }
+
+    @Test
+    void movesEachObservationAFractionTowardsTheNewSpeed() {
+        SegmentSpeeds speeds = new SegmentSpeeds(line, 0.25);
+
+        speeds.observe(0, 8, 10);
+        assertThat(speeds.speed(0, 8)).isEqualTo(10);
+        speeds.observe(0, 8, 14);
+        assertThat(speeds.speed(0, 8)).isEqualTo(11);
+        speeds.observe(0, 8, 3);
+        assertThat(speeds.speed(0, 8)).isCloseTo(9, within(1e-9));
+    }
+
+    @Test
+    void keepsHoursAndSegmentsApart() {
+        SegmentSpeeds speeds = new SegmentSpeeds(line, 0.25);
+
+        speeds.observe(0, 8, 10);
+
+        assertThat(speeds.speed(0, 9)).isEqualTo(line.scheduledSpeed(0));
+        assertThat(speeds.speed(1, 8)).isEqualTo(line.scheduledSpeed(1));
+    }
+
+    @Test
+    void carriesEstimatesOverOnlyWhileTheStopsStayTheSame() {
+        SegmentSpeeds speeds = new SegmentSpeeds(line, 0.25);
+        speeds.observe(1, 17, 4);
+
+        RouteLine retimed = RouteLine.of(route(
+            stop(1, 1, "0", "0", null, null),
+            stop(2, 2, "0", "0.01", null, LocalTime.of(0, 5)),
+            stop(3, 3, "0", "0.02", null, LocalTime.of(0, 8))));
+        RouteLine rerouted = RouteLine.of(route(
+            stop(1, 1, "0", "0", null, null),
+            stop(2, 4, "0", "0.01", null, null),
+            stop(3, 3, "0", "0.02", null, null)));
+
+        SegmentSpeeds kept = speeds.withLine(retimed);
+        assertThat(kept.getLine()).isSameAs(retimed);
+        assertThat(kept.speed(1, 17)).isEqualTo(4);
+        assertThat(speeds.withLine(rerouted).speed(1, 17)).isEqualTo(rerouted.scheduledSpeed(1));
+    }
+}
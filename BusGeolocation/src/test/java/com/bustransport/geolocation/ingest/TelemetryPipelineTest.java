@@ -0,0 +1,215 @@
+package com.bustransport.geolocation.ingest;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.realtime.LocationPublisher;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class TelemetryPipelineTest {
+
+    private static final AtomicInteger DATABASES = new AtomicInteger();
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 15, 8, 0);
+
+    private final LocationPublisher locationPublisher = mock(LocationPublisher.class);
+    private final DeviceDirectory deviceDirectory = mock(DeviceDirectory.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private JdbcTemplate jdbc;
+    private TelemetryPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:telemetry" + DATABASES.incrementAndGet() + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE buses (id BIGINT PRIMARY KEY)");
+        jdbc.execute("CREATE TABLE bus_locations (id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY, "
+            + "bus_id BIGINT NOT NULL REFERENCES buses (id), latitude NUMERIC(10, 7) NOT NULL, "
+            + "longitude NUMERIC(10, 7) NOT NULL, speed NUMERIC(5, 2) NOT NULL, heading NUMERIC(5, 2) NOT NULL, "
+            + "altitude NUMERIC(6, 2), accuracy NUMERIC(5, 2), recorded_at TIMESTAMP NOT NULL, "
+            + "odometer NUMERIC(10, 2), created_at TIMESTAMP NOT NULL, UNIQUE (bus_id, recorded_at))");
+        List<Object[]> buses = new ArrayList<>();
+        for (long id = 1; id <= 500; id++) {
+            buses.add(new Object[]{id});
+        }
+        jdbc.batchUpdate("INSERT INTO buses (id) VALUES (?)", buses);
+
+        pipeline = new TelemetryPipeline(jdbc, new TransactionTemplate(new DataSourceTransactionManager(dataSource)),
+            locationPublisher, deviceDirectory, meterRegistry);
+        ReflectionTestUtils.setField(pipeline, "bufferCapacity", 65536);
+        ReflectionTestUtils.setField(pipeline, "batchSize", 1000);
+        ReflectionTestUtils.setField(pipeline, "flushIntervalMs", 50L);
+        ReflectionTestUtils.setField(pipeline, "offerTimeoutMs", 50L);
+        pipeline.start();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        pipeline.stop();
+        jdbc.execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void writesEachResentPointOnceAndPublishesTheLatestPerBus() throws InterruptedException {
+        pipeline.offer(location(1, 0));
+        pipeline.offer(location(1, 0));
+        pipeline.offer(location(1, 5));
+        pipeline.offer(location(2, 0));
+
+        awaitPoints("persisted", 3);
+        assertThat(rows()).isEqualTo(3);
+        ArgumentCaptor<BusLocation> published = ArgumentCaptor.forClass(BusLocation.class);
+        verify(locationPublisher, atLeastOnce()).publish(published.capture());
+        assertThat(published.getAllValues())
+            .filteredOn(location -> location.getBus().getId() == 1L)
+            .last()
+            .extracting(BusLocation::getRecordedAt)
+            .isEqualTo(START.plusSeconds(5));
+    }
+
+    @Test
+    void writesAPointResentInALaterFlushOnce() throws InterruptedException {
+        pipeline.offer(location(1, 0));
+        awaitPoints("persisted", 1);
+
+        pipeline.offer(location(1, 0));
+        awaitPoints("duplicate", 1);
+
+        assertThat(rows()).isEqualTo(1);
+        assertThat(points("persisted")).isEqualTo(1);
+        // Already on the live feed from the first flush
+        verify(locationPublisher, times(1)).publish(any());
+    }
+
+    @Test
+    void dropsPointsThatDoNotFitTheColumns() throws InterruptedException {
+        BusLocation tooFast = location(1, 0);
+        tooFast.setSpeed(new BigDecimal("1500"));
+
+        pipeline.offer(tooFast);
+        pipeline.offer(location(2, 0));
+
+        awaitPoints("persisted", 1);
+        assertThat(points("invalid")).isEqualTo(1);
+        assertThat(rows()).isEqualTo(1);
+        verify(locationPublisher, never()).publish(tooFast);
+    }
+
+    @Test
+    void retriesAFailedBatchRowByRow() throws InterruptedException {
+        // Deleted after the device directory loaded it
+        BusLocation deleted = location(999, 0);
+        List<BusLocation> others = new ArrayList<>();
+        for (int bus = 1; bus <= 20; bus++) {
+            others.add(location(bus, 0));
+        }
+
+        for (BusLocation location : others.subList(0, 10)) {
+            pipeline.offer(location);
+        }
+        pipeline.offer(deleted);
+        for (BusLocation location : others.subList(10, 20)) {
+            pipeline.offer(location);
+        }
+
+        awaitPoints("failed", 1);
+        assertThat(points("persisted")).isEqualTo(20);
+        assertThat(rows()).isEqualTo(20);
+        verify(deviceDirectory).forget(deleted.getBus());
+        verify(locationPublisher, never()).publish(deleted);
+        others.forEach(location -> verify(locationPublisher).publish(location));
+    }
+
+    /**
+     * 500 buses reporting ten times a second for three seconds, offered at a
+     * steady pace the way a device gateway forwards them
+     */
+    @Test
+    void sustainsFiveThousandPointsPerSecond() throws InterruptedException {
+        int pointsPerSecond = 5000;
+        int seconds = 3;
+        int sliceMillis = 10;
+        int perSlice = pointsPerSecond * sliceMillis / 1000;
+        int total = pointsPerSecond * seconds;
+
+        long start = System.nanoTime();
+        int offered = 0;
+        int refused = 0;
+        for (int slice = 0; offered < total; slice++) {
+            for (int i = 0; i < perSlice; i++, offered++) {
+                if (!pipeline.offer(location(offered % 500 + 1, offered / 500))) {
+                    refused++;
+                }
+            }
+            long sliceEnd = start + (slice + 1) * sliceMillis * 1_000_000L;
+            long sleepNanos = sliceEnd - System.nanoTime();
+            if (sleepNanos > 0) {
+                Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+            }
+        }
+        double offerSecs = (System.nanoTime() - start) / 1e9;
+        awaitPoints("persisted", total);
+        double totalSecs = (System.nanoTime() - start) / 1e9;
+
+        assertThat(refused).isZero();
+        assertThat(rows()).isEqualTo(total);
+        // Writes keep up: the backlog after the last offer is at most a couple of flushes
+        assertThat(totalSecs - offerSecs).isLessThan(1.0);
+    }
+
+    private BusLocation location(long busId, int secondsAfterStart) {
+        return BusLocation.builder()
+            .bus(Bus.builder().id(busId).deviceId("GPS-" + busId).build())
+            .latitude(new BigDecimal("33.5731000"))
+            .longitude(new BigDecimal("-7.5898000"))
+            .speed(new BigDecimal("30.00"))
+            .heading(new BigDecimal("90.00"))
+            .recordedAt(START.plusSeconds(secondsAfterStart))
+            .createdAt(START.plusSeconds(secondsAfterStart))
+            .build();
+    }
+
+    private int rows() {
+        return jdbc.queryForObject("SELECT COUNT(*) FROM bus_locations", Integer.class);
+    }
+
+    private long points(String outcome) {
+        return (long) meterRegistry.get("telemetry.ingest.points").tag("outcome", outcome).counter().count();
+    }
+
+    private void awaitPoints(String outcome, long count) throws InterruptedException {
+        await(() -> points(outcome) >= count);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).as("waiting for the flusher").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
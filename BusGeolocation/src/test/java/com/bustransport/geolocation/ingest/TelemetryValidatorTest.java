@@ -0,0 +1,83 @@
+package com.bustransport.geolocation.ingest;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TelemetryValidatorTest {
+
+    @Test
+    void acceptsAPlausiblePosition() {
+        assertThat(TelemetryValidator.rejection(location())).isNull();
+    }
+
+    @Test
+    void roundsLikeTheDatabaseBeforeCheckingTheDigits() {
+        assertThat(TelemetryValidator.fits(new BigDecimal("999.994"), 5, 2)).isTrue();
+        assertThat(TelemetryValidator.fits(new BigDecimal("999.995"), 5, 2)).isFalse();
+        assertThat(TelemetryValidator.fits(new BigDecimal("1000"), 5, 2)).isFalse();
+        assertThat(TelemetryValidator.fits(new BigDecimal("0.0001"), 5, 2)).isTrue();
+        assertThat(TelemetryValidator.fits(new BigDecimal("-9999.99"), 6, 2)).isTrue();
+    }
+
+    @Test
+    void rejectsSpeedsThatOverflowTheColumn() {
+        BusLocation location = location();
+        location.setSpeed(new BigDecimal("1200"));
+
+        assertThat(TelemetryValidator.rejection(location)).isEqualTo("speed out of range");
+    }
+
+    @Test
+    void rejectsHeadingsOutsideAFullTurn() {
+        BusLocation location = location();
+        location.setHeading(new BigDecimal("361"));
+        assertThat(TelemetryValidator.rejection(location)).isEqualTo("heading out of range");
+
+        location.setHeading(new BigDecimal("-1"));
+        assertThat(TelemetryValidator.rejection(location)).isEqualTo("heading out of range");
+    }
+
+    @Test
+    void rejectsImpossibleCoordinates() {
+        BusLocation location = location();
+        location.setLatitude(new BigDecimal("91"));
+
+        assertThat(TelemetryValidator.rejection(location)).isEqualTo("latitude out of range");
+    }
+
+    @Test
+    void rejectsOverflowingOptionalReadings() {
+        BusLocation location = location();
+        location.setAltitude(new BigDecimal("12000"));
+        assertThat(TelemetryValidator.rejection(location)).isEqualTo("altitude out of range");
+
+        location = location();
+        location.setAccuracy(new BigDecimal("-5"));
+        assertThat(TelemetryValidator.rejection(location)).isEqualTo("accuracy out of range");
+    }
+
+    @Test
+    void rejectsPointsWithoutABus() {
+        BusLocation location = location();
+        location.setBus(null);
+
+        assertThat(TelemetryValidator.rejection(location)).isEqualTo("unknown bus");
+    }
+
+    private static BusLocation location() {
+        return BusLocation.builder()
+            .bus(Bus.builder().id(1L).deviceId("GPS-1").build())
+            .latitude(new BigDecimal("33.5731000"))
+            .longitude(new BigDecimal("-7.5898000"))
+            .speed(new BigDecimal("42.50"))
+            .heading(new BigDecimal("180.00"))
+            .recordedAt(LocalDateTime.of(2024, 1, 15, 8, 0))
+            .build();
+    }
+}
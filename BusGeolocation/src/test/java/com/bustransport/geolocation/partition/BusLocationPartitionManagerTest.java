@@ -0,0 +1,177 @@
+package com.bustransport.geolocation.partition;
+
+import com.bustransport.geolocation.PostgresContainerTest;
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.trace.TraceCompactor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+@DataJpaTest(properties = {
+    "spring.jpa.hibernate.ddl-auto=create-drop",
+    // Not at startup: each test converts the table inside its own transaction
+    "locations.partitioning.enabled=false",
+    "locations.partitioning.interval=DAILY",
+    "locations.partitioning.precreate=2",
+    "locations.retention-days=30"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(BusLocationPartitionManager.class)
+class BusLocationPartitionManagerTest extends PostgresContainerTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Autowired
+    private BusLocationPartitionManager partitionManager;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private TraceCompactor traceCompactor;
+
+    private Bus bus;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(partitionManager, "enabled", true);
+        bus = entityManager.persist(Bus.builder().busNumber("B1").routeId(1L).deviceId("GPS-1").build());
+    }
+
+    @Test
+    void convertsAPopulatedTableInPlace() {
+        List<Long> ids = List.of(
+            location(TODAY.minusDays(40)).getId(),
+            location(TODAY.minusDays(10)).getId(),
+            location(TODAY).getId());
+
+        partitionManager.initialize();
+
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT relkind::text FROM pg_class WHERE oid = 'bus_locations'::regclass", String.class))
+            .isEqualTo("p");
+        // Today's rows stay in the old table, so the period partitions start tomorrow
+        assertThat(partitions()).containsExactlyInAnyOrder("bus_locations_legacy", "bus_locations_default",
+            partition(TODAY.plusDays(1)), partition(TODAY.plusDays(2)));
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM bus_locations_legacy ORDER BY id", Long.class))
+            .isEqualTo(ids);
+        // Adopted by the parent's constraints rather than doubled
+        for (String table : List.of("bus_locations", "bus_locations_legacy", partition(TODAY.plusDays(1)))) {
+            assertThat(constraints(table, "f")).as(table).hasSize(1);
+            // A resent fix is still stored once
+            assertThat(constraints(table, "u")).as(table).containsExactly("UNIQUE (bus_id, recorded_at)");
+        }
+
+        Long next = location(TODAY.plusDays(1)).getId();
+        assertThat(next).isGreaterThan(ids.get(2));
+        assertThat(jdbcTemplate.queryForList("SELECT id FROM " + partition(TODAY.plusDays(1)), Long.class))
+            .containsExactly(next);
+        assertThatThrownBy(() -> insert(999L, TODAY.plusDays(1).atTime(9, 0)))
+            .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    @Test
+    void prunesReadsToThePeriodsTheyCover() {
+        location(TODAY.minusDays(10));
+        partitionManager.initialize();
+
+        assertThat(scanned(TODAY.plusDays(1), TODAY.plusDays(2))).isEqualTo(partition(TODAY.plusDays(1)));
+        assertThat(scanned(TODAY.minusDays(10), TODAY.minusDays(9))).isEqualTo("bus_locations_legacy");
+    }
+
+    @Test
+    void dropsExpiredPartitionsOnceTheirTripsAreCompacted() {
+        location(TODAY.minusDays(40));
+        partitionManager.initialize();
+        // As if the table had been converted five weeks ago and maintained since
+        jdbcTemplate.execute("ALTER TABLE bus_locations DETACH PARTITION bus_locations_legacy");
+        jdbcTemplate.execute("ALTER TABLE bus_locations ATTACH PARTITION bus_locations_legacy "
+            + "FOR VALUES FROM (MINVALUE) TO ('" + TODAY.minusDays(32) + "')");
+        jdbcTemplate.execute("CREATE TABLE " + partition(TODAY.minusDays(32)) + " PARTITION OF bus_locations "
+            + "FOR VALUES FROM ('" + TODAY.minusDays(32) + "') TO ('" + TODAY.minusDays(31) + "')");
+        insert(bus.getId(), TODAY.minusDays(32).atTime(8, 0));
+        // Outside every range: the default partition takes them
+        insert(bus.getId(), TODAY.minusDays(31).atTime(8, 0));
+        insert(bus.getId(), TODAY.minusDays(10).atTime(8, 0));
+
+        when(traceCompactor.canDropBefore(any())).thenReturn(false);
+        partitionManager.maintain();
+        assertThat(partitions()).contains("bus_locations_legacy", partition(TODAY.minusDays(32)));
+        assertThat(count("bus_locations")).isEqualTo(4);
+
+        when(traceCompactor.canDropBefore(any())).thenReturn(true);
+        partitionManager.maintain();
+        assertThat(partitions()).containsExactlyInAnyOrder("bus_locations_default",
+            partition(TODAY), partition(TODAY.plusDays(1)), partition(TODAY.plusDays(2)));
+        assertThat(jdbcTemplate.queryForList("SELECT recorded_at FROM bus_locations", LocalDateTime.class))
+            .containsExactly(TODAY.minusDays(10).atTime(8, 0));
+    }
+
+    private BusLocation location(LocalDate day) {
+        BusLocation location = entityManager.persistAndFlush(BusLocation.builder()
+            .bus(bus)
+            .latitude(new BigDecimal("33.5731000"))
+            .longitude(new BigDecimal("-7.5898000"))
+            .recordedAt(day.atTime(8, 0))
+            .build());
+        entityManager.clear();
+        return location;
+    }
+
+    private void insert(Long busId, LocalDateTime recordedAt) {
+        jdbcTemplate.update("INSERT INTO bus_locations (bus_id, latitude, longitude, speed, heading, recorded_at, "
+            + "created_at) VALUES (?, 33.5731, -7.5898, 0, 0, ?, ?)", busId, recordedAt, recordedAt);
+    }
+
+    private List<String> partitions() {
+        return jdbcTemplate.queryForList("SELECT c.relname::text FROM pg_inherits i "
+            + "JOIN pg_class c ON c.oid = i.inhrelid WHERE i.inhparent = 'bus_locations'::regclass", String.class);
+    }
+
+    private List<String> constraints(String table, String type) {
+        return jdbcTemplate.queryForList("SELECT pg_get_constraintdef(oid) FROM pg_constraint "
+            + "WHERE conrelid = to_regclass(?) AND contype = ?::\"char\"", String.class, table, type);
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+
+    /**
+     * The only partition the plan of a read over [from, to) touches
+     */
+    private String scanned(LocalDate from, LocalDate to) {
+        String plan = String.join("\n", jdbcTemplate.queryForList("EXPLAIN SELECT * FROM bus_locations "
+            + "WHERE recorded_at >= '" + from + "' AND recorded_at < '" + to + "'", String.class));
+        List<String> scanned = partitions().stream()
+            .filter(partition -> plan.matches("(?s).* on " + partition + "\\b.*"))
+            .toList();
+        assertThat(scanned).as(plan).hasSize(1);
+        return scanned.get(0);
+    }
+
+    private static String partition(LocalDate day) {
+        return "bus_locations_p" + day.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+}
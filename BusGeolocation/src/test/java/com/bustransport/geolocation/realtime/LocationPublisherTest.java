@@ -0,0 +1,98 @@
+package com.bustransport.geolocation.realtime;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.eta.EtaEngine;
+import com.bustransport.geolocation.event.LocationStoredEvent;
+import com.bustransport.geolocation.websocket.LocationWebSocketHandler;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.junit.jupiter.SpringJUnitConfig;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+@SpringJUnitConfig
+class LocationPublisherTest {
+
+    @Configuration
+    @EnableTransactionManagement
+    @Import(LocationPublisher.class)
+    static class Config {
+
+        @Bean
+        PlatformTransactionManager transactionManager() {
+            return new DataSourceTransactionManager(
+                new DriverManagerDataSource("jdbc:h2:mem:publisher;DB_CLOSE_DELAY=-1", "sa", ""));
+        }
+
+        @Bean
+        TransactionTemplate transactionTemplate(PlatformTransactionManager transactionManager) {
+            return new TransactionTemplate(transactionManager);
+        }
+    }
+
+    @MockBean
+    private LatestPositionStore latestPositionStore;
+    @MockBean
+    private VehiclePositionsFeed vehiclePositionsFeed;
+    @MockBean
+    private LocationWebSocketHandler locationWebSocketHandler;
+    @MockBean
+    private EtaEngine etaEngine;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final BusLocation location = BusLocation.builder()
+        .bus(Bus.builder().id(1L).deviceId("GPS-1").build())
+        .latitude(new BigDecimal("33.5731000"))
+        .longitude(new BigDecimal("-7.5898000"))
+        .recordedAt(LocalDateTime.of(2024, 1, 15, 8, 0))
+        .build();
+
+    @Test
+    void publishesAPositionSavedInATransactionOnceItCommits() {
+        transactionTemplate.executeWithoutResult(status -> {
+            eventPublisher.publishEvent(new LocationStoredEvent(location));
+            verifyNoInteractions(latestPositionStore, vehiclePositionsFeed, locationWebSocketHandler, etaEngine);
+        });
+
+        verify(latestPositionStore).update(location);
+        verify(vehiclePositionsFeed).update(location);
+        verify(locationWebSocketHandler).update(location);
+        verify(etaEngine).update(location);
+    }
+
+    @Test
+    void dropsAPositionWhoseTransactionRollsBack() {
+        transactionTemplate.executeWithoutResult(status -> {
+            eventPublisher.publishEvent(new LocationStoredEvent(location));
+            status.setRollbackOnly();
+        });
+
+        verifyNoInteractions(latestPositionStore, vehiclePositionsFeed, locationWebSocketHandler, etaEngine);
+    }
+
+    @Test
+    void publishesAtOnceOutsideATransaction() {
+        eventPublisher.publishEvent(new LocationStoredEvent(location));
+
+        verify(locationWebSocketHandler).update(location);
+    }
+}
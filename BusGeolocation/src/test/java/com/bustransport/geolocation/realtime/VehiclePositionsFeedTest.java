@@ -0,0 +1,173 @@
+package com.bustransport.geolocation.realtime;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.realtime.VehiclePositionsFeed.Feed;
+import com.bustransport.geolocation.util.ProtobufMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Decodes the feed with the field numbers and wire types of gtfs-realtime.proto
+ */
+class VehiclePositionsFeedTest {
+
+    private final LatestPositionStore latestPositionStore = mock(LatestPositionStore.class);
+    private final VehiclePositionsFeed feed = new VehiclePositionsFeed(latestPositionStore);
+
+    private final Bus bus = Bus.builder()
+        .id(1L)
+        .busNumber("B-12")
+        .plateNumber("12345-A-6")
+        .routeId(7L)
+        .build();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(feed, "vehicleMaxAgeMinutes", 5);
+    }
+
+    @Test
+    void encodesAVehiclePosition() {
+        LocalDateTime recordedAt = LocalDateTime.now().minusSeconds(10).withNano(0);
+        BusLocation location = location(bus, recordedAt);
+        location.setSpeed(new BigDecimal("36.00"));
+        location.setHeading(new BigDecimal("90.00"));
+        location.setOdometer(new BigDecimal("12.50"));
+        feed.update(location);
+
+        Feed encoded = feed.getFeed();
+
+        ProtobufMessage message = ProtobufMessage.parse(encoded.body());
+        ProtobufMessage header = message.message(1);
+        assertThat(header.string(1)).isEqualTo("2.0");
+        assertThat(header.varint(2)).isZero(); // FULL_DATASET
+        assertThat(header.varint(3)).isEqualTo(encoded.timestampMillis() / 1000);
+
+        ProtobufMessage entity = message.message(2);
+        assertThat(entity.string(1)).isEqualTo("bus-1");
+        assertThat(entity.has(3)).isFalse();
+        ProtobufMessage vehiclePosition = entity.message(4);
+        assertThat(vehiclePosition.message(1).string(5)).isEqualTo("7");
+        assertThat(vehiclePosition.varint(5)).isEqualTo(recordedAt.atZone(ZoneId.systemDefault()).toEpochSecond());
+
+        ProtobufMessage position = vehiclePosition.message(2);
+        assertThat(position.floatValue(1)).isCloseTo(33.5731f, within(1e-4f));
+        assertThat(position.floatValue(2)).isCloseTo(-7.5898f, within(1e-4f));
+        assertThat(position.floatValue(3)).isEqualTo(90f);
+        // Meters and meters per second
+        assertThat(position.doubleValue(4)).isEqualTo(12_500.0);
+        assertThat(position.floatValue(5)).isCloseTo(10f, within(1e-4f));
+
+        ProtobufMessage vehicle = vehiclePosition.message(8);
+        assertThat(vehicle.string(1)).isEqualTo("1");
+        assertThat(vehicle.string(2)).isEqualTo("B-12");
+        assertThat(vehicle.string(3)).isEqualTo("12345-A-6");
+    }
+
+    @Test
+    void leavesOutTheOptionalFields() {
+        Bus unplated = Bus.builder().id(2L).busNumber("B-13").routeId(7L).build();
+        feed.update(location(unplated, LocalDateTime.now()));
+
+        ProtobufMessage vehiclePosition = ProtobufMessage.parse(feed.getFeed().body()).message(2).message(4);
+
+        assertThat(vehiclePosition.message(2).has(4)).isFalse();
+        assertThat(vehiclePosition.message(8).has(3)).isFalse();
+    }
+
+    @Test
+    void keepsTheLatestPositionOfEachBus() {
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        feed.update(location(bus, now));
+        // Arrives late
+        feed.update(location(bus, now.minusSeconds(30)));
+        feed.update(location(Bus.builder().id(2L).busNumber("B-13").routeId(8L).build(), now));
+
+        List<ProtobufMessage> entities = ProtobufMessage.parse(feed.getFeed().body()).messages(2);
+
+        assertThat(entities).extracting(entity -> entity.string(1)).containsExactlyInAnyOrder("bus-1", "bus-2");
+        long bus1Timestamp = entities.stream().filter(entity -> entity.string(1).equals("bus-1"))
+            .findFirst().orElseThrow().message(4).varint(5);
+        assertThat(bus1Timestamp).isEqualTo(now.atZone(ZoneId.systemDefault()).toEpochSecond());
+    }
+
+    @Test
+    void returnsTheSameBytesWithinASecond() {
+        feed.update(location(bus, LocalDateTime.now()));
+        Feed first = feed.getFeed();
+
+        feed.update(location(Bus.builder().id(2L).busNumber("B-13").routeId(8L).build(), LocalDateTime.now()));
+
+        assertThat(feed.getFeed()).isSameAs(first);
+        age(1_000);
+        Feed next = feed.getFeed();
+        assertThat(next).isNotSameAs(first);
+        assertThat(ProtobufMessage.parse(next.body()).messages(2)).hasSize(2);
+    }
+
+    @Test
+    void reencodesAnUnchangedFeedOnlyOnceItIsAMinuteOld() {
+        feed.update(location(bus, LocalDateTime.now().minusMinutes(4)));
+        Feed first = feed.getFeed();
+        assertThat(ProtobufMessage.parse(first.body()).messages(2)).hasSize(1);
+        // As if two minutes passed: the position is now older than the limit
+        ReflectionTestUtils.setField(feed, "vehicleMaxAgeMinutes", 3);
+
+        age(5_000);
+        assertThat(feed.getFeed().body()).isSameAs(first.body());
+
+        age(60_000);
+        Feed aged = feed.getFeed();
+        assertThat(aged.body()).isNotSameAs(first.body());
+        assertThat(ProtobufMessage.parse(aged.body()).has(2)).isFalse();
+    }
+
+    @Test
+    void dropsPositionsOlderThanTheLimit() {
+        feed.update(location(bus, LocalDateTime.now().minusMinutes(6)));
+        feed.update(location(Bus.builder().id(2L).busNumber("B-13").routeId(8L).build(), LocalDateTime.now()));
+
+        List<ProtobufMessage> entities = ProtobufMessage.parse(feed.getFeed().body()).messages(2);
+
+        assertThat(entities).extracting(entity -> entity.string(1)).containsExactly("bus-2");
+    }
+
+    @Test
+    void loadsTheRecentPositionsAtStartup() {
+        when(latestPositionStore.getAllSince(any())).thenReturn(List.of(location(bus, LocalDateTime.now())));
+
+        feed.load();
+
+        assertThat(ProtobufMessage.parse(feed.getFeed().body()).message(2).string(1)).isEqualTo("bus-1");
+    }
+
+    /**
+     * Moves the encoding time of the current feed back
+     */
+    private void age(long millis) {
+        Feed current = (Feed) ReflectionTestUtils.getField(feed, "current");
+        ReflectionTestUtils.setField(feed, "current", new Feed(current.body(), current.timestampMillis() - millis));
+    }
+
+    private static BusLocation location(Bus bus, LocalDateTime recordedAt) {
+        return BusLocation.builder()
+            .bus(bus)
+            .latitude(new BigDecimal("33.5731000"))
+            .longitude(new BigDecimal("-7.5898000"))
+            .recordedAt(recordedAt)
+            .build();
+    }
+}
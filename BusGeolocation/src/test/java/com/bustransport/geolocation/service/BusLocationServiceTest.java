@@ -0,0 +1,73 @@
+package com.bustransport.geolocation.service;
+
+import com.bustransport.geolocation.dto.request.TelemetryIngestDTO;
+import com.bustransport.geolocation.dto.response.BatchIngestResultDTO;
+import com.bustransport.geolocation.dto.response.RejectedPointDTO;
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.eta.EtaEngine;
+import com.bustransport.geolocation.ingest.DeviceDirectory;
+import com.bustransport.geolocation.ingest.TelemetryPipeline;
+import com.bustransport.geolocation.realtime.LatestPositionStore;
+import com.bustransport.geolocation.repository.BusLocationRepository;
+import com.bustransport.geolocation.repository.BusRepository;
+import com.bustransport.geolocation.repository.LocationTraceRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BusLocationServiceTest {
+
+    private final DeviceDirectory deviceDirectory = mock(DeviceDirectory.class);
+    private final TelemetryPipeline telemetryPipeline = mock(TelemetryPipeline.class);
+
+    private final BusLocationService service = new BusLocationService(mock(BusLocationRepository.class),
+        mock(BusRepository.class), mock(LocationTraceRepository.class), mock(LatestPositionStore.class),
+        mock(ApplicationEventPublisher.class), mock(EtaEngine.class),
+        deviceDirectory, telemetryPipeline);
+
+    @Test
+    void listsPointsThatWillNotBeStored() throws InterruptedException {
+        Bus bus = Bus.builder().id(1L).deviceId("GPS-1").build();
+        when(deviceDirectory.resolve("GPS-1")).thenReturn(Optional.of(bus));
+        when(deviceDirectory.resolve("GPS-X")).thenReturn(Optional.empty());
+        when(telemetryPipeline.offer(any(BusLocation.class))).thenReturn(true);
+        TelemetryIngestDTO spinning = point("GPS-1");
+        spinning.setHeading(new BigDecimal("1234.5"));
+
+        BatchIngestResultDTO result = service.ingestTelemetryBatch(
+            List.of(point("GPS-1"), point("GPS-X"), spinning, point("GPS-1")));
+
+        assertThat(result.getReceived()).isEqualTo(4);
+        assertThat(result.getAccepted()).isEqualTo(2);
+        assertThat(result.getUnknownDevices()).containsExactly("GPS-X");
+        assertThat(result.getRejected()).extracting(RejectedPointDTO::getIndex, RejectedPointDTO::getReason)
+            .containsExactly(
+                tuple(1, "unknown device"),
+                tuple(2, "heading out of range"));
+        assertThat(result.getRetryFrom()).isNull();
+        verify(telemetryPipeline, times(2)).offer(any(BusLocation.class));
+    }
+
+    private static TelemetryIngestDTO point(String deviceId) {
+        return TelemetryIngestDTO.builder()
+            .deviceId(deviceId)
+            .latitude(new BigDecimal("33.5731000"))
+            .longitude(new BigDecimal("-7.5898000"))
+            .speed(new BigDecimal("25"))
+            .timestamp(LocalDateTime.of(2024, 1, 15, 8, 0))
+            .build();
+    }
+}
@@ -0,0 +1,92 @@
+package com.bustransport.geolocation.trace;
+
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.LocationTrace;
+import com.bustransport.geolocation.repository.LocationTraceRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@Import(TraceCompactor.class)
+class TraceCompactorTest {
+
+    // Well before the gap that closes a trip
+    private static final LocalDateTime START = LocalDateTime.now().minusHours(3).truncatedTo(ChronoUnit.SECONDS);
+
+    @Autowired
+    private TraceCompactor traceCompactor;
+    @Autowired
+    private LocationTraceRepository traceRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Bus bus;
+
+    @BeforeEach
+    void setUp() {
+        bus = entityManager.persistAndFlush(Bus.builder().busNumber("B1").routeId(1L).deviceId("GPS-1").build());
+    }
+
+    @Test
+    void compactsEachClosedTripOnce() {
+        trip(START, 20);
+        trip(START.plusHours(1), 20);
+
+        traceCompactor.compact();
+        traceCompactor.compact();
+
+        assertThat(traceRepository.findAll())
+            .extracting(LocationTrace::getStartTime, LocationTrace::getEndTime)
+            .containsExactlyInAnyOrder(
+                tuple(START, START.plusSeconds(19 * 30)),
+                tuple(START.plusHours(1), START.plusHours(1).plusSeconds(19 * 30)));
+        assertThat(traceCompactor.canDropBefore(START.plusHours(2))).isTrue();
+    }
+
+    @Test
+    void reopensTheTripOfAPointThatArrivedLate() {
+        trip(START, 20);
+        trip(START.plusHours(1), 20);
+        traceCompactor.compact();
+
+        // Buffered on the bus while it was offline, recorded before the first trip's stored start
+        insert(START.minusMinutes(5), LocalDateTime.now());
+        assertThat(traceCompactor.canDropBefore(START.plusHours(2))).isFalse();
+
+        traceCompactor.compact();
+
+        assertThat(traceRepository.findAll())
+            .extracting(LocationTrace::getStartTime)
+            .containsExactlyInAnyOrder(START.minusMinutes(5), START.plusHours(1));
+    }
+
+    /**
+     * A point every 30 seconds, each stored a second after it was recorded
+     */
+    private void trip(LocalDateTime start, int points) {
+        for (int i = 0; i < points; i++) {
+            LocalDateTime recordedAt = start.plusSeconds(i * 30L);
+            insert(recordedAt, recordedAt.plusSeconds(1));
+        }
+    }
+
+    private void insert(LocalDateTime recordedAt, LocalDateTime createdAt) {
+        double offset = (recordedAt.toLocalTime().toSecondOfDay() % 3600) * 1e-5;
+        jdbcTemplate.update("INSERT INTO bus_locations (bus_id, latitude, longitude, speed, heading, recorded_at, "
+            + "created_at) VALUES (?, ?, ?, 30, 90, ?, ?)",
+            bus.getId(), 33.5731 + offset, -7.5898, recordedAt, createdAt);
+    }
+}
@@ -0,0 +1,70 @@
+package com.bustransport.geolocation.trace;
+
+import com.bustransport.geolocation.trace.TracePolyline.Point;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class TracePolylineTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 15, 8, 0);
+
+    @Test
+    void encodesPositionsInTheGoogleFormat() {
+        // The reference polyline of the format, every point at the start time
+        List<Point> points = List.of(
+            new Point(38.5, -120.2, START),
+            new Point(40.7, -120.95, START),
+            new Point(43.252, -126.453, START));
+
+        assertThat(TracePolyline.encode(points, START)).isEqualTo("_p~iF~ps|U?_ulLnnqC?_mqNvxq`@?");
+    }
+
+    @Test
+    void roundTripsToFiveDecimalsAndWholeSeconds() {
+        Random random = new Random(11);
+        List<Point> points = new ArrayList<>();
+        double lat = 33.5731;
+        double lon = -7.5898;
+        LocalDateTime time = START;
+        for (int i = 0; i < 500; i++) {
+            lat += (random.nextDouble() - 0.5) * 0.01;
+            lon += (random.nextDouble() - 0.5) * 0.01;
+            time = time.plusNanos(random.nextInt(60_000_000) * 1000L);
+            points.add(new Point(lat, lon, time));
+        }
+
+        List<Point> decoded = TracePolyline.decode(TracePolyline.encode(points, START), START);
+
+        assertThat(decoded).hasSize(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            assertThat(decoded.get(i).latitude()).isCloseTo(points.get(i).latitude(), within(0.5e-5));
+            assertThat(decoded.get(i).longitude()).isCloseTo(points.get(i).longitude(), within(0.5e-5));
+            assertThat(decoded.get(i).time()).isEqualTo(START.plusSeconds(
+                Duration.between(START, points.get(i).time()).getSeconds()));
+        }
+    }
+
+    @Test
+    void takesAFewCharactersPerPointOfADenseTrace() {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            points.add(new Point(33.5731 + i * 0.0003, -7.5898 - i * 0.0002, START.plusSeconds(i * 10L)));
+        }
+
+        assertThat(TracePolyline.encode(points, START).length()).isLessThanOrEqualTo(10 * points.size());
+    }
+
+    @Test
+    void encodesAnEmptyTraceAsAnEmptyString() {
+        assertThat(TracePolyline.encode(List.of(), START)).isEmpty();
+        assertThat(TracePolyline.decode("", START)).isEmpty();
+    }
+}
@@ -0,0 +1,105 @@
+package com.bustransport.geolocation.trace;
+
+import com.bustransport.geolocation.trace.TracePolyline.Point;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TraceSimplifierTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 15, 8, 0);
+    private static final double METERS_PER_DEGREE = Math.toRadians(6_371_000d);
+    private static final double LATITUDE = 33.5731;
+    private static final double LONGITUDE = -7.5898;
+
+    @Test
+    void keepsTracesOfTwoPointsAsTheyAre() {
+        List<Point> points = List.of(point(0, 0, 0), point(1, 500, 0));
+
+        assertThat(TraceSimplifier.simplify(points, 10)).isSameAs(points);
+    }
+
+    @Test
+    void reducesAStraightRunToItsEnds() {
+        Random random = new Random(5);
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            // GPS noise of a few meters along a straight street
+            points.add(point(i, i * 10.0, (random.nextDouble() - 0.5) * 8));
+        }
+
+        assertThat(TraceSimplifier.simplify(points, 10)).containsExactly(points.get(0), points.get(199));
+    }
+
+    @Test
+    void keepsTheCornerOfATurn() {
+        List<Point> points = new ArrayList<>();
+        for (int i = 0; i <= 50; i++) {
+            points.add(point(i, i * 10.0, 0));
+        }
+        for (int i = 1; i <= 50; i++) {
+            points.add(point(50 + i, 500, i * 10.0));
+        }
+
+        assertThat(TraceSimplifier.simplify(points, 10))
+            .containsExactly(points.get(0), points.get(50), points.get(100));
+    }
+
+    @Test
+    void leavesEveryDroppedPointWithinToleranceOfTheResult() {
+        Random random = new Random(9);
+        List<Point> points = new ArrayList<>();
+        double x = 0;
+        double y = 0;
+        double heading = 0;
+        for (int i = 0; i < 2000; i++) {
+            heading += (random.nextDouble() - 0.5) * 0.6;
+            x += Math.cos(heading) * 15;
+            y += Math.sin(heading) * 15;
+            points.add(point(i, x, y));
+        }
+
+        List<Point> simplified = TraceSimplifier.simplify(points, 10);
+
+        assertThat(simplified).hasSizeLessThan(points.size() / 3);
+        assertThat(simplified.get(0)).isSameAs(points.get(0));
+        assertThat(simplified.get(simplified.size() - 1)).isSameAs(points.get(points.size() - 1));
+        // Kept in order, so each original point lies between two consecutive kept ones
+        int segment = 0;
+        for (Point point : points) {
+            while (point.time().isAfter(simplified.get(segment + 1).time())) {
+                segment++;
+            }
+            assertThat(distanceMeters(point, simplified.get(segment), simplified.get(segment + 1)))
+                .isLessThan(10.01);
+        }
+    }
+
+    /**
+     * A point {@code east} and {@code north} meters away from the origin,
+     * {@code second} seconds into the trace
+     */
+    private static Point point(int second, double east, double north) {
+        return new Point(LATITUDE + north / METERS_PER_DEGREE,
+            LONGITUDE + east / (METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE))),
+            START.plusSeconds(second));
+    }
+
+    private static double distanceMeters(Point p, Point a, Point b) {
+        double metersPerLon = METERS_PER_DEGREE * Math.cos(Math.toRadians(LATITUDE));
+        double px = p.longitude() * metersPerLon;
+        double py = p.latitude() * METERS_PER_DEGREE;
+        double ax = a.longitude() * metersPerLon;
+        double ay = a.latitude() * METERS_PER_DEGREE;
+        double dx = b.longitude() * metersPerLon - ax;
+        double dy = b.latitude() * METERS_PER_DEGREE - ay;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : Math.max(0, Math.min(1, ((px - ax) * dx + (py - ay) * dy) / lengthSq));
+        return Math.hypot(px - ax - t * dx, py - ay - t * dy);
+    }
+}
@@ -0,0 +1,116 @@
+package com.bustransport.geolocation.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes the protobuf wire format without a schema, the counterpart of
+ * {@link ProtobufWriter} for tests. Varints read as {@code Long}, fixed
+ * fields as raw {@code Long}/{@code Integer} bits, length-delimited fields
+ * as {@code byte[]}.
+ */
+public final class ProtobufMessage {
+
+    private final Map<Integer, List<Object>> fields = new HashMap<>();
+
+    private ProtobufMessage() {
+    }
+
+    public static ProtobufMessage parse(byte[] bytes) {
+        ProtobufMessage message = new ProtobufMessage();
+        ByteBuffer in = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+        while (in.hasRemaining()) {
+            long tag = varint(in);
+            int field = (int) (tag >>> 3);
+            Object value = switch ((int) (tag & 0x7)) {
+                case 0 -> varint(in);
+                case 1 -> in.getLong();
+                case 2 -> {
+                    byte[] data = new byte[(int) varint(in)];
+                    in.get(data);
+                    yield data;
+                }
+                case 5 -> in.getInt();
+                default -> throw new IllegalArgumentException("Unsupported wire type in tag " + tag);
+            };
+            message.fields.computeIfAbsent(field, f -> new ArrayList<>()).add(value);
+        }
+        return message;
+    }
+
+    public boolean has(int field) {
+        return fields.containsKey(field);
+    }
+
+    public long varint(int field) {
+        return (Long) single(field);
+    }
+
+    public List<Long> varints(int field) {
+        return values(field).stream().map(Long.class::cast).toList();
+    }
+
+    public double doubleValue(int field) {
+        return Double.longBitsToDouble((Long) single(field));
+    }
+
+    public float floatValue(int field) {
+        return Float.intBitsToFloat((Integer) single(field));
+    }
+
+    public String string(int field) {
+        return new String((byte[]) single(field), StandardCharsets.UTF_8);
+    }
+
+    public List<String> strings(int field) {
+        return values(field).stream().map(value -> new String((byte[]) value, StandardCharsets.UTF_8)).toList();
+    }
+
+    public ProtobufMessage message(int field) {
+        return parse((byte[]) single(field));
+    }
+
+    public List<ProtobufMessage> messages(int field) {
+        return values(field).stream().map(value -> parse((byte[]) value)).toList();
+    }
+
+    /**
+     * A packed repeated varint field
+     */
+    public long[] packed(int field) {
+        ByteBuffer in = ByteBuffer.wrap((byte[]) single(field));
+        List<Long> values = new ArrayList<>();
+        while (in.hasRemaining()) {
+            values.add(varint(in));
+        }
+        return values.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    private List<Object> values(int field) {
+        return fields.getOrDefault(field, List.of());
+    }
+
+    private Object single(int field) {
+        List<Object> values = values(field);
+        if (values.size() != 1) {
+            throw new IllegalStateException("Field " + field + " occurs " + values.size() + " times");
+        }
+        return values.get(0);
+    }
+
+    private static long varint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.bustransport.geolocation.websocket;
+
+import com.bustransport.geolocation.dto.request.ViewportDTO;
+import com.bustransport.geolocation.dto.response.LocationDeltaDTO;
+import com.bustransport.geolocation.dto.response.LocationFrameDTO;
+import com.bustransport.geolocation.entity.Bus;
+import com.bustransport.geolocation.entity.BusLocation;
+import com.bustransport.geolocation.realtime.LatestPositionStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyMap;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The viewport covers 33.50-33.52 N, 7.62-7.60 W, a few grid cells of 0.01 degrees
+ */
+class LocationWebSocketHandlerTest {
+
+    private static final String SESSION = "session-1";
+    private static final ViewportDTO VIEWPORT = new ViewportDTO(33.50, -7.62, 33.52, -7.60);
+
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final LatestPositionStore latestPositionStore = mock(LatestPositionStore.class);
+    private final LocationWebSocketHandler handler = new LocationWebSocketHandler(messagingTemplate,
+        latestPositionStore);
+
+    private LocalDateTime clock = LocalDateTime.now().minusMinutes(1);
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(handler, "cellDegrees", 0.01);
+        ReflectionTestUtils.setField(handler, "vehicleMaxAgeMinutes", 5);
+    }
+
+    @Test
+    void startsAViewportWithTheBusesInside() {
+        when(latestPositionStore.getAllSince(any())).thenReturn(List.of(
+            location(1L, 7L, "33.5100", "-7.6100"),
+            location(2L, 7L, "33.6000", "-7.6100")));
+
+        handler.setViewport(SESSION, VIEWPORT);
+
+        LocationFrameDTO snapshot = lastFrameTo(SESSION);
+        assertThat(snapshot.getBuses()).extracting(LocationDeltaDTO::getId).containsExactly(1L);
+        assertThat(snapshot.getRemoved()).isEmpty();
+    }
+
+    @Test
+    void reportsBusesEnteringAndLeavingTheViewport() {
+        handler.setViewport(SESSION, VIEWPORT);
+        clearInvocations(messagingTemplate);
+
+        handler.update(location(1L, 7L, "33.5100", "-7.6100"));
+        handler.update(location(2L, 7L, "33.6000", "-7.6100"));
+        handler.broadcast();
+        LocationFrameDTO entered = lastFrameTo(SESSION);
+        assertThat(entered.getBuses()).extracting(LocationDeltaDTO::getId).containsExactly(1L);
+        assertThat(entered.getRemoved()).isEmpty();
+
+        // Into the next cell of the viewport
+        handler.update(location(1L, 7L, "33.5150", "-7.6050"));
+        handler.broadcast();
+        assertThat(lastFrameTo(SESSION).getBuses()).extracting(LocationDeltaDTO::getLat).containsExactly(33.515);
+
+        handler.update(location(1L, 7L, "33.5300", "-7.6050"));
+        handler.broadcast();
+        LocationFrameDTO left = lastFrameTo(SESSION);
+        assertThat(left.getBuses()).isEmpty();
+        assertThat(left.getRemoved()).containsExactly(1L);
+
+        // Outside before and after: nothing for this session
+        clearInvocations(messagingTemplate);
+        handler.update(location(1L, 7L, "33.5400", "-7.6050"));
+        handler.update(location(2L, 7L, "33.6100", "-7.6100"));
+        handler.broadcast();
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), anyMap());
+    }
+
+    @Test
+    void matchesAnOversizedViewportWithoutIndexingIt() {
+        handler.setViewport(SESSION, new ViewportDTO(0.0, -20.0, 40.0, 20.0));
+
+        assertThat(sessionsByCell()).isEmpty();
+        handler.update(location(1L, 7L, "33.5100", "-7.6100"));
+        handler.broadcast();
+        assertThat(lastFrameTo(SESSION).getBuses()).extracting(LocationDeltaDTO::getId).containsExactly(1L);
+
+        handler.update(location(1L, 7L, "45.0000", "-7.6100"));
+        handler.broadcast();
+        assertThat(lastFrameTo(SESSION).getRemoved()).containsExactly(1L);
+    }
+
+    @Test
+    void replacesTheViewportOfASession() {
+        handler.setViewport(SESSION, VIEWPORT);
+        handler.setViewport(SESSION, new ViewportDTO(34.00, -7.00, 34.01, -6.99));
+        clearInvocations(messagingTemplate);
+
+        handler.update(location(1L, 7L, "33.5100", "-7.6100"));
+        handler.broadcast();
+
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), anyMap());
+        assertThat(sessionsByCell()).isNotEmpty().hasSizeLessThan(9);
+    }
+
+    @Test
+    void ignoresAnInvalidViewport() {
+        handler.setViewport(SESSION, VIEWPORT);
+        clearInvocations(messagingTemplate);
+
+        handler.setViewport(SESSION, new ViewportDTO(33.52, -7.62, 33.50, -7.60));
+
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), anyMap());
+        assertThat(sessionsByCell()).isEmpty();
+    }
+
+    @Test
+    void forgetsASessionWhenItDisconnects() {
+        handler.setViewport(SESSION, VIEWPORT);
+        handler.onSubscribe(subscribe(SESSION, "sub-1", "/topic/bus-locations"));
+        handler.onSubscribe(subscribe(SESSION, "sub-2", "/topic/routes/7/locations"));
+        clearInvocations(messagingTemplate);
+
+        handler.onDisconnect(new SessionDisconnectEvent(this, message(SimpMessageType.DISCONNECT, SESSION, null, null),
+            SESSION, CloseStatus.NORMAL));
+        handler.update(location(1L, 7L, "33.5100", "-7.6100"));
+        handler.broadcast();
+
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+        verify(messagingTemplate, never()).convertAndSendToUser(anyString(), anyString(), any(), anyMap());
+        assertThat(sessionsByCell()).isEmpty();
+        assertThat((Map<?, ?>) ReflectionTestUtils.getField(handler, "viewports")).isEmpty();
+        assertThat((Map<?, ?>) ReflectionTestUtils.getField(handler, "subscriberCounts")).isEmpty();
+    }
+
+    @Test
+    void sendsTopicFramesOnlyWhileSubscribed() {
+        handler.onSubscribe(subscribe(SESSION, "sub-1", "/topic/bus/1"));
+        handler.onSubscribe(subscribe("session-2", "sub-1", "/topic/bus/1"));
+
+        handler.update(location(1L, 7L, "33.5100", "-7.6100"));
+        handler.update(location(2L, 7L, "33.5100", "-7.6100"));
+        handler.broadcast();
+        verify(messagingTemplate).convertAndSend(eq("/topic/bus/1"), any(LocationFrameDTO.class));
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/bus/2"), any(LocationFrameDTO.class));
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/bus-locations"), any(LocationFrameDTO.class));
+
+        handler.onUnsubscribe(new SessionUnsubscribeEvent(this,
+            message(SimpMessageType.UNSUBSCRIBE, SESSION, "sub-1", null)));
+        handler.onUnsubscribe(new SessionUnsubscribeEvent(this,
+            message(SimpMessageType.UNSUBSCRIBE, "session-2", "sub-1", null)));
+        clearInvocations(messagingTemplate);
+        handler.update(location(1L, 7L, "33.5110", "-7.6100"));
+        handler.broadcast();
+        verify(messagingTemplate, never()).convertAndSend(anyString(), any(Object.class));
+    }
+
+    @Test
+    void removesABusFromItsPreviousRoute() {
+        handler.onSubscribe(subscribe(SESSION, "sub-1", "/topic/routes/7/locations"));
+        handler.onSubscribe(subscribe("session-2", "sub-1", "/topic/routes/8/locations"));
+        handler.update(location(1L, 7L, "33.5100", "-7.6100"));
+        handler.broadcast();
+        assertThat(lastFrameOn("/topic/routes/7/locations").getBuses())
+            .extracting(LocationDeltaDTO::getId).containsExactly(1L);
+
+        // Reassigned to route 8
+        handler.update(location(1L, 8L, "33.5110", "-7.6100"));
+        handler.broadcast();
+        LocationFrameDTO oldRoute = lastFrameOn("/topic/routes/7/locations");
+        assertThat(oldRoute.getBuses()).isEmpty();
+        assertThat(oldRoute.getRemoved()).containsExactly(1L);
+        LocationFrameDTO newRoute = lastFrameOn("/topic/routes/8/locations");
+        assertThat(newRoute.getBuses()).extracting(LocationDeltaDTO::getId).containsExactly(1L);
+        assertThat(newRoute.getRemoved()).isEmpty();
+
+        clearInvocations(messagingTemplate);
+        handler.update(location(1L, 8L, "33.5120", "-7.6100"));
+        handler.broadcast();
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/routes/7/locations"), any(Object.class));
+    }
+
+    private LocationFrameDTO lastFrameTo(String sessionId) {
+        ArgumentCaptor<LocationFrameDTO> frames = ArgumentCaptor.forClass(LocationFrameDTO.class);
+        verify(messagingTemplate, atLeast(1)).convertAndSendToUser(eq(sessionId), eq("/queue/locations"),
+            frames.capture(), anyMap());
+        return frames.getValue();
+    }
+
+    private LocationFrameDTO lastFrameOn(String topic) {
+        ArgumentCaptor<LocationFrameDTO> frames = ArgumentCaptor.forClass(LocationFrameDTO.class);
+        verify(messagingTemplate, atLeast(1)).convertAndSend(eq(topic), frames.capture());
+        return frames.getValue();
+    }
+
+    private Map<?, ?> sessionsByCell() {
+        return (Map<?, ?>) ReflectionTestUtils.getField(handler, "sessionsByCell");
+    }
+
+    /**
+     * A position of the bus, each one recorded after the previous
+     */
+    private BusLocation location(Long busId, Long routeId, String lat, String lon) {
+        clock = clock.plusSeconds(1);
+        return BusLocation.builder()
+            .bus(Bus.builder().id(busId).routeId(routeId).build())
+            .latitude(new BigDecimal(lat))
+            .longitude(new BigDecimal(lon))
+            .recordedAt(clock)
+            .build();
+    }
+
+    private SessionSubscribeEvent subscribe(String sessionId, String subscriptionId, String destination) {
+        return new SessionSubscribeEvent(this, message(SimpMessageType.SUBSCRIBE, sessionId, subscriptionId,
+            destination));
+    }
+
+    private static Message<byte[]> message(SimpMessageType type, String sessionId, String subscriptionId,
+                                           String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,83 @@
+package com.bustransport.route.cache;
+
+import com.bustransport.route.dto.response.RouteDTO;
+import com.bustransport.route.dto.response.RouteStopDTO;
+import com.bustransport.route.dto.response.StopDTO;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the entries of each cache are derived from. Entries of tracked caches
+ * are evicted one by one when one of their entities changes; caches whose
+ * entries depend on the network as a whole, like journeys, are cleared
+ * instead. Caches listed in neither, like street geometries, do not depend
+ * on any entity.
+ */
+public final class CacheDependencies {
+
+    /**
+     * Entities a cached value was derived from, given its key and value (which may be null)
+     */
+    @FunctionalInterface
+    public interface Extractor {
+        Collection<EntityRef> dependencies(Object key, Object value);
+    }
+
+    public static final Map<String, Extractor> TRACKED = Map.of(
+        "stops", CacheDependencies::stop,
+        "routes", CacheDependencies::route,
+        "routeStops", CacheDependencies::routeStops,
+        "schedules", CacheDependencies::schedules);
+
+    public static final Map<String, Set<String>> CLEARED_ON = Map.of(
+        "optimalPaths", Set.of(EntityRef.STOP, EntityRef.ROUTE, EntityRef.ROUTE_SCHEDULES, EntityRef.CALENDAR));
+
+    private CacheDependencies() {
+    }
+
+    private static Collection<EntityRef> stop(Object key, Object value) {
+        return value instanceof StopDTO stop ? List.of(EntityRef.stop(stop.getId())) : List.of();
+    }
+
+    private static Collection<EntityRef> route(Object key, Object value) {
+        if (!(value instanceof RouteDTO route)) {
+            return List.of();
+        }
+        List<EntityRef> refs = new ArrayList<>();
+        refs.add(EntityRef.route(route.getId()));
+        if (route.getStops() != null) {
+            for (RouteStopDTO routeStop : route.getStops()) {
+                if (routeStop.getStop() != null) {
+                    refs.add(EntityRef.stop(routeStop.getStop().getId()));
+                }
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Keyed by route id
+     */
+    private static Collection<EntityRef> routeStops(Object key, Object value) {
+        List<EntityRef> refs = new ArrayList<>();
+        refs.add(EntityRef.route(((Number) key).longValue()));
+        if (value instanceof Collection<?> stops) {
+            for (Object stop : stops) {
+                refs.add(EntityRef.stop(((StopDTO) stop).getId()));
+            }
+        }
+        return refs;
+    }
+
+    /**
+     * Keyed by {@code <routeId>_<serviceType>}
+     */
+    private static Collection<EntityRef> schedules(Object key, Object value) {
+        String routeId = key.toString().substring(0, key.toString().indexOf('_'));
+        return List.of(EntityRef.routeSchedules(Long.parseLong(routeId)));
+    }
+}
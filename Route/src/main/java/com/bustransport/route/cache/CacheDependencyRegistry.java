@@ -0,0 +1,143 @@
+package com.bustransport.route.cache;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Maps entities to the cache entries derived from them, as one Redis set per
+ * entity, so every replica sees the entries the others stored. The sets
+ * expire a little after the entries they point to. A shared generation
+ * counter, advanced by every invalidation, tells a replica that a value it
+ * loaded may predate a change.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CacheDependencyRegistry {
+
+    private static final String KEY_PREFIX = "cache-deps:";
+    private static final String GENERATION_KEY = "cache-deps-generation";
+
+    // Redis could not be read; values are stored without the generation check
+    public static final long UNKNOWN_GENERATION = -1;
+
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${cache.default-ttl-minutes:60}")
+    private long cacheTtlMinutes;
+
+    /**
+     * A cache entry, with its key encoded so that it can be evicted from the
+     * in-process tier with the same key type it was stored with
+     */
+    public record CachedEntry(String cache, Object key) {
+
+        public String encode() {
+            return cache + "\t" + encodeKey(key);
+        }
+
+        public static CachedEntry decode(String encoded) {
+            int tab = encoded.indexOf('\t');
+            return new CachedEntry(encoded.substring(0, tab), decodeKey(encoded.substring(tab + 1)));
+        }
+
+        private static String encodeKey(Object key) {
+            if (key instanceof Long) {
+                return "L" + key;
+            }
+            if (key instanceof Integer) {
+                return "I" + key;
+            }
+            return "S" + key;
+        }
+
+        private static Object decodeKey(String encoded) {
+            String value = encoded.substring(1);
+            return switch (encoded.charAt(0)) {
+                case 'L' -> Long.valueOf(value);
+                case 'I' -> Integer.valueOf(value);
+                default -> value;
+            };
+        }
+    }
+
+    public void track(String cache, Object key, Collection<EntityRef> refs) {
+        if (refs.isEmpty()) {
+            return;
+        }
+        String entry = new CachedEntry(cache, key).encode();
+        Duration ttl = Duration.ofMinutes(cacheTtlMinutes + 1);
+        try {
+            redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for (EntityRef ref : new HashSet<>(refs)) {
+                        String setKey = setKey(ref);
+                        operations.opsForSet().add(setKey, entry);
+                        operations.expire(setKey, ttl);
+                    }
+                    return null;
+                }
+            });
+        } catch (DataAccessException e) {
+            log.warn("Could not record cache dependencies of {} {}: {}", cache, key, e.getMessage());
+        }
+    }
+
+    /**
+     * Removes and returns the entries derived from any of the given entities
+     */
+    public Set<CachedEntry> release(Collection<EntityRef> refs) {
+        Set<CachedEntry> entries = new HashSet<>();
+        try {
+            for (EntityRef ref : refs) {
+                String setKey = setKey(ref);
+                Set<String> members = redisTemplate.opsForSet().members(setKey);
+                if (members != null && !members.isEmpty()) {
+                    members.forEach(member -> entries.add(CachedEntry.decode(member)));
+                    redisTemplate.delete(setKey);
+                }
+            }
+        } catch (DataAccessException e) {
+            log.warn("Could not read cache dependencies of {}: {}", refs, e.getMessage());
+        }
+        return entries;
+    }
+
+    public long generation() {
+        try {
+            String generation = redisTemplate.opsForValue().get(GENERATION_KEY);
+            return generation != null ? Long.parseLong(generation) : 0;
+        } catch (DataAccessException e) {
+            log.warn("Could not read the cache generation: {}", e.getMessage());
+            return UNKNOWN_GENERATION;
+        }
+    }
+
+    /**
+     * Marks every value loaded before now as possibly stale
+     */
+    public void advanceGeneration() {
+        try {
+            redisTemplate.opsForValue().increment(GENERATION_KEY);
+        } catch (DataAccessException e) {
+            log.warn("Could not advance the cache generation: {}", e.getMessage());
+        }
+    }
+
+    private static String setKey(EntityRef ref) {
+        return KEY_PREFIX + ref.type() + ":" + ref.id();
+    }
+}
@@ -0,0 +1,150 @@
+package com.bustransport.route.cache;
+
+import com.bustransport.route.cache.CacheDependencyRegistry.CachedEntry;
+import com.bustransport.route.event.RouteChangedEvent;
+import com.bustransport.route.event.ServiceCalendarChangedEvent;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.event.TimetableChangedEvent;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+/**
+ * Evicts the cache entries derived from a stop, route, schedule or calendar
+ * once its change is committed. Shared entries are evicted here; the
+ * evictions are then published on a Redis channel so every other replica
+ * drops the same entries from its in-process tier.
+ *
+ * <p>Messages are lines of text: the sending instance, then one
+ * {@code E<tab><cache><tab><key>} line per evicted entry and one
+ * {@code C<tab><cache>} line per cleared cache.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class CacheInvalidator implements MessageListener {
+
+    private final CacheManager cacheManager;
+    private final CacheDependencyRegistry registry;
+    private final StringRedisTemplate redisTemplate;
+    private final String instanceId = UUID.randomUUID().toString();
+
+    @Value("${cache.invalidation.channel:route-service:cache-evictions}")
+    private String channel;
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStopChanged(StopChangedEvent event) {
+        invalidate(List.of(EntityRef.stop(event.getStop().getId())));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRouteChanged(RouteChangedEvent event) {
+        invalidate(List.of(EntityRef.route(event.getRoute().getId())));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTimetableChanged(TimetableChangedEvent event) {
+        invalidate(List.of(EntityRef.routeSchedules(event.getRouteId())));
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCalendarChanged(ServiceCalendarChangedEvent event) {
+        invalidate(List.of(EntityRef.calendar()));
+    }
+
+    public void invalidate(Collection<EntityRef> refs) {
+        // Before the evictions, so a load racing with them sees the change
+        registry.advanceGeneration();
+        Set<CachedEntry> entries = registry.release(refs);
+        Set<String> cleared = new TreeSet<>();
+        CacheDependencies.CLEARED_ON.forEach((cache, types) -> {
+            if (refs.stream().anyMatch(ref -> types.contains(ref.type()))) {
+                cleared.add(cache);
+            }
+        });
+        for (CachedEntry entry : entries) {
+            Cache cache = cacheManager.getCache(entry.cache());
+            if (cache != null) {
+                cache.evict(entry.key());
+            }
+        }
+        cleared.forEach(this::clear);
+        log.debug("Invalidated {}: {} cache entries evicted, caches {} cleared", refs, entries.size(), cleared);
+        broadcast(entries, cleared);
+    }
+
+    /**
+     * Clears every cache on every replica, e.g. after a bulk import
+     */
+    public void clearAll() {
+        registry.advanceGeneration();
+        Set<String> names = new TreeSet<>(cacheManager.getCacheNames());
+        names.forEach(this::clear);
+        broadcast(Set.of(), names);
+    }
+
+    private void clear(String name) {
+        Cache cache = cacheManager.getCache(name);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    private void broadcast(Set<CachedEntry> entries, Set<String> cleared) {
+        if (entries.isEmpty() && cleared.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder(instanceId);
+        entries.forEach(entry -> message.append("\nE\t").append(entry.encode()));
+        cleared.forEach(name -> message.append("\nC\t").append(name));
+        try {
+            redisTemplate.convertAndSend(channel, message.toString());
+        } catch (DataAccessException e) {
+            log.warn("Could not publish cache evictions to other replicas: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String[] lines = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+        if (lines[0].equals(instanceId)) {
+            return;
+        }
+        List<String> clearedCaches = new ArrayList<>();
+        int evicted = 0;
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            if (line.startsWith("E\t")) {
+                CachedEntry entry = CachedEntry.decode(line.substring(2));
+                if (cacheManager.getCache(entry.cache()) instanceof LocalTier tier) {
+                    tier.evictLocal(entry.key());
+                    evicted++;
+                }
+            } else if (line.startsWith("C\t")) {
+                String name = line.substring(2);
+                if (cacheManager.getCache(name) instanceof LocalTier tier) {
+                    tier.clearLocal();
+                    clearedCaches.add(name);
+                }
+            }
+        }
+        log.debug("Applied evictions from another replica: {} local entries, caches {} cleared", evicted,
+            clearedCaches);
+    }
+}
@@ -0,0 +1,139 @@
+package com.bustransport.route.cache;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.cache.Cache;
+
+import java.util.Objects;
+import java.util.concurrent.Callable;
+
+/**
+ * Records the entities every stored value was derived from, so that
+ * {@link CacheInvalidator} can evict exactly the entries affected by a change.
+ *
+ * <p>A value loaded before a change commits can reach the cache after the
+ * change evicted its key. The generation of the registry is taken when a key
+ * misses, and the value loaded for it is only kept if no invalidation ran
+ * since; the check is repeated once the value is stored.
+ */
+@Slf4j
+public class DependencyTrackingCache implements Cache, LocalTier {
+
+    private final Cache delegate;
+    private final CacheDependencies.Extractor extractor;
+    private final CacheDependencyRegistry registry;
+
+    // The caching aspect misses, loads and puts on one thread
+    private final ThreadLocal<Miss> lastMiss = new ThreadLocal<>();
+
+    private record Miss(Object key, long generation) {
+    }
+
+    public DependencyTrackingCache(Cache delegate, CacheDependencies.Extractor extractor,
+                                   CacheDependencyRegistry registry) {
+        this.delegate = delegate;
+        this.extractor = extractor;
+        this.registry = registry;
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper value = delegate.get(key);
+        if (value == null) {
+            // Before the caller loads the value
+            lastMiss.set(new Miss(key, registry.generation()));
+        }
+        return value;
+    }
+
+    @Override
+    public <T> T get(Object key, Class<T> type) {
+        return delegate.get(key, type);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper cached = get(key);
+        if (cached != null) {
+            return (T) cached.get();
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            lastMiss.remove();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        Miss miss = lastMiss.get();
+        lastMiss.remove();
+        long loadedAt = miss != null && Objects.equals(miss.key(), key)
+            ? miss.generation() : CacheDependencyRegistry.UNKNOWN_GENERATION;
+        if (isStale(loadedAt)) {
+            log.debug("Not caching {} {}: invalidated while it was loaded", getName(), key);
+            return;
+        }
+        track(key, value);
+        delegate.put(key, value);
+        // An invalidation between the check and the put may have missed the entry
+        if (isStale(loadedAt)) {
+            delegate.evict(key);
+        }
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        ValueWrapper existing = delegate.putIfAbsent(key, value);
+        if (existing == null) {
+            track(key, value);
+        }
+        return existing;
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    @Override
+    public void evictLocal(Object key) {
+        if (delegate instanceof LocalTier tier) {
+            tier.evictLocal(key);
+        }
+    }
+
+    @Override
+    public void clearLocal() {
+        if (delegate instanceof LocalTier tier) {
+            tier.clearLocal();
+        }
+    }
+
+    private boolean isStale(long loadedAt) {
+        return loadedAt != CacheDependencyRegistry.UNKNOWN_GENERATION && registry.generation() != loadedAt;
+    }
+
+    private void track(Object key, Object value) {
+        registry.track(getName(), key, extractor.dependencies(key, value));
+    }
+}
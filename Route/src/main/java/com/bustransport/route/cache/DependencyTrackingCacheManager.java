@@ -0,0 +1,48 @@
+package com.bustransport.route.cache;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps the caches listed in {@link CacheDependencies#TRACKED} or
+ * {@link CacheDependencies#CLEARED_ON} into a {@link DependencyTrackingCache};
+ * every other cache is returned as it is
+ */
+public class DependencyTrackingCacheManager implements CacheManager {
+
+    private final CacheManager delegate;
+    private final CacheDependencyRegistry registry;
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public DependencyTrackingCacheManager(CacheManager delegate, CacheDependencyRegistry registry) {
+        this.delegate = delegate;
+        this.registry = registry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache delegateCache = delegate.getCache(name);
+        if (delegateCache == null
+                || !CacheDependencies.TRACKED.containsKey(name) && !CacheDependencies.CLEARED_ON.containsKey(name)) {
+            return delegateCache;
+        }
+        // Cleared caches track nothing, but still need the generation check
+        CacheDependencies.Extractor extractor = CacheDependencies.TRACKED.getOrDefault(name,
+            (cacheKey, value) -> List.of());
+        return caches.computeIfAbsent(name, key -> new DependencyTrackingCache(delegateCache, extractor, registry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
@@ -0,0 +1,29 @@
+package com.bustransport.route.cache;
+
+/**
+ * An entity, or a set of entities, that cached values are derived from
+ */
+public record EntityRef(String type, long id) {
+
+    public static final String STOP = "stop";
+    public static final String ROUTE = "route";
+    // The schedules of one route, including ones not created yet
+    public static final String ROUTE_SCHEDULES = "route-schedules";
+    public static final String CALENDAR = "calendar";
+
+    public static EntityRef stop(long id) {
+        return new EntityRef(STOP, id);
+    }
+
+    public static EntityRef route(long id) {
+        return new EntityRef(ROUTE, id);
+    }
+
+    public static EntityRef routeSchedules(long routeId) {
+        return new EntityRef(ROUTE_SCHEDULES, routeId);
+    }
+
+    public static EntityRef calendar() {
+        return new EntityRef(CALENDAR, 0);
+    }
+}
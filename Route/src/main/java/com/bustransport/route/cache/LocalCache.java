@@ -0,0 +1,118 @@
+package com.bustransport.route.cache;
+
+import org.springframework.cache.support.AbstractValueAdaptingCache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Small in-process cache: least recently used entries are dropped beyond
+ * {@code maxSize}, and entries expire after a fixed time to live. Values are
+ * held serialized, as in the shared tier, so every read gets its own copy of
+ * the mutable DTOs.
+ */
+public class LocalCache extends AbstractValueAdaptingCache {
+
+    private final String name;
+    private final long ttlMillis;
+    private final RedisSerializer<Object> serializer;
+    private final Map<Object, Entry> entries;
+
+    /**
+     * @param value the serialized value, or {@link NullValue} for a cached null
+     */
+    private record Entry(Object value, long expiresAtMillis) {
+    }
+
+    public LocalCache(String name, int maxSize, long ttlMillis, RedisSerializer<Object> serializer) {
+        super(true);
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.serializer = serializer;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return entries;
+    }
+
+    @Override
+    protected Object lookup(Object key) {
+        Object stored;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.expiresAtMillis() < System.currentTimeMillis()) {
+                entries.remove(key);
+                return null;
+            }
+            stored = entry.value();
+        }
+        return stored instanceof byte[] bytes ? serializer.deserialize(bytes) : stored;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object stored = lookup(key);
+        if (stored != null) {
+            return (T) fromStoreValue(stored);
+        }
+        T value;
+        try {
+            value = valueLoader.call();
+        } catch (Exception e) {
+            throw new ValueRetrievalException(key, valueLoader, e);
+        }
+        put(key, value);
+        return value;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        Object stored = toStoreValue(value);
+        if (stored != NullValue.INSTANCE) {
+            stored = serializer.serialize(stored);
+        }
+        Entry entry = new Entry(stored, System.currentTimeMillis() + ttlMillis);
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+    }
+
+    @Override
+    public void evict(Object key) {
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
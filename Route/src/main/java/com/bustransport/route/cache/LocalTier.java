@@ -0,0 +1,12 @@
+package com.bustransport.route.cache;
+
+/**
+ * A cache with an in-process tier that can be invalidated on its own, e.g.
+ * when another replica already evicted the shared entry
+ */
+public interface LocalTier {
+
+    void evictLocal(Object key);
+
+    void clearLocal();
+}
@@ -0,0 +1,60 @@
+package com.bustransport.route.cache;
+
+import com.bustransport.route.dto.request.OptimalPathRequest;
+import com.bustransport.route.util.Geohash;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Cache key of a journey request: the origin and destination stops, or the
+ * geohash cells of the coordinates, the departure time rounded down to a
+ * bucket and the options that change the result. Requests from the same
+ * cells within the same bucket share one cached journey.
+ */
+@Component("optimalPathKeyGenerator")
+public class OptimalPathKeyGenerator implements KeyGenerator {
+
+    @Value("${cache.optimal-paths.geohash-precision:7}")
+    private int geohashPrecision;
+
+    @Value("${cache.optimal-paths.time-bucket-seconds:60}")
+    private int timeBucketSecs;
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        OptimalPathRequest request = (OptimalPathRequest) params[0];
+        StringBuilder key = new StringBuilder(64);
+        if (request.getOriginStopId() != null && request.getDestinationStopId() != null) {
+            key.append("stops:").append(request.getOriginStopId()).append(':').append(request.getDestinationStopId());
+        } else if (request.getStartLat() != null && request.getStartLon() != null
+                && request.getEndLat() != null && request.getEndLon() != null) {
+            key.append("cells:")
+                .append(Geohash.encode(request.getStartLat().doubleValue(), request.getStartLon().doubleValue(),
+                    geohashPrecision))
+                .append(':')
+                .append(Geohash.encode(request.getEndLat().doubleValue(), request.getEndLon().doubleValue(),
+                    geohashPrecision));
+        } else {
+            // Rejected by the service; never cached
+            key.append("invalid");
+        }
+
+        LocalDateTime departureTime = request.getDepartureTime() != null
+            ? request.getDepartureTime() : LocalDateTime.now();
+        long departureSecs = departureTime.toEpochSecond(ZoneOffset.UTC);
+        key.append(':').append(departureSecs - Math.floorMod(departureSecs, timeBucketSecs));
+
+        // transportMode and wheelchairAccessible do not change the result
+        Integer transferLimit = Boolean.TRUE.equals(request.getAvoidTransfers()) ? 0 : request.getMaxTransfers();
+        key.append(':').append(transferLimit)
+            .append(':').append(request.getMaxWalkDistance())
+            .append(':').append(Integer.valueOf(6).equals(request.getPolylinePrecision()) ? 6 : 5)
+            .append(':').append(!Boolean.FALSE.equals(request.getIncludeCoordinates()));
+        return key.toString();
+    }
+}
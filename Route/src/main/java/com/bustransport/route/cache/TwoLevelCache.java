@@ -0,0 +1,123 @@
+package com.bustransport.route.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+
+import java.util.concurrent.Callable;
+
+/**
+ * A local cache in front of a shared one. Reads try the local tier first and
+ * copy shared hits into it; writes and evictions go to both. Hits and misses
+ * of each tier are counted as {@code cache.tier.gets}.
+ */
+public class TwoLevelCache implements Cache, LocalTier {
+
+    private final LocalCache local;
+    private final Cache shared;
+    private final Counter localHits;
+    private final Counter localMisses;
+    private final Counter sharedHits;
+    private final Counter sharedMisses;
+
+    public TwoLevelCache(LocalCache local, Cache shared, MeterRegistry meterRegistry) {
+        this.local = local;
+        this.shared = shared;
+        this.localHits = counter(meterRegistry, "local", "hit");
+        this.localMisses = counter(meterRegistry, "local", "miss");
+        this.sharedHits = counter(meterRegistry, "redis", "hit");
+        this.sharedMisses = counter(meterRegistry, "redis", "miss");
+        Gauge.builder("cache.tier.size", local, LocalCache::size)
+            .tag("cache", getName())
+            .tag("tier", "local")
+            .register(meterRegistry);
+    }
+
+    private Counter counter(MeterRegistry meterRegistry, String tier, String result) {
+        return Counter.builder("cache.tier.gets")
+            .tag("cache", getName())
+            .tag("tier", tier)
+            .tag("result", result)
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return shared.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return shared.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper value = local.get(key);
+        if (value != null) {
+            localHits.increment();
+            return value;
+        }
+        localMisses.increment();
+        value = shared.get(key);
+        if (value != null) {
+            sharedHits.increment();
+            local.put(key, value.get());
+        } else {
+            sharedMisses.increment();
+        }
+        return value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper value = get(key);
+        Object result = value != null ? value.get() : null;
+        if (result != null && type != null && !type.isInstance(result)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + result);
+        }
+        return (T) result;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        ValueWrapper value = get(key);
+        if (value != null) {
+            return (T) value.get();
+        }
+        T loaded = shared.get(key, valueLoader);
+        local.put(key, loaded);
+        return loaded;
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        shared.put(key, value);
+        local.put(key, value);
+    }
+
+    @Override
+    public void evict(Object key) {
+        shared.evict(key);
+        local.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        shared.clear();
+        local.clear();
+    }
+
+    @Override
+    public void evictLocal(Object key) {
+        local.evict(key);
+    }
+
+    @Override
+    public void clearLocal() {
+        local.clear();
+    }
+}
@@ -0,0 +1,63 @@
+package com.bustransport.route.cache;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.serializer.RedisSerializer;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Puts a {@link LocalCache} in front of the shared caches listed in
+ * {@code localCaches}; every other cache is returned as it is
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private final CacheManager shared;
+    private final Map<String, LocalCacheSpec> localCaches;
+    private final RedisSerializer<Object> valueSerializer;
+    private final MeterRegistry meterRegistry;
+    private final Map<String, Cache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * Size bound and time to live of the local tier of one cache
+     */
+    public record LocalCacheSpec(int maxSize, long ttlMillis) {
+    }
+
+    /**
+     * @param valueSerializer serializer of the shared tier, with which the local tier keeps its copies
+     */
+    public TwoLevelCacheManager(CacheManager shared, Map<String, LocalCacheSpec> localCaches,
+                                RedisSerializer<Object> valueSerializer, MeterRegistry meterRegistry) {
+        this.shared = shared;
+        this.localCaches = Map.copyOf(localCaches);
+        this.valueSerializer = valueSerializer;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache sharedCache = shared.getCache(name);
+        if (sharedCache == null) {
+            return null;
+        }
+        LocalCacheSpec spec = localCaches.get(name);
+        if (spec == null) {
+            return sharedCache;
+        }
+        return caches.computeIfAbsent(name, key -> new TwoLevelCache(
+            new LocalCache(name, spec.maxSize(), spec.ttlMillis(), valueSerializer), sharedCache, meterRegistry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return shared.getCacheNames();
+    }
+}
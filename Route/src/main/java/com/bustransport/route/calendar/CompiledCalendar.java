@@ -0,0 +1,179 @@
+package com.bustransport.route.calendar;
+
+import com.bustransport.route.dto.response.ScheduleDTO;
+import com.bustransport.route.enums.CalendarExceptionType;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.repository.ServiceCalendarExceptionRepository.ExceptionRule;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable result of evaluating the service calendar: for every active
+ * schedule, one bit per day of a fixed window telling whether it runs.
+ * Days outside the window are evaluated from the rules on demand.
+ */
+final class CompiledCalendar {
+
+    private final LocalDate firstDay;
+    private final int days;
+
+    // Service-wide exceptions: date -> {added type mask, removed type mask}
+    private final Map<LocalDate, int[]> typeExceptions;
+    // Single-schedule exceptions: schedule -> date -> runs
+    private final Map<Long, Map<LocalDate, Boolean>> scheduleExceptions;
+
+    private final Map<Long, ScheduleDTO> schedules;
+    private final Map<Long, BitSet> runningDays;
+    private final Map<Long, List<ScheduleDTO>> schedulesByRoute;
+
+    private CompiledCalendar(LocalDate firstDay, int days, Map<LocalDate, int[]> typeExceptions,
+                             Map<Long, Map<LocalDate, Boolean>> scheduleExceptions,
+                             Map<Long, ScheduleDTO> schedules, Map<Long, BitSet> runningDays) {
+        this.firstDay = firstDay;
+        this.days = days;
+        this.typeExceptions = typeExceptions;
+        this.scheduleExceptions = scheduleExceptions;
+        this.schedules = schedules;
+        this.runningDays = runningDays;
+        this.schedulesByRoute = new HashMap<>();
+        schedules.values().stream()
+            .sorted(Comparator.comparing(ScheduleDTO::getFirstDeparture).thenComparing(ScheduleDTO::getId))
+            .forEach(schedule -> schedulesByRoute
+                .computeIfAbsent(schedule.getRouteId(), routeId -> new ArrayList<>()).add(schedule));
+    }
+
+    static CompiledCalendar compile(LocalDate firstDay, int days, List<ScheduleDTO> schedules,
+                                    List<ExceptionRule> exceptions) {
+        Map<LocalDate, int[]> typeExceptions = new HashMap<>();
+        Map<Long, Map<LocalDate, Boolean>> scheduleExceptions = new HashMap<>();
+        for (ExceptionRule exception : exceptions) {
+            boolean added = exception.getExceptionType() == CalendarExceptionType.ADDED;
+            if (exception.getScheduleId() != null) {
+                scheduleExceptions.computeIfAbsent(exception.getScheduleId(), id -> new HashMap<>())
+                    .put(exception.getServiceDate(), added);
+            } else if (exception.getServiceType() != null) {
+                int[] masks = typeExceptions.computeIfAbsent(exception.getServiceDate(), date -> new int[2]);
+                masks[added ? 0 : 1] |= bit(exception.getServiceType());
+            }
+        }
+
+        CompiledCalendar rules = new CompiledCalendar(firstDay, days, typeExceptions, scheduleExceptions,
+            Map.of(), Map.of());
+        Map<Long, ScheduleDTO> schedulesById = new HashMap<>(schedules.size() * 2);
+        Map<Long, BitSet> runningDays = new HashMap<>(schedules.size() * 2);
+        for (ScheduleDTO schedule : schedules) {
+            schedulesById.put(schedule.getId(), schedule);
+            runningDays.put(schedule.getId(), rules.evaluateWindow(schedule));
+        }
+        return new CompiledCalendar(firstDay, days, typeExceptions, scheduleExceptions,
+            schedulesById, runningDays);
+    }
+
+    /**
+     * Returns a calendar with one schedule recompiled, or dropped when
+     * {@code schedule} is null (deleted or deactivated).
+     */
+    CompiledCalendar withSchedule(Long scheduleId, ScheduleDTO schedule) {
+        Map<Long, ScheduleDTO> updatedSchedules = new HashMap<>(schedules);
+        Map<Long, BitSet> updatedDays = new HashMap<>(runningDays);
+        if (schedule != null) {
+            updatedSchedules.put(scheduleId, schedule);
+            updatedDays.put(scheduleId, evaluateWindow(schedule));
+        } else {
+            updatedSchedules.remove(scheduleId);
+            updatedDays.remove(scheduleId);
+        }
+        return new CompiledCalendar(firstDay, days, typeExceptions, scheduleExceptions,
+            updatedSchedules, updatedDays);
+    }
+
+    LocalDate getFirstDay() {
+        return firstDay;
+    }
+
+    int scheduleCount() {
+        return schedules.size();
+    }
+
+    boolean isRunning(Long scheduleId, LocalDate date) {
+        BitSet bits = runningDays.get(scheduleId);
+        if (bits == null) {
+            return false;
+        }
+        long offset = ChronoUnit.DAYS.between(firstDay, date);
+        if (offset >= 0 && offset < days) {
+            return bits.get((int) offset);
+        }
+        return evaluate(schedules.get(scheduleId), date);
+    }
+
+    List<ScheduleDTO> runningSchedules(Long routeId, LocalDate date) {
+        List<ScheduleDTO> running = new ArrayList<>();
+        for (ScheduleDTO schedule : schedulesByRoute.getOrDefault(routeId, List.of())) {
+            if (isRunning(schedule.getId(), date)) {
+                running.add(schedule);
+            }
+        }
+        return running;
+    }
+
+    List<ScheduleDTO> runningSchedules(LocalDate date) {
+        List<ScheduleDTO> running = new ArrayList<>();
+        for (List<ScheduleDTO> routeSchedules : schedulesByRoute.values()) {
+            for (ScheduleDTO schedule : routeSchedules) {
+                if (isRunning(schedule.getId(), date)) {
+                    running.add(schedule);
+                }
+            }
+        }
+        return running;
+    }
+
+    /**
+     * Service types running on a date as a bit mask indexed by ordinal.
+     * WEEKDAY and WEEKEND follow the day of the week; HOLIDAY and SPECIAL only
+     * run where an exception adds them.
+     */
+    int serviceTypeMask(LocalDate date) {
+        DayOfWeek dayOfWeek = date.getDayOfWeek();
+        int mask = dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY
+            ? bit(ServiceType.WEEKEND) : bit(ServiceType.WEEKDAY);
+        int[] exception = typeExceptions.get(date);
+        if (exception != null) {
+            mask = (mask | exception[0]) & ~exception[1];
+        }
+        return mask;
+    }
+
+    static int bit(ServiceType serviceType) {
+        return 1 << serviceType.ordinal();
+    }
+
+    private BitSet evaluateWindow(ScheduleDTO schedule) {
+        BitSet bits = new BitSet(days);
+        for (int d = 0; d < days; d++) {
+            if (evaluate(schedule, firstDay.plusDays(d))) {
+                bits.set(d);
+            }
+        }
+        return bits;
+    }
+
+    private boolean evaluate(ScheduleDTO schedule, LocalDate date) {
+        Map<LocalDate, Boolean> overrides = scheduleExceptions.get(schedule.getId());
+        if (overrides != null && overrides.containsKey(date)) {
+            return overrides.get(date);
+        }
+        return (schedule.getValidFrom() == null || !schedule.getValidFrom().isAfter(date))
+            && (schedule.getValidUntil() == null || !schedule.getValidUntil().isBefore(date))
+            && (serviceTypeMask(date) & bit(schedule.getServiceType())) != 0;
+    }
+}
@@ -0,0 +1,131 @@
+package com.bustransport.route.calendar;
+
+import com.bustransport.route.dto.response.ScheduleDTO;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.event.ServiceCalendarChangedEvent;
+import com.bustransport.route.event.TimetableChangedEvent;
+import com.bustransport.route.mapper.ScheduleMapper;
+import com.bustransport.route.repository.ScheduleRepository;
+import com.bustransport.route.repository.ServiceCalendarExceptionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Answers "does schedule X run on date D" with a bit test. Every active
+ * schedule is compiled against the regular week and the dated exceptions
+ * into one bit per day, from yesterday to a year ahead. The compiled form is
+ * swapped atomically: on schedule edits one schedule is recompiled, on
+ * exception edits and at midnight everything is.
+ *
+ * <p>Listeners run before the other consumers of the same events so that
+ * the timetable and the departure generator see the updated calendar.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ServiceCalendar {
+
+    private final ScheduleRepository scheduleRepository;
+    private final ServiceCalendarExceptionRepository exceptionRepository;
+    private final ScheduleMapper scheduleMapper;
+
+    @Value("${calendar.horizon-days:366}")
+    private int horizonDays;
+
+    private final AtomicReference<CompiledCalendar> current = new AtomicReference<>();
+    private final Object writeLock = new Object();
+
+    @Scheduled(cron = "${calendar.recompile-cron:0 0 0 * * *}")
+    public void compile() {
+        synchronized (writeLock) {
+            long start = System.currentTimeMillis();
+            CompiledCalendar calendar = CompiledCalendar.compile(LocalDate.now().minusDays(1), horizonDays,
+                scheduleMapper.toDTOList(scheduleRepository.findAllActiveWithRoute()),
+                exceptionRepository.findAllRules());
+            current.set(calendar);
+            log.info("Compiled service calendar of {} schedules from {} for {} days in {} ms",
+                calendar.scheduleCount(), calendar.getFirstDay(), horizonDays, System.currentTimeMillis() - start);
+        }
+    }
+
+    public boolean isRunning(Long scheduleId, LocalDate date) {
+        return calendar().isRunning(scheduleId, date);
+    }
+
+    public List<Long> runningScheduleIds(LocalDate date) {
+        return calendar().runningSchedules(date).stream().map(ScheduleDTO::getId).toList();
+    }
+
+    public List<Long> runningScheduleIds(Long routeId, LocalDate date) {
+        return calendar().runningSchedules(routeId, date).stream().map(ScheduleDTO::getId).toList();
+    }
+
+    public List<ScheduleDTO> runningSchedules(LocalDate date) {
+        return calendar().runningSchedules(date);
+    }
+
+    public List<ScheduleDTO> runningSchedules(Long routeId, LocalDate date) {
+        return calendar().runningSchedules(routeId, date);
+    }
+
+    public Set<ServiceType> serviceTypes(LocalDate date) {
+        int mask = calendar().serviceTypeMask(date);
+        Set<ServiceType> serviceTypes = EnumSet.noneOf(ServiceType.class);
+        for (ServiceType serviceType : ServiceType.values()) {
+            if ((mask & CompiledCalendar.bit(serviceType)) != 0) {
+                serviceTypes.add(serviceType);
+            }
+        }
+        return serviceTypes;
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTimetableChanged(TimetableChangedEvent event) {
+        if (event.getScheduleId() == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            CompiledCalendar calendar = current.get();
+            if (calendar == null) {
+                return;
+            }
+            ScheduleDTO schedule = scheduleRepository.findByIdWithRoute(event.getScheduleId())
+                .filter(s -> Boolean.TRUE.equals(s.getIsActive()))
+                .map(scheduleMapper::toDTO)
+                .orElse(null);
+            current.set(calendar.withSchedule(event.getScheduleId(), schedule));
+        }
+    }
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCalendarChanged(ServiceCalendarChangedEvent event) {
+        compile();
+    }
+
+    private CompiledCalendar calendar() {
+        CompiledCalendar calendar = current.get();
+        if (calendar == null) {
+            synchronized (writeLock) {
+                if (current.get() == null) {
+                    compile();
+                }
+                calendar = current.get();
+            }
+        }
+        return calendar;
+    }
+}
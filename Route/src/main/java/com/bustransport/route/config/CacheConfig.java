@@ -1,5 +1,14 @@
 package com.bustransport.route.config;
 
+import com.bustransport.route.cache.CacheDependencyRegistry;
+import com.bustransport.route.cache.CacheInvalidator;
+import com.bustransport.route.cache.DependencyTrackingCacheManager;
+import com.bustransport.route.cache.TwoLevelCacheManager;
+import com.bustransport.route.cache.TwoLevelCacheManager.LocalCacheSpec;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.context.annotation.Bean;
@@ -7,30 +16,75 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 import org.springframework.web.client.RestTemplate;
 
 import java.time.Duration;
+import java.util.Map;
 
 @Configuration
 @EnableCaching
 public class CacheConfig {
 
     @Bean
-    public CacheManager cacheManager(RedisConnectionFactory connectionFactory) {
+    public CacheManager cacheManager(RedisConnectionFactory connectionFactory, MeterRegistry meterRegistry,
+                                     CacheDependencyRegistry dependencyRegistry,
+                                     @Value("${cache.default-ttl-minutes:60}") int defaultTtlMinutes,
+                                     @Value("${cache.optimal-paths.ttl-seconds:120}") int optimalPathTtlSecs,
+                                     @Value("${cache.local.max-size:10000}") int localMaxSize,
+                                     @Value("${cache.local.ttl-seconds:60}") int localTtlSecs) {
+        GenericJackson2JsonRedisSerializer valueSerializer = cacheValueSerializer();
         RedisCacheConfiguration cacheConfig = RedisCacheConfiguration.defaultCacheConfig()
-                .entryTtl(Duration.ofMinutes(10))
+                // Writes evict the entries derived from what they changed, so entries can live long
+                .entryTtl(Duration.ofMinutes(defaultTtlMinutes))
                 .serializeKeysWith(
                         RedisSerializationContext.SerializationPair.fromSerializer(new StringRedisSerializer()))
                 .serializeValuesWith(
-                        RedisSerializationContext.SerializationPair.fromSerializer(
-                                new GenericJackson2JsonRedisSerializer()));
+                        RedisSerializationContext.SerializationPair.fromSerializer(valueSerializer));
 
-        return RedisCacheManager.builder(connectionFactory)
+        RedisCacheManager redisCacheManager = RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(cacheConfig)
+                // Journeys follow real-time delays, so they expire sooner
+                .withCacheConfiguration("optimalPaths", cacheConfig.entryTtl(Duration.ofSeconds(optimalPathTtlSecs)))
                 .build();
+        redisCacheManager.initializeCaches();
+
+        // Hot results are also kept in-process, serialized so that callers cannot change them for each other;
+        // evictions reach the other replicas through Redis pub/sub
+        LocalCacheSpec localSpec = new LocalCacheSpec(localMaxSize, localTtlSecs * 1000L);
+        TwoLevelCacheManager twoLevelCacheManager = new TwoLevelCacheManager(redisCacheManager, Map.of(
+                "optimalPaths", new LocalCacheSpec(localMaxSize,
+                        Math.min(localTtlSecs, optimalPathTtlSecs) * 1000L),
+                "walkRouteGeometry", localSpec,
+                "stops", localSpec,
+                "routes", localSpec,
+                "routeStops", localSpec,
+                "schedules", localSpec), valueSerializer, meterRegistry);
+        return new DependencyTrackingCacheManager(twoLevelCacheManager, dependencyRegistry);
+    }
+
+    @Bean
+    public RedisMessageListenerContainer cacheEvictionListenerContainer(
+            RedisConnectionFactory connectionFactory, CacheInvalidator cacheInvalidator,
+            @Value("${cache.invalidation.channel:route-service:cache-evictions}") String channel) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(cacheInvalidator, new ChannelTopic(channel));
+        return container;
+    }
+
+    /**
+     * The serializer's own mapper, which writes the type of every value, with
+     * Java time values written as ISO strings
+     */
+    static GenericJackson2JsonRedisSerializer cacheValueSerializer() {
+        return new GenericJackson2JsonRedisSerializer().configure(mapper -> mapper
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS));
     }
 
     @Bean
@@ -38,4 +92,3 @@ public class CacheConfig {
         return new RestTemplate();
     }
 }
-
@@ -0,0 +1,64 @@
+package com.bustransport.route.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Counts the SQL statements Hibernate issues while serving each request and
+ * logs requests above {@code diagnostics.sql.warn-statements}, so a fetch
+ * plan that regresses into N+1 queries shows up in the logs. The expected
+ * count of each read endpoint is pinned by ReadEndpointStatementCountTest.
+ */
+@Component
+@Slf4j
+public class SqlStatementCountFilter extends OncePerRequestFilter
+        implements StatementInspector, HibernatePropertiesCustomizer {
+
+    private static final ThreadLocal<int[]> STATEMENTS = new ThreadLocal<>();
+
+    @Value("${diagnostics.sql.warn-statements:10}")
+    private int warnStatements;
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.put(AvailableSettings.STATEMENT_INSPECTOR, this);
+    }
+
+    @Override
+    public String inspect(String sql) {
+        int[] count = STATEMENTS.get();
+        if (count != null) {
+            count[0]++;
+        }
+        return sql;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        int[] count = new int[1];
+        STATEMENTS.set(count);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            STATEMENTS.remove();
+            if (count[0] > warnStatements) {
+                log.warn("{} {} issued {} SQL statements", request.getMethod(), request.getRequestURI(), count[0]);
+            } else if (count[0] > 0) {
+                log.debug("{} {} issued {} SQL statements", request.getMethod(), request.getRequestURI(), count[0]);
+            }
+        }
+    }
+}
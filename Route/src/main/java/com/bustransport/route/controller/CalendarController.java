@@ -0,0 +1,54 @@
+package com.bustransport.route.controller;
+
+import com.bustransport.route.dto.request.CalendarExceptionRequest;
+import com.bustransport.route.dto.response.CalendarExceptionDTO;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.service.CalendarService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+@RestController
+@RequestMapping("/calendar")
+@RequiredArgsConstructor
+@Tag(name = "Calendar", description = "Service calendar and holiday exception APIs")
+public class CalendarController {
+
+    private final CalendarService calendarService;
+
+    @GetMapping("/{date}/service-types")
+    @Operation(summary = "Get the service types running on a date")
+    public ResponseEntity<Set<ServiceType>> getServiceTypes(
+            @PathVariable @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+        return ResponseEntity.ok(calendarService.getServiceTypes(date));
+    }
+
+    @GetMapping("/exceptions")
+    @Operation(summary = "List calendar exceptions in a date range")
+    public ResponseEntity<List<CalendarExceptionDTO>> getExceptions(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        return ResponseEntity.ok(calendarService.getExceptions(from, to));
+    }
+
+    @PostMapping("/exceptions")
+    @Operation(summary = "Add a calendar exception")
+    public ResponseEntity<CalendarExceptionDTO> createException(@RequestBody CalendarExceptionRequest request) {
+        return ResponseEntity.status(HttpStatus.CREATED).body(calendarService.createException(request));
+    }
+
+    @DeleteMapping("/exceptions/{id}")
+    @Operation(summary = "Remove a calendar exception")
+    public ResponseEntity<Void> deleteException(@PathVariable Long id) {
+        calendarService.deleteException(id);
+        return ResponseEntity.noContent().build();
+    }
+}
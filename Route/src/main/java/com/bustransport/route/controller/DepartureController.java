@@ -1,13 +1,16 @@
 package com.bustransport.route.controller;
 
 import com.bustransport.route.dto.request.NextDeparturesRequest;
+import com.bustransport.route.dto.response.DepartureBoardDTO;
 import com.bustransport.route.dto.response.DepartureDTO;
 import com.bustransport.route.dto.response.NextDeparturesResponse;
 import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.service.DepartureBoardService;
 import com.bustransport.route.service.DepartureService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.CacheControl;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
@@ -21,6 +24,7 @@ import java.util.List;
 public class DepartureController {
 
     private final DepartureService departureService;
+    private final DepartureBoardService departureBoardService;
 
     @PostMapping("/next")
     @Operation(summary = "Get next departures for a stop")
@@ -29,6 +33,19 @@ public class DepartureController {
         return ResponseEntity.ok(departureService.getNextDepartures(request));
     }
 
+    @GetMapping("/board/{stopId}")
+    @Operation(summary = "Get the departure board of a stop (supports If-None-Match)")
+    public ResponseEntity<DepartureBoardDTO> getDepartureBoard(
+            @PathVariable Long stopId,
+            @RequestParam(defaultValue = "10") int limit) {
+        DepartureBoardService.Board board = departureBoardService.getBoard(stopId);
+        // Spring answers a matching If-None-Match with 304 and no body
+        return ResponseEntity.ok()
+            .cacheControl(CacheControl.noCache())
+            .eTag(board.etag(limit))
+            .body(board.toDTO(limit));
+    }
+
     @GetMapping("/{id}")
     @Operation(summary = "Get departure by ID")
     public ResponseEntity<DepartureDTO> getDepartureById(@PathVariable Long id) {
@@ -0,0 +1,39 @@
+package com.bustransport.route.controller;
+
+import com.bustransport.route.dto.response.GtfsImportReport;
+import com.bustransport.route.enums.GtfsImportMode;
+import com.bustransport.route.gtfs.GtfsImporter;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@RestController
+@RequestMapping("/gtfs")
+@RequiredArgsConstructor
+@Tag(name = "GTFS", description = "GTFS feed import APIs")
+public class GtfsImportController {
+
+    private final GtfsImporter gtfsImporter;
+
+    @PostMapping(value = "/import", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @Operation(summary = "Import a GTFS static feed (zip)")
+    public ResponseEntity<GtfsImportReport> importFeed(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "DIFF") GtfsImportMode mode) throws IOException {
+        Path feed = Files.createTempFile("gtfs-", ".zip");
+        try {
+            file.transferTo(feed);
+            return ResponseEntity.ok(gtfsImporter.importFeed(feed, mode));
+        } finally {
+            Files.deleteIfExists(feed);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.bustransport.route.controller;
+
+import com.bustransport.route.realtime.TripUpdatesFeed;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@RequestMapping("/gtfs-rt")
+@RequiredArgsConstructor
+@Tag(name = "GTFS-Realtime", description = "GTFS-Realtime protobuf feeds")
+public class GtfsRealtimeController {
+
+    private static final MediaType PROTOBUF = MediaType.parseMediaType("application/x-protobuf");
+
+    private final TripUpdatesFeed tripUpdatesFeed;
+
+    @GetMapping("/trip-updates")
+    @Operation(summary = "Get the TripUpdates feed (GTFS-Realtime protobuf)")
+    public ResponseEntity<byte[]> getTripUpdates() {
+        TripUpdatesFeed.Feed feed = tripUpdatesFeed.getFeed();
+        // Spring answers If-Modified-Since with 304 based on the Last-Modified header set here
+        return ResponseEntity.ok()
+            .contentType(PROTOBUF)
+            .lastModified(feed.timestampMillis())
+            .body(feed.body());
+    }
+}
@@ -1,14 +1,25 @@
 package com.bustransport.route.controller;
 
+import com.bustransport.route.dto.request.IsochroneRequest;
 import com.bustransport.route.dto.request.OptimalPathRequest;
+import com.bustransport.route.dto.request.TravelTimeMatrixRequest;
+import com.bustransport.route.dto.response.IsochroneResponse;
 import com.bustransport.route.dto.response.OptimalPathResponse;
+import com.bustransport.route.service.IsochroneService;
 import com.bustransport.route.service.OptimalPathService;
+import com.bustransport.route.service.TravelTimeMatrixService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
 
 @RestController
 @RequestMapping("/paths")
@@ -17,6 +28,9 @@ import org.springframework.web.bind.annotation.*;
 public class PathController {
 
     private final OptimalPathService optimalPathService;
+    private final TravelTimeMatrixService travelTimeMatrixService;
+    private final IsochroneService isochroneService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping("/optimal")
     @Operation(summary = "Calculate optimal path between two points")
@@ -24,5 +38,31 @@ public class PathController {
             @Valid @RequestBody OptimalPathRequest request) {
         return ResponseEntity.ok(optimalPathService.calculateOptimalPath(request));
     }
-}
 
+    @PostMapping("/isochrone")
+    @Operation(summary = "Find the stops reachable within a travel time from a stop or point")
+    public ResponseEntity<IsochroneResponse> calculateIsochrone(@Valid @RequestBody IsochroneRequest request) {
+        return ResponseEntity.ok(isochroneService.calculateIsochrone(request));
+    }
+
+    @PostMapping(value = "/matrix", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    @Operation(summary = "Calculate travel times between many origins and destinations",
+               description = "Streams one JSON line per origin as soon as it is computed")
+    public ResponseEntity<StreamingResponseBody> calculateTravelTimeMatrix(
+            @Valid @RequestBody TravelTimeMatrixRequest request) {
+        // Validate before the response is committed so errors still get a status code
+        TravelTimeMatrixService.MatrixQuery query = travelTimeMatrixService.prepare(request);
+        StreamingResponseBody body = out -> travelTimeMatrixService.compute(query, row -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(row));
+                out.write('\n');
+                out.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .body(body);
+    }
+}
@@ -49,8 +49,10 @@ public class RouteController {
 
     @GetMapping("/search")
     @Operation(summary = "Search routes")
-    public ResponseEntity<List<RouteDTO>> searchRoutes(@RequestParam String query) {
-        return ResponseEntity.ok(routeService.searchRoutes(query));
+    public ResponseEntity<List<RouteDTO>> searchRoutes(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(routeService.searchRoutes(query, limit));
     }
 
     @GetMapping("/stop/{stopId}")
@@ -52,8 +52,10 @@ public class StopController {
 
     @GetMapping("/search")
     @Operation(summary = "Search stops")
-    public ResponseEntity<List<StopDTO>> searchStops(@RequestParam String query) {
-        return ResponseEntity.ok(stopService.searchStops(query));
+    public ResponseEntity<List<StopDTO>> searchStops(
+            @RequestParam String query,
+            @RequestParam(defaultValue = "20") int limit) {
+        return ResponseEntity.ok(stopService.searchStops(query, limit));
     }
 
     @GetMapping("/route/{routeId}")
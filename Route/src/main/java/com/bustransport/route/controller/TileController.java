@@ -0,0 +1,48 @@
+package com.bustransport.route.controller;
+
+import com.bustransport.route.tiles.VectorTileService;
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+
+@RestController
+@RequestMapping("/tiles")
+@RequiredArgsConstructor
+@Tag(name = "Tiles", description = "Mapbox Vector Tiles of the route network")
+public class TileController {
+
+    private static final MediaType MVT = MediaType.parseMediaType("application/vnd.mapbox-vector-tile");
+
+    private final VectorTileService vectorTileService;
+
+    @Value("${tiles.max-age-seconds:300}")
+    private int maxAgeSecs;
+
+    @GetMapping("/{z}/{x}/{y}.mvt")
+    @Operation(summary = "Get a vector tile with the 'routes' and 'stops' layers")
+    public ResponseEntity<byte[]> getTile(@PathVariable int z, @PathVariable int x, @PathVariable int y) {
+        if (!vectorTileService.isValid(z, x, y)) {
+            return ResponseEntity.notFound().build();
+        }
+        byte[] tile = vectorTileService.getTile(z, x, y);
+        CacheControl cacheControl = CacheControl.maxAge(Duration.ofSeconds(maxAgeSecs));
+        // Map clients treat 204 as an empty tile
+        if (tile.length == 0) {
+            return ResponseEntity.noContent().cacheControl(cacheControl).build();
+        }
+        return ResponseEntity.ok()
+            .contentType(MVT)
+            .cacheControl(cacheControl)
+            .body(tile);
+    }
+}
@@ -0,0 +1,22 @@
+package com.bustransport.route.dto.request;
+
+import com.bustransport.route.enums.CalendarExceptionType;
+import com.bustransport.route.enums.ServiceType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CalendarExceptionRequest {
+    private LocalDate serviceDate;
+    private ServiceType serviceType; // Either a service type...
+    private Long scheduleId;         // ...or a single schedule
+    private CalendarExceptionType exceptionType;
+    private String description;
+}
@@ -0,0 +1,38 @@
+package com.bustransport.route.dto.request;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IsochroneRequest {
+
+    // Option 1: start from a stop
+    private Long originStopId;
+
+    // Option 2: start from a coordinate
+    private BigDecimal lat;
+    private BigDecimal lon;
+
+    @NotNull
+    @Positive
+    private Integer maxDurationMinutes;
+
+    private LocalDateTime departureTime; // defaults to now
+    @Min(0)
+    private Integer maxTransfers;
+    private Integer maxWalkDistance; // in meters, to the first stop
+
+    private Boolean includePolygon; // concave hull of the reachable stops
+    private Double concavity; // higher is closer to the convex hull, defaults to 2
+}
@@ -1,11 +1,13 @@
 package com.bustransport.route.dto.request;
 
+import jakarta.validation.constraints.Min;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 
 @Data
 @Builder
@@ -23,9 +25,16 @@ public class OptimalPathRequest {
     private BigDecimal endLat;
     private BigDecimal endLon;
     
+    private LocalDateTime departureTime; // defaults to now
+    
     private String transportMode; // walking, transit, cycling
     private Boolean avoidTransfers;
+    @Min(0)
+    private Integer maxTransfers;
     private Integer maxWalkDistance; // in meters
     private Boolean wheelchairAccessible;
+
+    private Boolean includeCoordinates; // false returns encoded polylines only
+    private Integer polylinePrecision; // 5 (default) or 6
 }
 
@@ -0,0 +1,28 @@
+package com.bustransport.route.dto.request;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TravelTimeMatrixRequest {
+
+    @NotEmpty
+    private List<Long> originStopIds;
+    private List<Long> destinationStopIds; // all active stops when empty
+
+    private LocalDateTime departureTime; // defaults to now
+    @Min(0)
+    private Integer windowMinutes; // 0 (default) for a single departure time
+    @Min(0)
+    private Integer maxTransfers;
+}
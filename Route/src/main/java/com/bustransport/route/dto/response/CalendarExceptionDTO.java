@@ -0,0 +1,23 @@
+package com.bustransport.route.dto.response;
+
+import com.bustransport.route.enums.CalendarExceptionType;
+import com.bustransport.route.enums.ServiceType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class CalendarExceptionDTO {
+    private Long id;
+    private LocalDate serviceDate;
+    private ServiceType serviceType;
+    private Long scheduleId;
+    private CalendarExceptionType exceptionType;
+    private String description;
+}
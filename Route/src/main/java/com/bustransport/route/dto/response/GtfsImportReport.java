@@ -0,0 +1,30 @@
+package com.bustransport.route.dto.response;
+
+import com.bustransport.route.enums.GtfsImportMode;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GtfsImportReport {
+    private GtfsImportMode mode;
+    private int stopsRead;
+    private int stopsWritten;
+    private int stopsDeactivated;
+    private int routesRead;
+    private int routesWritten;
+    private int routesDeactivated;
+    private int routeStopsWritten;
+    private int tripsRead;
+    private long stopTimesRead;
+    private int tripsCarriedOver;
+    private int tripsRejected;
+    private int schedulesCreated;
+    private int schedulesDeactivated;
+    private long durationMs;
+    private long stopTimesPerSecond;
+}
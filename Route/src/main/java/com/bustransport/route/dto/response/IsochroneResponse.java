@@ -0,0 +1,37 @@
+package com.bustransport.route.dto.response;
+
+import com.bustransport.route.dto.response.OptimalPathResponse.Coordinate;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IsochroneResponse {
+    private LocalDateTime departureTime;
+    private Integer maxDurationMinutes;
+    private List<ReachableStop> stops; // earliest arrival first
+    private String encodedPolygon; // Google encoded closed ring, when requested
+    private List<Coordinate> polygon;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ReachableStop {
+        private Long stopId;
+        private String stopName;
+        private BigDecimal latitude;
+        private BigDecimal longitude;
+        private LocalDateTime arrivalTime;
+        private Integer durationMinutes;
+        private Integer transfers;
+    }
+}
@@ -1,11 +1,13 @@
 package com.bustransport.route.dto.response;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
 
 @Data
@@ -15,13 +17,18 @@ import java.util.List;
 public class OptimalPathResponse {
     private BigDecimal totalDistance; // in kilometers
     private Integer totalDuration; // in minutes
+    private LocalDateTime departureTime;
+    private LocalDateTime arrivalTime;
+    private Integer transfers;
     private List<PathSegment> segments;
-    private String mapPolyline;
+    private String mapPolyline; // Google encoded polyline of the whole journey
+    private Integer polylinePrecision; // 5 or 6 decimal places
     
     @Data
     @Builder
     @NoArgsConstructor
     @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class PathSegment {
         private String type; // walk, transit
         private String routeNumber;
@@ -30,8 +37,11 @@ public class OptimalPathResponse {
         private String toStopName;
         private BigDecimal distance;
         private Integer duration;
+        private LocalDateTime departureTime;
+        private LocalDateTime arrivalTime;
         private String instructions;
-        private List<Coordinate> path;
+        private String encodedPath; // Google encoded polyline of this segment
+        private List<Coordinate> path; // omitted when the request sets includeCoordinates=false
     }
     
     @Data
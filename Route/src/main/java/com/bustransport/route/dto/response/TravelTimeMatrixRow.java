@@ -0,0 +1,34 @@
+package com.bustransport.route.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * Travel times from one origin; unreachable destinations are left out
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TravelTimeMatrixRow {
+    private Long originStopId;
+    private List<Cell> destinations;
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Cell {
+        private Long stopId;
+        private Integer travelTimeSecs; // leaving at the departure time
+        private Integer transfers;
+        private Integer minTravelTimeSecs; // over the departure window
+        private Integer avgTravelTimeSecs;
+    }
+}
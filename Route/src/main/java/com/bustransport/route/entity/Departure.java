@@ -14,6 +14,9 @@ import java.time.LocalDateTime;
     @Index(name = "idx_departure_stop", columnList = "stop_id"),
     @Index(name = "idx_departure_time", columnList = "departureTime"),
     @Index(name = "idx_departure_status", columnList = "status")
+}, uniqueConstraints = {
+    @UniqueConstraint(name = "uk_departure_schedule_stop_time",
+                      columnNames = {"schedule_id", "stop_id", "departureTime"})
 })
 @Getter
 @Setter
@@ -58,6 +61,9 @@ public class Departure {
     @Column(columnDefinition = "TEXT")
     private String statusMessage;
 
+    @Column
+    private LocalDateTime reportedAt; // Last status report for this stop itself, null if planned or propagated
+
     @CreationTimestamp
     @Column(nullable = false, updatable = false)
     private LocalDateTime createdAt;
@@ -67,6 +67,7 @@ public class Route {
     private String polyline; // Encoded polyline for route geometry
 
     @OneToMany(mappedBy = "route", cascade = CascadeType.ALL, orphanRemoval = true)
+    @OrderBy("stopSequence ASC")
     @Builder.Default
     private List<RouteStop> routeStops = new ArrayList<>();
 
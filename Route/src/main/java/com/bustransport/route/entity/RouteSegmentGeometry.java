@@ -0,0 +1,48 @@
+package com.bustransport.route.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Street geometry a vehicle follows between two consecutive stops, stored as a
+ * {@link com.bustransport.route.util.BinaryPolyline}. Shared by every route
+ * serving the same stop pair.
+ */
+@Entity
+@Table(name = "route_segment_geometries", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"from_stop_id", "to_stop_id"})
+}, indexes = {
+    @Index(name = "idx_segment_geometry_to_stop", columnList = "to_stop_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RouteSegmentGeometry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "from_stop_id", nullable = false)
+    private Stop fromStop;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "to_stop_id", nullable = false)
+    private Stop toStop;
+
+    @Column(nullable = false)
+    private byte[] encodedPath;
+
+    @Column(nullable = false)
+    private Integer pointCount;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
@@ -0,0 +1,55 @@
+package com.bustransport.route.entity;
+
+import com.bustransport.route.enums.CalendarExceptionType;
+import com.bustransport.route.enums.ServiceType;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * A dated exception to the regular service calendar, in the spirit of GTFS
+ * calendar_dates. It applies either to every schedule of a service type
+ * (e.g. run the HOLIDAY service and drop the WEEKDAY service on a public
+ * holiday) or to a single schedule.
+ */
+@Entity
+@Table(name = "service_calendar_exceptions", indexes = {
+    @Index(name = "idx_calendar_exception_date", columnList = "serviceDate"),
+    @Index(name = "idx_calendar_exception_schedule", columnList = "schedule_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ServiceCalendarException {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private LocalDate serviceDate;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 20)
+    private ServiceType serviceType; // Set for service-wide exceptions
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "schedule_id")
+    private Schedule schedule; // Set for exceptions to a single schedule
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private CalendarExceptionType exceptionType;
+
+    @Column(length = 200)
+    private String description;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
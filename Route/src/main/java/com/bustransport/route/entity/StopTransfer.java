@@ -0,0 +1,47 @@
+package com.bustransport.route.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+
+import java.time.LocalDateTime;
+
+/**
+ * Walking transfer between two nearby stops. Transfers are symmetric, so each
+ * pair is stored once with the lower stop id first.
+ */
+@Entity
+@Table(name = "stop_transfers", uniqueConstraints = {
+    @UniqueConstraint(columnNames = {"from_stop_id", "to_stop_id"})
+}, indexes = {
+    @Index(name = "idx_stop_transfer_to_stop", columnList = "to_stop_id")
+})
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class StopTransfer {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "from_stop_id", nullable = false)
+    private Stop fromStop;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "to_stop_id", nullable = false)
+    private Stop toStop;
+
+    @Column(nullable = false)
+    private Integer distanceMeters;
+
+    @Column(nullable = false)
+    private Integer walkSeconds;
+
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+}
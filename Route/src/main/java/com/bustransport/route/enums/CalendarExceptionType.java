@@ -0,0 +1,6 @@
+package com.bustransport.route.enums;
+
+public enum CalendarExceptionType {
+    ADDED,   // Service runs on the date although the regular calendar says it does not
+    REMOVED  // Service does not run on the date although the regular calendar says it does
+}
@@ -0,0 +1,6 @@
+package com.bustransport.route.enums;
+
+public enum GtfsImportMode {
+    FULL,  // Write every row of the feed, replace the schedules of every route in it and deactivate what left the feed
+    DIFF   // Write only what changed since the last import and deactivate what left the feed
+}
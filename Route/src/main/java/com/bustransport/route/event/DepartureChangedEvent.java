@@ -0,0 +1,24 @@
+package com.bustransport.route.event;
+
+import com.bustransport.route.enums.DepartureStatus;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+
+/**
+ * Published when a departure is created or its real-time status changes.
+ * Carries everything needed to patch the in-memory timetable without a query.
+ */
+@Getter
+@AllArgsConstructor
+public class DepartureChangedEvent {
+    private final Long departureId;
+    private final Long routeId;
+    private final Long scheduleId;
+    private final Long stopId;
+    private final LocalDateTime departureTime;
+    private final DepartureStatus status;
+    private final Integer delayMinutes;
+    private final String statusMessage;
+}
@@ -0,0 +1,14 @@
+package com.bustransport.route.event;
+
+import com.bustransport.route.dto.response.RouteDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a route is created, updated or deactivated
+ */
+@Getter
+@AllArgsConstructor
+public class RouteChangedEvent {
+    private final RouteDTO route;
+}
@@ -0,0 +1,15 @@
+package com.bustransport.route.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Published when street geometries between stops were added
+ */
+@Getter
+@AllArgsConstructor
+public class SegmentGeometryChangedEvent {
+    private final Set<Long> fromStopIds;
+}
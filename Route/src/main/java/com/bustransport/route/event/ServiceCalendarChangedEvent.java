@@ -0,0 +1,16 @@
+package com.bustransport.route.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDate;
+
+/**
+ * Published when a calendar exception is added or removed, so everything
+ * derived from the calendar can refresh the affected service day.
+ */
+@Getter
+@AllArgsConstructor
+public class ServiceCalendarChangedEvent {
+    private final LocalDate serviceDate;
+}
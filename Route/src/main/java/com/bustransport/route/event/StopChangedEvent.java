@@ -0,0 +1,14 @@
+package com.bustransport.route.event;
+
+import com.bustransport.route.dto.response.StopDTO;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when a stop is created, updated or deactivated
+ */
+@Getter
+@AllArgsConstructor
+public class StopChangedEvent {
+    private final StopDTO stop;
+}
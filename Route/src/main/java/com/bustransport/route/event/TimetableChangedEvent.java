@@ -0,0 +1,15 @@
+package com.bustransport.route.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Published when the schedules of a route change, so the in-memory
+ * timetable can rebuild that route alone.
+ */
+@Getter
+@AllArgsConstructor
+public class TimetableChangedEvent {
+    private final Long routeId;
+    private final Long scheduleId; // null when departures changed but no schedule did
+}
@@ -0,0 +1,18 @@
+package com.bustransport.route.event;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Published when several departures of one trip change at once, e.g. when a
+ * reported delay is carried on to its later stops. Applied as one patch.
+ */
+@Getter
+@AllArgsConstructor
+public class TripDeparturesChangedEvent {
+    private final Long routeId;
+    private final String tripId;
+    private final List<DepartureChangedEvent> departures;
+}
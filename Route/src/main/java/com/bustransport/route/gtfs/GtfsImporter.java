@@ -0,0 +1,955 @@
+package com.bustransport.route.gtfs;
+
+import com.bustransport.route.cache.CacheInvalidator;
+import com.bustransport.route.calendar.ServiceCalendar;
+import com.bustransport.route.dto.response.GtfsImportReport;
+import com.bustransport.route.enums.CalendarExceptionType;
+import com.bustransport.route.enums.GtfsImportMode;
+import com.bustransport.route.enums.RouteType;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.search.SearchIndex;
+import com.bustransport.route.service.DepartureMaterializationService;
+import com.bustransport.route.spatial.StopSpatialIndex;
+import com.bustransport.route.spatial.WalkingTransferGraph;
+import com.bustransport.route.tiles.VectorTileService;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.GeneratedKeyHolder;
+import org.springframework.jdbc.support.KeyHolder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Imports a GTFS static feed into the stops, routes, route_stops and
+ * schedules tables with JDBC batches; departures are then generated from the
+ * schedules by {@link DepartureMaterializationService}.
+ *
+ * <p>Files are streamed row by row, so memory grows with the number of trips
+ * and routes but never with stop_times. stop_times is read twice: first for
+ * the start time and length of every trip, then for the stop times of the
+ * one trip per route that becomes its stop sequence (the one serving most
+ * stops). Trip start times are compressed into frequency-based schedules:
+ * every run of trips with a constant headway becomes one schedule, so the
+ * generated departures start exactly when the feed's trips do.
+ *
+ * <p>Services are mapped to WEEKDAY and/or WEEKEND from calendar.txt; the
+ * dates calendar_dates.txt adds or removes become calendar exceptions of the
+ * schedules they generate. Services only defined by calendar_dates.txt run as
+ * SPECIAL on exactly their dates. Trips starting after 24:00 run on the next
+ * day, so they are carried to the day after every date of their service.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class GtfsImporter {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int DAY_SECS = 24 * 3600;
+    private static final String NOTES = "Imported from GTFS";
+    private static final DateTimeFormatter GTFS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+    private static final FeedService DEFAULT_SERVICE = new FeedService(
+        EnumSet.range(DayOfWeek.MONDAY, DayOfWeek.FRIDAY), null, null, Set.of(), Set.of());
+
+    private static final CSVFormat CSV = CSVFormat.DEFAULT.builder()
+        .setHeader()
+        .setSkipHeaderRecord(true)
+        .setTrim(true)
+        .setIgnoreEmptyLines(true)
+        .build();
+
+    private static final String STOP_UPSERT_SQL =
+        "INSERT INTO stops (stop_code, name, latitude, longitude, stop_type, is_active, has_wheelchair_access, " +
+        "has_shelter, has_real_time_info, zone, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, 'REGULAR', true, ?, false, false, ?, ?, ?) " +
+        "ON CONFLICT (stop_code) DO UPDATE SET name = EXCLUDED.name, latitude = EXCLUDED.latitude, " +
+        "longitude = EXCLUDED.longitude, has_wheelchair_access = EXCLUDED.has_wheelchair_access, " +
+        "zone = EXCLUDED.zone, is_active = true, updated_at = EXCLUDED.updated_at " +
+        "WHERE (stops.name, stops.latitude, stops.longitude, stops.has_wheelchair_access, stops.zone, " +
+        "stops.is_active) IS DISTINCT FROM (EXCLUDED.name, EXCLUDED.latitude, EXCLUDED.longitude, " +
+        "EXCLUDED.has_wheelchair_access, EXCLUDED.zone, true)";
+
+    private static final String ROUTE_UPSERT_SQL =
+        "INSERT INTO routes (route_number, name, route_type, operator_id, start_stop_id, end_stop_id, " +
+        "estimated_duration, is_active, color, description, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, true, ?, ?, ?, ?) " +
+        "ON CONFLICT (route_number) DO UPDATE SET name = EXCLUDED.name, route_type = EXCLUDED.route_type, " +
+        "operator_id = EXCLUDED.operator_id, start_stop_id = EXCLUDED.start_stop_id, " +
+        "end_stop_id = EXCLUDED.end_stop_id, estimated_duration = EXCLUDED.estimated_duration, " +
+        "is_active = true, color = EXCLUDED.color, description = EXCLUDED.description, " +
+        "updated_at = EXCLUDED.updated_at " +
+        "WHERE (routes.name, routes.route_type, routes.operator_id, routes.start_stop_id, routes.end_stop_id, " +
+        "routes.estimated_duration, routes.is_active, routes.color, routes.description) IS DISTINCT FROM " +
+        "(EXCLUDED.name, EXCLUDED.route_type, EXCLUDED.operator_id, EXCLUDED.start_stop_id, " +
+        "EXCLUDED.end_stop_id, EXCLUDED.estimated_duration, true, EXCLUDED.color, EXCLUDED.description)";
+
+    private static final String ROUTE_STOP_INSERT_SQL =
+        "INSERT INTO route_stops (route_id, stop_id, stop_sequence, time_from_start, dwell_time, created_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final String SCHEDULE_INSERT_SQL =
+        "INSERT INTO schedules (route_id, service_type, start_time, end_time, frequency, first_departure, " +
+        "last_departure, valid_from, valid_until, is_active, notes, created_at, updated_at) " +
+        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, true, ?, ?, ?)";
+
+    private static final String EXCEPTION_INSERT_SQL =
+        "INSERT INTO service_calendar_exceptions (service_date, schedule_id, exception_type, description, " +
+        "created_at) VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_SCHEDULE_EXCEPTIONS_SQL =
+        "DELETE FROM service_calendar_exceptions WHERE schedule_id IN " +
+        "(SELECT id FROM schedules WHERE route_id = ? AND is_active = true)";
+
+    private static final String DEACTIVATE_SCHEDULES_SQL =
+        "UPDATE schedules SET is_active = false, updated_at = ? WHERE route_id = ? AND is_active = true";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ServiceCalendar serviceCalendar;
+    private final DepartureMaterializationService materializationService;
+    private final TimetableSnapshotService snapshotService;
+    private final StopSpatialIndex stopSpatialIndex;
+    private final WalkingTransferGraph transferGraph;
+    private final SearchIndex searchIndex;
+    private final VectorTileService vectorTileService;
+    private final CacheInvalidator cacheInvalidator;
+
+    /**
+     * A GTFS service: the days of the week it runs on within its validity
+     * range, and the dates calendar_dates.txt adds and removes
+     */
+    private record FeedService(Set<DayOfWeek> days, LocalDate validFrom, LocalDate validUntil,
+                               Set<LocalDate> added, Set<LocalDate> removed) {
+    }
+
+    /**
+     * Trips of a route that share service type, validity and dated exceptions
+     * form one group of schedules
+     */
+    private record ServiceKey(ServiceType serviceType, LocalDate validFrom, LocalDate validUntil,
+                              Set<LocalDate> added, Set<LocalDate> removed) {
+    }
+
+    /** Frequency-based schedule derived from a run of trips */
+    private record ScheduleRule(ServiceKey service, int firstSecs, int lastSecs, int frequency) {
+    }
+
+    private record PatternStop(int sequence, String stopCode, int arrivalSecs, int departureSecs) {
+    }
+
+    private static final class FeedRoute {
+        final String gtfsId;
+        String routeNumber;
+        String name;
+        RouteType routeType;
+        String agencyId;
+        String color;
+        String description;
+        String patternTrip;
+        int patternLength;
+        List<PatternStop> pattern = new ArrayList<>();
+        Long id;
+
+        FeedRoute(String gtfsId) {
+            this.gtfsId = gtfsId;
+        }
+    }
+
+    private static final class FeedTrip {
+        final FeedRoute route;
+        final String serviceId;
+        int stopCount;
+        int firstSequence = Integer.MAX_VALUE;
+        int firstSecs = -1;
+        List<int[]> frequencies; // {start, end, headway} from frequencies.txt
+
+        FeedTrip(FeedRoute route, String serviceId) {
+            this.route = route;
+            this.serviceId = serviceId;
+        }
+    }
+
+    /**
+     * Imports a GTFS zip. Only one import runs at a time.
+     */
+    public synchronized GtfsImportReport importFeed(Path feed, GtfsImportMode mode) throws IOException {
+        long start = System.currentTimeMillis();
+        GtfsImportReport report = GtfsImportReport.builder().mode(mode).build();
+        log.info("Importing GTFS feed {} in {} mode", feed.getFileName(), mode);
+
+        try (ZipFile zip = new ZipFile(feed.toFile())) {
+            Map<String, Long> stopIds = importStops(zip, mode, report);
+            Map<String, FeedRoute> routes = readRoutes(zip, report);
+            Map<String, FeedService> services = readServices(zip);
+            Map<String, FeedTrip> trips = readTrips(zip, routes, report);
+            readFrequencies(zip, trips);
+            scanStopTimes(zip, trips, report);
+            readPatterns(zip, trips);
+            importRoutes(routes.values(), stopIds, mode, report);
+            importSchedules(routes.values(), trips.values(), services, mode, report);
+        }
+
+        int dropped = materializationService.deleteDeactivated();
+        serviceCalendar.compile();
+        materializationService.materializeHorizon();
+        transferGraph.rebuild();
+        snapshotService.refresh();
+        stopSpatialIndex.load();
+        searchIndex.load();
+        vectorTileService.refresh();
+        cacheInvalidator.clearAll();
+
+        report.setDurationMs(System.currentTimeMillis() - start);
+        log.info("Imported GTFS feed {} in {} ms ({} departures of replaced schedules dropped): {}",
+            feed.getFileName(), report.getDurationMs(), dropped, report);
+        return report;
+    }
+
+    // Stops
+
+    private Map<String, Long> importStops(ZipFile zip, GtfsImportMode mode, GtfsImportReport report)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        Set<String> feedCodes = new HashSet<>();
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int written = 0;
+        try (CSVParser parser = open(zip, "stops.txt", true)) {
+            for (CSVRecord record : parser) {
+                String locationType = value(record, "location_type");
+                if (!locationType.isEmpty() && !locationType.equals("0")) {
+                    continue; // Stations, entrances and nodes are not boarding points
+                }
+                String code = truncate(value(record, "stop_id"), 50);
+                if (!feedCodes.add(code)) {
+                    continue;
+                }
+                String name = value(record, "stop_name");
+                batch.add(new Object[]{
+                    code,
+                    truncate(name.isEmpty() ? code : name, 200),
+                    coordinate(value(record, "stop_lat")),
+                    coordinate(value(record, "stop_lon")),
+                    "1".equals(value(record, "wheelchair_boarding")),
+                    emptyToNull(truncate(value(record, "zone_id"), 200)),
+                    now,
+                    now
+                });
+                if (batch.size() == BATCH_SIZE) {
+                    written += flush(STOP_UPSERT_SQL, batch);
+                }
+            }
+        }
+        written += flush(STOP_UPSERT_SQL, batch);
+        report.setStopsRead(feedCodes.size());
+        report.setStopsWritten(written);
+        logRate("stops", feedCodes.size(), start);
+
+        Map<String, Long> stopIds = new HashMap<>(feedCodes.size() * 2);
+        List<Object[]> missing = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, stop_code, is_active FROM stops", rs -> {
+            String code = rs.getString("stop_code");
+            if (feedCodes.contains(code)) {
+                stopIds.put(code, rs.getLong("id"));
+            } else if (rs.getBoolean("is_active")) {
+                missing.add(new Object[]{now, rs.getLong("id")});
+            }
+        });
+        if (!missing.isEmpty()) {
+            report.setStopsDeactivated(flush("UPDATE stops SET is_active = false, updated_at = ? WHERE id = ?",
+                missing));
+        }
+        return stopIds;
+    }
+
+    // Routes, services and trips
+
+    private Map<String, FeedRoute> readRoutes(ZipFile zip, GtfsImportReport report) throws IOException {
+        Map<String, FeedRoute> routes = new LinkedHashMap<>();
+        Map<String, Integer> shortNames = new HashMap<>();
+        try (CSVParser parser = open(zip, "routes.txt", true)) {
+            for (CSVRecord record : parser) {
+                FeedRoute route = new FeedRoute(value(record, "route_id"));
+                String shortName = value(record, "route_short_name");
+                String longName = value(record, "route_long_name");
+                route.routeNumber = shortName;
+                route.name = truncate(!longName.isEmpty() ? longName
+                    : !shortName.isEmpty() ? shortName : route.gtfsId, 200);
+                route.routeType = routeType(value(record, "route_type"));
+                route.agencyId = emptyToNull(truncate(value(record, "agency_id"), 100));
+                String color = value(record, "route_color");
+                route.color = color.isEmpty() ? null : "#" + truncate(color, 19);
+                route.description = emptyToNull(value(record, "route_desc"));
+                routes.put(route.gtfsId, route);
+                shortNames.merge(shortName, 1, Integer::sum);
+            }
+        }
+        // Short names are what riders see, but they are not unique across agencies
+        for (FeedRoute route : routes.values()) {
+            if (route.routeNumber.isEmpty() || shortNames.get(route.routeNumber) > 1) {
+                route.routeNumber = route.gtfsId;
+            }
+            route.routeNumber = truncate(route.routeNumber, 50);
+        }
+        report.setRoutesRead(routes.size());
+        return routes;
+    }
+
+    private Map<String, FeedService> readServices(ZipFile zip) throws IOException {
+        Map<String, FeedService> services = new HashMap<>();
+        try (CSVParser parser = open(zip, "calendar.txt", false)) {
+            if (parser != null) {
+                for (CSVRecord record : parser) {
+                    Set<DayOfWeek> days = EnumSet.noneOf(DayOfWeek.class);
+                    for (DayOfWeek day : DayOfWeek.values()) {
+                        if ("1".equals(value(record, day.name().toLowerCase()))) {
+                            days.add(day);
+                        }
+                    }
+                    services.put(value(record, "service_id"), new FeedService(days,
+                        date(value(record, "start_date")), date(value(record, "end_date")),
+                        new TreeSet<>(), new TreeSet<>()));
+                }
+            }
+        }
+
+        try (CSVParser parser = open(zip, "calendar_dates.txt", false)) {
+            if (parser != null) {
+                for (CSVRecord record : parser) {
+                    FeedService service = services.computeIfAbsent(value(record, "service_id"),
+                        id -> new FeedService(EnumSet.noneOf(DayOfWeek.class), null, null,
+                            new TreeSet<>(), new TreeSet<>()));
+                    LocalDate date = date(value(record, "date"));
+                    switch (value(record, "exception_type")) {
+                        case "1" -> service.added().add(date);
+                        case "2" -> service.removed().add(date);
+                        default -> {
+                        }
+                    }
+                }
+            }
+        }
+
+        // Services only defined by dated additions are valid from their first to their last date
+        services.replaceAll((id, service) -> service.validFrom() != null || service.added().isEmpty() ? service
+            : new FeedService(service.days(), ((TreeSet<LocalDate>) service.added()).first(),
+                ((TreeSet<LocalDate>) service.added()).last(), service.added(), service.removed()));
+        return services;
+    }
+
+    private Map<String, FeedTrip> readTrips(ZipFile zip, Map<String, FeedRoute> routes, GtfsImportReport report)
+            throws IOException {
+        Map<String, FeedTrip> trips = new HashMap<>();
+        Map<String, String> serviceIds = new HashMap<>();
+        try (CSVParser parser = open(zip, "trips.txt", true)) {
+            for (CSVRecord record : parser) {
+                FeedRoute route = routes.get(value(record, "route_id"));
+                if (route == null) {
+                    continue;
+                }
+                String serviceId = serviceIds.computeIfAbsent(value(record, "service_id"), id -> id);
+                trips.put(value(record, "trip_id"), new FeedTrip(route, serviceId));
+            }
+        }
+        report.setTripsRead(trips.size());
+        return trips;
+    }
+
+    private void readFrequencies(ZipFile zip, Map<String, FeedTrip> trips) throws IOException {
+        try (CSVParser parser = open(zip, "frequencies.txt", false)) {
+            if (parser == null) {
+                return;
+            }
+            for (CSVRecord record : parser) {
+                FeedTrip trip = trips.get(value(record, "trip_id"));
+                int headway = Integer.parseInt(value(record, "headway_secs"));
+                if (trip == null || headway <= 0) {
+                    continue;
+                }
+                if (trip.frequencies == null) {
+                    trip.frequencies = new ArrayList<>(2);
+                }
+                trip.frequencies.add(new int[]{
+                    parseTime(value(record, "start_time")), parseTime(value(record, "end_time")), headway});
+            }
+        }
+    }
+
+    // Stop times
+
+    /**
+     * First pass over stop_times: the start time and number of stops of every
+     * trip, which picks the trip that defines each route's stop sequence.
+     */
+    private void scanStopTimes(ZipFile zip, Map<String, FeedTrip> trips, GtfsImportReport report)
+            throws IOException {
+        long start = System.currentTimeMillis();
+        long rows = 0;
+        try (CSVParser parser = open(zip, "stop_times.txt", true)) {
+            for (CSVRecord record : parser) {
+                rows++;
+                FeedTrip trip = trips.get(value(record, "trip_id"));
+                if (trip == null) {
+                    continue;
+                }
+                trip.stopCount++;
+                int sequence = Integer.parseInt(value(record, "stop_sequence"));
+                if (sequence < trip.firstSequence) {
+                    String time = value(record, "departure_time");
+                    trip.firstSequence = sequence;
+                    trip.firstSecs = parseTime(time.isEmpty() ? value(record, "arrival_time") : time);
+                }
+            }
+        }
+        report.setStopTimesRead(rows);
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        report.setStopTimesPerSecond(rows * 1000 / elapsed);
+        logRate("stop_times", rows, start);
+
+        trips.forEach((tripId, trip) -> {
+            FeedRoute route = trip.route;
+            if (trip.stopCount == 0) {
+                return;
+            }
+            if (trip.stopCount > route.patternLength
+                    || (trip.stopCount == route.patternLength && tripId.compareTo(route.patternTrip) < 0)) {
+                // Ties are broken by trip id so repeated imports pick the same trip
+                route.patternTrip = tripId;
+                route.patternLength = trip.stopCount;
+            }
+        });
+    }
+
+    /**
+     * Second pass over stop_times: keeps only the stop times of each route's
+     * pattern trip.
+     */
+    private void readPatterns(ZipFile zip, Map<String, FeedTrip> trips) throws IOException {
+        try (CSVParser parser = open(zip, "stop_times.txt", true)) {
+            for (CSVRecord record : parser) {
+                String tripId = value(record, "trip_id");
+                FeedTrip trip = trips.get(tripId);
+                if (trip == null || !tripId.equals(trip.route.patternTrip)) {
+                    continue;
+                }
+                trip.route.pattern.add(new PatternStop(
+                    Integer.parseInt(value(record, "stop_sequence")),
+                    truncate(value(record, "stop_id"), 50),
+                    parseTime(value(record, "arrival_time")),
+                    parseTime(value(record, "departure_time"))));
+            }
+        }
+    }
+
+    // Routes and route stops
+
+    private void importRoutes(Iterable<FeedRoute> routes, Map<String, Long> stopIds, GtfsImportMode mode,
+                              GtfsImportReport report) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Map<FeedRoute, List<Object[]>> routeStops = new LinkedHashMap<>();
+        List<Object[]> batch = new ArrayList<>(BATCH_SIZE);
+        int written = 0;
+        for (FeedRoute route : routes) {
+            List<Object[]> stops = resolvePattern(route, stopIds);
+            if (stops.size() < 2) {
+                log.debug("Skipping GTFS route {}: fewer than two known stops", route.gtfsId);
+                continue;
+            }
+            routeStops.put(route, stops);
+            int durationSecs = ((Time) stops.get(stops.size() - 1)[1]).toLocalTime().toSecondOfDay();
+            batch.add(new Object[]{
+                route.routeNumber, route.name, route.routeType.name(), route.agencyId,
+                stops.get(0)[0], stops.get(stops.size() - 1)[0], durationSecs / 60,
+                route.color, route.description, now, now
+            });
+            if (batch.size() == BATCH_SIZE) {
+                written += flush(ROUTE_UPSERT_SQL, batch);
+            }
+        }
+        written += flush(ROUTE_UPSERT_SQL, batch);
+        report.setRoutesWritten(written);
+
+        Map<String, FeedRoute> byNumber = new HashMap<>();
+        routeStops.keySet().forEach(route -> byNumber.put(route.routeNumber, route));
+        List<Long> missing = new ArrayList<>();
+        jdbcTemplate.query("SELECT id, route_number, is_active FROM routes", rs -> {
+            FeedRoute route = byNumber.get(rs.getString("route_number"));
+            if (route != null) {
+                route.id = rs.getLong("id");
+            } else if (rs.getBoolean("is_active")) {
+                missing.add(rs.getLong("id"));
+            }
+        });
+        for (Long routeId : missing) {
+            report.setSchedulesDeactivated(report.getSchedulesDeactivated() + transactionTemplate.execute(s -> {
+                jdbcTemplate.update("UPDATE routes SET is_active = false, updated_at = ? WHERE id = ?",
+                    now, routeId);
+                return jdbcTemplate.update(DEACTIVATE_SCHEDULES_SQL, now, routeId);
+            }));
+        }
+        report.setRoutesDeactivated(missing.size());
+
+        // Stop sequences are replaced per route, and only when they changed
+        Map<Long, StringBuilder> existing = new HashMap<>();
+        jdbcTemplate.query("SELECT route_id, stop_id, time_from_start, dwell_time FROM route_stops " +
+                           "ORDER BY route_id, stop_sequence", rs -> {
+            Time time = rs.getTime("time_from_start");
+            existing.computeIfAbsent(rs.getLong("route_id"), id -> new StringBuilder())
+                .append(signature(rs.getLong("stop_id"), time, rs.getInt("dwell_time")));
+        });
+        int routeStopsWritten = 0;
+        for (Map.Entry<FeedRoute, List<Object[]>> entry : routeStops.entrySet()) {
+            Long routeId = entry.getKey().id;
+            StringBuilder signature = new StringBuilder();
+            List<Object[]> rows = new ArrayList<>(entry.getValue().size());
+            for (int i = 0; i < entry.getValue().size(); i++) {
+                Object[] stop = entry.getValue().get(i);
+                signature.append(signature((Long) stop[0], (Time) stop[1], (Integer) stop[2]));
+                rows.add(new Object[]{routeId, stop[0], i + 1, stop[1], stop[2], now});
+            }
+            StringBuilder current = existing.get(routeId);
+            if (mode == GtfsImportMode.DIFF && current != null && current.toString().contentEquals(signature)) {
+                continue;
+            }
+            routeStopsWritten += transactionTemplate.execute(s -> {
+                jdbcTemplate.update("DELETE FROM route_stops WHERE route_id = ?", routeId);
+                jdbcTemplate.batchUpdate(ROUTE_STOP_INSERT_SQL, rows);
+                return rows.size();
+            });
+        }
+        report.setRouteStopsWritten(routeStopsWritten);
+    }
+
+    /**
+     * Turns the pattern trip of a route into {stopId, timeFromStart, dwellSecs}
+     * rows, interpolating stop times the feed leaves blank.
+     */
+    private List<Object[]> resolvePattern(FeedRoute route, Map<String, Long> stopIds) {
+        List<PatternStop> pattern = route.pattern;
+        pattern.sort(Comparator.comparingInt(PatternStop::sequence));
+        int[] arrivals = new int[pattern.size()];
+        int[] departures = new int[pattern.size()];
+        for (int i = 0; i < pattern.size(); i++) {
+            PatternStop stop = pattern.get(i);
+            arrivals[i] = stop.arrivalSecs() >= 0 ? stop.arrivalSecs() : stop.departureSecs();
+            departures[i] = stop.departureSecs() >= 0 ? stop.departureSecs() : stop.arrivalSecs();
+        }
+        interpolate(arrivals);
+        interpolate(departures);
+
+        List<Object[]> stops = new ArrayList<>(pattern.size());
+        int tripStart = -1;
+        for (int i = 0; i < pattern.size(); i++) {
+            Long stopId = stopIds.get(pattern.get(i).stopCode());
+            if (stopId == null || arrivals[i] < 0) {
+                continue;
+            }
+            if (tripStart < 0) {
+                tripStart = departures[i];
+            }
+            int fromStart = Math.min(Math.max(arrivals[i] - tripStart, 0), DAY_SECS - 1);
+            int dwell = stops.isEmpty() ? 0 : Math.max(departures[i] - arrivals[i], 0);
+            stops.add(new Object[]{stopId, Time.valueOf(LocalTime.ofSecondOfDay(fromStart)), dwell});
+        }
+        return stops;
+    }
+
+    // Schedules
+
+    private void importSchedules(Iterable<FeedRoute> routes, Iterable<FeedTrip> trips,
+                                 Map<String, FeedService> services, GtfsImportMode mode,
+                                 GtfsImportReport report) {
+        Map<String, List<ServiceKey>> keysByService = new HashMap<>();
+        Map<String, ServiceKey> nextDayKeysByService = new HashMap<>();
+        // One instance per distinct key, so trips are grouped without hashing date sets
+        Map<ServiceKey, ServiceKey> canonicalKeys = new HashMap<>();
+        Map<FeedRoute, Map<ServiceKey, TreeSet<Integer>>> starts = new HashMap<>();
+        int carried = 0;
+        int rejected = 0;
+        for (FeedTrip trip : trips) {
+            if (trip.route.id == null || (trip.firstSecs < 0 && trip.frequencies == null)) {
+                continue;
+            }
+            FeedService service = services.getOrDefault(trip.serviceId, DEFAULT_SERVICE);
+            List<ServiceKey> keys = keysByService.computeIfAbsent(trip.serviceId, id ->
+                serviceKeys(service).stream().map(key -> canonicalKeys.computeIfAbsent(key, k -> k)).toList());
+            if (!nextDayKeysByService.containsKey(trip.serviceId)) {
+                ServiceKey nextDay = nextDayKey(service);
+                nextDayKeysByService.put(trip.serviceId,
+                    nextDay != null ? canonicalKeys.computeIfAbsent(nextDay, k -> k) : null);
+            }
+            ServiceKey nextDayKey = nextDayKeysByService.get(trip.serviceId);
+            Map<ServiceKey, TreeSet<Integer>> routeStarts = starts.computeIfAbsent(trip.route,
+                r -> new IdentityHashMap<>());
+
+            List<Integer> tripStarts = new ArrayList<>();
+            if (trip.frequencies == null) {
+                tripStarts.add(trip.firstSecs);
+            } else {
+                for (int[] frequency : trip.frequencies) {
+                    for (int t = frequency[0]; t < frequency[1]; t += frequency[2]) {
+                        tripStarts.add(t);
+                    }
+                }
+            }
+            for (int t : tripStarts) {
+                if (t < DAY_SECS) {
+                    for (ServiceKey key : keys) {
+                        routeStarts.computeIfAbsent(key, k -> new TreeSet<>()).add(t);
+                    }
+                } else if (t < 2 * DAY_SECS && nextDayKey != null) {
+                    // A service that never runs has no next day to carry the trip to
+                    if (!nextDayKey.added().isEmpty()) {
+                        routeStarts.computeIfAbsent(nextDayKey, k -> new TreeSet<>()).add(t - DAY_SECS);
+                        carried++;
+                    }
+                } else {
+                    rejected++;
+                }
+            }
+        }
+        if (carried > 0) {
+            log.info("GTFS import: {} trips starting after 24:00 carried to the next day", carried);
+        }
+        if (rejected > 0) {
+            log.warn("GTFS import: rejected {} trips starting after 24:00 of a service without dates, " +
+                "or after 48:00", rejected);
+        }
+        report.setTripsCarriedOver(carried);
+        report.setTripsRejected(rejected);
+
+        Map<Long, Set<LocalDate>> existingAdded = new HashMap<>();
+        Map<Long, Set<LocalDate>> existingRemoved = new HashMap<>();
+        jdbcTemplate.query("SELECT e.schedule_id, e.service_date, e.exception_type " +
+                           "FROM service_calendar_exceptions e JOIN schedules s ON s.id = e.schedule_id " +
+                           "WHERE s.is_active = true", rs -> {
+            Map<Long, Set<LocalDate>> dates = CalendarExceptionType.ADDED.name().equals(rs.getString("exception_type"))
+                ? existingAdded : existingRemoved;
+            dates.computeIfAbsent(rs.getLong("schedule_id"), id -> new TreeSet<>())
+                .add(rs.getDate("service_date").toLocalDate());
+        });
+        Map<Long, Set<ScheduleRule>> existing = new HashMap<>();
+        jdbcTemplate.query("SELECT id, route_id, service_type, first_departure, last_departure, frequency, " +
+                           "valid_from, valid_until FROM schedules WHERE is_active = true", rs -> {
+            long id = rs.getLong("id");
+            Date validFrom = rs.getDate("valid_from");
+            Date validUntil = rs.getDate("valid_until");
+            ServiceKey service = new ServiceKey(ServiceType.valueOf(rs.getString("service_type")),
+                validFrom != null ? validFrom.toLocalDate() : null,
+                validUntil != null ? validUntil.toLocalDate() : null,
+                existingAdded.getOrDefault(id, Set.of()), existingRemoved.getOrDefault(id, Set.of()));
+            existing.computeIfAbsent(rs.getLong("route_id"), routeId -> new HashSet<>()).add(new ScheduleRule(
+                service,
+                rs.getTime("first_departure").toLocalTime().toSecondOfDay(),
+                rs.getTime("last_departure").toLocalTime().toSecondOfDay(),
+                rs.getInt("frequency")));
+        });
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        int created = 0;
+        int deactivated = 0;
+        for (FeedRoute route : routes) {
+            if (route.id == null) {
+                continue;
+            }
+            Set<ScheduleRule> rules = new HashSet<>();
+            starts.getOrDefault(route, Map.of()).forEach((key, times) -> rules.addAll(compress(key, times)));
+            if (mode == GtfsImportMode.DIFF && rules.equals(existing.getOrDefault(route.id, Set.of()))) {
+                continue;
+            }
+            List<ScheduleRule> ordered = new ArrayList<>(rules);
+            deactivated += Objects.requireNonNull(transactionTemplate.execute(s -> {
+                jdbcTemplate.update(DELETE_SCHEDULE_EXCEPTIONS_SQL, route.id);
+                int count = jdbcTemplate.update(DEACTIVATE_SCHEDULES_SQL, now, route.id);
+                List<Object[]> exceptions = new ArrayList<>();
+                for (int from = 0; from < ordered.size(); from += BATCH_SIZE) {
+                    List<ScheduleRule> chunk = ordered.subList(from, Math.min(from + BATCH_SIZE, ordered.size()));
+                    List<Long> scheduleIds = insertSchedules(route.id, chunk, now);
+                    for (int i = 0; i < chunk.size(); i++) {
+                        ServiceKey service = chunk.get(i).service();
+                        for (LocalDate date : service.added()) {
+                            exceptions.add(new Object[]{Date.valueOf(date), scheduleIds.get(i),
+                                CalendarExceptionType.ADDED.name(), NOTES, now});
+                        }
+                        for (LocalDate date : service.removed()) {
+                            exceptions.add(new Object[]{Date.valueOf(date), scheduleIds.get(i),
+                                CalendarExceptionType.REMOVED.name(), NOTES, now});
+                        }
+                    }
+                }
+                for (int from = 0; from < exceptions.size(); from += BATCH_SIZE) {
+                    jdbcTemplate.batchUpdate(EXCEPTION_INSERT_SQL,
+                        exceptions.subList(from, Math.min(from + BATCH_SIZE, exceptions.size())));
+                }
+                return count;
+            }));
+            created += ordered.size();
+        }
+        report.setSchedulesCreated(created);
+        report.setSchedulesDeactivated(report.getSchedulesDeactivated() + deactivated);
+    }
+
+    /**
+     * @return the ids of the inserted schedules, in the order of {@code rules}
+     */
+    private List<Long> insertSchedules(Long routeId, List<ScheduleRule> rules, Timestamp now) {
+        KeyHolder keys = new GeneratedKeyHolder();
+        jdbcTemplate.batchUpdate(
+            connection -> connection.prepareStatement(SCHEDULE_INSERT_SQL, new String[]{"id"}),
+            new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ScheduleRule rule = rules.get(i);
+                    ServiceKey service = rule.service();
+                    new ArgumentPreparedStatementSetter(new Object[]{
+                        routeId, service.serviceType().name(),
+                        Time.valueOf(LocalTime.ofSecondOfDay(rule.firstSecs())),
+                        Time.valueOf(LocalTime.ofSecondOfDay(rule.lastSecs())),
+                        rule.frequency(),
+                        Time.valueOf(LocalTime.ofSecondOfDay(rule.firstSecs())),
+                        Time.valueOf(LocalTime.ofSecondOfDay(rule.lastSecs())),
+                        service.validFrom() != null ? Date.valueOf(service.validFrom()) : null,
+                        service.validUntil() != null ? Date.valueOf(service.validUntil()) : null,
+                        NOTES, now, now}).setValues(ps);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return rules.size();
+                }
+            },
+            keys);
+        return keys.getKeyList().stream().map(key -> ((Number) key.get("id")).longValue()).toList();
+    }
+
+    /**
+     * The schedule groups of a service's trips on the days it runs. Days of
+     * the week map to WEEKDAY and WEEKEND; an added date goes to the group of
+     * its own day when the service has one. A service without regular days
+     * runs as SPECIAL on exactly its added dates.
+     */
+    private static List<ServiceKey> serviceKeys(FeedService service) {
+        Set<ServiceType> serviceTypes = EnumSet.noneOf(ServiceType.class);
+        service.days().forEach(day -> serviceTypes.add(serviceType(day)));
+        if (serviceTypes.isEmpty()) {
+            return service.added().isEmpty() ? List.of() : List.of(new ServiceKey(ServiceType.SPECIAL,
+                service.validFrom(), service.validUntil(), service.added(), Set.of()));
+        }
+        ServiceType fallback = serviceTypes.iterator().next();
+        List<ServiceKey> keys = new ArrayList<>(serviceTypes.size());
+        for (ServiceType serviceType : serviceTypes) {
+            Set<LocalDate> added = new TreeSet<>();
+            for (LocalDate date : service.added()) {
+                ServiceType own = serviceType(date.getDayOfWeek());
+                if ((serviceTypes.contains(own) ? own : fallback) == serviceType) {
+                    added.add(date);
+                }
+            }
+            keys.add(new ServiceKey(serviceType, service.validFrom(), service.validUntil(), added,
+                service.removed()));
+        }
+        return keys;
+    }
+
+    /**
+     * The schedule group of a service's trips starting after 24:00: SPECIAL
+     * on the day after every date the service runs
+     *
+     * @return the group, or null for a service without a validity range
+     */
+    private static ServiceKey nextDayKey(FeedService service) {
+        if (service.validFrom() == null || service.validUntil() == null) {
+            return null;
+        }
+        TreeSet<LocalDate> dates = new TreeSet<>();
+        for (LocalDate date = service.validFrom(); !date.isAfter(service.validUntil()); date = date.plusDays(1)) {
+            if (service.days().contains(date.getDayOfWeek()) && !service.removed().contains(date)) {
+                dates.add(date.plusDays(1));
+            }
+        }
+        service.added().forEach(date -> dates.add(date.plusDays(1)));
+        return dates.isEmpty()
+            ? new ServiceKey(ServiceType.SPECIAL, null, null, Set.of(), Set.of())
+            : new ServiceKey(ServiceType.SPECIAL, dates.first(), dates.last(), dates, Set.of());
+    }
+
+    /**
+     * Splits sorted trip start times into runs with a constant whole-minute
+     * headway; a start that fits no run becomes a single-trip schedule.
+     */
+    private static List<ScheduleRule> compress(ServiceKey key, TreeSet<Integer> times) {
+        int[] starts = times.stream().mapToInt(Integer::intValue).toArray();
+        List<ScheduleRule> rules = new ArrayList<>();
+        int i = 0;
+        while (i < starts.length) {
+            int j = i;
+            int headway = i + 1 < starts.length ? starts[i + 1] - starts[i] : 0;
+            if (headway > 0 && headway % 60 == 0) {
+                while (j + 1 < starts.length && starts[j + 1] - starts[j] == headway) {
+                    j++;
+                }
+            }
+            int frequency = j > i ? headway / 60 : 60;
+            rules.add(new ScheduleRule(key, starts[i], starts[j], frequency));
+            i = j + 1;
+        }
+        return rules;
+    }
+
+    // Helpers
+
+    private CSVParser open(ZipFile zip, String name, boolean required) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        if (entry == null) {
+            if (required) {
+                throw new IllegalArgumentException("GTFS feed has no " + name);
+            }
+            return null;
+        }
+        Reader reader = new BufferedReader(
+            new InputStreamReader(zip.getInputStream(entry), StandardCharsets.UTF_8), 1 << 16);
+        // Skip a UTF-8 byte order mark, which would otherwise end up in the first header name
+        reader.mark(1);
+        if (reader.read() != '\uFEFF') {
+            reader.reset();
+        }
+        return CSV.parse(reader);
+    }
+
+    private int flush(String sql, List<Object[]> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        int[] results = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(sql, batch));
+        batch.clear();
+        int written = 0;
+        for (int result : Objects.requireNonNull(results)) {
+            // The driver may report SUCCESS_NO_INFO (-2) for rewritten batches
+            written += result == 0 ? 0 : 1;
+        }
+        return written;
+    }
+
+    private static void logRate(String file, long rows, long start) {
+        long elapsed = Math.max(1, System.currentTimeMillis() - start);
+        log.info("GTFS import: {} {} rows in {} ms ({} rows/s)", rows, file, elapsed, rows * 1000 / elapsed);
+    }
+
+    private static String value(CSVRecord record, String column) {
+        return record.isSet(column) ? record.get(column) : "";
+    }
+
+    private static String truncate(String value, int maxLength) {
+        return value.length() > maxLength ? value.substring(0, maxLength) : value;
+    }
+
+    private static String emptyToNull(String value) {
+        return value.isEmpty() ? null : value;
+    }
+
+    private static BigDecimal coordinate(String value) {
+        return new BigDecimal(value).setScale(7, RoundingMode.HALF_UP);
+    }
+
+    private static LocalDate date(String value) {
+        return value.isEmpty() ? null : LocalDate.parse(value, GTFS_DATE);
+    }
+
+    /**
+     * Parses a GTFS time (H:MM:SS, may exceed 24:00:00) into seconds, or -1
+     * if blank
+     */
+    static int parseTime(String value) {
+        if (value.isEmpty()) {
+            return -1;
+        }
+        int first = value.indexOf(':');
+        int second = value.indexOf(':', first + 1);
+        return Integer.parseInt(value.substring(0, first)) * 3600
+            + Integer.parseInt(value.substring(first + 1, second)) * 60
+            + Integer.parseInt(value.substring(second + 1));
+    }
+
+    /**
+     * Fills -1 entries by linear interpolation between their known neighbours
+     */
+    private static void interpolate(int[] times) {
+        int previous = -1;
+        for (int i = 0; i < times.length; i++) {
+            if (times[i] < 0) {
+                continue;
+            }
+            if (previous >= 0 && i - previous > 1) {
+                for (int k = previous + 1; k < i; k++) {
+                    times[k] = times[previous] + (times[i] - times[previous]) * (k - previous) / (i - previous);
+                }
+            }
+            previous = i;
+        }
+    }
+
+    private static String signature(long stopId, Time timeFromStart, int dwellSecs) {
+        return stopId + "@" + (timeFromStart != null ? timeFromStart.toLocalTime().toSecondOfDay() : -1)
+            + "@" + dwellSecs + ";";
+    }
+
+    private static ServiceType serviceType(DayOfWeek day) {
+        return day == DayOfWeek.SATURDAY || day == DayOfWeek.SUNDAY ? ServiceType.WEEKEND : ServiceType.WEEKDAY;
+    }
+
+    /**
+     * Maps basic and extended GTFS route types onto the route types used here
+     */
+    private static RouteType routeType(String value) {
+        int type = value.isEmpty() ? 3 : Integer.parseInt(value);
+        if (type == 0 || (type >= 900 && type < 1000)) {
+            return RouteType.TRAM;
+        }
+        if (type == 1 || (type >= 400 && type < 500)) {
+            return RouteType.METRO;
+        }
+        if (type == 2 || (type >= 100 && type < 200)) {
+            return RouteType.TRAIN;
+        }
+        return RouteType.BUS;
+    }
+}
@@ -0,0 +1,16 @@
+package com.bustransport.route.mapper;
+
+import com.bustransport.route.dto.response.CalendarExceptionDTO;
+import com.bustransport.route.entity.ServiceCalendarException;
+import org.mapstruct.*;
+
+import java.util.List;
+
+@Mapper(componentModel = "spring")
+public interface CalendarExceptionMapper {
+
+    @Mapping(target = "scheduleId", source = "schedule.id")
+    CalendarExceptionDTO toDTO(ServiceCalendarException exception);
+
+    List<CalendarExceptionDTO> toDTOList(List<ServiceCalendarException> exceptions);
+}
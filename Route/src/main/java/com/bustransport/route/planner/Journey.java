@@ -0,0 +1,23 @@
+package com.bustransport.route.planner;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+public class Journey {
+
+    private final int departureSecs;
+    private final int arrivalSecs;
+    private final List<JourneyLeg> legs;
+
+    public int getTransfers() {
+        return Math.max(0, (int) legs.stream().filter(JourneyLeg::isTransit).count() - 1);
+    }
+
+    public int getDurationSecs() {
+        return arrivalSecs - departureSecs;
+    }
+}
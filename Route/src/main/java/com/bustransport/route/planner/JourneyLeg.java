@@ -0,0 +1,42 @@
+package com.bustransport.route.planner;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * One leg of a planned journey. Stop, pattern and trip values are indices into
+ * the {@link com.bustransport.route.timetable.TimetableSnapshot} the journey was planned on.
+ */
+@Getter
+@AllArgsConstructor
+public class JourneyLeg {
+
+    public enum Type {
+        ACCESS,     // Walk from the origin to the first stop
+        TRANSIT,    // Ride a trip between two stops
+        TRANSFER,   // Walk between two stops
+        EGRESS      // Walk from the last stop to the destination
+    }
+
+    private final Type type;
+    private final int fromStop;   // -1 for the origin point
+    private final int toStop;     // -1 for the destination point
+    private final int departureSecs;
+    private final int arrivalSecs;
+    private final int pattern;    // -1 for walking legs
+    private final int trip;
+    private final int boardPosition;
+    private final int alightPosition;
+
+    static JourneyLeg walk(Type type, int fromStop, int toStop, int departureSecs, int arrivalSecs) {
+        return new JourneyLeg(type, fromStop, toStop, departureSecs, arrivalSecs, -1, -1, -1, -1);
+    }
+
+    public boolean isTransit() {
+        return type == Type.TRANSIT;
+    }
+
+    public int getDurationSecs() {
+        return arrivalSecs - departureSecs;
+    }
+}
@@ -0,0 +1,149 @@
+package com.bustransport.route.planner;
+
+import com.bustransport.route.timetable.TimetableSnapshot;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Round-based public transit router (RAPTOR) over a {@link TimetableSnapshot}.
+ * Each round extends the journeys of the previous round by one more trip,
+ * followed by walking transfers, so round k yields the earliest arrivals
+ * achievable with k - 1 transfers.
+ */
+@Component
+@Slf4j
+public class RaptorPlanner {
+
+    @Value("${planner.max-transfers:4}")
+    private int maxTransfers;
+
+    /**
+     * Plans the earliest-arrival journey between sets of candidate stops.
+     *
+     * @param originStops     stop indices the traveller can start from
+     * @param accessSecs      walking time from the origin to each origin stop
+     * @param targetStops     stop indices the traveller can finish at
+     * @param egressSecs      walking time from each target stop to the destination
+     * @param departureSecs   departure time in seconds after midnight of the service day
+     * @param transferLimit   maximum number of transfers, or null for the configured default
+     */
+    public Optional<Journey> plan(TimetableSnapshot timetable,
+                                  int[] originStops, int[] accessSecs,
+                                  int[] targetStops, int[] egressSecs,
+                                  int departureSecs, Integer transferLimit) {
+        if (originStops.length == 0 || targetStops.length == 0) {
+            return Optional.empty();
+        }
+        int transfers = transfers(transferLimit);
+        long start = System.nanoTime();
+        Optional<Journey> journey = new RaptorSearch(timetable, transfers + 1)
+            .withTargets(targetStops, egressSecs)
+            .run(originStops, accessSecs, departureSecs)
+            .bestJourney();
+        log.debug("RAPTOR search over {} stops finished in {} us", timetable.stopCount(),
+            (System.nanoTime() - start) / 1000);
+        return journey;
+    }
+
+    /**
+     * One-to-many range search: travel times from one origin to every target
+     * for each departure minute of a window, in a single pass over the
+     * timetable. Departures are processed latest first and each search reuses
+     * the labels of the previous one, so later minutes cost little.
+     *
+     * @param departureSecs   start of the window in seconds after midnight of the service day
+     * @param windowSecs      length of the window, 0 for a single departure time
+     * @param stepSecs        spacing of the sampled departure times
+     * @param transferLimit   maximum number of transfers, or null for the configured default
+     */
+    public TravelTimeProfile profile(TimetableSnapshot timetable,
+                                     int[] originStops, int[] accessSecs, int[] targetStops,
+                                     int departureSecs, int windowSecs, int stepSecs, Integer transferLimit) {
+        int transfers = transfers(transferLimit);
+        int[] travelSecs = new int[targetStops.length];
+        int[] tripCounts = new int[targetStops.length];
+        int[] minTravelSecs = new int[targetStops.length];
+        long[] sumTravelSecs = new long[targetStops.length];
+        int[] reachedCount = new int[targetStops.length];
+        Arrays.fill(minTravelSecs, Integer.MAX_VALUE);
+
+        RaptorSearch search = new RaptorSearch(timetable, transfers + 1);
+        int lastOffset = windowSecs - windowSecs % Math.max(stepSecs, 1);
+        for (int offset = lastOffset; offset >= 0; offset -= Math.max(stepSecs, 1)) {
+            int departure = departureSecs + offset;
+            search.run(originStops, accessSecs, departure);
+            for (int t = 0; t < targetStops.length; t++) {
+                int arrival = search.arrival(targetStops[t]);
+                if (arrival != RaptorSearch.UNREACHED) {
+                    minTravelSecs[t] = Math.min(minTravelSecs[t], arrival - departure);
+                    sumTravelSecs[t] += arrival - departure;
+                    reachedCount[t]++;
+                }
+            }
+        }
+
+        int[] avgTravelSecs = new int[targetStops.length];
+        for (int t = 0; t < targetStops.length; t++) {
+            int arrival = search.arrival(targetStops[t]);
+            travelSecs[t] = arrival != RaptorSearch.UNREACHED ? arrival - departureSecs : -1;
+            // Trips used, minus one; reaching a target on foot takes no transfer
+            tripCounts[t] = arrival != RaptorSearch.UNREACHED ? Math.max(0, search.trips(targetStops[t]) - 1) : -1;
+            if (reachedCount[t] == 0) {
+                minTravelSecs[t] = -1;
+                avgTravelSecs[t] = -1;
+            } else {
+                avgTravelSecs[t] = (int) (sumTravelSecs[t] / reachedCount[t]);
+            }
+        }
+        return new TravelTimeProfile(travelSecs, tripCounts, minTravelSecs, avgTravelSecs);
+    }
+
+    /**
+     * Every stop reachable from the origins within {@code maxDurationSecs},
+     * with its earliest arrival. The time bound prunes the search, so only the
+     * reachable part of the network is explored.
+     *
+     * @param transferLimit   maximum number of transfers, or null for the configured default
+     */
+    public ReachableStops reachable(TimetableSnapshot timetable,
+                                    int[] originStops, int[] accessSecs,
+                                    int departureSecs, int maxDurationSecs, Integer transferLimit) {
+        int transfers = transfers(transferLimit);
+        long start = System.nanoTime();
+        RaptorSearch search = new RaptorSearch(timetable, transfers + 1)
+            .withArrivalLimit(departureSecs + maxDurationSecs)
+            .run(originStops, accessSecs, departureSecs);
+
+        int count = 0;
+        int[] stops = new int[timetable.stopCount()];
+        for (int stop = 0; stop < stops.length; stop++) {
+            if (search.arrival(stop) != RaptorSearch.UNREACHED) {
+                stops[count++] = stop;
+            }
+        }
+        int[] arrivalSecs = new int[count];
+        int[] tripCounts = new int[count];
+        for (int i = 0; i < count; i++) {
+            arrivalSecs[i] = search.arrival(stops[i]);
+            tripCounts[i] = search.trips(stops[i]);
+        }
+        log.debug("Bounded RAPTOR search reached {} of {} stops in {} us", count, timetable.stopCount(),
+            (System.nanoTime() - start) / 1000);
+        return new ReachableStops(Arrays.copyOf(stops, count), arrivalSecs, tripCounts);
+    }
+
+    /**
+     * The requested transfer limit within [0, planner.max-transfers]; the
+     * search needs at least one round
+     */
+    private int transfers(Integer transferLimit) {
+        if (transferLimit == null) {
+            return maxTransfers;
+        }
+        return Math.max(0, Math.min(transferLimit, maxTransfers));
+    }
+}
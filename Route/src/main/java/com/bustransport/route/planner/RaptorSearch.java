@@ -0,0 +1,341 @@
+package com.bustransport.route.planner;
+
+import com.bustransport.route.timetable.TimetableSnapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * State of a round-based (RAPTOR) earliest-arrival search.
+ * Round k holds the best arrival at every stop using at most k trips.
+ * A stop can carry two labels per round: the ride (or access walk) that
+ * reached it, and a walking transfer that reached it earlier. Transfers only
+ * start from ride labels, so a walk is never chained onto another walk and a
+ * faster walk to a stop does not erase the ride that later walks start from.
+ *
+ * <p>Running the same search again with an earlier departure keeps the labels
+ * of the later one (rRAPTOR): a traveller leaving earlier can always wait, so
+ * those labels stay valid and only improvements are propagated. Journeys can
+ * only be rebuilt after a single run.
+ */
+final class RaptorSearch {
+
+    static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final byte NONE = 0;
+    private static final byte ACCESS = 1;
+    private static final byte TRANSIT = 2;
+
+    private final TimetableSnapshot timetable;
+    private final int rounds;
+    private final int[][] arrivals;
+    private final int[][] rideArrivals;
+    private final byte[][] parentType;     // how the ride label was reached
+    private final int[][] parentFrom;      // pattern for transit, departure time for access
+    private final int[][] parentTrip;
+    private final int[][] parentBoard;
+    private final int[][] parentAlight;
+    private final int[][] transferFrom;    // stop walked from, -1 when the best arrival is not a walk
+    private final int[] best;
+    private int completedRounds;
+
+    private final boolean[] marked;
+    private final int[] markedStops;
+    private int markedCount;
+    private final int[] patternQueue;
+    private final int[] queuedPatterns;
+
+    private int[] targetStops;
+    private int[] targetEgressSecs;
+    private int targetBound = UNREACHED;
+
+    RaptorSearch(TimetableSnapshot timetable, int maxTrips) {
+        this.timetable = timetable;
+        this.rounds = maxTrips;
+        int stops = timetable.stopCount();
+        this.arrivals = new int[rounds + 1][stops];
+        this.rideArrivals = new int[rounds + 1][stops];
+        this.parentType = new byte[rounds + 1][stops];
+        this.parentFrom = new int[rounds + 1][stops];
+        this.parentTrip = new int[rounds + 1][stops];
+        this.parentBoard = new int[rounds + 1][stops];
+        this.parentAlight = new int[rounds + 1][stops];
+        this.transferFrom = new int[rounds + 1][stops];
+        this.best = new int[stops];
+        this.marked = new boolean[stops];
+        this.markedStops = new int[stops];
+        this.patternQueue = new int[timetable.patternCount()];
+        this.queuedPatterns = new int[timetable.patternCount()];
+        for (int[] round : arrivals) {
+            Arrays.fill(round, UNREACHED);
+        }
+        for (int[] round : transferFrom) {
+            Arrays.fill(round, -1);
+        }
+        Arrays.fill(best, UNREACHED);
+        Arrays.fill(patternQueue, -1);
+    }
+
+    /**
+     * Enables target pruning: labels that cannot beat the best known arrival
+     * at any target (including its egress walk) are discarded.
+     */
+    RaptorSearch withTargets(int[] stops, int[] egressSecs) {
+        this.targetStops = stops;
+        this.targetEgressSecs = egressSecs;
+        return this;
+    }
+
+    /**
+     * Bounds the search in time: arrivals after {@code latestArrivalSecs} are discarded
+     */
+    RaptorSearch withArrivalLimit(int latestArrivalSecs) {
+        this.targetBound = Math.min(targetBound, latestArrivalSecs + 1);
+        return this;
+    }
+
+    RaptorSearch run(int[] originStops, int[] accessSecs, int departureSecs) {
+        for (int m = 0; m < markedCount; m++) {
+            marked[markedStops[m]] = false;
+        }
+        markedCount = 0;
+        for (int i = 0; i < originStops.length; i++) {
+            int stop = originStops[i];
+            int arrival = departureSecs + accessSecs[i];
+            if (arrival < arrivals[0][stop] && arrival < targetBound) {
+                arrivals[0][stop] = arrival;
+                rideArrivals[0][stop] = arrival;
+                best[stop] = arrival;
+                parentType[0][stop] = ACCESS;
+                parentFrom[0][stop] = departureSecs;
+                transferFrom[0][stop] = -1;
+                mark(stop);
+            }
+        }
+        relaxTransfers(0);
+        updateTargetBound(0);
+
+        for (int k = 1; k <= rounds && markedCount > 0; k++) {
+            int[] current = arrivals[k];
+            int[] previous = arrivals[k - 1];
+            for (int stop = 0; stop < current.length; stop++) {
+                current[stop] = Math.min(current[stop], previous[stop]);
+            }
+            int queued = collectPatterns();
+            for (int q = 0; q < queued; q++) {
+                int pattern = queuedPatterns[q];
+                scanPattern(k, pattern, patternQueue[pattern]);
+                patternQueue[pattern] = -1;
+            }
+            relaxTransfers(k);
+            updateTargetBound(k);
+            completedRounds = Math.max(completedRounds, k);
+        }
+        return this;
+    }
+
+    int arrival(int stop) {
+        return best[stop];
+    }
+
+    /**
+     * @return the fewest trips that reach the stop at its best arrival, or -1 if unreached
+     */
+    int trips(int stop) {
+        if (best[stop] == UNREACHED) {
+            return -1;
+        }
+        int k = 0;
+        while (arrivals[k][stop] != best[stop]) {
+            k++;
+        }
+        return k;
+    }
+
+    private void mark(int stop) {
+        if (!marked[stop]) {
+            marked[stop] = true;
+            markedStops[markedCount++] = stop;
+        }
+    }
+
+    private int collectPatterns() {
+        int queued = 0;
+        for (int m = 0; m < markedCount; m++) {
+            int stop = markedStops[m];
+            marked[stop] = false;
+            for (int e = timetable.stopPatternStart(stop); e < timetable.stopPatternEnd(stop); e++) {
+                int pattern = timetable.stopPattern(e);
+                int position = timetable.stopPatternPosition(e);
+                if (patternQueue[pattern] < 0) {
+                    patternQueue[pattern] = position;
+                    queuedPatterns[queued++] = pattern;
+                } else if (position < patternQueue[pattern]) {
+                    patternQueue[pattern] = position;
+                }
+            }
+        }
+        markedCount = 0;
+        return queued;
+    }
+
+    private void scanPattern(int k, int pattern, int fromPosition) {
+        int trip = -1;
+        int boardPosition = -1;
+        int length = timetable.patternLength(pattern);
+        int[] previous = arrivals[k - 1];
+        for (int i = fromPosition; i < length; i++) {
+            int stop = timetable.patternStop(pattern, i);
+            if (trip >= 0 && !timetable.pattern(pattern).isCancelled(trip, i)) {
+                int arrival = timetable.arrivalSecs(pattern, trip, i);
+                if (arrival < best[stop] && arrival < targetBound) {
+                    arrivals[k][stop] = arrival;
+                    rideArrivals[k][stop] = arrival;
+                    best[stop] = arrival;
+                    parentType[k][stop] = TRANSIT;
+                    parentFrom[k][stop] = pattern;
+                    parentTrip[k][stop] = trip;
+                    parentBoard[k][stop] = boardPosition;
+                    parentAlight[k][stop] = i;
+                    transferFrom[k][stop] = -1;
+                    mark(stop);
+                }
+            }
+            int ready = previous[stop];
+            if (ready != UNREACHED && (trip < 0 || ready <= timetable.departureSecs(pattern, trip, i))) {
+                int earlier = timetable.earliestTrip(pattern, i, ready);
+                // Compare times, not indices: delays can reorder trips
+                if (earlier >= 0 && (trip < 0
+                        || timetable.departureSecs(pattern, earlier, i) < timetable.departureSecs(pattern, trip, i))) {
+                    trip = earlier;
+                    boardPosition = i;
+                }
+            }
+        }
+    }
+
+    private void relaxTransfers(int k) {
+        // Only stops reached by transit (or access) in this round start a walk, at
+        // their ride arrival: a walk that improved the stop must not be extended
+        int reachedByRide = markedCount;
+        for (int m = 0; m < reachedByRide; m++) {
+            int from = markedStops[m];
+            int departure = rideArrivals[k][from];
+            for (int e = timetable.transferStart(from); e < timetable.transferEnd(from); e++) {
+                int to = timetable.transferTarget(e);
+                int arrival = departure + timetable.transferSecs(e);
+                if (arrival < best[to] && arrival < targetBound) {
+                    arrivals[k][to] = arrival;
+                    best[to] = arrival;
+                    transferFrom[k][to] = from;
+                    mark(to);
+                }
+            }
+        }
+    }
+
+    private void updateTargetBound(int k) {
+        if (targetStops == null) {
+            return;
+        }
+        for (int i = 0; i < targetStops.length; i++) {
+            int arrival = arrivals[k][targetStops[i]];
+            if (arrival != UNREACHED) {
+                targetBound = Math.min(targetBound, arrival + targetEgressSecs[i]);
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the fastest journey to the configured targets, preferring fewer
+     * trips when several rounds reach the same arrival time.
+     */
+    Optional<Journey> bestJourney() {
+        int bestArrival = UNREACHED;
+        int bestRound = -1;
+        int bestTarget = -1;
+        for (int k = 0; k <= completedRounds; k++) {
+            for (int i = 0; i < targetStops.length; i++) {
+                int arrival = arrivals[k][targetStops[i]];
+                if (arrival != UNREACHED && arrival + targetEgressSecs[i] < bestArrival) {
+                    bestArrival = arrival + targetEgressSecs[i];
+                    bestRound = k;
+                    bestTarget = i;
+                }
+            }
+        }
+        if (bestRound < 0) {
+            return Optional.empty();
+        }
+
+        List<JourneyLeg> legs = new ArrayList<>();
+        int stop = targetStops[bestTarget];
+        legs.add(JourneyLeg.walk(JourneyLeg.Type.EGRESS, stop, -1, arrivals[bestRound][stop], bestArrival));
+
+        int k = bestRound;
+        boolean walked = false;
+        while (true) {
+            // After a transfer the stop it started from is left by its ride label
+            if (!walked && transferFrom[k][stop] >= 0) {
+                int from = transferFrom[k][stop];
+                legs.add(JourneyLeg.walk(JourneyLeg.Type.TRANSFER, from, stop, rideArrivals[k][from],
+                    arrivals[k][stop]));
+                stop = from;
+                walked = true;
+                continue;
+            }
+            walked = false;
+            byte type = parentType[k][stop];
+            if (type == NONE) {
+                k--;
+            } else if (type == ACCESS) {
+                legs.add(JourneyLeg.walk(JourneyLeg.Type.ACCESS, -1, stop, parentFrom[k][stop],
+                    rideArrivals[k][stop]));
+                break;
+            } else {
+                int pattern = parentFrom[k][stop];
+                int trip = parentTrip[k][stop];
+                int board = parentBoard[k][stop];
+                int boardStop = timetable.patternStop(pattern, board);
+                legs.add(new JourneyLeg(JourneyLeg.Type.TRANSIT, boardStop, stop,
+                    timetable.departureSecs(pattern, trip, board), rideArrivals[k][stop],
+                    pattern, trip, board, parentAlight[k][stop]));
+                stop = boardStop;
+                k--;
+            }
+        }
+        Collections.reverse(legs);
+        List<JourneyLeg> timedLegs = leaveJustInTime(legs);
+        return Optional.of(new Journey(timedLegs.get(0).getDepartureSecs(), bestArrival, timedLegs));
+    }
+
+    /**
+     * Shifts the walking legs before the first ride so the traveller arrives at
+     * the boarding stop when the vehicle departs instead of waiting there.
+     */
+    private List<JourneyLeg> leaveJustInTime(List<JourneyLeg> legs) {
+        int firstRide = -1;
+        for (int i = 0; i < legs.size() && firstRide < 0; i++) {
+            if (legs.get(i).isTransit()) {
+                firstRide = i;
+            }
+        }
+        if (firstRide <= 0) {
+            return legs;
+        }
+        int slack = legs.get(firstRide).getDepartureSecs() - legs.get(firstRide - 1).getArrivalSecs();
+        if (slack <= 0) {
+            return legs;
+        }
+        List<JourneyLeg> shifted = new ArrayList<>(legs.size());
+        for (int i = 0; i < legs.size(); i++) {
+            JourneyLeg leg = legs.get(i);
+            shifted.add(i >= firstRide ? leg : JourneyLeg.walk(leg.getType(), leg.getFromStop(), leg.getToStop(),
+                leg.getDepartureSecs() + slack, leg.getArrivalSecs() + slack));
+        }
+        return shifted;
+    }
+}
@@ -0,0 +1,34 @@
+package com.bustransport.route.planner;
+
+/**
+ * Stops reached by a time-bounded search, in stop index order, with their
+ * earliest arrival and the fewest trips taken to get there at that time
+ */
+public final class ReachableStops {
+
+    private final int[] stops;
+    private final int[] arrivalSecs;
+    private final int[] trips;
+
+    ReachableStops(int[] stops, int[] arrivalSecs, int[] trips) {
+        this.stops = stops;
+        this.arrivalSecs = arrivalSecs;
+        this.trips = trips;
+    }
+
+    public int size() {
+        return stops.length;
+    }
+
+    public int stop(int i) {
+        return stops[i];
+    }
+
+    public int arrivalSecs(int i) {
+        return arrivalSecs[i];
+    }
+
+    public int trips(int i) {
+        return trips[i];
+    }
+}
@@ -0,0 +1,46 @@
+package com.bustransport.route.planner;
+
+/**
+ * Travel times from one origin to a list of target stops, indexed like the
+ * targets. Times at the requested departure are exact; the minimum and
+ * average cover every sampled departure minute of the window, waiting at the
+ * origin included. Unreachable targets hold -1.
+ */
+public final class TravelTimeProfile {
+
+    private final int[] travelSecs;
+    private final int[] transfers;
+    private final int[] minTravelSecs;
+    private final int[] avgTravelSecs;
+
+    TravelTimeProfile(int[] travelSecs, int[] transfers, int[] minTravelSecs, int[] avgTravelSecs) {
+        this.travelSecs = travelSecs;
+        this.transfers = transfers;
+        this.minTravelSecs = minTravelSecs;
+        this.avgTravelSecs = avgTravelSecs;
+    }
+
+    public int targetCount() {
+        return travelSecs.length;
+    }
+
+    public boolean isReachable(int target) {
+        return minTravelSecs[target] >= 0;
+    }
+
+    public int travelSecs(int target) {
+        return travelSecs[target];
+    }
+
+    public int transfers(int target) {
+        return transfers[target];
+    }
+
+    public int minTravelSecs(int target) {
+        return minTravelSecs[target];
+    }
+
+    public int avgTravelSecs(int target) {
+        return avgTravelSecs[target];
+    }
+}
@@ -0,0 +1,140 @@
+package com.bustransport.route.realtime;
+
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.service.DepartureMaterializationService;
+import com.bustransport.route.timetable.PatternTimetable;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import com.bustransport.route.util.ProtobufWriter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * GTFS-Realtime TripUpdates feed built from the real-time overlay of the
+ * timetable snapshot. Patterns are immutable and a departure update replaces
+ * only its own pattern, so the encoded entities of every other pattern are
+ * reused as they are. The feed is re-encoded at most once per second and
+ * only when the snapshot changed; every caller gets the same byte array.
+ */
+@Component
+@RequiredArgsConstructor
+public class TripUpdatesFeed {
+
+    private static final long MIN_ENCODE_INTERVAL_MS = 1000;
+    private static final DateTimeFormatter GTFS_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    // gtfs-realtime.proto enum values
+    private static final int FULL_DATASET = 0;
+    private static final int TRIP_CANCELED = 3;
+    private static final int STOP_SKIPPED = 1;
+
+    private final TimetableSnapshotService snapshotService;
+
+    // Keyed by identity: an unchanged pattern keeps its encoded entities
+    private final Map<PatternTimetable, byte[]> encodedPatterns = new WeakHashMap<>();
+
+    private volatile Feed current = new Feed(new byte[0], 0, -1);
+
+    /**
+     * An encoded FeedMessage and the time it was encoded
+     */
+    public record Feed(byte[] body, long timestampMillis, long snapshotVersion) {
+    }
+
+    public Feed getFeed() {
+        Feed feed = current;
+        long now = System.currentTimeMillis();
+        if (now - feed.timestampMillis() < MIN_ENCODE_INTERVAL_MS) {
+            return feed;
+        }
+        TimetableSnapshot snapshot = snapshotService.getSnapshot(LocalDate.now());
+        if (snapshot.getVersion() == feed.snapshotVersion()) {
+            return feed;
+        }
+        synchronized (this) {
+            if (current.snapshotVersion() != feed.snapshotVersion()) {
+                return current;
+            }
+            current = encode(snapshot, now);
+            return current;
+        }
+    }
+
+    private Feed encode(TimetableSnapshot snapshot, long now) {
+        ProtobufWriter message = new ProtobufWriter(current.body().length + 256);
+        message.message(1, new ProtobufWriter()
+            .string(1, "2.0")
+            .enumValue(2, FULL_DATASET)
+            .uint64(3, now / 1000));
+        for (int p = 0; p < snapshot.patternCount(); p++) {
+            PatternTimetable pattern = snapshot.pattern(p);
+            byte[] entities = encodedPatterns.computeIfAbsent(pattern, key -> encodePattern(snapshot, key));
+            message.raw(entities);
+        }
+        return new Feed(message.toByteArray(), now, snapshot.getVersion());
+    }
+
+    /**
+     * One FeedEntity per trip with a recorded delay or cancellation. Stop time
+     * updates start at the first stop with real-time state and cover the rest
+     * of the trip, so consumers do not propagate a stale delay downstream.
+     */
+    private byte[] encodePattern(TimetableSnapshot snapshot, PatternTimetable pattern) {
+        if (!pattern.hasRealtime()) {
+            return new byte[0];
+        }
+        LocalDate serviceDate = snapshot.getServiceDate();
+        ProtobufWriter entities = new ProtobufWriter();
+        for (int trip = 0; trip < pattern.tripCount(); trip++) {
+            int first = -1;
+            boolean allCancelled = true;
+            for (int i = 0; i < pattern.length(); i++) {
+                allCancelled &= pattern.isCancelled(trip, i);
+                if (first < 0 && (pattern.delaySecs(trip, i) != 0
+                        || pattern.status(trip, i) != DepartureStatus.ON_TIME)) {
+                    first = i;
+                }
+            }
+            if (first < 0) {
+                continue;
+            }
+
+            int startSecs = pattern.plannedDepartureSecs(trip, 0);
+            String tripId = DepartureMaterializationService.tripId(pattern.scheduleId(trip), serviceDate, startSecs);
+            ProtobufWriter descriptor = new ProtobufWriter()
+                .string(1, tripId)
+                .string(2, String.format("%02d:%02d:%02d", startSecs / 3600, startSecs / 60 % 60, startSecs % 60))
+                .string(3, serviceDate.format(GTFS_DATE))
+                .string(5, String.valueOf(pattern.getRouteId()));
+            ProtobufWriter tripUpdate = new ProtobufWriter();
+            if (allCancelled) {
+                descriptor.enumValue(4, TRIP_CANCELED);
+                tripUpdate.message(1, descriptor);
+            } else {
+                tripUpdate.message(1, descriptor);
+                for (int i = first; i < pattern.length(); i++) {
+                    ProtobufWriter stopTimeUpdate = new ProtobufWriter()
+                        .uint64(1, i + 1)
+                        .string(4, String.valueOf(snapshot.stopId(pattern.stop(i))));
+                    if (pattern.isCancelled(trip, i)) {
+                        stopTimeUpdate.enumValue(5, STOP_SKIPPED);
+                    } else {
+                        int delay = pattern.delaySecs(trip, i);
+                        stopTimeUpdate.message(2, new ProtobufWriter().int32(1, delay));
+                        stopTimeUpdate.message(3, new ProtobufWriter().int32(1, delay));
+                    }
+                    tripUpdate.message(2, stopTimeUpdate);
+                }
+            }
+            entities.message(2, new ProtobufWriter()
+                .string(1, tripId)
+                .message(3, tripUpdate));
+        }
+        return entities.toByteArray();
+    }
+}
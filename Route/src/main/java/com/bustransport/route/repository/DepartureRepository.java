@@ -1,7 +1,9 @@
 package com.bustransport.route.repository;
 
+import com.bustransport.route.dto.response.DepartureDTO;
 import com.bustransport.route.entity.Departure;
 import com.bustransport.route.enums.DepartureStatus;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -9,6 +11,7 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DepartureRepository extends JpaRepository<Departure, Long> {
@@ -35,7 +38,31 @@ public interface DepartureRepository extends JpaRepository<Departure, Long> {
         @Param("toTime") LocalDateTime toTime
     );
 
-    List<Departure> findByStatus(DepartureStatus status);
+    @EntityGraph(attributePaths = {"stop", "schedule", "schedule.route"})
+    Optional<Departure> findDetailedById(Long id);
+
+    /**
+     * Read-only departure lists are projected straight into DTOs in one query.
+     * actualDepartureTime is left to the caller, JPQL has no portable way to
+     * add the delay to the departure time.
+     */
+    @Query("SELECT new com.bustransport.route.dto.response.DepartureDTO(d.id, s.id, st.id, st.name, " +
+           "r.routeNumber, r.name, d.departureTime, d.arrivalTime, d.status, d.delayMinutes, d.platform, " +
+           "d.tripId, d.statusMessage, d.departureTime) " +
+           "FROM Departure d JOIN d.schedule s JOIN s.route r JOIN d.stop st WHERE d.status = :status " +
+           "ORDER BY d.departureTime ASC")
+    List<DepartureDTO> findDTOsByStatus(@Param("status") DepartureStatus status);
+
+    @Query("SELECT new com.bustransport.route.dto.response.DepartureDTO(d.id, s.id, st.id, st.name, " +
+           "r.routeNumber, r.name, d.departureTime, d.arrivalTime, d.status, d.delayMinutes, d.platform, " +
+           "d.tripId, d.statusMessage, d.departureTime) " +
+           "FROM Departure d JOIN d.schedule s JOIN s.route r JOIN d.stop st WHERE r.id = :routeId AND " +
+           "d.departureTime >= :fromTime AND d.departureTime <= :toTime ORDER BY d.departureTime ASC")
+    List<DepartureDTO> findDTOsByRouteIdAndTimeRange(
+        @Param("routeId") Long routeId,
+        @Param("fromTime") LocalDateTime fromTime,
+        @Param("toTime") LocalDateTime toTime
+    );
 
     @Query("SELECT d FROM Departure d WHERE d.departureTime >= :fromTime AND " +
            "d.departureTime <= :toTime AND d.status = :status")
@@ -47,13 +74,51 @@ public interface DepartureRepository extends JpaRepository<Departure, Long> {
 
     List<Departure> findByScheduleId(Long scheduleId);
 
-    @Query("SELECT d FROM Departure d WHERE d.schedule.route.id = :routeId AND " +
-           "d.departureTime >= :fromTime AND d.departureTime <= :toTime " +
-           "ORDER BY d.departureTime ASC")
-    List<Departure> findByRouteIdAndTimeRange(
+    /**
+     * Real-time state of the departures in a time range, without loading entities
+     */
+    @Query("SELECT d.id AS id, d.schedule.id AS scheduleId, d.stop.id AS stopId, " +
+           "d.departureTime AS departureTime, d.status AS status, d.delayMinutes AS delayMinutes, " +
+           "d.statusMessage AS statusMessage, d.reportedAt AS reportedAt FROM Departure d WHERE " +
+           "d.departureTime >= :fromTime AND d.departureTime < :toTime")
+    List<DepartureState> findStatesByTimeRange(
+        @Param("fromTime") LocalDateTime fromTime,
+        @Param("toTime") LocalDateTime toTime
+    );
+
+    @Query("SELECT d.id AS id, d.schedule.id AS scheduleId, d.stop.id AS stopId, " +
+           "d.departureTime AS departureTime, d.status AS status, d.delayMinutes AS delayMinutes, " +
+           "d.statusMessage AS statusMessage, d.reportedAt AS reportedAt FROM Departure d " +
+           "WHERE d.schedule.route.id = :routeId AND " +
+           "d.departureTime >= :fromTime AND d.departureTime < :toTime")
+    List<DepartureState> findStatesByRouteIdAndTimeRange(
         @Param("routeId") Long routeId,
         @Param("fromTime") LocalDateTime fromTime,
         @Param("toTime") LocalDateTime toTime
     );
-}
 
+    /**
+     * Later departures of the same trip, in the order the trip serves them
+     */
+    @Query("SELECT d.id AS id, d.schedule.id AS scheduleId, d.stop.id AS stopId, " +
+           "d.departureTime AS departureTime, d.status AS status, d.delayMinutes AS delayMinutes, " +
+           "d.statusMessage AS statusMessage, d.reportedAt AS reportedAt FROM Departure d " +
+           "WHERE d.schedule.id = :scheduleId AND " +
+           "d.tripId = :tripId AND d.departureTime > :after ORDER BY d.departureTime ASC")
+    List<DepartureState> findTripStatesAfter(
+        @Param("scheduleId") Long scheduleId,
+        @Param("tripId") String tripId,
+        @Param("after") LocalDateTime after
+    );
+
+    interface DepartureState {
+        Long getId();
+        Long getScheduleId();
+        Long getStopId();
+        LocalDateTime getDepartureTime();
+        DepartureStatus getStatus();
+        Integer getDelayMinutes();
+        String getStatusMessage();
+        LocalDateTime getReportedAt();
+    }
+}
@@ -0,0 +1,30 @@
+package com.bustransport.route.repository;
+
+import com.bustransport.route.entity.RouteSegmentGeometry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+@Repository
+public interface RouteSegmentGeometryRepository extends JpaRepository<RouteSegmentGeometry, Long> {
+
+    @Query("SELECT g.fromStop.id AS fromStopId, g.toStop.id AS toStopId, g.encodedPath AS encodedPath " +
+           "FROM RouteSegmentGeometry g")
+    List<SegmentPath> findAllPaths();
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM RouteSegmentGeometry g WHERE g.fromStop.id = :stopId OR g.toStop.id = :stopId")
+    int deleteByStopId(@Param("stopId") Long stopId);
+
+    interface SegmentPath {
+        Long getFromStopId();
+        Long getToStopId();
+        byte[] getEncodedPath();
+    }
+}
@@ -6,6 +6,8 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -21,5 +23,26 @@ public interface RouteStopRepository extends JpaRepository<RouteStop, Long> {
 
     @Query("SELECT COUNT(rs) FROM RouteStop rs WHERE rs.route.id = :routeId")
     Integer countByRouteId(@Param("routeId") Long routeId);
+
+    /**
+     * Stop positions of every route in sequence order, without loading entities
+     */
+    @Query("SELECT rs.route.id AS routeId, s.id AS stopId, s.latitude AS latitude, s.longitude AS longitude " +
+           "FROM RouteStop rs JOIN rs.stop s ORDER BY rs.route.id, rs.stopSequence")
+    List<StopPosition> findAllStopPositions();
+
+    @Query("SELECT rs.route.id AS routeId, s.id AS stopId, s.latitude AS latitude, s.longitude AS longitude " +
+           "FROM RouteStop rs JOIN rs.stop s WHERE rs.route.id IN :routeIds ORDER BY rs.route.id, rs.stopSequence")
+    List<StopPosition> findStopPositionsByRouteIds(@Param("routeIds") Collection<Long> routeIds);
+
+    @Query("SELECT DISTINCT rs.route.id FROM RouteStop rs WHERE rs.stop.id IN :stopIds")
+    List<Long> findRouteIdsByStopIds(@Param("stopIds") Collection<Long> stopIds);
+
+    interface StopPosition {
+        Long getRouteId();
+        Long getStopId();
+        BigDecimal getLatitude();
+        BigDecimal getLongitude();
+    }
 }
 
@@ -2,6 +2,7 @@ package com.bustransport.route.repository;
 
 import com.bustransport.route.entity.Schedule;
 import com.bustransport.route.enums.ServiceType;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
@@ -9,12 +10,15 @@ import org.springframework.stereotype.Repository;
 
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface ScheduleRepository extends JpaRepository<Schedule, Long> {
 
+    @EntityGraph(attributePaths = "route")
     List<Schedule> findByRouteId(Long routeId);
 
+    @EntityGraph(attributePaths = "route")
     List<Schedule> findByRouteIdAndServiceType(Long routeId, ServiceType serviceType);
 
     @Query("SELECT s FROM Schedule s WHERE s.route.id = :routeId AND s.serviceType = :serviceType AND " +
@@ -31,6 +35,12 @@ public interface ScheduleRepository extends JpaRepository<Schedule, Long> {
            "(s.validUntil IS NULL OR s.validUntil >= :date)")
     List<Schedule> findAllActiveSchedulesForDate(@Param("date") LocalDate date);
 
+    @Query("SELECT s FROM Schedule s JOIN FETCH s.route WHERE s.isActive = true")
+    List<Schedule> findAllActiveWithRoute();
+
+    @Query("SELECT s FROM Schedule s JOIN FETCH s.route WHERE s.id = :id")
+    Optional<Schedule> findByIdWithRoute(@Param("id") Long id);
+
     List<Schedule> findByServiceTypeAndIsActive(ServiceType serviceType, Boolean isActive);
 }
 
@@ -0,0 +1,28 @@
+package com.bustransport.route.repository;
+
+import com.bustransport.route.entity.ServiceCalendarException;
+import com.bustransport.route.enums.CalendarExceptionType;
+import com.bustransport.route.enums.ServiceType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface ServiceCalendarExceptionRepository extends JpaRepository<ServiceCalendarException, Long> {
+
+    List<ServiceCalendarException> findByServiceDateBetweenOrderByServiceDate(LocalDate from, LocalDate to);
+
+    @Query("SELECT e.serviceDate AS serviceDate, e.serviceType AS serviceType, s.id AS scheduleId, " +
+           "e.exceptionType AS exceptionType FROM ServiceCalendarException e LEFT JOIN e.schedule s")
+    List<ExceptionRule> findAllRules();
+
+    interface ExceptionRule {
+        LocalDate getServiceDate();
+        ServiceType getServiceType();
+        Long getScheduleId();
+        CalendarExceptionType getExceptionType();
+    }
+}
@@ -9,7 +9,6 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
-import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,26 +23,6 @@ public interface StopRepository extends JpaRepository<Stop, Long> {
 
     List<Stop> findByStopType(StopType stopType);
 
-    @Query("SELECT s FROM Stop s WHERE s.isActive = true AND " +
-           "(LOWER(s.stopCode) LIKE LOWER(CONCAT('%', :query, '%')) OR " +
-           "LOWER(s.name) LIKE LOWER(CONCAT('%', :query, '%')))")
-    List<Stop> searchStops(@Param("query") String query);
-
-    // Find stops within a radius using the Haversine formula
-    @Query(value = "SELECT * FROM stops s WHERE s.is_active = true AND " +
-           "(6371 * acos(cos(radians(:lat)) * cos(radians(CAST(s.latitude AS double precision))) * " +
-           "cos(radians(CAST(s.longitude AS double precision)) - radians(:lon)) + " +
-           "sin(radians(:lat)) * sin(radians(CAST(s.latitude AS double precision))))) <= :radiusKm " +
-           "ORDER BY (6371 * acos(cos(radians(:lat)) * cos(radians(CAST(s.latitude AS double precision))) * " +
-           "cos(radians(CAST(s.longitude AS double precision)) - radians(:lon)) + " +
-           "sin(radians(:lat)) * sin(radians(CAST(s.latitude AS double precision)))))",
-           nativeQuery = true)
-    List<Stop> findNearbyStops(
-        @Param("lat") BigDecimal latitude,
-        @Param("lon") BigDecimal longitude,
-        @Param("radiusKm") double radiusKm
-    );
-
     @Query("SELECT s FROM Stop s " +
            "JOIN s.routeStops rs " +
            "WHERE rs.route.id = :routeId " +
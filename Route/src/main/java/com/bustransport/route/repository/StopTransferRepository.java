@@ -0,0 +1,22 @@
+package com.bustransport.route.repository;
+
+import com.bustransport.route.entity.StopTransfer;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StopTransferRepository extends JpaRepository<StopTransfer, Long> {
+
+    @Query("SELECT t.fromStop.id AS fromStopId, t.toStop.id AS toStopId, t.walkSeconds AS walkSeconds " +
+           "FROM StopTransfer t")
+    List<TransferEdge> findAllEdges();
+
+    interface TransferEdge {
+        Long getFromStopId();
+        Long getToStopId();
+        Integer getWalkSeconds();
+    }
+}
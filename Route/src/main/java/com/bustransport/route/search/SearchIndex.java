@@ -0,0 +1,101 @@
+package com.bustransport.route.search;
+
+import com.bustransport.route.dto.response.RouteDTO;
+import com.bustransport.route.dto.response.StopDTO;
+import com.bustransport.route.entity.Route;
+import com.bustransport.route.event.RouteChangedEvent;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.mapper.StopMapper;
+import com.bustransport.route.repository.RouteRepository;
+import com.bustransport.route.repository.StopRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Search-as-you-type over active stops (name and code) and active routes
+ * (number and name), loaded at startup and kept in sync with stop and route
+ * changes
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class SearchIndex {
+
+    private final StopRepository stopRepository;
+    private final RouteRepository routeRepository;
+    private final StopMapper stopMapper;
+
+    private volatile TextIndex stopIndex = new TextIndex();
+    private volatile TextIndex routeIndex = new TextIndex();
+    private final Map<Long, StopDTO> stops = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void load() {
+        long start = System.currentTimeMillis();
+        TextIndex newStopIndex = new TextIndex();
+        List<StopDTO> activeStops = stopMapper.toDTOList(stopRepository.findByIsActive(true));
+        stops.clear();
+        for (StopDTO stop : activeStops) {
+            newStopIndex.put(stop.getId(), stop.getName(), stop.getStopCode());
+            stops.put(stop.getId(), stop);
+        }
+        TextIndex newRouteIndex = new TextIndex();
+        for (Route route : routeRepository.findAll()) {
+            if (Boolean.TRUE.equals(route.getIsActive())) {
+                newRouteIndex.put(route.getId(), route.getRouteNumber(), route.getName());
+            }
+        }
+        stopIndex = newStopIndex;
+        routeIndex = newRouteIndex;
+        log.info("Indexed {} stops and {} routes for search in {} ms", newStopIndex.size(), newRouteIndex.size(),
+            System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onStopChanged(StopChangedEvent event) {
+        StopDTO stop = event.getStop();
+        if (Boolean.TRUE.equals(stop.getIsActive())) {
+            stopIndex.put(stop.getId(), stop.getName(), stop.getStopCode());
+            stops.put(stop.getId(), stop);
+        } else {
+            stopIndex.remove(stop.getId());
+            stops.remove(stop.getId());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public synchronized void onRouteChanged(RouteChangedEvent event) {
+        RouteDTO route = event.getRoute();
+        if (Boolean.TRUE.equals(route.getIsActive())) {
+            routeIndex.put(route.getId(), route.getRouteNumber(), route.getName());
+        } else {
+            routeIndex.remove(route.getId());
+        }
+    }
+
+    /**
+     * Best matching active stops, best first
+     */
+    public List<StopDTO> searchStops(String query, int limit) {
+        return stopIndex.search(query, limit).stream()
+            .map(stops::get)
+            .filter(Objects::nonNull)
+            .toList();
+    }
+
+    /**
+     * Ids of the best matching active routes, best first
+     */
+    public List<Long> searchRouteIds(String query, int limit) {
+        return routeIndex.search(query, limit);
+    }
+}
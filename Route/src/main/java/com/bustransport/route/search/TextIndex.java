@@ -0,0 +1,357 @@
+package com.bustransport.route.search;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory search-as-you-type index over a few short text fields per
+ * document. Whole fields and their words are kept in sorted maps for prefix
+ * lookups, and every field is split into trigrams, which find substrings and
+ * misspellings. Each stage only runs if the previous ones did not already
+ * fill the result with better matches.
+ * Text is lower-cased and stripped of accents and punctuation on both sides.
+ * Postings are sorted arrays of document slots rather than sets of ids, so
+ * a lookup only walks int arrays.
+ */
+public class TextIndex {
+
+    // Share of the query trigrams a document needs to be a fuzzy match
+    private static final double MIN_SIMILARITY = 0.5;
+
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[^\\p{Alnum}]+");
+
+    private record Document(long id, String[] fields, String[] words) {
+    }
+
+    private record Match(long id, double score, int length) {
+    }
+
+    // Higher score first, then the shorter field, then the lower id; the queue keeps the worst on top
+    private static final Comparator<Match> RANKING = TextIndex::compare;
+
+    /**
+     * Sorted, growable array of document slots
+     */
+    private static final class Postings {
+
+        private int[] slots = new int[4];
+        private int size;
+
+        void add(int slot) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at >= 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            System.arraycopy(slots, at, slots, at + 1, size - at);
+            slots[at] = slot;
+            size++;
+        }
+
+        /**
+         * @return whether no slot is left
+         */
+        boolean remove(int slot) {
+            int at = Arrays.binarySearch(slots, 0, size, slot);
+            if (at >= 0) {
+                System.arraycopy(slots, at + 1, slots, at, size - at - 1);
+                size--;
+            }
+            return size == 0;
+        }
+    }
+
+    private final List<Document> documents = new ArrayList<>();
+    private final Map<Long, Integer> slotById = new HashMap<>();
+    private final Deque<Integer> freeSlots = new ArrayDeque<>();
+    private final TreeMap<String, Postings> fieldStarts = new TreeMap<>();
+    private final TreeMap<String, Postings> words = new TreeMap<>();
+    private final Map<String, Postings> trigrams = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Lower case, without accents, words separated by single spaces
+     */
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String stripped = MARKS.matcher(Normalizer.normalize(text, Normalizer.Form.NFD)).replaceAll("");
+        return SEPARATORS.matcher(stripped.toLowerCase(Locale.ROOT)).replaceAll(" ").trim();
+    }
+
+    /**
+     * Adds or replaces a document; null fields are skipped
+     */
+    public void put(long id, String... fields) {
+        List<String> normalized = new ArrayList<>(fields.length);
+        Set<String> documentWords = new LinkedHashSet<>();
+        for (String field : fields) {
+            String text = normalize(field);
+            if (!text.isEmpty()) {
+                normalized.add(text);
+                documentWords.addAll(List.of(text.split(" ")));
+            }
+        }
+        Document document = new Document(id, normalized.toArray(String[]::new),
+            documentWords.toArray(String[]::new));
+        lock.writeLock().lock();
+        try {
+            unindex(id);
+            int slot;
+            if (freeSlots.isEmpty()) {
+                slot = documents.size();
+                documents.add(document);
+            } else {
+                slot = freeSlots.pop();
+                documents.set(slot, document);
+            }
+            slotById.put(id, slot);
+            for (String field : document.fields()) {
+                fieldStarts.computeIfAbsent(field, key -> new Postings()).add(slot);
+            }
+            for (String word : document.words()) {
+                words.computeIfAbsent(word, key -> new Postings()).add(slot);
+            }
+            for (String field : document.fields()) {
+                for (String trigram : trigrams(field)) {
+                    trigrams.computeIfAbsent(trigram, key -> new Postings()).add(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long id) {
+        lock.writeLock().lock();
+        try {
+            unindex(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return slotById.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the best matches, best first. Exact field matches rank above
+     * field prefixes, then documents with a word starting with every query
+     * word, then substrings and finally fuzzy trigram matches; ties go to the
+     * shorter field.
+     */
+    public List<Long> search(String query, int limit) {
+        String text = normalize(query);
+        if (text.isEmpty() || limit <= 0) {
+            return List.of();
+        }
+        String[] queryWords = text.split(" ");
+
+        lock.readLock().lock();
+        try {
+            // Best matches so far, worst on top
+            PriorityQueue<Match> best = new PriorityQueue<>(limit + 1, RANKING);
+            boolean[] seen = new boolean[documents.size()];
+
+            // Fields equal to or starting with the query
+            Postings exact = fieldStarts.get(text);
+            if (exact != null) {
+                offerAll(exact, seen, best, limit, 4, text.length());
+            }
+            for (Map.Entry<String, Postings> entry
+                    : fieldStarts.subMap(text, false, text + Character.MAX_VALUE, false).entrySet()) {
+                offerAll(entry.getValue(), seen, best, limit, 3, entry.getKey().length());
+            }
+
+            // Documents with a word starting with every query word; single
+            // letters only match field starts
+            if (text.length() >= 2 && !isFull(best, limit, 3)) {
+                int wordCount = Math.min(queryWords.length, Integer.SIZE - 1);
+                int all = (1 << wordCount) - 1;
+                int[] matched = new int[documents.size()];
+                int[] touched = new int[documents.size()];
+                int touchedCount = 0;
+                for (int w = 0; w < wordCount; w++) {
+                    for (Postings postings : prefixed(words, queryWords[w])) {
+                        for (int i = 0; i < postings.size; i++) {
+                            int slot = postings.slots[i];
+                            if (w == 0 && matched[slot] == 0) {
+                                touched[touchedCount++] = slot;
+                            }
+                            matched[slot] |= 1 << w;
+                        }
+                    }
+                }
+                for (int i = 0; i < touchedCount; i++) {
+                    int slot = touched[i];
+                    if (matched[slot] == all && !seen[slot]) {
+                        seen[slot] = true;
+                        offer(best, limit, documents.get(slot).id(), 2, shortest(documents.get(slot).fields()));
+                    }
+                }
+            }
+
+            // Substrings and misspellings
+            if (text.length() >= 3 && !isFull(best, limit, 2)) {
+                Set<String> queryTrigrams = trigrams(text);
+                short[] shared = new short[documents.size()];
+                int[] touched = new int[documents.size()];
+                int touchedCount = 0;
+                for (String trigram : queryTrigrams) {
+                    Postings postings = trigrams.get(trigram);
+                    if (postings == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < postings.size; i++) {
+                        int slot = postings.slots[i];
+                        if (shared[slot]++ == 0) {
+                            touched[touchedCount++] = slot;
+                        }
+                    }
+                }
+                int required = (int) Math.ceil(queryTrigrams.size() * MIN_SIMILARITY);
+                for (int i = 0; i < touchedCount; i++) {
+                    int slot = touched[i];
+                    if (seen[slot] || shared[slot] < required) {
+                        continue;
+                    }
+                    Document document = documents.get(slot);
+                    double score = (double) shared[slot] / queryTrigrams.size();
+                    int length = shortest(document.fields());
+                    // Every trigram is shared: possibly a substring
+                    if (shared[slot] == queryTrigrams.size()) {
+                        for (String field : document.fields()) {
+                            if (field.contains(text) && (score < 1.5 || field.length() < length)) {
+                                score = 1.5;
+                                length = field.length();
+                            }
+                        }
+                    }
+                    offer(best, limit, document.id(), score, length);
+                }
+            }
+
+            Match[] ranked = best.toArray(Match[]::new);
+            Arrays.sort(ranked, RANKING.reversed());
+            return Arrays.stream(ranked).map(Match::id).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static Iterable<Postings> prefixed(TreeMap<String, Postings> map, String prefix) {
+        return map.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+    }
+
+    private void offerAll(Postings postings, boolean[] seen, PriorityQueue<Match> best, int limit,
+                          double score, int length) {
+        for (int i = 0; i < postings.size; i++) {
+            int slot = postings.slots[i];
+            if (!seen[slot]) {
+                seen[slot] = true;
+                offer(best, limit, documents.get(slot).id(), score, length);
+            }
+        }
+    }
+
+    /**
+     * Whether the result is complete with matches scoring at least {@code score}
+     */
+    private static boolean isFull(PriorityQueue<Match> best, int limit, double score) {
+        return best.size() >= limit && best.peek().score() >= score;
+    }
+
+    private static void offer(PriorityQueue<Match> best, int limit, long id, double score, int length) {
+        if (best.size() < limit) {
+            best.add(new Match(id, score, length));
+            return;
+        }
+        Match worst = best.peek();
+        if (score > worst.score() || (score == worst.score()
+                && (length < worst.length() || (length == worst.length() && id < worst.id())))) {
+            best.poll();
+            best.add(new Match(id, score, length));
+        }
+    }
+
+    private static int compare(Match a, Match b) {
+        if (a.score() != b.score()) {
+            return a.score() > b.score() ? 1 : -1;
+        }
+        if (a.length() != b.length()) {
+            return a.length() < b.length() ? 1 : -1;
+        }
+        return Long.compare(b.id(), a.id());
+    }
+
+    private static int shortest(String[] fields) {
+        int length = Integer.MAX_VALUE;
+        for (String field : fields) {
+            length = Math.min(length, field.length());
+        }
+        return length;
+    }
+
+    private static Set<String> trigrams(String text) {
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= text.length(); i++) {
+            result.add(text.substring(i, i + 3));
+        }
+        return result;
+    }
+
+    private void unindex(long id) {
+        Integer slot = slotById.remove(id);
+        if (slot == null) {
+            return;
+        }
+        Document document = documents.set(slot, null);
+        freeSlots.push(slot);
+        for (String field : document.fields()) {
+            Postings postings = fieldStarts.get(field);
+            if (postings != null && postings.remove(slot)) {
+                fieldStarts.remove(field);
+            }
+        }
+        for (String word : document.words()) {
+            Postings postings = words.get(word);
+            if (postings != null && postings.remove(slot)) {
+                words.remove(word);
+            }
+        }
+        for (String field : document.fields()) {
+            for (String trigram : trigrams(field)) {
+                Postings postings = trigrams.get(trigram);
+                if (postings != null && postings.remove(slot)) {
+                    trigrams.remove(trigram);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.calendar.ServiceCalendar;
+import com.bustransport.route.dto.request.CalendarExceptionRequest;
+import com.bustransport.route.dto.response.CalendarExceptionDTO;
+import com.bustransport.route.entity.ServiceCalendarException;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.event.ServiceCalendarChangedEvent;
+import com.bustransport.route.exception.ResourceNotFoundException;
+import com.bustransport.route.mapper.CalendarExceptionMapper;
+import com.bustransport.route.repository.ScheduleRepository;
+import com.bustransport.route.repository.ServiceCalendarExceptionRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+@Service
+@RequiredArgsConstructor
+@Slf4j
+@Transactional(readOnly = true)
+public class CalendarService {
+
+    private final ServiceCalendarExceptionRepository exceptionRepository;
+    private final ScheduleRepository scheduleRepository;
+    private final CalendarExceptionMapper exceptionMapper;
+    private final ServiceCalendar serviceCalendar;
+    private final ApplicationEventPublisher eventPublisher;
+
+    public List<CalendarExceptionDTO> getExceptions(LocalDate from, LocalDate to) {
+        log.debug("Fetching calendar exceptions from {} to {}", from, to);
+        if (to.isBefore(from)) {
+            throw new IllegalArgumentException("'to' must not be before 'from'");
+        }
+        return exceptionMapper.toDTOList(exceptionRepository.findByServiceDateBetweenOrderByServiceDate(from, to));
+    }
+
+    public Set<ServiceType> getServiceTypes(LocalDate date) {
+        return serviceCalendar.serviceTypes(date);
+    }
+
+    @Transactional
+    public CalendarExceptionDTO createException(CalendarExceptionRequest request) {
+        if (request.getServiceDate() == null || request.getExceptionType() == null) {
+            throw new IllegalArgumentException("serviceDate and exceptionType are required");
+        }
+        if ((request.getServiceType() == null) == (request.getScheduleId() == null)) {
+            throw new IllegalArgumentException("Exactly one of serviceType and scheduleId must be set");
+        }
+        log.info("Adding calendar exception {} on {} for {}", request.getExceptionType(), request.getServiceDate(),
+            request.getScheduleId() != null ? "schedule " + request.getScheduleId() : request.getServiceType());
+
+        ServiceCalendarException exception = ServiceCalendarException.builder()
+            .serviceDate(request.getServiceDate())
+            .serviceType(request.getServiceType())
+            .exceptionType(request.getExceptionType())
+            .description(request.getDescription())
+            .build();
+        if (request.getScheduleId() != null) {
+            exception.setSchedule(scheduleRepository.findById(request.getScheduleId())
+                .orElseThrow(() -> new ResourceNotFoundException(
+                    "Schedule not found with id: " + request.getScheduleId())));
+        }
+        ServiceCalendarException saved = exceptionRepository.save(exception);
+        eventPublisher.publishEvent(new ServiceCalendarChangedEvent(saved.getServiceDate()));
+        return exceptionMapper.toDTO(saved);
+    }
+
+    @Transactional
+    public void deleteException(Long id) {
+        log.info("Deleting calendar exception with id: {}", id);
+        ServiceCalendarException exception = exceptionRepository.findById(id)
+            .orElseThrow(() -> new ResourceNotFoundException("Calendar exception not found with id: " + id));
+        exceptionRepository.delete(exception);
+        eventPublisher.publishEvent(new ServiceCalendarChangedEvent(exception.getServiceDate()));
+    }
+}
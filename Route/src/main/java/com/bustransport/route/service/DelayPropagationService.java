@@ -0,0 +1,116 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.entity.Departure;
+import com.bustransport.route.entity.RouteStop;
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.event.DepartureChangedEvent;
+import com.bustransport.route.event.TripDeparturesChangedEvent;
+import com.bustransport.route.repository.DepartureRepository;
+import com.bustransport.route.repository.DepartureRepository.DepartureState;
+import com.bustransport.route.repository.RouteStopRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carries the delay reported for one departure on to the later stops of the
+ * same trip, up to the first later stop that has a report of its own. At
+ * every later stop the delay shrinks by a decay factor and by the share of
+ * the stop's dwell time a late bus can skip, and all affected rows are
+ * written in one JDBC batch within the caller's transaction.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DelayPropagationService {
+
+    private static final String UPDATE_SQL =
+        "UPDATE departures SET status = ?, delay_minutes = ?, updated_at = ? WHERE id = ?";
+
+    private final DepartureRepository departureRepository;
+    private final RouteStopRepository routeStopRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${departures.propagation.enabled:true}")
+    private boolean enabled;
+
+    // Share of the delay kept from one stop to the next
+    @Value("${departures.propagation.decay:0.98}")
+    private double decay;
+
+    // Share of the dwell time at a stop a late bus can make up
+    @Value("${departures.propagation.dwell-recovery:0.5}")
+    private double dwellRecovery;
+
+    /**
+     * Propagates the delay of an updated departure. Cancelled departures are
+     * neither propagated nor overwritten, and departures without a trip id
+     * cannot be related to the rest of their trip.
+     *
+     * @return number of later departures whose status or delay changed
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int propagate(Departure departure) {
+        if (!enabled || departure.getTripId() == null || departure.getStatus() == DepartureStatus.CANCELLED) {
+            return 0;
+        }
+        Long routeId = departure.getSchedule().getRoute().getId();
+        List<DepartureState> later = departureRepository.findTripStatesAfter(
+            departure.getSchedule().getId(), departure.getTripId(), departure.getDepartureTime());
+        if (later.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Integer> dwellSecs = new HashMap<>();
+        for (RouteStop routeStop : routeStopRepository.findByRouteIdOrderByStopSequence(routeId)) {
+            dwellSecs.putIfAbsent(routeStop.getStop().getId(),
+                routeStop.getDwellTime() != null ? routeStop.getDwellTime() : 0);
+        }
+
+        double delaySecs = Math.max(0, departure.getDelayMinutes()) * 60.0;
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> updates = new ArrayList<>();
+        List<DepartureChangedEvent> events = new ArrayList<>();
+        for (DepartureState state : later) {
+            if (state.getReportedAt() != null) {
+                // Reported on its own: that report is what holds from here on
+                break;
+            }
+            delaySecs = Math.max(0, delaySecs * decay - dwellRecovery * dwellSecs.getOrDefault(state.getStopId(), 0));
+            if (state.getStatus() == DepartureStatus.CANCELLED) {
+                continue;
+            }
+            int delayMinutes = (int) Math.round(delaySecs / 60);
+            DepartureStatus status = delayMinutes > 0 ? DepartureStatus.DELAYED
+                : state.getStatus() == DepartureStatus.EARLY ? DepartureStatus.EARLY : DepartureStatus.ON_TIME;
+            if (status == state.getStatus() && Integer.valueOf(delayMinutes).equals(state.getDelayMinutes())) {
+                continue;
+            }
+            updates.add(new Object[]{status.name(), delayMinutes, now, state.getId()});
+            events.add(new DepartureChangedEvent(state.getId(), routeId, state.getScheduleId(), state.getStopId(),
+                state.getDepartureTime(), status, delayMinutes, state.getStatusMessage()));
+        }
+        if (updates.isEmpty()) {
+            return 0;
+        }
+
+        jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+        // One event for the whole trip, patched into the timetable as one copy
+        eventPublisher.publishEvent(new TripDeparturesChangedEvent(routeId, departure.getTripId(), events));
+        log.info("Propagated {} min delay of departure {} to {} later stops of trip {}",
+            departure.getDelayMinutes(), departure.getId(), updates.size(), departure.getTripId());
+        return updates.size();
+    }
+}
@@ -0,0 +1,296 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.dto.response.DepartureBoardDTO;
+import com.bustransport.route.dto.response.DepartureDTO;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.exception.ResourceNotFoundException;
+import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.timetable.PatternTimetable;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the next departures of every polled stop precomputed in memory.
+ * A board is rebuilt from the timetable snapshot when its first departure
+ * has left, when a pattern serving the stop was replaced (a schedule edit or
+ * a real-time status update) or, for boards that are not full, after a
+ * maximum age. A periodic tick rolls the boards of recently polled stops
+ * forward so that polls rarely pay for a rebuild, and drops idle ones.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DepartureBoardService {
+
+    private final TimetableSnapshotService timetableService;
+    private final StopRepository stopRepository;
+
+    @Value("${departures.board.size:20}")
+    private int boardSize;
+
+    @Value("${departures.board.window-minutes:180}")
+    private int windowMinutes;
+
+    @Value("${departures.board.max-age-seconds:60}")
+    private int maxAgeSeconds;
+
+    @Value("${departures.board.idle-minutes:10}")
+    private int idleMinutes;
+
+    private final Map<Long, Board> boards = new ConcurrentHashMap<>();
+
+    /**
+     * Precomputed departures of one stop, earliest first, at most
+     * {@code departures.board.size} of them
+     */
+    public static final class Board {
+
+        @Getter
+        private final long stopId;
+        @Getter
+        private final String stopName;
+        @Getter
+        private final boolean hasRealTimeData;
+        @Getter
+        private final LocalDateTime generatedAt;
+        @Getter
+        private final LocalDateTime coveredUntil;
+        private final List<DepartureDTO> departures;
+        private final boolean full;
+        private final LocalDateTime validUntil;
+        private final LocalDate serviceDate;
+        private final PatternTimetable[] sources;
+        // prefixHashes[n] is the list hash of the first n departures
+        private final int[] prefixHashes;
+        private volatile long lastReadMillis = System.currentTimeMillis();
+
+        private Board(long stopId, String stopName, boolean hasRealTimeData, LocalDateTime generatedAt,
+                      LocalDateTime coveredUntil, List<DepartureDTO> departures, boolean full,
+                      LocalDateTime validUntil, LocalDate serviceDate, PatternTimetable[] sources) {
+            this.stopId = stopId;
+            this.stopName = stopName;
+            this.hasRealTimeData = hasRealTimeData;
+            this.generatedAt = generatedAt;
+            this.coveredUntil = coveredUntil;
+            this.departures = List.copyOf(departures);
+            this.full = full;
+            this.validUntil = validUntil;
+            this.serviceDate = serviceDate;
+            this.sources = sources;
+
+            this.prefixHashes = new int[departures.size() + 1];
+            prefixHashes[0] = 1;
+            for (int i = 0; i < departures.size(); i++) {
+                prefixHashes[i + 1] = 31 * prefixHashes[i] + departures.get(i).hashCode();
+            }
+        }
+
+        /**
+         * Whether the board holds every departure until {@code until} that a
+         * query limited to {@code limit} results can return
+         */
+        public boolean covers(LocalDateTime until, int limit) {
+            return limit <= departures.size() || (!full && !until.isAfter(coveredUntil));
+        }
+
+        public List<DepartureDTO> departuresUntil(LocalDateTime until, int limit) {
+            int count = 0;
+            while (count < departures.size() && count < limit
+                    && !departures.get(count).getDepartureTime().isAfter(until)) {
+                count++;
+            }
+            return departures.subList(0, count);
+        }
+
+        /**
+         * Weak entity tag of the first {@code limit} departures; it changes only
+         * when their content does
+         */
+        public String etag(int limit) {
+            int count = Math.min(Math.max(limit, 0), departures.size());
+            return "W/\"" + stopId + "-" + count + "-" + Integer.toHexString(prefixHashes[count]) + "\"";
+        }
+
+        public DepartureBoardDTO toDTO(int limit) {
+            return DepartureBoardDTO.builder()
+                .stopId(stopId)
+                .stopName(stopName)
+                .generatedAt(generatedAt)
+                .departures(departures.subList(0, Math.min(Math.max(limit, 0), departures.size())))
+                .hasRealTimeData(hasRealTimeData)
+                .build();
+        }
+
+        private boolean isCurrent(TimetableSnapshot timetable, int stop, LocalDateTime now) {
+            if (now.isAfter(validUntil) || !timetable.getServiceDate().equals(serviceDate)
+                    || timetable.stopPatternEnd(stop) - timetable.stopPatternStart(stop) != sources.length) {
+                return false;
+            }
+            for (int e = timetable.stopPatternStart(stop), i = 0; e < timetable.stopPatternEnd(stop); e++, i++) {
+                if (timetable.pattern(timetable.stopPattern(e)) != sources[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * @return the board of a stop, or an empty one for stops that are inactive
+     * @throws ResourceNotFoundException if the stop does not exist
+     */
+    public Board getBoard(Long stopId) {
+        Board board = findBoard(stopId);
+        if (board != null) {
+            return board;
+        }
+        Stop stop = stopRepository.findById(stopId)
+            .orElseThrow(() -> new ResourceNotFoundException("Stop not found with id: " + stopId));
+        LocalDateTime now = LocalDateTime.now();
+        return new Board(stopId, stop.getName(), Boolean.TRUE.equals(stop.getHasRealTimeInfo()), now, now,
+            List.of(), false, now, now.toLocalDate(), new PatternTimetable[0]);
+    }
+
+    /**
+     * @return the current board of a stop, or null if the stop is not in the timetable
+     */
+    public Board findBoard(Long stopId) {
+        LocalDateTime now = LocalDateTime.now();
+        TimetableSnapshot timetable = timetableService.getSnapshot(now.toLocalDate());
+        int stop = timetable.stopIndex(stopId);
+        if (stop < 0) {
+            return null;
+        }
+        Board board = boards.get(stopId);
+        if (board == null || !board.isCurrent(timetable, stop, now)) {
+            board = boards.compute(stopId, (key, existing) ->
+                existing != null && existing.isCurrent(timetable, stop, now)
+                    ? existing
+                    : buildBoard(timetable, stop, now));
+        }
+        board.lastReadMillis = System.currentTimeMillis();
+        return board;
+    }
+
+    @Scheduled(fixedDelayString = "${departures.board.tick-ms:15000}")
+    public void tick() {
+        LocalDateTime now = LocalDateTime.now();
+        long idleBefore = System.currentTimeMillis() - idleMinutes * 60_000L;
+        TimetableSnapshot timetable = timetableService.getSnapshot(now.toLocalDate());
+        int rebuilt = 0;
+        for (Board board : boards.values()) {
+            int stop = timetable.stopIndex(board.getStopId());
+            if (board.lastReadMillis < idleBefore || stop < 0) {
+                boards.remove(board.getStopId(), board);
+            } else if (!board.isCurrent(timetable, stop, now)) {
+                boards.replace(board.getStopId(), board, withLastRead(buildBoard(timetable, stop, now), board));
+                rebuilt++;
+            }
+        }
+        if (rebuilt > 0) {
+            log.debug("Rolled {} of {} departure boards forward", rebuilt, boards.size());
+        }
+    }
+
+    private Board buildBoard(TimetableSnapshot timetable, int stop, LocalDateTime now) {
+        LocalDateTime coveredUntil = now.plusMinutes(windowMinutes);
+        List<DepartureDTO> departures = new ArrayList<>();
+        collectDepartures(timetable, stop, null, now, coveredUntil, departures);
+        boolean crossesMidnight = !coveredUntil.toLocalDate().equals(now.toLocalDate());
+        if (crossesMidnight) {
+            // The window runs past midnight into the next service day
+            TimetableSnapshot nextDay = timetableService.getSnapshot(coveredUntil.toLocalDate());
+            int nextDayStop = nextDay.stopIndex(timetable.stopId(stop));
+            if (nextDayStop >= 0) {
+                collectDepartures(nextDay, nextDayStop, null, now, coveredUntil, departures);
+            }
+        }
+        departures.sort(Comparator.comparing(DepartureDTO::getDepartureTime));
+        boolean full = departures.size() >= boardSize;
+        if (full) {
+            departures = departures.subList(0, boardSize);
+        }
+
+        // Rebuild once the first departure has left. A board that is not full
+        // also has to pick up departures entering the window, and changes to
+        // the next day's timetable are not tracked through the sources.
+        LocalDateTime validUntil = departures.isEmpty() ? coveredUntil : departures.get(0).getDepartureTime();
+        if ((!full || crossesMidnight) && validUntil.isAfter(now.plusSeconds(maxAgeSeconds))) {
+            validUntil = now.plusSeconds(maxAgeSeconds);
+        }
+
+        PatternTimetable[] sources = new PatternTimetable[timetable.stopPatternEnd(stop) - timetable.stopPatternStart(stop)];
+        for (int e = timetable.stopPatternStart(stop), i = 0; e < timetable.stopPatternEnd(stop); e++, i++) {
+            sources[i] = timetable.pattern(timetable.stopPattern(e));
+        }
+        return new Board(timetable.stopId(stop), timetable.stopName(stop), timetable.stopHasRealTimeInfo(stop),
+            now, coveredUntil, departures, full, validUntil, timetable.getServiceDate(), sources);
+    }
+
+    private static Board withLastRead(Board board, Board previous) {
+        board.lastReadMillis = previous.lastReadMillis;
+        return board;
+    }
+
+    /**
+     * Adds the non-cancelled departures planned from the stop within the window
+     */
+    static void collectDepartures(TimetableSnapshot timetable, int stop, Long routeId,
+                                  LocalDateTime fromTime, LocalDateTime toTime, List<DepartureDTO> departures) {
+        LocalDateTime dayStart = timetable.getServiceDate().atStartOfDay();
+        int fromSecs = (int) Math.max(0, Duration.between(dayStart, fromTime).getSeconds());
+        int toSecs = (int) Duration.between(dayStart, toTime).getSeconds();
+
+        for (int e = timetable.stopPatternStart(stop); e < timetable.stopPatternEnd(stop); e++) {
+            PatternTimetable pattern = timetable.pattern(timetable.stopPattern(e));
+            int position = timetable.stopPatternPosition(e);
+            if ((routeId != null && pattern.getRouteId() != routeId) || position == pattern.length() - 1) {
+                // Filtered out, or the terminus where trips only arrive
+                continue;
+            }
+            for (int trip = pattern.firstPlannedAtOrAfter(position, fromSecs);
+                 trip < pattern.tripCount() && pattern.plannedDepartureSecs(trip, position) <= toSecs; trip++) {
+                if (!pattern.isCancelled(trip, position)) {
+                    departures.add(toDepartureDTO(timetable, pattern, trip, position));
+                }
+            }
+        }
+    }
+
+    private static DepartureDTO toDepartureDTO(TimetableSnapshot timetable, PatternTimetable pattern,
+                                               int trip, int position) {
+        LocalDateTime dayStart = timetable.getServiceDate().atStartOfDay();
+        LocalDateTime departureTime = dayStart.plusSeconds(pattern.plannedDepartureSecs(trip, position));
+        int delayMinutes = pattern.delaySecs(trip, position) / 60;
+        int stop = pattern.stop(position);
+        return DepartureDTO.builder()
+            .id(pattern.departureId(trip, position))
+            .scheduleId(pattern.scheduleId(trip))
+            .stopId(timetable.stopId(stop))
+            .stopName(timetable.stopName(stop))
+            .routeNumber(pattern.getRouteNumber())
+            .routeName(pattern.getRouteName())
+            .departureTime(departureTime)
+            .arrivalTime(dayStart.plusSeconds(pattern.plannedArrivalSecs(trip, position)))
+            .status(pattern.status(trip, position))
+            .delayMinutes(delayMinutes)
+            .statusMessage(pattern.statusMessage(trip, position))
+            .actualDepartureTime(departureTime.plusMinutes(delayMinutes))
+            .build();
+    }
+}
@@ -0,0 +1,298 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.calendar.ServiceCalendar;
+import com.bustransport.route.entity.RouteStop;
+import com.bustransport.route.entity.Schedule;
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.event.ServiceCalendarChangedEvent;
+import com.bustransport.route.event.TimetableChangedEvent;
+import com.bustransport.route.exception.ResourceNotFoundException;
+import com.bustransport.route.repository.RouteStopRepository;
+import com.bustransport.route.repository.ScheduleRepository;
+import com.bustransport.route.timetable.TimetableSnapshotBuilder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Expands schedule frequency rules into departure rows for a rolling horizon
+ * of service days. Rows are written with JDBC batches, one short transaction
+ * per schedule and day, so even very large feeds never hold a long transaction.
+ *
+ * <p>Generated rows carry a trip id of the form
+ * {@code S<scheduleId>-<yyyyMMdd>-<HHmm>}. Regenerating a day only replaces
+ * rows that are still untouched (on time, no delay, no message, never
+ * reported), so real-time updates already recorded against a departure
+ * survive schedule edits.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class DepartureMaterializationService {
+
+    private static final int BATCH_SIZE = 1000;
+    // Generated trips that start late in the day run past midnight
+    private static final int SERVICE_DAY_HOURS = 30;
+    private static final DateTimeFormatter TRIP_DATE = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String INSERT_SQL =
+        "INSERT INTO departures (schedule_id, stop_id, departure_time, arrival_time, status, delay_minutes, " +
+        "trip_id, created_at, updated_at) VALUES (?, ?, ?, ?, ?, 0, ?, ?, ?) " +
+        "ON CONFLICT (schedule_id, stop_id, departure_time) DO NOTHING";
+
+    private static final String DELETE_UNTOUCHED_SQL =
+        "DELETE FROM departures WHERE schedule_id = ? AND trip_id LIKE ? AND " +
+        "status = 'ON_TIME' AND delay_minutes = 0 AND status_message IS NULL AND reported_at IS NULL";
+
+    private static final String DELETE_DEACTIVATED_SQL =
+        "DELETE FROM departures d USING schedules s WHERE d.schedule_id = s.id AND s.is_active = false AND " +
+        "d.departure_time >= ? AND d.trip_id LIKE 'S%' AND d.status = 'ON_TIME' AND d.delay_minutes = 0 AND " +
+        "d.status_message IS NULL AND d.reported_at IS NULL";
+
+    private static final String MATERIALIZED_SCHEDULES_SQL =
+        "SELECT DISTINCT schedule_id FROM departures WHERE departure_time >= ? AND departure_time < ? " +
+        "AND trip_id LIKE 'S%' AND split_part(trip_id, '-', 2) = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ScheduleRepository scheduleRepository;
+    private final RouteStopRepository routeStopRepository;
+    private final ServiceCalendar serviceCalendar;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${departures.materialization.horizon-days:7}")
+    private int horizonDays;
+
+    /**
+     * Fills every day of the horizon with the departures of schedules that
+     * have not been materialized for it yet. Runs at startup and nightly.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "${departures.materialization.cron:0 30 2 * * *}")
+    public void materializeHorizon() {
+        try {
+            long start = System.currentTimeMillis();
+            Map<Long, List<RouteStop>> routeStops = new HashMap<>();
+            int rows = 0;
+            LocalDate today = LocalDate.now();
+            for (int d = 0; d < horizonDays; d++) {
+                rows += materializeDay(today.plusDays(d), routeStops);
+            }
+            log.info("Materialized {} departures for the next {} days in {} ms", rows, horizonDays,
+                System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            log.error("Departure materialization failed", e);
+        }
+    }
+
+    /**
+     * Regenerates the horizon of a schedule after it was created, edited or
+     * deactivated.
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTimetableChanged(TimetableChangedEvent event) {
+        if (event.getScheduleId() == null) {
+            return;
+        }
+        try {
+            rematerializeSchedule(event.getScheduleId());
+        } catch (Exception e) {
+            log.error("Failed to regenerate departures of schedule {}", event.getScheduleId(), e);
+        }
+    }
+
+    /**
+     * Replaces the untouched departures of one schedule on every day of the horizon
+     *
+     * @return the number of rows inserted
+     */
+    public int rematerializeSchedule(Long scheduleId) {
+        Schedule schedule = scheduleRepository.findById(scheduleId)
+            .orElseThrow(() -> new ResourceNotFoundException("Schedule not found with id: " + scheduleId));
+        List<RouteStop> routeStops = routeStopRepository.findByRouteIdOrderByStopSequence(
+            schedule.getRoute().getId());
+
+        int rows = 0;
+        LocalDate today = LocalDate.now();
+        for (int d = 0; d < horizonDays; d++) {
+            LocalDate day = today.plusDays(d);
+            boolean runs = serviceCalendar.isRunning(scheduleId, day);
+            rows += writeScheduleDay(schedule, runs ? routeStops : List.of(), day);
+        }
+        log.info("Regenerated {} departures of schedule {}", rows, scheduleId);
+
+        // Departure ids changed: let the in-memory timetable pick them up
+        eventPublisher.publishEvent(new TimetableChangedEvent(schedule.getRoute().getId(), null));
+        return rows;
+    }
+
+    /**
+     * Regenerates a whole service day after a calendar exception for it was
+     * added or removed. Runs before the timetable refresh of the same event.
+     */
+    @Order(Ordered.HIGHEST_PRECEDENCE + 1)
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCalendarChanged(ServiceCalendarChangedEvent event) {
+        LocalDate day = event.getServiceDate();
+        LocalDate today = LocalDate.now();
+        if (day.isBefore(today) || !day.isBefore(today.plusDays(horizonDays))) {
+            return;
+        }
+        try {
+            Map<Long, List<RouteStop>> routeStopsByRoute = new HashMap<>();
+            int rows = 0;
+            for (Schedule schedule : scheduleRepository.findAllActiveWithRoute()) {
+                List<RouteStop> routeStops = serviceCalendar.isRunning(schedule.getId(), day)
+                    ? routeStopsByRoute.computeIfAbsent(schedule.getRoute().getId(),
+                        routeStopRepository::findByRouteIdOrderByStopSequence)
+                    : List.of();
+                rows += tryWriteScheduleDay(schedule, routeStops, day);
+            }
+            log.info("Regenerated {} departures for {} after a calendar change", rows, day);
+        } catch (Exception e) {
+            log.error("Failed to regenerate departures for {}", day, e);
+        }
+    }
+
+    /**
+     * Drops the untouched upcoming departures of deactivated schedules, e.g.
+     * after a feed import replaced them
+     *
+     * @return the number of rows deleted
+     */
+    public int deleteDeactivated() {
+        return jdbcTemplate.update(DELETE_DEACTIVATED_SQL, Timestamp.valueOf(LocalDate.now().atStartOfDay()));
+    }
+
+    private int materializeDay(LocalDate day, Map<Long, List<RouteStop>> routeStopsByRoute) {
+        LocalDateTime dayStart = day.atStartOfDay();
+        Set<Long> materialized = new HashSet<>(jdbcTemplate.queryForList(MATERIALIZED_SCHEDULES_SQL, Long.class,
+            Timestamp.valueOf(dayStart), Timestamp.valueOf(dayStart.plusHours(SERVICE_DAY_HOURS)),
+            day.format(TRIP_DATE)));
+
+        int rows = 0;
+        List<Long> missing = serviceCalendar.runningScheduleIds(day).stream()
+            .filter(scheduleId -> !materialized.contains(scheduleId))
+            .toList();
+        for (Schedule schedule : scheduleRepository.findAllById(missing)) {
+            List<RouteStop> routeStops = routeStopsByRoute.computeIfAbsent(schedule.getRoute().getId(),
+                routeStopRepository::findByRouteIdOrderByStopSequence);
+            rows += tryWriteScheduleDay(schedule, routeStops, day);
+        }
+        return rows;
+    }
+
+    /**
+     * Writes one schedule day of a pass over many schedules, so one failing
+     * schedule does not stop the others
+     */
+    private int tryWriteScheduleDay(Schedule schedule, List<RouteStop> routeStops, LocalDate day) {
+        try {
+            return writeScheduleDay(schedule, routeStops, day);
+        } catch (Exception e) {
+            log.error("Failed to write departures of schedule {} for {}", schedule.getId(), day, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Replaces the untouched departures of a schedule on one day in a single
+     * short transaction. An empty stop list only deletes.
+     */
+    private int writeScheduleDay(Schedule schedule, List<RouteStop> routeStops, LocalDate day) {
+        String tripPrefix = tripPrefix(schedule.getId(), day);
+        List<Object[]> rows = expand(schedule, routeStops, day);
+        // Always a new transaction: after-commit listeners would otherwise join
+        // the committed one and their writes would never be committed
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        Integer inserted = transaction.execute(status -> {
+            jdbcTemplate.update(DELETE_UNTOUCHED_SQL, schedule.getId(), tripPrefix + "%");
+            int count = 0;
+            for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+                int[] results = jdbcTemplate.batchUpdate(INSERT_SQL,
+                    rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+                for (int result : results) {
+                    // The driver may report SUCCESS_NO_INFO (-2) for rewritten batches
+                    count += result == 0 ? 0 : 1;
+                }
+            }
+            return count;
+        });
+        return inserted != null ? inserted : 0;
+    }
+
+    /**
+     * Trip id of generated departures, also used as the GTFS-Realtime trip id
+     *
+     * @param startSecs trip start, seconds after midnight of {@code day}
+     */
+    public static String tripId(long scheduleId, LocalDate day, int startSecs) {
+        return tripPrefix(scheduleId, day) + String.format("%02d%02d", startSecs / 3600, startSecs / 60 % 60);
+    }
+
+    private static String tripPrefix(long scheduleId, LocalDate day) {
+        return "S" + scheduleId + "-" + day.format(TRIP_DATE) + "-";
+    }
+
+    private List<Object[]> expand(Schedule schedule, List<RouteStop> routeStops, LocalDate day) {
+        if (routeStops.size() < 2 || schedule.getFrequency() == null || schedule.getFrequency() <= 0) {
+            return List.of();
+        }
+        int[] dwell = TimetableSnapshotBuilder.dwellSecs(routeStops);
+        int[] offsets = TimetableSnapshotBuilder.departureOffsets(routeStops, dwell);
+        LocalDateTime dayStart = day.atStartOfDay();
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        String status = DepartureStatus.ON_TIME.name();
+
+        int first = schedule.getFirstDeparture().toSecondOfDay();
+        int last = schedule.getLastDeparture().toSecondOfDay();
+        if (last < first) {
+            log.warn("Skipping schedule {}: last departure {} is before first departure {}", schedule.getId(),
+                schedule.getLastDeparture(), schedule.getFirstDeparture());
+            return List.of();
+        }
+        int step = schedule.getFrequency() * 60;
+        List<Object[]> rows = new ArrayList<>(((last - first) / step + 1) * routeStops.size());
+        for (int t = first; t <= last; t += step) {
+            String tripId = tripId(schedule.getId(), day, t);
+            for (int i = 0; i < routeStops.size(); i++) {
+                LocalDateTime departure = dayStart.plusSeconds(t + offsets[i]);
+                rows.add(new Object[]{
+                    schedule.getId(),
+                    routeStops.get(i).getStop().getId(),
+                    Timestamp.valueOf(departure),
+                    Timestamp.valueOf(departure.minusSeconds(dwell[i])),
+                    status,
+                    tripId,
+                    now,
+                    now
+                });
+            }
+        }
+        return rows;
+    }
+}
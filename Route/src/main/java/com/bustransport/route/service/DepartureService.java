@@ -5,16 +5,23 @@ import com.bustransport.route.dto.response.DepartureDTO;
 import com.bustransport.route.dto.response.NextDeparturesResponse;
 import com.bustransport.route.entity.Departure;
 import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.event.DepartureChangedEvent;
 import com.bustransport.route.exception.ResourceNotFoundException;
 import com.bustransport.route.mapper.DepartureMapper;
 import com.bustransport.route.repository.DepartureRepository;
 import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import com.bustransport.route.timetable.TimetableSnapshotService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 @Service
@@ -26,58 +33,85 @@ public class DepartureService {
     private final DepartureRepository departureRepository;
     private final StopRepository stopRepository;
     private final DepartureMapper departureMapper;
+    private final TimetableSnapshotService timetableService;
+    private final DepartureBoardService departureBoardService;
+    private final DelayPropagationService delayPropagationService;
+    private final ApplicationEventPublisher eventPublisher;
 
     public DepartureDTO getDepartureById(Long id) {
         log.debug("Fetching departure with id: {}", id);
-        Departure departure = departureRepository.findById(id)
+        Departure departure = departureRepository.findDetailedById(id)
             .orElseThrow(() -> new ResourceNotFoundException("Departure not found with id: " + id));
         return departureMapper.toDTO(departure);
     }
 
+    /**
+     * Served from the in-memory timetable, which already carries the real-time
+     * state of every materialized departure, so no query runs per request.
+     * Unfiltered requests are answered from the stop's precomputed board.
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
     public NextDeparturesResponse getNextDepartures(NextDeparturesRequest request) {
         log.debug("Fetching next departures for stop: {}", request.getStopId());
-        
-        var stop = stopRepository.findById(request.getStopId())
-            .orElseThrow(() -> new ResourceNotFoundException("Stop not found with id: " + request.getStopId()));
-        
+
         LocalDateTime now = LocalDateTime.now();
         LocalDateTime endTime = now.plusMinutes(request.getTimeWindowMinutes());
-        
-        List<Departure> departures;
-        if (request.getRouteId() != null) {
-            departures = departureRepository.findUpcomingDeparturesByStopIdAndRouteId(
-                request.getStopId(), 
-                request.getRouteId(), 
-                now, 
-                endTime
-            );
+
+        DepartureBoardService.Board board = departureBoardService.findBoard(request.getStopId());
+        if (board == null) {
+            // Inactive stops are not in the timetable and have no service
+            var inactiveStop = stopRepository.findById(request.getStopId())
+                .orElseThrow(() -> new ResourceNotFoundException("Stop not found with id: " + request.getStopId()));
+            return NextDeparturesResponse.builder()
+                .stopName(inactiveStop.getName())
+                .queryTime(now)
+                .departures(List.of())
+                .hasRealTimeData(inactiveStop.getHasRealTimeInfo())
+                .build();
+        }
+
+        List<DepartureDTO> departures;
+        if (request.getRouteId() == null && board.covers(endTime, request.getLimit())) {
+            departures = board.departuresUntil(endTime, request.getLimit());
         } else {
-            departures = departureRepository.findUpcomingDeparturesByStopId(
-                request.getStopId(), 
-                now, 
-                endTime
-            );
+            departures = collectDepartures(request, now, endTime);
         }
-        
+
+        return NextDeparturesResponse.builder()
+            .stopName(board.getStopName())
+            .queryTime(now)
+            .departures(departures)
+            .hasRealTimeData(board.isHasRealTimeData())
+            .build();
+    }
+
+    private List<DepartureDTO> collectDepartures(NextDeparturesRequest request,
+                                                 LocalDateTime now, LocalDateTime endTime) {
+        TimetableSnapshot timetable = timetableService.getSnapshot(now.toLocalDate());
+        List<DepartureDTO> departures = new ArrayList<>();
+        DepartureBoardService.collectDepartures(timetable, timetable.stopIndex(request.getStopId()),
+            request.getRouteId(), now, endTime, departures);
+        if (!endTime.toLocalDate().equals(now.toLocalDate())) {
+            // The window runs past midnight into the next service day
+            TimetableSnapshot nextDay = timetableService.getSnapshot(endTime.toLocalDate());
+            int nextDayStop = nextDay.stopIndex(request.getStopId());
+            if (nextDayStop >= 0) {
+                DepartureBoardService.collectDepartures(nextDay, nextDayStop, request.getRouteId(),
+                    now, endTime, departures);
+            }
+        }
+        departures.sort(Comparator.comparing(DepartureDTO::getDepartureTime));
+
         // Limit results
         if (departures.size() > request.getLimit()) {
             departures = departures.subList(0, request.getLimit());
         }
-        
-        List<DepartureDTO> departureDTOs = departureMapper.toDTOList(departures);
-        
-        return NextDeparturesResponse.builder()
-            .stopName(stop.getName())
-            .queryTime(now)
-            .departures(departureDTOs)
-            .hasRealTimeData(stop.getHasRealTimeInfo())
-            .build();
+        return departures;
     }
 
     public List<DepartureDTO> getDeparturesByStatus(DepartureStatus status) {
         log.debug("Fetching departures by status: {}", status);
-        List<Departure> departures = departureRepository.findByStatus(status);
-        return departureMapper.toDTOList(departures);
+        return withActualDepartureTimes(departureRepository.findDTOsByStatus(status));
     }
 
     public List<DepartureDTO> getDeparturesByRouteAndTimeRange(
@@ -85,22 +119,24 @@ public class DepartureService {
             LocalDateTime fromTime, 
             LocalDateTime toTime) {
         log.debug("Fetching departures for route: {} between {} and {}", routeId, fromTime, toTime);
-        List<Departure> departures = departureRepository.findByRouteIdAndTimeRange(routeId, fromTime, toTime);
-        return departureMapper.toDTOList(departures);
+        return withActualDepartureTimes(departureRepository.findDTOsByRouteIdAndTimeRange(routeId, fromTime, toTime));
     }
 
     @Transactional
     public DepartureDTO updateDepartureStatus(Long id, DepartureStatus status, Integer delayMinutes, String message) {
         log.info("Updating departure {} status to {} with delay: {} minutes", id, status, delayMinutes);
-        Departure departure = departureRepository.findById(id)
+        Departure departure = departureRepository.findDetailedById(id)
             .orElseThrow(() -> new ResourceNotFoundException("Departure not found with id: " + id));
         
         departure.setStatus(status);
         departure.setDelayMinutes(delayMinutes != null ? delayMinutes : 0);
         departure.setStatusMessage(message);
+        departure.setReportedAt(LocalDateTime.now());
         
-        Departure updatedDeparture = departureRepository.save(departure);
-        
+        Departure updatedDeparture = departureRepository.saveAndFlush(departure);
+        publishDepartureChanged(updatedDeparture);
+        delayPropagationService.propagate(updatedDeparture);
+
         // Here we could publish an event to Notification Service
         // publishDepartureStatusEvent(updatedDeparture);
         
@@ -117,16 +153,40 @@ public class DepartureService {
             departure.setDelayMinutes(0);
         }
         Departure savedDeparture = departureRepository.save(departure);
+        publishDepartureChanged(savedDeparture);
         return departureMapper.toDTO(savedDeparture);
     }
 
     @Transactional
     public void deleteDeparture(Long id) {
         log.info("Deleting departure with id: {}", id);
-        Departure departure = departureRepository.findById(id)
+        Departure departure = departureRepository.findDetailedById(id)
             .orElseThrow(() -> new ResourceNotFoundException("Departure not found with id: " + id));
         departure.setStatus(DepartureStatus.CANCELLED);
         departureRepository.save(departure);
+        publishDepartureChanged(departure);
+    }
+
+    private static List<DepartureDTO> withActualDepartureTimes(List<DepartureDTO> departures) {
+        for (DepartureDTO departure : departures) {
+            if (departure.getDelayMinutes() != null && departure.getDelayMinutes() > 0) {
+                departure.setActualDepartureTime(departure.getDepartureTime().plusMinutes(departure.getDelayMinutes()));
+            }
+        }
+        return departures;
+    }
+
+    private void publishDepartureChanged(Departure departure) {
+        eventPublisher.publishEvent(new DepartureChangedEvent(
+            departure.getId(),
+            departure.getSchedule().getRoute().getId(),
+            departure.getSchedule().getId(),
+            departure.getStop().getId(),
+            departure.getDepartureTime(),
+            departure.getStatus(),
+            departure.getDelayMinutes(),
+            departure.getStatusMessage()
+        ));
     }
 }
 
@@ -0,0 +1,160 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.dto.request.IsochroneRequest;
+import com.bustransport.route.dto.response.IsochroneResponse;
+import com.bustransport.route.dto.response.IsochroneResponse.ReachableStop;
+import com.bustransport.route.dto.response.OptimalPathResponse.Coordinate;
+import com.bustransport.route.planner.RaptorPlanner;
+import com.bustransport.route.planner.ReachableStops;
+import com.bustransport.route.spatial.SpatialGrid;
+import com.bustransport.route.spatial.StopSpatialIndex;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import com.bustransport.route.util.ConcaveHull;
+import com.bustransport.route.util.GeoUtils;
+import com.bustransport.route.util.PolylineEncoder;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Reachability from a stop or a coordinate: a time-bounded RAPTOR search over
+ * the in-memory timetable, walking transfers included, optionally outlined by
+ * a concave hull.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IsochroneService {
+
+    // Candidate stops considered around a coordinate origin
+    private static final int MAX_ACCESS_STOPS = 10;
+    private static final double DEFAULT_CONCAVITY = 2.0;
+    // Edges shorter than this are never dug into
+    private static final double MIN_HULL_EDGE_METERS = 200;
+
+    private final TimetableSnapshotService timetableService;
+    private final RaptorPlanner raptorPlanner;
+    private final StopSpatialIndex stopSpatialIndex;
+
+    @Value("${planner.access-radius-meters:1000}")
+    private int defaultAccessRadiusMeters;
+
+    @Value("${planner.isochrone.max-duration-minutes:180}")
+    private int maxDurationMinutes;
+
+    public IsochroneResponse calculateIsochrone(IsochroneRequest request) {
+        if (request.getMaxDurationMinutes() > maxDurationMinutes) {
+            throw new IllegalArgumentException("maxDurationMinutes must not exceed " + maxDurationMinutes);
+        }
+        LocalDateTime departureTime = request.getDepartureTime() != null
+            ? request.getDepartureTime() : LocalDateTime.now();
+        TimetableSnapshot timetable = timetableService.getSnapshot(departureTime.toLocalDate());
+        int maxDurationSecs = request.getMaxDurationMinutes() * 60;
+
+        int[] originStops;
+        int[] accessSecs;
+        double originLat;
+        double originLon;
+        if (request.getOriginStopId() != null) {
+            int origin = timetable.stopIndex(request.getOriginStopId());
+            if (origin < 0) {
+                throw new IllegalArgumentException("Origin stop not found: " + request.getOriginStopId());
+            }
+            originStops = new int[]{origin};
+            accessSecs = new int[]{0};
+            originLat = timetable.stopLat(origin);
+            originLon = timetable.stopLon(origin);
+        } else if (request.getLat() != null && request.getLon() != null) {
+            originLat = request.getLat().doubleValue();
+            originLon = request.getLon().doubleValue();
+            int radius = request.getMaxWalkDistance() != null
+                ? request.getMaxWalkDistance() : defaultAccessRadiusMeters;
+            List<SpatialGrid.Hit> hits = stopSpatialIndex.findNearest(originLat, originLon, MAX_ACCESS_STOPS, radius);
+            originStops = new int[hits.size()];
+            accessSecs = new int[hits.size()];
+            int count = 0;
+            for (SpatialGrid.Hit hit : hits) {
+                int stop = timetable.stopIndex(hit.getId());
+                if (stop >= 0) {
+                    originStops[count] = stop;
+                    accessSecs[count++] = GeoUtils.walkSeconds(hit.getMeters());
+                }
+            }
+            originStops = Arrays.copyOf(originStops, count);
+            accessSecs = Arrays.copyOf(accessSecs, count);
+        } else {
+            throw new IllegalArgumentException("Either an origin stop or a coordinate must be provided");
+        }
+
+        int departureSecs = departureTime.toLocalTime().toSecondOfDay();
+        ReachableStops reached = raptorPlanner.reachable(timetable, originStops, accessSecs,
+            departureSecs, maxDurationSecs, request.getMaxTransfers());
+
+        LocalDateTime dayStart = timetable.getServiceDate().atStartOfDay();
+        List<ReachableStop> stops = new ArrayList<>(reached.size());
+        for (int i = 0; i < reached.size(); i++) {
+            int stop = reached.stop(i);
+            int arrivalSecs = reached.arrivalSecs(i);
+            stops.add(ReachableStop.builder()
+                .stopId(timetable.stopId(stop))
+                .stopName(timetable.stopName(stop))
+                .latitude(BigDecimal.valueOf(timetable.stopLat(stop)))
+                .longitude(BigDecimal.valueOf(timetable.stopLon(stop)))
+                .arrivalTime(dayStart.plusSeconds(arrivalSecs))
+                .durationMinutes((arrivalSecs - departureSecs) / 60)
+                .transfers(Math.max(0, reached.trips(i) - 1))
+                .build());
+        }
+        stops.sort(Comparator.comparing(ReachableStop::getArrivalTime));
+
+        IsochroneResponse.IsochroneResponseBuilder response = IsochroneResponse.builder()
+            .departureTime(departureTime)
+            .maxDurationMinutes(request.getMaxDurationMinutes())
+            .stops(stops);
+        if (Boolean.TRUE.equals(request.getIncludePolygon())) {
+            double[][] ring = hull(timetable, reached, originLat, originLon,
+                request.getConcavity() != null ? request.getConcavity() : DEFAULT_CONCAVITY);
+            if (ring != null) {
+                response.encodedPolygon(PolylineEncoder.encode(ring[0], ring[1], 5))
+                    .polygon(toCoordinates(ring));
+            }
+        }
+        return response.build();
+    }
+
+    /**
+     * Concave hull of the origin and every reached stop
+     */
+    private double[][] hull(TimetableSnapshot timetable, ReachableStops reached,
+                            double originLat, double originLon, double concavity) {
+        double[] lats = new double[reached.size() + 1];
+        double[] lons = new double[reached.size() + 1];
+        lats[0] = originLat;
+        lons[0] = originLon;
+        for (int i = 0; i < reached.size(); i++) {
+            lats[i + 1] = timetable.stopLat(reached.stop(i));
+            lons[i + 1] = timetable.stopLon(reached.stop(i));
+        }
+        long start = System.nanoTime();
+        double[][] ring = ConcaveHull.compute(lats, lons, concavity, MIN_HULL_EDGE_METERS);
+        log.debug("Concave hull of {} points in {} us", lats.length, (System.nanoTime() - start) / 1000);
+        return ring;
+    }
+
+    private List<Coordinate> toCoordinates(double[][] ring) {
+        List<Coordinate> coordinates = new ArrayList<>(ring[0].length);
+        for (int i = 0; i < ring[0].length; i++) {
+            coordinates.add(new Coordinate(BigDecimal.valueOf(ring[0][i]), BigDecimal.valueOf(ring[1][i])));
+        }
+        return coordinates;
+    }
+}
@@ -4,242 +4,339 @@ import com.bustransport.route.dto.request.OptimalPathRequest;
 import com.bustransport.route.dto.response.OptimalPathResponse;
 import com.bustransport.route.dto.response.OptimalPathResponse.PathSegment;
 import com.bustransport.route.dto.response.OptimalPathResponse.Coordinate;
-import com.bustransport.route.entity.Route;
-import com.bustransport.route.entity.RouteStop;
-import com.bustransport.route.entity.Stop;
-import com.bustransport.route.repository.RouteRepository;
-import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.planner.Journey;
+import com.bustransport.route.planner.JourneyLeg;
+import com.bustransport.route.planner.RaptorPlanner;
+import com.bustransport.route.spatial.SpatialGrid;
+import com.bustransport.route.spatial.StopSpatialIndex;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import com.bustransport.route.util.GeoUtils;
+import com.bustransport.route.util.PolylineEncoder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
-@Transactional(readOnly = true)
 public class OptimalPathService {
 
-    private final StopRepository stopRepository;
-    private final RouteRepository routeRepository;
+    // Candidate stops considered around a coordinate origin or destination
+    private static final int MAX_ACCESS_STOPS = 10;
+
+    private final TimetableSnapshotService timetableService;
+    private final RaptorPlanner raptorPlanner;
     private final RoutingService routingService;
+    private final StopSpatialIndex stopSpatialIndex;
+    private final SegmentGeometryService segmentGeometryService;
+
+    @Value("${planner.access-radius-meters:1000}")
+    private int defaultAccessRadiusMeters;
 
-    @Cacheable(value = "optimalPaths")
+    @Cacheable(value = "optimalPaths", keyGenerator = "optimalPathKeyGenerator")
     public OptimalPathResponse calculateOptimalPath(OptimalPathRequest request) {
-        Stop nearestStartStop;
-        Stop nearestEndStop;
-        
+        LocalDateTime departureTime = request.getDepartureTime() != null
+            ? request.getDepartureTime() : LocalDateTime.now();
+        TimetableSnapshot timetable = timetableService.getSnapshot(departureTime.toLocalDate());
+        int accessRadius = request.getMaxWalkDistance() != null
+            ? request.getMaxWalkDistance() : defaultAccessRadiusMeters;
+        int precision = Integer.valueOf(6).equals(request.getPolylinePrecision()) ? 6 : 5;
+        boolean includeCoordinates = !Boolean.FALSE.equals(request.getIncludeCoordinates());
+
+        double startLat;
+        double startLon;
+        double endLat;
+        double endLon;
+        int[][] origins;
+        int[][] targets;
+
         // Check if stop IDs are provided (preferred method)
         if (request.getOriginStopId() != null && request.getDestinationStopId() != null) {
-            log.debug("Calculating optimal path from stop {} to stop {}", 
+            log.debug("Calculating optimal path from stop {} to stop {}",
                 request.getOriginStopId(), request.getDestinationStopId());
-            
-            nearestStartStop = stopRepository.findById(request.getOriginStopId())
-                .orElseThrow(() -> new IllegalArgumentException("Origin stop not found: " + request.getOriginStopId()));
-            nearestEndStop = stopRepository.findById(request.getDestinationStopId())
-                .orElseThrow(() -> new IllegalArgumentException("Destination stop not found: " + request.getDestinationStopId()));
-                
-            // Set coordinates from stops for walking calculations
-            request.setStartLat(nearestStartStop.getLatitude());
-            request.setStartLon(nearestStartStop.getLongitude());
-            request.setEndLat(nearestEndStop.getLatitude());
-            request.setEndLon(nearestEndStop.getLongitude());
-        } else if (request.getStartLat() != null && request.getStartLon() != null && 
+
+            int originStop = timetable.stopIndex(request.getOriginStopId());
+            if (originStop < 0) {
+                throw new IllegalArgumentException("Origin stop not found: " + request.getOriginStopId());
+            }
+            int destinationStop = timetable.stopIndex(request.getDestinationStopId());
+            if (destinationStop < 0) {
+                throw new IllegalArgumentException("Destination stop not found: " + request.getDestinationStopId());
+            }
+
+            startLat = timetable.stopLat(originStop);
+            startLon = timetable.stopLon(originStop);
+            endLat = timetable.stopLat(destinationStop);
+            endLon = timetable.stopLon(destinationStop);
+            origins = new int[][]{{originStop}, {0}};
+            targets = new int[][]{{destinationStop}, {0}};
+        } else if (request.getStartLat() != null && request.getStartLon() != null &&
                    request.getEndLat() != null && request.getEndLon() != null) {
-            log.debug("Calculating optimal path from ({}, {}) to ({}, {})", 
-                request.getStartLat(), request.getStartLon(), 
+            log.debug("Calculating optimal path from ({}, {}) to ({}, {})",
+                request.getStartLat(), request.getStartLon(),
                 request.getEndLat(), request.getEndLon());
 
-            // Find nearest stops to start and end points
-            double searchRadius = 1.0; // 1 km radius
-            List<Stop> startStops = stopRepository.findNearbyStops(
-                request.getStartLat(), request.getStartLon(), searchRadius);
-            List<Stop> endStops = stopRepository.findNearbyStops(
-                request.getEndLat(), request.getEndLon(), searchRadius);
+            startLat = request.getStartLat().doubleValue();
+            startLon = request.getStartLon().doubleValue();
+            endLat = request.getEndLat().doubleValue();
+            endLon = request.getEndLon().doubleValue();
 
-            if (startStops.isEmpty() || endStops.isEmpty()) {
-                return buildWalkingOnlyPath(request);
-            }
+            // Find stops within walking distance of start and end points
+            origins = findAccessStops(timetable, startLat, startLon, accessRadius);
+            targets = findAccessStops(timetable, endLat, endLon, accessRadius);
 
-            nearestStartStop = startStops.get(0);
-            nearestEndStop = endStops.get(0);
+            if (origins[0].length == 0 || targets[0].length == 0) {
+                return buildWalkingOnlyPath(startLat, startLon, endLat, endLon, departureTime,
+                    precision, includeCoordinates);
+            }
         } else {
             throw new IllegalArgumentException("Either stop IDs or coordinates must be provided");
         }
 
-        // Check if there's a direct route between these stops
-        List<Route> routesFromStart = routeRepository.findByStopId(nearestStartStop.getId());
-        List<Route> routesToEnd = routeRepository.findByStopId(nearestEndStop.getId());
-
-        Route directRoute = findCommonRoute(routesFromStart, routesToEnd);
+        Integer transferLimit = Boolean.TRUE.equals(request.getAvoidTransfers()) ? 0 : request.getMaxTransfers();
+        int departureSecs = departureTime.toLocalTime().toSecondOfDay();
+        Optional<Journey> journey = raptorPlanner.plan(timetable, origins[0], origins[1], targets[0], targets[1],
+            departureSecs, transferLimit);
 
-        if (directRoute != null) {
-            return buildTransitPath(request, nearestStartStop, nearestEndStop, directRoute);
+        // Walk if there is no transit journey or walking gets there sooner
+        int directWalkSecs = GeoUtils.walkSeconds(GeoUtils.distanceMeters(startLat, startLon, endLat, endLon));
+        if (journey.isEmpty()
+                || journey.get().getLegs().stream().noneMatch(JourneyLeg::isTransit)
+                || departureSecs + directWalkSecs <= journey.get().getArrivalSecs()) {
+            return buildWalkingOnlyPath(startLat, startLon, endLat, endLon, departureTime,
+                precision, includeCoordinates);
         }
 
-        // No direct route found, suggest walking or multi-leg journey
-        return buildWalkingOnlyPath(request);
+        return buildTransitPath(timetable, journey.get(), startLat, startLon, endLat, endLon,
+            precision, includeCoordinates);
     }
 
-    private Route findCommonRoute(List<Route> routes1, List<Route> routes2) {
-        for (Route r1 : routes1) {
-            for (Route r2 : routes2) {
-                if (r1.getId().equals(r2.getId())) {
-                    return r1;
-                }
+    /**
+     * Nearest stops within the radius, as {stop indices, walking seconds}
+     */
+    private int[][] findAccessStops(TimetableSnapshot timetable, double lat, double lon, int radiusMeters) {
+        List<SpatialGrid.Hit> hits = stopSpatialIndex.findNearest(lat, lon, MAX_ACCESS_STOPS, radiusMeters);
+        int[] stops = new int[hits.size()];
+        int[] secs = new int[hits.size()];
+        int count = 0;
+        for (SpatialGrid.Hit hit : hits) {
+            int stop = timetable.stopIndex(hit.getId());
+            if (stop >= 0) {
+                stops[count] = stop;
+                secs[count++] = GeoUtils.walkSeconds(hit.getMeters());
             }
         }
-        return null;
+        return new int[][]{Arrays.copyOf(stops, count), Arrays.copyOf(secs, count)};
     }
 
     private OptimalPathResponse buildTransitPath(
-            OptimalPathRequest request, 
-            Stop startStop, 
-            Stop endStop, 
-            Route route) {
-        
+            TimetableSnapshot timetable,
+            Journey journey,
+            double startLat, double startLon,
+            double endLat, double endLon,
+            int precision, boolean includeCoordinates) {
+
         List<PathSegment> segments = new ArrayList<>();
+        PolylineEncoder journeyLine = new PolylineEncoder(precision, 256);
+        double totalMeters = 0;
 
-        // Walking segment to start stop
-        BigDecimal walkToStopDistance = calculateDistance(
-            request.getStartLat(), request.getStartLon(),
-            startStop.getLatitude(), startStop.getLongitude()
-        );
-        
-        // Get real walking route geometry
-        List<Coordinate> walkToStopPath = routingService.getWalkingRouteGeometry(
-            request.getStartLat(), request.getStartLon(),
-            startStop.getLatitude(), startStop.getLongitude()
-        );
-        
-        segments.add(PathSegment.builder()
-            .type("walk")
-            .distance(walkToStopDistance)
-            .duration((int)(walkToStopDistance.doubleValue() * 12)) // ~5 km/h walking speed
-            .instructions("Walk to " + startStop.getName())
-            .path(walkToStopPath)
-            .build());
-
-        // Transit segment - get real route geometry following roads
-        BigDecimal transitDistance = calculateDistance(
-            startStop.getLatitude(), startStop.getLongitude(),
-            endStop.getLatitude(), endStop.getLongitude()
-        );
-        
-        // Get route geometry that follows real streets
-        List<Coordinate> transitPath = routingService.getRouteGeometry(
-            startStop.getLatitude(), startStop.getLongitude(),
-            endStop.getLatitude(), endStop.getLongitude()
-        );
-        
-        segments.add(PathSegment.builder()
-            .type("transit")
-            .routeNumber(route.getRouteNumber())
-            .routeName(route.getName())
-            .fromStopName(startStop.getName())
-            .toStopName(endStop.getName())
-            .distance(transitDistance)
-            .duration(route.getEstimatedDuration() != null ? route.getEstimatedDuration() : 
-                     (int)(transitDistance.doubleValue() * 2.5)) // ~24 km/h average bus speed
-            .instructions("Take " + route.getRouteNumber() + " from " + startStop.getName() + " to " + endStop.getName())
-            .path(transitPath)
-            .build());
-
-        // Walking segment from end stop - get real walking route
-        BigDecimal walkFromStopDistance = calculateDistance(
-            endStop.getLatitude(), endStop.getLongitude(),
-            request.getEndLat(), request.getEndLon()
-        );
-        
-        // Get real walking route geometry
-        List<Coordinate> walkFromStopPath = routingService.getWalkingRouteGeometry(
-            endStop.getLatitude(), endStop.getLongitude(),
-            request.getEndLat(), request.getEndLon()
-        );
-        
-        segments.add(PathSegment.builder()
-            .type("walk")
-            .distance(walkFromStopDistance)
-            .duration((int)(walkFromStopDistance.doubleValue() * 12))
-            .instructions("Walk to destination")
-            .path(walkFromStopPath)
-            .build());
+        for (JourneyLeg leg : journey.getLegs()) {
+            double fromLat = leg.getFromStop() >= 0 ? timetable.stopLat(leg.getFromStop()) : startLat;
+            double fromLon = leg.getFromStop() >= 0 ? timetable.stopLon(leg.getFromStop()) : startLon;
+            double toLat = leg.getToStop() >= 0 ? timetable.stopLat(leg.getToStop()) : endLat;
+            double toLon = leg.getToStop() >= 0 ? timetable.stopLon(leg.getToStop()) : endLon;
+
+            if (leg.isTransit()) {
+                double meters = rideDistanceMeters(timetable, leg);
+                totalMeters += meters;
+                String routeNumber = timetable.patternRouteNumber(leg.getPattern());
+                String fromStopName = timetable.stopName(leg.getFromStop());
+                String toStopName = timetable.stopName(leg.getToStop());
 
-        BigDecimal totalDistance = walkToStopDistance.add(transitDistance).add(walkFromStopDistance);
-        Integer totalDuration = segments.stream()
-            .mapToInt(PathSegment::getDuration)
-            .sum();
+                // Precomputed street geometry through every intermediate stop
+                double[][] transitPath = rideGeometry(timetable, leg);
+                journeyLine.append(transitPath[0], transitPath[1]);
+
+                segments.add(PathSegment.builder()
+                    .type("transit")
+                    .routeNumber(routeNumber)
+                    .routeName(timetable.patternRouteName(leg.getPattern()))
+                    .fromStopName(fromStopName)
+                    .toStopName(toStopName)
+                    .distance(toKilometers(meters))
+                    .duration(toMinutes(leg.getDurationSecs()))
+                    .departureTime(toDateTime(timetable, leg.getDepartureSecs()))
+                    .arrivalTime(toDateTime(timetable, leg.getArrivalSecs()))
+                    .instructions("Take " + routeNumber + " from " + fromStopName + " to " + toStopName)
+                    .encodedPath(PolylineEncoder.encode(transitPath[0], transitPath[1], precision))
+                    .path(includeCoordinates ? toCoordinates(transitPath) : null)
+                    .build());
+                continue;
+            }
+
+            double meters = GeoUtils.distanceMeters(fromLat, fromLon, toLat, toLon);
+            if (meters < 1) {
+                // Origin or destination is the stop itself
+                continue;
+            }
+            totalMeters += meters;
+
+            // Get real walking route geometry
+            double[][] walkingPath = toArrays(routingService.getWalkingRouteGeometry(
+                BigDecimal.valueOf(fromLat), BigDecimal.valueOf(fromLon),
+                BigDecimal.valueOf(toLat), BigDecimal.valueOf(toLon)
+            ));
+            journeyLine.append(walkingPath[0], walkingPath[1]);
+
+            segments.add(PathSegment.builder()
+                .type("walk")
+                .distance(toKilometers(meters))
+                .duration(toMinutes(leg.getDurationSecs()))
+                .departureTime(toDateTime(timetable, leg.getDepartureSecs()))
+                .arrivalTime(toDateTime(timetable, leg.getArrivalSecs()))
+                .instructions(leg.getToStop() >= 0
+                    ? "Walk to " + timetable.stopName(leg.getToStop()) : "Walk to destination")
+                .encodedPath(PolylineEncoder.encode(walkingPath[0], walkingPath[1], precision))
+                .path(includeCoordinates ? toCoordinates(walkingPath) : null)
+                .build());
+        }
 
         return OptimalPathResponse.builder()
-            .totalDistance(totalDistance)
-            .totalDuration(totalDuration)
+            .totalDistance(toKilometers(totalMeters))
+            .totalDuration(toMinutes(journey.getDurationSecs()))
+            .departureTime(toDateTime(timetable, journey.getDepartureSecs()))
+            .arrivalTime(toDateTime(timetable, journey.getArrivalSecs()))
+            .transfers(journey.getTransfers())
             .segments(segments)
-            .mapPolyline(encodePolyline(segments))
+            .mapPolyline(journeyLine.toString())
+            .polylinePrecision(precision)
             .build();
     }
 
-    private OptimalPathResponse buildWalkingOnlyPath(OptimalPathRequest request) {
-        BigDecimal distance = calculateDistance(
-            request.getStartLat(), request.getStartLon(),
-            request.getEndLat(), request.getEndLon()
-        );
+    private OptimalPathResponse buildWalkingOnlyPath(
+            double startLat, double startLon,
+            double endLat, double endLon,
+            LocalDateTime departureTime,
+            int precision, boolean includeCoordinates) {
+        double meters = GeoUtils.distanceMeters(startLat, startLon, endLat, endLon);
+        int walkSecs = GeoUtils.walkSeconds(meters);
+        LocalDateTime arrivalTime = departureTime.plusSeconds(walkSecs);
 
         // Get real walking route geometry
-        List<Coordinate> walkingPath = routingService.getWalkingRouteGeometry(
-            request.getStartLat(), request.getStartLon(),
-            request.getEndLat(), request.getEndLon()
-        );
+        double[][] walkingPath = toArrays(routingService.getWalkingRouteGeometry(
+            BigDecimal.valueOf(startLat), BigDecimal.valueOf(startLon),
+            BigDecimal.valueOf(endLat), BigDecimal.valueOf(endLon)
+        ));
+        String encodedPath = PolylineEncoder.encode(walkingPath[0], walkingPath[1], precision);
 
         PathSegment walkSegment = PathSegment.builder()
             .type("walk")
-            .distance(distance)
-            .duration((int)(distance.doubleValue() * 12)) // ~5 km/h walking speed
+            .distance(toKilometers(meters))
+            .duration(toMinutes(walkSecs))
+            .departureTime(departureTime)
+            .arrivalTime(arrivalTime)
             .instructions("Walk to destination")
-            .path(walkingPath)
+            .encodedPath(encodedPath)
+            .path(includeCoordinates ? toCoordinates(walkingPath) : null)
             .build();
 
         return OptimalPathResponse.builder()
-            .totalDistance(distance)
+            .totalDistance(walkSegment.getDistance())
             .totalDuration(walkSegment.getDuration())
+            .departureTime(departureTime)
+            .arrivalTime(arrivalTime)
+            .transfers(0)
             .segments(List.of(walkSegment))
-            .mapPolyline(encodePolyline(List.of(walkSegment)))
+            .mapPolyline(encodedPath)
+            .polylinePrecision(precision)
             .build();
     }
 
-    private BigDecimal calculateDistance(
-            BigDecimal lat1, BigDecimal lon1, 
-            BigDecimal lat2, BigDecimal lon2) {
-        // Haversine formula
-        double R = 6371; // Earth radius in km
-        double dLat = Math.toRadians(lat2.doubleValue() - lat1.doubleValue());
-        double dLon = Math.toRadians(lon2.doubleValue() - lon1.doubleValue());
-        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
-                   Math.cos(Math.toRadians(lat1.doubleValue())) * 
-                   Math.cos(Math.toRadians(lat2.doubleValue())) *
-                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double distance = R * c;
-        return BigDecimal.valueOf(distance).setScale(2, RoundingMode.HALF_UP);
+    private double rideDistanceMeters(TimetableSnapshot timetable, JourneyLeg leg) {
+        double meters = 0;
+        for (int i = leg.getBoardPosition(); i < leg.getAlightPosition(); i++) {
+            int from = timetable.patternStop(leg.getPattern(), i);
+            int to = timetable.patternStop(leg.getPattern(), i + 1);
+            meters += GeoUtils.distanceMeters(timetable.stopLat(from), timetable.stopLon(from),
+                timetable.stopLat(to), timetable.stopLon(to));
+        }
+        return meters;
     }
 
-    private String encodePolyline(List<PathSegment> segments) {
-        // Simple polyline encoding - in production would use actual polyline encoding algorithm
-        StringBuilder polyline = new StringBuilder();
-        for (PathSegment segment : segments) {
-            for (Coordinate coord : segment.getPath()) {
-                polyline.append(coord.getLat()).append(",")
-                       .append(coord.getLon()).append(";");
+    /**
+     * Street geometry of a ride as {latitudes, longitudes}, through every stop
+     * between boarding and alighting
+     */
+    private double[][] rideGeometry(TimetableSnapshot timetable, JourneyLeg leg) {
+        List<double[][]> parts = new ArrayList<>();
+        int points = 0;
+        for (int i = leg.getBoardPosition(); i < leg.getAlightPosition(); i++) {
+            int from = timetable.patternStop(leg.getPattern(), i);
+            int to = timetable.patternStop(leg.getPattern(), i + 1);
+            double[][] segment = segmentGeometryService.getSegment(timetable.stopId(from), timetable.stopId(to));
+            if (segment == null) {
+                // Not precomputed yet: straight line between the stops
+                segment = new double[][]{
+                    {timetable.stopLat(from), timetable.stopLat(to)},
+                    {timetable.stopLon(from), timetable.stopLon(to)}};
             }
+            parts.add(segment);
+            points += segment[0].length;
         }
-        return polyline.toString();
+
+        // Consecutive segments share their joining stop
+        double[] lats = new double[points - parts.size() + 1];
+        double[] lons = new double[lats.length];
+        int cursor = 0;
+        for (int p = 0; p < parts.size(); p++) {
+            int skip = p == 0 ? 0 : 1;
+            int length = parts.get(p)[0].length - skip;
+            System.arraycopy(parts.get(p)[0], skip, lats, cursor, length);
+            System.arraycopy(parts.get(p)[1], skip, lons, cursor, length);
+            cursor += length;
+        }
+        return new double[][]{lats, lons};
     }
 
-}
+    private double[][] toArrays(List<Coordinate> coordinates) {
+        double[] lats = new double[coordinates.size()];
+        double[] lons = new double[coordinates.size()];
+        for (int i = 0; i < coordinates.size(); i++) {
+            lats[i] = coordinates.get(i).getLat().doubleValue();
+            lons[i] = coordinates.get(i).getLon().doubleValue();
+        }
+        return new double[][]{lats, lons};
+    }
 
+    private List<Coordinate> toCoordinates(double[][] path) {
+        List<Coordinate> coordinates = new ArrayList<>(path[0].length);
+        for (int i = 0; i < path[0].length; i++) {
+            coordinates.add(new Coordinate(BigDecimal.valueOf(path[0][i]), BigDecimal.valueOf(path[1][i])));
+        }
+        return coordinates;
+    }
+
+    private LocalDateTime toDateTime(TimetableSnapshot timetable, int secs) {
+        return timetable.getServiceDate().atStartOfDay().plusSeconds(secs);
+    }
+
+    private BigDecimal toKilometers(double meters) {
+        return BigDecimal.valueOf(meters / 1000).setScale(2, RoundingMode.HALF_UP);
+    }
+
+    private int toMinutes(int secs) {
+        return (int) Math.ceil(secs / 60.0);
+    }
+
+}
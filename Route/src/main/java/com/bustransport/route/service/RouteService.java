@@ -3,18 +3,26 @@ package com.bustransport.route.service;
 import com.bustransport.route.dto.response.RouteDTO;
 import com.bustransport.route.entity.Route;
 import com.bustransport.route.enums.RouteType;
+import com.bustransport.route.event.RouteChangedEvent;
 import com.bustransport.route.exception.ResourceNotFoundException;
 import com.bustransport.route.mapper.RouteMapper;
 import com.bustransport.route.repository.RouteRepository;
+import com.bustransport.route.search.SearchIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -24,11 +32,16 @@ public class RouteService {
 
     private final RouteRepository routeRepository;
     private final RouteMapper routeMapper;
+    private final SearchIndex searchIndex;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${search.max-results:50}")
+    private int maxSearchResults;
 
     @Cacheable(value = "routes", key = "#id")
     public RouteDTO getRouteById(Long id) {
         log.debug("Fetching route with id: {}", id);
-        Route route = routeRepository.findById(id)
+        Route route = routeRepository.findWithStopsById(id)
             .orElseThrow(() -> new ResourceNotFoundException("Route not found with id: " + id));
         return routeMapper.toDTO(route);
     }
@@ -58,9 +71,17 @@ public class RouteService {
         return routeMapper.toDTOList(routes);
     }
 
-    public List<RouteDTO> searchRoutes(String query) {
+    public List<RouteDTO> searchRoutes(String query, int limit) {
         log.debug("Searching routes with query: {}", query);
-        List<Route> routes = routeRepository.searchRoutes(query);
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        List<Long> ids = searchIndex.searchRouteIds(query, Math.min(limit, maxSearchResults));
+        Map<Long, Integer> rank = ids.stream()
+            .collect(Collectors.toMap(Function.identity(), ids::indexOf));
+        List<Route> routes = routeRepository.findWithStopsByIdIn(ids).stream()
+            .sorted(Comparator.comparing(route -> rank.get(route.getId())))
+            .toList();
         return routeMapper.toDTOList(routes);
     }
 
@@ -75,7 +96,9 @@ public class RouteService {
         log.info("Creating new route: {}", route.getRouteNumber());
         route.setIsActive(true);
         Route savedRoute = routeRepository.save(route);
-        return routeMapper.toDTO(savedRoute);
+        RouteDTO savedRouteDTO = routeMapper.toDTO(savedRoute);
+        eventPublisher.publishEvent(new RouteChangedEvent(savedRouteDTO));
+        return savedRouteDTO;
     }
 
     @Transactional
@@ -94,7 +117,9 @@ public class RouteService {
         existingRoute.setPolyline(routeUpdate.getPolyline());
         
         Route updatedRoute = routeRepository.save(existingRoute);
-        return routeMapper.toDTO(updatedRoute);
+        RouteDTO updatedRouteDTO = routeMapper.toDTO(updatedRoute);
+        eventPublisher.publishEvent(new RouteChangedEvent(updatedRouteDTO));
+        return updatedRouteDTO;
     }
 
     @Transactional
@@ -104,6 +129,7 @@ public class RouteService {
             .orElseThrow(() -> new ResourceNotFoundException("Route not found with id: " + id));
         route.setIsActive(false);
         routeRepository.save(route);
+        eventPublisher.publishEvent(new RouteChangedEvent(routeMapper.toDTO(route)));
     }
 }
 
@@ -11,6 +11,7 @@ import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -24,72 +25,72 @@ import java.util.Map;
 @Slf4j
 public class RoutingService {
 
+    // 4 decimal places is ~11 m of latitude
+    private static final int SNAP_DECIMALS = 4;
+
     private final RestTemplate restTemplate;
 
     @Value("${routing.osrm.url:https://router.project-osrm.org}")
     private String osrmBaseUrl;
 
     /**
-     * Get route geometry between two points using OSRM driving profile
-     * @param lat1 Start latitude
-     * @param lon1 Start longitude
-     * @param lat2 End latitude
-     * @param lon2 End longitude
-     * @return List of coordinates following real roads
+     * Get route geometry for walking between two points
      */
-    @Cacheable(value = "routeGeometry", key = "#lat1 + '_' + #lon1 + '_' + #lat2 + '_' + #lon2")
-    public List<Coordinate> getRouteGeometry(BigDecimal lat1, BigDecimal lon1, 
-                                            BigDecimal lat2, BigDecimal lon2) {
-        try {
-            String url = UriComponentsBuilder.fromHttpUrl(osrmBaseUrl + "/route/v1/driving/{lon1},{lat1};{lon2},{lat2}")
-                    .queryParam("overview", "full")
-                    .queryParam("geometries", "geojson")
-                    .buildAndExpand(lon1, lat1, lon2, lat2)
-                    .toUriString();
-
-            log.debug("Requesting route from OSRM: {}", url);
+    @Cacheable(value = "walkRouteGeometry",
+               key = "T(com.bustransport.route.service.RoutingService).snappedKey(#lat1, #lon1, #lat2, #lon2)")
+    public List<Coordinate> getWalkingRouteGeometry(BigDecimal lat1, BigDecimal lon1, 
+                                                   BigDecimal lat2, BigDecimal lon2) {
+        List<List<Double>> coordinates = requestGeometry("foot", snap(lat1), snap(lon1), snap(lat2), snap(lon2));
+        if (coordinates != null) {
+            return convertToCoordinates(coordinates);
+        }
+        log.warn("No walking route from OSRM, falling back to straight line");
+        return getStraightLineFallback(lat1, lon1, lat2, lon2);
+    }
 
-            ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
-            
-            if (response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-                Map<String, Object> body = response.getBody();
-                List<Map<String, Object>> routes = (List<Map<String, Object>>) body.get("routes");
-                
-                if (routes != null && !routes.isEmpty()) {
-                    Map<String, Object> route = routes.get(0);
-                    Map<String, Object> geometry = (Map<String, Object>) route.get("geometry");
-                    
-                    if (geometry != null) {
-                        List<List<Double>> coordinates = (List<List<Double>>) geometry.get("coordinates");
-                        return convertToCoordinates(coordinates);
-                    }
-                }
-            }
-            
-            log.warn("OSRM returned empty route, falling back to straight line");
-            return getStraightLineFallback(lat1, lon1, lat2, lon2);
-            
-        } catch (Exception e) {
-            log.error("Error fetching route from OSRM: {}", e.getMessage(), e);
-            // Fallback to straight line if OSRM fails
-            return getStraightLineFallback(lat1, lon1, lat2, lon2);
+    /**
+     * Uncached driving geometry for offline precomputation
+     * @return {latitudes, longitudes}, or null if OSRM has no route or is unavailable
+     */
+    public double[][] fetchDrivingPath(BigDecimal lat1, BigDecimal lon1, BigDecimal lat2, BigDecimal lon2) {
+        List<List<Double>> coordinates = requestGeometry("driving", lat1, lon1, lat2, lon2);
+        if (coordinates == null) {
+            return null;
+        }
+        double[] lats = new double[coordinates.size()];
+        double[] lons = new double[coordinates.size()];
+        for (int i = 0; i < coordinates.size(); i++) {
+            lats[i] = coordinates.get(i).get(1);
+            lons[i] = coordinates.get(i).get(0);
         }
+        return new double[][]{lats, lons};
     }
 
     /**
-     * Get route geometry for walking between two points
+     * Cache key with coordinates snapped to a ~10 m grid, so requests from
+     * nearly the same place share one cached geometry
      */
-    @Cacheable(value = "walkRouteGeometry", key = "#lat1 + '_' + #lon1 + '_' + #lat2 + '_' + #lon2")
-    public List<Coordinate> getWalkingRouteGeometry(BigDecimal lat1, BigDecimal lon1, 
-                                                   BigDecimal lat2, BigDecimal lon2) {
+    public static String snappedKey(BigDecimal lat1, BigDecimal lon1, BigDecimal lat2, BigDecimal lon2) {
+        return snap(lat1) + "_" + snap(lon1) + "_" + snap(lat2) + "_" + snap(lon2);
+    }
+
+    private static BigDecimal snap(BigDecimal coordinate) {
+        return coordinate.setScale(SNAP_DECIMALS, RoundingMode.HALF_UP);
+    }
+
+    /**
+     * @return OSRM [longitude, latitude] pairs, or null if there is no usable route
+     */
+    private List<List<Double>> requestGeometry(String profile, BigDecimal lat1, BigDecimal lon1,
+                                               BigDecimal lat2, BigDecimal lon2) {
         try {
-            String url = UriComponentsBuilder.fromHttpUrl(osrmBaseUrl + "/route/v1/foot/{lon1},{lat1};{lon2},{lat2}")
+            String url = UriComponentsBuilder.fromHttpUrl(osrmBaseUrl + "/route/v1/" + profile + "/{lon1},{lat1};{lon2},{lat2}")
                     .queryParam("overview", "full")
                     .queryParam("geometries", "geojson")
                     .buildAndExpand(lon1, lat1, lon2, lat2)
                     .toUriString();
 
-            log.debug("Requesting walking route from OSRM: {}", url);
+            log.debug("Requesting {} route from OSRM: {}", profile, url);
 
             ResponseEntity<Map> response = restTemplate.getForEntity(url, Map.class);
             
@@ -102,18 +103,15 @@ public class RoutingService {
                     Map<String, Object> geometry = (Map<String, Object>) route.get("geometry");
                     
                     if (geometry != null) {
-                        List<List<Double>> coordinates = (List<List<Double>>) geometry.get("coordinates");
-                        return convertToCoordinates(coordinates);
+                        return (List<List<Double>>) geometry.get("coordinates");
                     }
                 }
             }
-            
-            log.warn("OSRM returned empty walking route, falling back to straight line");
-            return getStraightLineFallback(lat1, lon1, lat2, lon2);
+            return null;
             
         } catch (Exception e) {
-            log.error("Error fetching walking route from OSRM: {}", e.getMessage(), e);
-            return getStraightLineFallback(lat1, lon1, lat2, lon2);
+            log.error("Error fetching {} route from OSRM: {}", profile, e.getMessage(), e);
+            return null;
         }
     }
 
@@ -1,18 +1,20 @@
 package com.bustransport.route.service;
 
+import com.bustransport.route.calendar.ServiceCalendar;
 import com.bustransport.route.dto.response.ScheduleDTO;
 import com.bustransport.route.entity.Schedule;
 import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.event.TimetableChangedEvent;
 import com.bustransport.route.exception.ResourceNotFoundException;
 import com.bustransport.route.mapper.ScheduleMapper;
 import com.bustransport.route.repository.ScheduleRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.util.List;
 
@@ -24,10 +26,12 @@ public class ScheduleService {
 
     private final ScheduleRepository scheduleRepository;
     private final ScheduleMapper scheduleMapper;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ServiceCalendar serviceCalendar;
 
     public ScheduleDTO getScheduleById(Long id) {
         log.debug("Fetching schedule with id: {}", id);
-        Schedule schedule = scheduleRepository.findById(id)
+        Schedule schedule = scheduleRepository.findByIdWithRoute(id)
             .orElseThrow(() -> new ResourceNotFoundException("Schedule not found with id: " + id));
         return scheduleMapper.toDTO(schedule);
     }
@@ -44,18 +48,14 @@ public class ScheduleService {
         return scheduleMapper.toDTOList(schedules);
     }
 
-    @Cacheable(value = "dailySchedules", key = "#routeId + '_' + #date")
     public List<ScheduleDTO> getDailySchedule(Long routeId, LocalDate date) {
         log.debug("Fetching daily schedule for route: {} on date: {}", routeId, date);
-        ServiceType serviceType = determineServiceType(date);
-        List<Schedule> schedules = scheduleRepository.findActiveSchedules(routeId, serviceType, date);
-        return scheduleMapper.toDTOList(schedules);
+        return serviceCalendar.runningSchedules(routeId, date);
     }
 
     public List<ScheduleDTO> getAllActiveSchedulesForDate(LocalDate date) {
         log.debug("Fetching all active schedules for date: {}", date);
-        List<Schedule> schedules = scheduleRepository.findAllActiveSchedulesForDate(date);
-        return scheduleMapper.toDTOList(schedules);
+        return serviceCalendar.runningSchedules(date);
     }
 
     @Transactional
@@ -63,6 +63,7 @@ public class ScheduleService {
         log.info("Creating new schedule for route: {}", schedule.getRoute().getId());
         schedule.setIsActive(true);
         Schedule savedSchedule = scheduleRepository.save(schedule);
+        eventPublisher.publishEvent(new TimetableChangedEvent(savedSchedule.getRoute().getId(), savedSchedule.getId()));
         return scheduleMapper.toDTO(savedSchedule);
     }
 
@@ -83,6 +84,7 @@ public class ScheduleService {
         existingSchedule.setNotes(scheduleUpdate.getNotes());
         
         Schedule updatedSchedule = scheduleRepository.save(existingSchedule);
+        eventPublisher.publishEvent(new TimetableChangedEvent(updatedSchedule.getRoute().getId(), updatedSchedule.getId()));
         return scheduleMapper.toDTO(updatedSchedule);
     }
 
@@ -93,15 +95,6 @@ public class ScheduleService {
             .orElseThrow(() -> new ResourceNotFoundException("Schedule not found with id: " + id));
         schedule.setIsActive(false);
         scheduleRepository.save(schedule);
-    }
-
-    private ServiceType determineServiceType(LocalDate date) {
-        DayOfWeek dayOfWeek = date.getDayOfWeek();
-        // Simple logic - can be enhanced with holiday calendar
-        if (dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY) {
-            return ServiceType.WEEKEND;
-        }
-        return ServiceType.WEEKDAY;
+        eventPublisher.publishEvent(new TimetableChangedEvent(schedule.getRoute().getId(), schedule.getId()));
     }
 }
-
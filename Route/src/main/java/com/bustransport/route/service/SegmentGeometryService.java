@@ -0,0 +1,145 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.entity.RouteSegmentGeometry;
+import com.bustransport.route.event.SegmentGeometryChangedEvent;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.repository.RouteSegmentGeometryRepository;
+import com.bustransport.route.repository.RouteStopRepository;
+import com.bustransport.route.repository.RouteStopRepository.StopPosition;
+import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.util.BinaryPolyline;
+import com.bustransport.route.util.GeoUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Street geometry between consecutive stops, fetched from OSRM once per stop
+ * pair by a background job, persisted, and served from memory. Trip planning
+ * never waits on OSRM for vehicle legs.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SegmentGeometryService {
+
+    // OSRM snaps stops onto the road; a stop moved further than this needs a new geometry
+    private static final double STOP_MOVED_METERS = 30;
+
+    private final RouteSegmentGeometryRepository geometryRepository;
+    private final RouteStopRepository routeStopRepository;
+    private final StopRepository stopRepository;
+    private final RoutingService routingService;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${routing.geometry.max-requests-per-run:500}")
+    private int maxRequestsPerRun;
+
+    private final Map<StopPair, byte[]> segments = new ConcurrentHashMap<>();
+
+    private record StopPair(long fromStopId, long toStopId) {
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void load() {
+        geometryRepository.findAllPaths().forEach(path ->
+            segments.put(new StopPair(path.getFromStopId(), path.getToStopId()), path.getEncodedPath()));
+        log.info("Loaded {} stop-to-stop geometries", segments.size());
+    }
+
+    /**
+     * Fetches geometries for stop pairs that do not have one yet. Pairs OSRM
+     * cannot route are retried on the next run.
+     */
+    @Scheduled(fixedDelayString = "${routing.geometry.precompute-interval-ms:3600000}",
+               initialDelayString = "${routing.geometry.precompute-initial-delay-ms:30000}")
+    public void precomputeMissing() {
+        List<StopPosition> positions = routeStopRepository.findAllStopPositions();
+        int requested = 0;
+        int stored = 0;
+        Set<Long> storedStopIds = new HashSet<>();
+        for (int i = 1; i < positions.size() && requested < maxRequestsPerRun; i++) {
+            StopPosition from = positions.get(i - 1);
+            StopPosition to = positions.get(i);
+            if (!from.getRouteId().equals(to.getRouteId()) || from.getStopId().equals(to.getStopId())) {
+                continue;
+            }
+            StopPair pair = new StopPair(from.getStopId(), to.getStopId());
+            if (segments.containsKey(pair)) {
+                continue;
+            }
+            requested++;
+            double[][] path = routingService.fetchDrivingPath(from.getLatitude(), from.getLongitude(),
+                to.getLatitude(), to.getLongitude());
+            if (path == null || path[0].length < 2) {
+                continue;
+            }
+            byte[] encoded = BinaryPolyline.encode(path[0], path[1]);
+            geometryRepository.save(RouteSegmentGeometry.builder()
+                .fromStop(stopRepository.getReferenceById(pair.fromStopId()))
+                .toStop(stopRepository.getReferenceById(pair.toStopId()))
+                .encodedPath(encoded)
+                .pointCount(path[0].length)
+                .build());
+            segments.put(pair, encoded);
+            stored++;
+            storedStopIds.add(pair.fromStopId());
+        }
+        if (requested > 0) {
+            log.info("Precomputed {} of {} missing stop-to-stop geometries", stored, requested);
+        }
+        if (!storedStopIds.isEmpty()) {
+            eventPublisher.publishEvent(new SegmentGeometryChangedEvent(storedStopIds));
+        }
+    }
+
+    /**
+     * @return {latitudes, longitudes} of the street path between two stops, or
+     *         null if it has not been precomputed
+     */
+    public double[][] getSegment(long fromStopId, long toStopId) {
+        byte[] encoded = segments.get(new StopPair(fromStopId, toStopId));
+        return encoded != null ? BinaryPolyline.decode(encoded) : null;
+    }
+
+    /**
+     * Drops the geometries of a stop that moved, so the next run refetches them
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onStopChanged(StopChangedEvent event) {
+        long stopId = event.getStop().getId();
+        double lat = event.getStop().getLatitude().doubleValue();
+        double lon = event.getStop().getLongitude().doubleValue();
+        // Only the geometries ending at the stop are decoded
+        boolean moved = segments.entrySet().stream()
+            .filter(entry -> entry.getKey().fromStopId() == stopId || entry.getKey().toStopId() == stopId)
+            .anyMatch(entry -> {
+                double[][] path = BinaryPolyline.decode(entry.getValue());
+                int end = entry.getKey().fromStopId() == stopId ? 0 : path[0].length - 1;
+                return GeoUtils.distanceMeters(lat, lon, path[0][end], path[1][end]) > STOP_MOVED_METERS;
+            });
+        if (moved) {
+            segments.keySet().removeIf(pair -> pair.fromStopId() == stopId || pair.toStopId() == stopId);
+            int deleted = geometryRepository.deleteByStopId(stopId);
+            log.info("Stop {} moved, dropped {} stop-to-stop geometries", stopId, deleted);
+        }
+    }
+}
@@ -2,12 +2,17 @@ package com.bustransport.route.service;
 
 import com.bustransport.route.dto.response.StopDTO;
 import com.bustransport.route.entity.Stop;
+import com.bustransport.route.event.StopChangedEvent;
 import com.bustransport.route.exception.ResourceNotFoundException;
 import com.bustransport.route.mapper.StopMapper;
 import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.search.SearchIndex;
+import com.bustransport.route.spatial.StopSpatialIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.Cacheable;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
@@ -24,6 +29,12 @@ public class StopService {
 
     private final StopRepository stopRepository;
     private final StopMapper stopMapper;
+    private final StopSpatialIndex stopSpatialIndex;
+    private final SearchIndex searchIndex;
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Value("${search.max-results:50}")
+    private int maxSearchResults;
 
     @Cacheable(value = "stops", key = "#id")
     public StopDTO getStopById(Long id) {
@@ -52,17 +63,17 @@ public class StopService {
         return stops.map(stopMapper::toDTO);
     }
 
-    public List<StopDTO> searchStops(String query) {
+    public List<StopDTO> searchStops(String query, int limit) {
         log.debug("Searching stops with query: {}", query);
-        List<Stop> stops = stopRepository.searchStops(query);
-        return stopMapper.toDTOList(stops);
+        if (limit < 1) {
+            throw new IllegalArgumentException("limit must be positive");
+        }
+        return searchIndex.searchStops(query, Math.min(limit, maxSearchResults));
     }
 
-    @Cacheable(value = "nearbyStops", key = "#latitude + '_' + #longitude + '_' + #radiusKm")
     public List<StopDTO> findNearbyStops(BigDecimal latitude, BigDecimal longitude, double radiusKm) {
         log.debug("Finding stops near ({}, {}) within {} km", latitude, longitude, radiusKm);
-        List<Stop> stops = stopRepository.findNearbyStops(latitude, longitude, radiusKm);
-        return stopMapper.toDTOList(stops);
+        return stopSpatialIndex.findWithin(latitude.doubleValue(), longitude.doubleValue(), radiusKm * 1000);
     }
 
     @Cacheable(value = "routeStops", key = "#routeId")
@@ -77,7 +88,9 @@ public class StopService {
         log.info("Creating new stop: {}", stop.getStopCode());
         stop.setIsActive(true);
         Stop savedStop = stopRepository.save(stop);
-        return stopMapper.toDTO(savedStop);
+        StopDTO savedStopDTO = stopMapper.toDTO(savedStop);
+        eventPublisher.publishEvent(new StopChangedEvent(savedStopDTO));
+        return savedStopDTO;
     }
 
     @Transactional
@@ -97,7 +110,9 @@ public class StopService {
         existingStop.setZone(stopUpdate.getZone());
         
         Stop updatedStop = stopRepository.save(existingStop);
-        return stopMapper.toDTO(updatedStop);
+        StopDTO updatedStopDTO = stopMapper.toDTO(updatedStop);
+        eventPublisher.publishEvent(new StopChangedEvent(updatedStopDTO));
+        return updatedStopDTO;
     }
 
     @Transactional
@@ -107,6 +122,7 @@ public class StopService {
             .orElseThrow(() -> new ResourceNotFoundException("Stop not found with id: " + id));
         stop.setIsActive(false);
         stopRepository.save(stop);
+        eventPublisher.publishEvent(new StopChangedEvent(stopMapper.toDTO(stop)));
     }
 }
 
@@ -0,0 +1,172 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.dto.request.TravelTimeMatrixRequest;
+import com.bustransport.route.dto.response.TravelTimeMatrixRow;
+import com.bustransport.route.planner.RaptorPlanner;
+import com.bustransport.route.planner.TravelTimeProfile;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Computes travel-time matrices between stops. Each origin is one range
+ * search over the timetable snapshot that reaches every destination at once;
+ * origins run in parallel on a dedicated fork-join pool and each finished
+ * row is handed to the caller right away instead of collecting the matrix.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TravelTimeMatrixService {
+
+    private static final int[] NO_ACCESS_WALK = {0};
+
+    private final TimetableSnapshotService timetableService;
+    private final RaptorPlanner raptorPlanner;
+
+    @Value("${planner.matrix.max-origins:1000}")
+    private int maxOrigins;
+
+    @Value("${planner.matrix.max-window-minutes:120}")
+    private int maxWindowMinutes;
+
+    @Value("${planner.matrix.profile-step-seconds:60}")
+    private int profileStepSecs;
+
+    @Value("${planner.matrix.parallelism:0}")
+    private int parallelism;
+
+    private volatile ForkJoinPool pool;
+
+    /**
+     * Origins and destinations of a validated request, resolved against one snapshot
+     */
+    public record MatrixQuery(TimetableSnapshot timetable, int[] origins, int[] destinations,
+                              int departureSecs, int windowSecs, Integer maxTransfers) {
+    }
+
+    /**
+     * Validates a request before any result is streamed
+     *
+     * @throws IllegalArgumentException if a stop is unknown or the request is too large
+     */
+    public MatrixQuery prepare(TravelTimeMatrixRequest request) {
+        if (request.getOriginStopIds().size() > maxOrigins) {
+            throw new IllegalArgumentException("At most " + maxOrigins + " origins are allowed per request");
+        }
+        int windowMinutes = request.getWindowMinutes() != null ? request.getWindowMinutes() : 0;
+        if (windowMinutes < 0 || windowMinutes > maxWindowMinutes) {
+            throw new IllegalArgumentException("windowMinutes must be between 0 and " + maxWindowMinutes);
+        }
+
+        LocalDateTime departureTime = request.getDepartureTime() != null
+            ? request.getDepartureTime() : LocalDateTime.now();
+        TimetableSnapshot timetable = timetableService.getSnapshot(departureTime.toLocalDate());
+        int[] origins = resolveStops(timetable, request.getOriginStopIds(), "Origin");
+        int[] destinations;
+        if (request.getDestinationStopIds() == null || request.getDestinationStopIds().isEmpty()) {
+            destinations = new int[timetable.stopCount()];
+            for (int stop = 0; stop < destinations.length; stop++) {
+                destinations[stop] = stop;
+            }
+        } else {
+            destinations = resolveStops(timetable, request.getDestinationStopIds(), "Destination");
+        }
+        return new MatrixQuery(timetable, origins, destinations, departureTime.toLocalTime().toSecondOfDay(),
+            windowMinutes * 60, request.getMaxTransfers());
+    }
+
+    /**
+     * Computes one row per origin and passes each to {@code sink} as soon as
+     * it is done, in completion order. The sink is never called concurrently.
+     */
+    public void compute(MatrixQuery query, Consumer<TravelTimeMatrixRow> sink) {
+        long start = System.currentTimeMillis();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(query.origins().length);
+        for (int origin : query.origins()) {
+            tasks.add(pool().submit(() -> {
+                TravelTimeMatrixRow row = computeRow(query, origin);
+                synchronized (sink) {
+                    sink.accept(row);
+                }
+            }));
+        }
+        try {
+            for (ForkJoinTask<?> task : tasks) {
+                task.join();
+            }
+        } catch (RuntimeException e) {
+            // E.g. the client went away: stop the origins not started yet
+            tasks.forEach(task -> task.cancel(false));
+            throw e;
+        }
+        log.debug("Computed {} x {} travel-time matrix in {} ms", query.origins().length,
+            query.destinations().length, System.currentTimeMillis() - start);
+    }
+
+    private TravelTimeMatrixRow computeRow(MatrixQuery query, int origin) {
+        TimetableSnapshot timetable = query.timetable();
+        TravelTimeProfile profile = raptorPlanner.profile(timetable, new int[]{origin}, NO_ACCESS_WALK,
+            query.destinations(), query.departureSecs(), query.windowSecs(), profileStepSecs,
+            query.maxTransfers());
+        boolean ranged = query.windowSecs() > 0;
+        List<TravelTimeMatrixRow.Cell> cells = new ArrayList<>();
+        for (int t = 0; t < profile.targetCount(); t++) {
+            if (!profile.isReachable(t)) {
+                continue;
+            }
+            cells.add(TravelTimeMatrixRow.Cell.builder()
+                .stopId(timetable.stopId(query.destinations()[t]))
+                .travelTimeSecs(profile.travelSecs(t))
+                .transfers(profile.transfers(t))
+                .minTravelTimeSecs(ranged ? profile.minTravelSecs(t) : null)
+                .avgTravelTimeSecs(ranged ? profile.avgTravelSecs(t) : null)
+                .build());
+        }
+        return TravelTimeMatrixRow.builder()
+            .originStopId(timetable.stopId(origin))
+            .destinations(cells)
+            .build();
+    }
+
+    private int[] resolveStops(TimetableSnapshot timetable, List<Long> stopIds, String role) {
+        int[] stops = new int[stopIds.size()];
+        for (int i = 0; i < stops.length; i++) {
+            stops[i] = timetable.stopIndex(stopIds.get(i));
+            if (stops[i] < 0) {
+                throw new IllegalArgumentException(role + " stop not found: " + stopIds.get(i));
+            }
+        }
+        return stops;
+    }
+
+    private ForkJoinPool pool() {
+        if (pool == null) {
+            synchronized (this) {
+                if (pool == null) {
+                    pool = new ForkJoinPool(parallelism > 0
+                        ? parallelism : Runtime.getRuntime().availableProcessors());
+                }
+            }
+        }
+        return pool;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.bustransport.route.spatial;
+
+import com.bustransport.route.util.GeoUtils;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Uniform latitude/longitude grid of point ids supporting radius and
+ * k-nearest queries. Each cell holds an immutable array that writers replace
+ * wholesale, so queries run without locking while updates are serialized.
+ */
+public class SpatialGrid {
+
+    private static final double METERS_PER_DEGREE = Math.toRadians(1) * GeoUtils.EARTH_RADIUS_METERS;
+
+    private final double cellDegrees;
+    private final Map<Long, Point[]> cells = new ConcurrentHashMap<>();
+    private final Map<Long, Point> points = new ConcurrentHashMap<>();
+
+    public SpatialGrid(double cellDegrees) {
+        this.cellDegrees = cellDegrees;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Hit {
+        private final long id;
+        private final double meters;
+    }
+
+    private record Point(long id, double lat, double lon) {
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    public synchronized void put(long id, double lat, double lon) {
+        remove(id);
+        Point point = new Point(id, lat, lon);
+        cells.merge(cellKey(row(lat), column(lon)), new Point[]{point}, (existing, added) -> {
+            Point[] merged = Arrays.copyOf(existing, existing.length + 1);
+            merged[existing.length] = point;
+            return merged;
+        });
+        points.put(id, point);
+    }
+
+    public synchronized void remove(long id) {
+        Point point = points.remove(id);
+        if (point == null) {
+            return;
+        }
+        cells.computeIfPresent(cellKey(row(point.lat()), column(point.lon())), (key, existing) -> {
+            Point[] remaining = Arrays.stream(existing).filter(p -> p.id() != id).toArray(Point[]::new);
+            return remaining.length > 0 ? remaining : null;
+        });
+    }
+
+    public synchronized void clear() {
+        cells.clear();
+        points.clear();
+    }
+
+    /**
+     * Points within the radius, nearest first
+     */
+    public List<Hit> within(double lat, double lon, double radiusMeters) {
+        double latSpan = GeoUtils.metersToLatDegrees(radiusMeters);
+        double lonSpan = latSpan / Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+        List<Hit> hits = new ArrayList<>();
+        for (int row = row(lat - latSpan); row <= row(lat + latSpan); row++) {
+            for (int column = column(lon - lonSpan); column <= column(lon + lonSpan); column++) {
+                Point[] cell = cells.get(cellKey(row, column));
+                if (cell == null) {
+                    continue;
+                }
+                for (Point point : cell) {
+                    double meters = GeoUtils.distanceMeters(lat, lon, point.lat(), point.lon());
+                    if (meters <= radiusMeters) {
+                        hits.add(new Hit(point.id(), meters));
+                    }
+                }
+            }
+        }
+        hits.sort(Comparator.comparingDouble(Hit::getMeters));
+        return hits;
+    }
+
+    /**
+     * The k points nearest to the location within {@code maxMeters}, nearest
+     * first. Searches rings of cells outwards until no unvisited cell can hold
+     * a point closer than the k-th hit found so far.
+     */
+    public List<Hit> nearest(double lat, double lon, int k, double maxMeters) {
+        int centerRow = row(lat);
+        int centerColumn = column(lon);
+        // Smallest distance covered by one ring of cells around the query cell
+        double ringMeters = cellDegrees * METERS_PER_DEGREE * Math.max(Math.cos(Math.toRadians(lat)), 0.01);
+        int maxRing = (int) Math.ceil(maxMeters / ringMeters) + 1;
+
+        List<Hit> hits = new ArrayList<>();
+        for (int ring = 0; ring <= maxRing; ring++) {
+            for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                boolean edgeRow = row == centerRow - ring || row == centerRow + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int column = centerColumn - ring; column <= centerColumn + ring; column += Math.max(step, 1)) {
+                    Point[] cell = cells.get(cellKey(row, column));
+                    if (cell == null) {
+                        continue;
+                    }
+                    for (Point point : cell) {
+                        double meters = GeoUtils.distanceMeters(lat, lon, point.lat(), point.lon());
+                        if (meters <= maxMeters) {
+                            hits.add(new Hit(point.id(), meters));
+                        }
+                    }
+                }
+            }
+            if (hits.size() >= k) {
+                hits.sort(Comparator.comparingDouble(Hit::getMeters));
+                if (hits.get(k - 1).getMeters() <= ring * ringMeters) {
+                    break;
+                }
+            }
+        }
+        hits.sort(Comparator.comparingDouble(Hit::getMeters));
+        return hits.size() > k ? new ArrayList<>(hits.subList(0, k)) : hits;
+    }
+
+    private int row(double lat) {
+        return (int) Math.floor(lat / cellDegrees);
+    }
+
+    private int column(double lon) {
+        return (int) Math.floor(lon / cellDegrees);
+    }
+
+    private static long cellKey(int row, int column) {
+        return ((long) row << 32) | (column & 0xffffffffL);
+    }
+}
@@ -0,0 +1,87 @@
+package com.bustransport.route.spatial;
+
+import com.bustransport.route.dto.response.StopDTO;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.mapper.StopMapper;
+import com.bustransport.route.repository.StopRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory grid index over active stops, loaded at startup and kept in sync
+ * with stop changes. Answers nearby-stop queries without touching the database.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class StopSpatialIndex {
+
+    // ~1.1 km cells: a typical walking radius spans a 3x3 block
+    private static final double CELL_DEGREES = 0.01;
+
+    private final StopRepository stopRepository;
+    private final StopMapper stopMapper;
+
+    private final SpatialGrid grid = new SpatialGrid(CELL_DEGREES);
+    private final Map<Long, StopDTO> stops = new ConcurrentHashMap<>();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        long start = System.currentTimeMillis();
+        List<StopDTO> activeStops = stopMapper.toDTOList(stopRepository.findByIsActive(true));
+        grid.clear();
+        stops.clear();
+        activeStops.forEach(this::index);
+        log.info("Indexed {} stops in {} ms", grid.size(), System.currentTimeMillis() - start);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStopChanged(StopChangedEvent event) {
+        StopDTO stop = event.getStop();
+        if (Boolean.TRUE.equals(stop.getIsActive())) {
+            index(stop);
+        } else {
+            grid.remove(stop.getId());
+            stops.remove(stop.getId());
+        }
+    }
+
+    /**
+     * Active stops within the radius, nearest first
+     */
+    public List<StopDTO> findWithin(double lat, double lon, double radiusMeters) {
+        return toStops(grid.within(lat, lon, radiusMeters));
+    }
+
+    /**
+     * Ids and distances of the k active stops nearest to a point, nearest first
+     */
+    public List<SpatialGrid.Hit> findNearest(double lat, double lon, int k, double maxMeters) {
+        return grid.nearest(lat, lon, k, maxMeters);
+    }
+
+    public StopDTO getStop(Long id) {
+        return stops.get(id);
+    }
+
+    private void index(StopDTO stop) {
+        stops.put(stop.getId(), stop);
+        grid.put(stop.getId(), stop.getLatitude().doubleValue(), stop.getLongitude().doubleValue());
+    }
+
+    private List<StopDTO> toStops(List<SpatialGrid.Hit> hits) {
+        return hits.stream()
+            .map(hit -> stops.get(hit.getId()))
+            .filter(Objects::nonNull)
+            .toList();
+    }
+}
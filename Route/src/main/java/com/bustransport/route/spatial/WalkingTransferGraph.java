@@ -0,0 +1,337 @@
+package com.bustransport.route.spatial;
+
+import com.bustransport.route.dto.response.StopDTO;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.repository.StopTransferRepository;
+import com.bustransport.route.util.GeoUtils;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Walking transfers between every pair of active stops within the transfer
+ * radius. The graph is persisted in {@code stop_transfers}, one row per pair,
+ * and held in memory as adjacency arrays per stop. A full rebuild runs when
+ * the table is empty, after a GTFS import and nightly; in between, adding,
+ * moving or deactivating a stop only recomputes the pairs of that stop.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class WalkingTransferGraph {
+
+    private static final int BATCH_SIZE = 1000;
+    // Moves below this do not change any transfer noticeably
+    private static final double MIN_MOVE_METERS = 1.0;
+
+    private static final String INSERT_SQL =
+        "INSERT INTO stop_transfers (from_stop_id, to_stop_id, distance_meters, walk_seconds, created_at) " +
+        "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_STOP_SQL =
+        "DELETE FROM stop_transfers WHERE from_stop_id = ? OR to_stop_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final StopRepository stopRepository;
+    private final StopTransferRepository transferRepository;
+    private final StopSpatialIndex stopSpatialIndex;
+
+    @Value("${planner.transfer-radius-meters:400}")
+    private double radiusMeters;
+
+    // Straight-line distance times this factor approximates the footpath
+    @Value("${planner.transfers.detour-factor:1.0}")
+    private double detourFactor;
+
+    private volatile Map<Long, Edges> adjacency;
+    private final Map<Long, double[]> positions = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+
+    /**
+     * Transfers leaving one stop; never modified once published
+     */
+    public record Edges(long[] stopIds, int[] walkSecs) {
+
+        private static final Edges NONE = new Edges(new long[0], new int[0]);
+
+        public int size() {
+            return stopIds.length;
+        }
+    }
+
+    /**
+     * Both searches narrow the radius by the detour factor, so a factor
+     * below 1 would widen it and one of 0 or less would break it
+     */
+    @PostConstruct
+    void validate() {
+        if (!(detourFactor >= 1.0)) {
+            throw new IllegalStateException("planner.transfers.detour-factor must be at least 1, got " + detourFactor);
+        }
+        if (!(radiusMeters >= 0)) {
+            throw new IllegalStateException("planner.transfer-radius-meters must not be negative, got " + radiusMeters);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void initialize() {
+        graph();
+    }
+
+    /**
+     * Transfers from a stop, empty for unknown or inactive stops
+     */
+    public Edges edges(long stopId) {
+        return graph().getOrDefault(stopId, Edges.NONE);
+    }
+
+    /**
+     * Recomputes every transfer from the active stops and replaces the table
+     */
+    @Scheduled(cron = "${planner.transfers.rebuild-cron:0 0 4 * * *}")
+    public void rebuild() {
+        synchronized (writeLock) {
+            long start = System.currentTimeMillis();
+            List<Stop> stops = stopRepository.findByIsActive(true);
+            Map<Long, double[]> stopPositions = new HashMap<>(stops.size() * 2);
+            for (Stop stop : stops) {
+                stopPositions.put(stop.getId(),
+                    new double[]{stop.getLatitude().doubleValue(), stop.getLongitude().doubleValue()});
+            }
+            List<Object[]> rows = sweep(stops, stopPositions);
+            inNewTransaction(() -> {
+                jdbcTemplate.update("DELETE FROM stop_transfers");
+                insert(rows);
+            });
+
+            Map<Long, List<long[]>> edges = new HashMap<>(stops.size() * 2);
+            for (Object[] row : rows) {
+                long from = (Long) row[0];
+                long to = (Long) row[1];
+                int secs = (Integer) row[3];
+                edges.computeIfAbsent(from, key -> new ArrayList<>()).add(new long[]{to, secs});
+                edges.computeIfAbsent(to, key -> new ArrayList<>()).add(new long[]{from, secs});
+            }
+            publish(stopPositions, edges);
+            log.info("Rebuilt {} walking transfers between {} stops in {} ms", rows.size(), stops.size(),
+                System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * Recomputes the transfers of a stop that was added, moved or deactivated
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStopChanged(StopChangedEvent event) {
+        StopDTO stop = event.getStop();
+        graph();
+        synchronized (writeLock) {
+            double[] previous = positions.get(stop.getId());
+            if (!Boolean.TRUE.equals(stop.getIsActive())) {
+                if (previous != null) {
+                    inNewTransaction(() -> jdbcTemplate.update(DELETE_STOP_SQL, stop.getId(), stop.getId()));
+                    positions.remove(stop.getId());
+                    detach(stop.getId());
+                }
+                return;
+            }
+            double lat = stop.getLatitude().doubleValue();
+            double lon = stop.getLongitude().doubleValue();
+            if (previous != null && GeoUtils.distanceMeters(previous[0], previous[1], lat, lon) < MIN_MOVE_METERS) {
+                return;
+            }
+
+            List<Object[]> rows = new ArrayList<>();
+            for (StopDTO neighbour : stopSpatialIndex.findWithin(lat, lon, radiusMeters / detourFactor)) {
+                double[] position = positions.get(neighbour.getId());
+                if (neighbour.getId().equals(stop.getId()) || position == null) {
+                    continue;
+                }
+                double meters = GeoUtils.distanceMeters(lat, lon, position[0], position[1]) * detourFactor;
+                if (meters <= radiusMeters) {
+                    rows.add(row(stop.getId(), neighbour.getId(), meters));
+                }
+            }
+            inNewTransaction(() -> {
+                jdbcTemplate.update(DELETE_STOP_SQL, stop.getId(), stop.getId());
+                insert(rows);
+            });
+
+            positions.put(stop.getId(), new double[]{lat, lon});
+            detach(stop.getId());
+            List<long[]> own = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                long first = (Long) row[0];
+                long neighbour = first == stop.getId() ? (Long) row[1] : first;
+                int secs = (Integer) row[3];
+                own.add(new long[]{neighbour, secs});
+                Edges edges = adjacency.getOrDefault(neighbour, Edges.NONE);
+                long[] stopIds = Arrays.copyOf(edges.stopIds(), edges.size() + 1);
+                int[] walkSecs = Arrays.copyOf(edges.walkSecs(), edges.size() + 1);
+                stopIds[edges.size()] = stop.getId();
+                walkSecs[edges.size()] = secs;
+                adjacency.put(neighbour, new Edges(stopIds, walkSecs));
+            }
+            adjacency.put(stop.getId(), toEdges(own));
+            log.debug("Recomputed {} walking transfers of stop {}", rows.size(), stop.getId());
+        }
+    }
+
+    private Map<Long, Edges> graph() {
+        Map<Long, Edges> graph = adjacency;
+        if (graph == null) {
+            synchronized (writeLock) {
+                if (adjacency == null) {
+                    load();
+                }
+                graph = adjacency;
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Loads the persisted transfers, or builds them if the table is empty
+     */
+    private void load() {
+        long start = System.currentTimeMillis();
+        List<StopTransferRepository.TransferEdge> stored = transferRepository.findAllEdges();
+        if (stored.isEmpty()) {
+            rebuild();
+            return;
+        }
+        Map<Long, double[]> stopPositions = new HashMap<>();
+        for (Stop stop : stopRepository.findByIsActive(true)) {
+            stopPositions.put(stop.getId(),
+                new double[]{stop.getLatitude().doubleValue(), stop.getLongitude().doubleValue()});
+        }
+        Map<Long, List<long[]>> edges = new HashMap<>(stopPositions.size() * 2);
+        for (StopTransferRepository.TransferEdge edge : stored) {
+            edges.computeIfAbsent(edge.getFromStopId(), key -> new ArrayList<>())
+                .add(new long[]{edge.getToStopId(), edge.getWalkSeconds()});
+            edges.computeIfAbsent(edge.getToStopId(), key -> new ArrayList<>())
+                .add(new long[]{edge.getFromStopId(), edge.getWalkSeconds()});
+        }
+        publish(stopPositions, edges);
+        log.info("Loaded {} walking transfers in {} ms", stored.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Pairs within the radius, found with a latitude-sorted sweep
+     */
+    private List<Object[]> sweep(List<Stop> stops, Map<Long, double[]> stopPositions) {
+        List<double[]> byLat = new ArrayList<>(stops.size());
+        for (Stop stop : stops) {
+            double[] position = stopPositions.get(stop.getId());
+            byLat.add(new double[]{position[0], position[1], stop.getId()});
+        }
+        byLat.sort(Comparator.comparingDouble(point -> point[0]));
+        double latSpan = GeoUtils.metersToLatDegrees(radiusMeters / detourFactor);
+
+        List<Object[]> rows = new ArrayList<>();
+        for (int a = 0; a < byLat.size(); a++) {
+            double[] from = byLat.get(a);
+            for (int b = a + 1; b < byLat.size() && byLat.get(b)[0] - from[0] <= latSpan; b++) {
+                double[] to = byLat.get(b);
+                double meters = GeoUtils.distanceMeters(from[0], from[1], to[0], to[1]) * detourFactor;
+                if (meters <= radiusMeters) {
+                    rows.add(row((long) from[2], (long) to[2], meters));
+                }
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * Table row of a pair, lower stop id first
+     */
+    private static Object[] row(long a, long b, double meters) {
+        return new Object[]{Math.min(a, b), Math.max(a, b), (int) Math.round(meters), GeoUtils.walkSeconds(meters),
+            null};
+    }
+
+    private void insert(List<Object[]> rows) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        rows.forEach(row -> row[4] = now);
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+
+    /**
+     * Removes a stop from the adjacency of its current neighbours and its own
+     */
+    private void detach(long stopId) {
+        Edges own = adjacency.remove(stopId);
+        if (own == null) {
+            return;
+        }
+        for (long neighbour : own.stopIds()) {
+            Edges edges = adjacency.get(neighbour);
+            if (edges == null) {
+                continue;
+            }
+            List<long[]> kept = new ArrayList<>(edges.size());
+            for (int e = 0; e < edges.size(); e++) {
+                if (edges.stopIds()[e] != stopId) {
+                    kept.add(new long[]{edges.stopIds()[e], edges.walkSecs()[e]});
+                }
+            }
+            adjacency.put(neighbour, toEdges(kept));
+        }
+    }
+
+    private void publish(Map<Long, double[]> stopPositions, Map<Long, List<long[]>> edges) {
+        Map<Long, Edges> graph = new ConcurrentHashMap<>(edges.size() * 2);
+        edges.forEach((stopId, list) -> graph.put(stopId, toEdges(list)));
+        positions.clear();
+        positions.putAll(stopPositions);
+        adjacency = graph;
+    }
+
+    private static Edges toEdges(List<long[]> list) {
+        long[] stopIds = new long[list.size()];
+        int[] walkSecs = new int[list.size()];
+        for (int e = 0; e < list.size(); e++) {
+            stopIds[e] = list.get(e)[0];
+            walkSecs[e] = (int) list.get(e)[1];
+        }
+        return new Edges(stopIds, walkSecs);
+    }
+
+    /**
+     * Writes in a transaction of their own: stop changes arrive after the
+     * publishing transaction has committed
+     */
+    private void inNewTransaction(Runnable work) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaction.executeWithoutResult(status -> work.run());
+    }
+}
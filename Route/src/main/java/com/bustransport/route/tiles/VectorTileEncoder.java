@@ -0,0 +1,135 @@
+package com.bustransport.route.tiles;
+
+import com.bustransport.route.util.ProtobufWriter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mapbox Vector Tile (spec 2.1) writer for points and line strings whose
+ * coordinates are already in tile space (0..{@link #EXTENT}, possibly beyond
+ * within the buffer). Property keys and values are de-duplicated per layer.
+ */
+public final class VectorTileEncoder {
+
+    public static final int EXTENT = 4096;
+
+    private static final int GEOM_POINT = 1;
+    private static final int GEOM_LINESTRING = 2;
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+
+    private final Map<String, Layer> layers = new LinkedHashMap<>();
+
+    private static final class Layer {
+        final Map<String, Integer> keys = new LinkedHashMap<>();
+        final Map<Object, Integer> values = new LinkedHashMap<>();
+        final List<ProtobufWriter> features = new ArrayList<>();
+    }
+
+    public void addPoint(String layer, long id, Map<String, Object> properties, int x, int y) {
+        int[] geometry = {command(MOVE_TO, 1), zigzag(x), zigzag(y)};
+        addFeature(layer, id, properties, GEOM_POINT, geometry, geometry.length);
+    }
+
+    /**
+     * Adds one feature made of several parts, e.g. a route clipped into
+     * pieces by the tile border. Parts with fewer than two points are skipped.
+     */
+    public void addLineStrings(String layer, long id, Map<String, Object> properties, List<int[][]> parts) {
+        int size = 0;
+        for (int[][] part : parts) {
+            size += part[0].length >= 2 ? 2 * part[0].length + 2 : 0;
+        }
+        if (size == 0) {
+            return;
+        }
+        int[] geometry = new int[size];
+        int n = 0;
+        int cursorX = 0;
+        int cursorY = 0;
+        for (int[][] part : parts) {
+            int[] xs = part[0];
+            int[] ys = part[1];
+            if (xs.length < 2) {
+                continue;
+            }
+            geometry[n++] = command(MOVE_TO, 1);
+            geometry[n++] = zigzag(xs[0] - cursorX);
+            geometry[n++] = zigzag(ys[0] - cursorY);
+            geometry[n++] = command(LINE_TO, xs.length - 1);
+            for (int i = 1; i < xs.length; i++) {
+                geometry[n++] = zigzag(xs[i] - xs[i - 1]);
+                geometry[n++] = zigzag(ys[i] - ys[i - 1]);
+            }
+            cursorX = xs[xs.length - 1];
+            cursorY = ys[ys.length - 1];
+        }
+        addFeature(layer, id, properties, GEOM_LINESTRING, geometry, n);
+    }
+
+    public boolean isEmpty() {
+        return layers.isEmpty();
+    }
+
+    public byte[] encode() {
+        ProtobufWriter tile = new ProtobufWriter(1024);
+        layers.forEach((name, layer) -> {
+            ProtobufWriter encoded = new ProtobufWriter(1024)
+                .uint64(15, 2)
+                .string(1, name);
+            layer.features.forEach(feature -> encoded.message(2, feature));
+            layer.keys.keySet().forEach(key -> encoded.string(3, key));
+            layer.values.keySet().forEach(value -> encoded.message(4, encodeValue(value)));
+            encoded.uint64(5, EXTENT);
+            tile.message(3, encoded);
+        });
+        return tile.toByteArray();
+    }
+
+    private void addFeature(String layerName, long id, Map<String, Object> properties, int type,
+                            int[] geometry, int geometrySize) {
+        Layer layer = layers.computeIfAbsent(layerName, name -> new Layer());
+        int[] tags = new int[2 * properties.size()];
+        int t = 0;
+        for (Map.Entry<String, Object> property : properties.entrySet()) {
+            if (property.getValue() == null) {
+                continue;
+            }
+            tags[t++] = layer.keys.computeIfAbsent(property.getKey(), key -> layer.keys.size());
+            tags[t++] = layer.values.computeIfAbsent(property.getValue(), value -> layer.values.size());
+        }
+        ProtobufWriter feature = new ProtobufWriter(geometrySize * 2 + 16)
+            .uint64(1, id)
+            .packedUint32(2, tags, t)
+            .enumValue(3, type)
+            .packedUint32(4, geometry, geometrySize);
+        layer.features.add(feature);
+    }
+
+    private static ProtobufWriter encodeValue(Object value) {
+        ProtobufWriter encoded = new ProtobufWriter(16);
+        if (value instanceof Boolean bool) {
+            encoded.uint64(7, bool ? 1 : 0);
+        } else if (value instanceof Integer || value instanceof Long) {
+            long number = ((Number) value).longValue();
+            // sint64: zigzag keeps small negative numbers short
+            encoded.uint64(6, (number << 1) ^ (number >> 63));
+        } else if (value instanceof Number number) {
+            encoded.doubleValue(3, number.doubleValue());
+        } else {
+            encoded.string(1, value.toString());
+        }
+        return encoded;
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+}
@@ -0,0 +1,654 @@
+package com.bustransport.route.tiles;
+
+import com.bustransport.route.entity.Route;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.event.RouteChangedEvent;
+import com.bustransport.route.event.SegmentGeometryChangedEvent;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.repository.RouteRepository;
+import com.bustransport.route.repository.RouteStopRepository;
+import com.bustransport.route.repository.RouteStopRepository.StopPosition;
+import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.service.SegmentGeometryService;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * Pre-renders route shapes and stops into Mapbox Vector Tiles. Rendered tiles
+ * are kept in a small in-memory LRU and, unless empty, written to a bounded
+ * LRU on disk, so they survive restarts. A route, stop or segment geometry
+ * change rebuilds only the features it affects and drops only the cached
+ * tiles touching what changed.
+ *
+ * <p>Tiles live in their own subdirectory of {@code tiles.cache-dir}, marked
+ * by the network fingerprint file; only tile files are ever deleted there.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class VectorTileService {
+
+    public static final String ROUTES_LAYER = "routes";
+    public static final String STOPS_LAYER = "stops";
+
+    private static final String TILE_DIR = "vector-tiles";
+    private static final String FINGERPRINT_FILE = "network.fingerprint";
+    private static final String TILE_SUFFIX = ".mvt";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final RouteRepository routeRepository;
+    private final RouteStopRepository routeStopRepository;
+    private final StopRepository stopRepository;
+    private final SegmentGeometryService segmentGeometryService;
+
+    @Value("${tiles.max-zoom:16}")
+    private int maxZoom;
+
+    @Value("${tiles.stop-min-zoom:13}")
+    private int stopMinZoom;
+
+    @Value("${tiles.buffer:64}")
+    private int buffer;
+
+    // Points closer than this to the previous one are dropped (tile units, 16 = one pixel at 256 px)
+    @Value("${tiles.simplify-tolerance:16}")
+    private int simplifyTolerance;
+
+    @Value("${tiles.memory-cache-size:2000}")
+    private int memoryCacheSize;
+
+    @Value("${tiles.disk-cache-size:100000}")
+    private int diskCacheSize;
+
+    @Value("${tiles.cache-dir:./tile-cache}")
+    private String cacheDir;
+
+    private volatile Network network;
+    private final Object cacheLock = new Object();
+    private Map<TileKey, byte[]> memoryCache;
+    // Tiles present on disk in access order; guarded by cacheLock like the memory cache
+    private Map<TileKey, Boolean> diskTiles;
+
+    public record TileKey(int z, int x, int y) {
+    }
+
+    /**
+     * A route shape or stop in Web Mercator world coordinates (0..1 on both
+     * axes, y growing southwards)
+     */
+    private record Feature(long id, Map<String, Object> properties, double[] xs, double[] ys,
+                           double minX, double minY, double maxX, double maxY, int hash) {
+
+        static Feature of(long id, Map<String, Object> properties, double[] xs, double[] ys) {
+            double minX = Double.MAX_VALUE;
+            double minY = Double.MAX_VALUE;
+            double maxX = -Double.MAX_VALUE;
+            double maxY = -Double.MAX_VALUE;
+            for (int i = 0; i < xs.length; i++) {
+                minX = Math.min(minX, xs[i]);
+                minY = Math.min(minY, ys[i]);
+                maxX = Math.max(maxX, xs[i]);
+                maxY = Math.max(maxY, ys[i]);
+            }
+            int hash = Objects.hash(properties, Arrays.hashCode(xs), Arrays.hashCode(ys));
+            return new Feature(id, properties, xs, ys, minX, minY, maxX, maxY, hash);
+        }
+
+        boolean intersects(double fromX, double fromY, double toX, double toY) {
+            return maxX >= fromX && minX <= toX && maxY >= fromY && minY <= toY;
+        }
+    }
+
+    private record Network(Map<Long, Feature> routes, Map<Long, Feature> stops, long fingerprint) {
+    }
+
+    @PostConstruct
+    void createCaches() {
+        memoryCache = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, byte[]> eldest) {
+                return size() > memoryCacheSize;
+            }
+        };
+        diskTiles = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<TileKey, Boolean> eldest) {
+                if (size() <= diskCacheSize) {
+                    return false;
+                }
+                deleteDisk(eldest.getKey());
+                return true;
+            }
+        };
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void initialize() {
+        if (network != null) {
+            return;
+        }
+        Network loaded = buildNetwork();
+        synchronized (cacheLock) {
+            network = loaded;
+            loadDiskCache(loaded.fingerprint());
+            log.info("Vector tiles ready: {} routes, {} stops, {} tiles cached on disk",
+                loaded.routes().size(), loaded.stops().size(), diskTiles.size());
+        }
+    }
+
+    public boolean isValid(int z, int x, int y) {
+        int tiles = 1 << Math.min(z, 30);
+        return z >= 0 && z <= maxZoom && x >= 0 && x < tiles && y >= 0 && y < tiles;
+    }
+
+    /**
+     * @return the encoded tile, empty if nothing of the network falls into it
+     */
+    public byte[] getTile(int z, int x, int y) {
+        if (network == null) {
+            initialize();
+        }
+        TileKey key = new TileKey(z, x, y);
+        Network current;
+        boolean onDisk;
+        synchronized (cacheLock) {
+            byte[] cached = memoryCache.get(key);
+            if (cached != null) {
+                return cached;
+            }
+            current = network;
+            onDisk = diskTiles.get(key) != null;
+        }
+        byte[] tile = onDisk ? readDisk(key) : null;
+        boolean rendered = tile == null;
+        if (rendered) {
+            tile = render(current, key);
+        }
+        synchronized (cacheLock) {
+            // A change in the meantime may have invalidated what was just read
+            if (current == network) {
+                memoryCache.put(key, tile);
+                // Empty tiles are cheap to render and would make up most of the disk cache
+                if (rendered && tile.length > 0) {
+                    writeDisk(key, tile);
+                }
+            }
+        }
+        return tile;
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onRouteChanged(RouteChangedEvent event) {
+        refresh(Set.of(event.getRoute().getId()), Set.of());
+    }
+
+    /**
+     * The stop itself and the shapes of the routes serving it
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onStopChanged(StopChangedEvent event) {
+        refresh(Set.of(), Set.of(event.getStop().getId()));
+    }
+
+    @EventListener
+    public void onSegmentGeometryChanged(SegmentGeometryChangedEvent event) {
+        if (network != null && !event.getFromStopIds().isEmpty()) {
+            refresh(Set.copyOf(routeStopRepository.findRouteIdsByStopIds(event.getFromStopIds())), Set.of());
+        }
+    }
+
+    /**
+     * Rebuilds the whole network, e.g. after a feed import, and drops the
+     * cached tiles of every route or stop that was added, removed or changed
+     */
+    public synchronized void refresh() {
+        Network previous = network;
+        if (previous == null) {
+            // Not initialized yet; startup builds the network
+            return;
+        }
+        apply(previous, buildNetwork());
+    }
+
+    /**
+     * Rebuilds the given routes and stops, plus the routes serving those
+     * stops, from the database and keeps every other feature as it is
+     */
+    public synchronized void refresh(Set<Long> routeIds, Set<Long> stopIds) {
+        Network previous = network;
+        if (previous == null) {
+            return;
+        }
+        Map<Long, Feature> routes = new HashMap<>(previous.routes());
+        Map<Long, Feature> stops = new HashMap<>(previous.stops());
+        Set<Long> affectedRoutes = new HashSet<>(routeIds);
+        if (!stopIds.isEmpty()) {
+            affectedRoutes.addAll(routeStopRepository.findRouteIdsByStopIds(stopIds));
+            stops.keySet().removeAll(stopIds);
+            for (Stop stop : stopRepository.findAllById(stopIds)) {
+                if (Boolean.TRUE.equals(stop.getIsActive())) {
+                    stops.put(stop.getId(), stopFeature(stop));
+                }
+            }
+        }
+        if (!affectedRoutes.isEmpty()) {
+            Map<Long, List<StopPosition>> sequences =
+                sequences(routeStopRepository.findStopPositionsByRouteIds(affectedRoutes));
+            routes.keySet().removeAll(affectedRoutes);
+            for (Route route : routeRepository.findAllById(affectedRoutes)) {
+                Feature feature = routeFeature(route, sequences.get(route.getId()));
+                if (feature != null) {
+                    routes.put(route.getId(), feature);
+                }
+            }
+        }
+        apply(previous, new Network(routes, stops, fingerprint(routes, stops)));
+    }
+
+    private void apply(Network previous, Network updated) {
+        List<Feature> changed = new ArrayList<>();
+        collectChanges(previous.routes(), updated.routes(), changed);
+        collectChanges(previous.stops(), updated.stops(), changed);
+
+        int dropped = 0;
+        synchronized (cacheLock) {
+            network = updated;
+            if (!changed.isEmpty()) {
+                memoryCache.keySet().removeIf(key -> touchesAny(key, changed));
+                for (TileKey key : List.copyOf(diskTiles.keySet())) {
+                    if (touchesAny(key, changed)) {
+                        diskTiles.remove(key);
+                        deleteDisk(key);
+                        dropped++;
+                    }
+                }
+            }
+            writeFingerprint(updated.fingerprint());
+        }
+        if (!changed.isEmpty()) {
+            log.info("Network changed ({} features), dropped {} cached tiles", changed.size(), dropped);
+        }
+    }
+
+    private static void collectChanges(Map<Long, Feature> previous, Map<Long, Feature> updated,
+                                       List<Feature> changed) {
+        previous.forEach((id, feature) -> {
+            Feature now = updated.get(id);
+            if (now == null || now.hash() != feature.hash()) {
+                changed.add(feature);
+            }
+        });
+        updated.forEach((id, feature) -> {
+            Feature before = previous.get(id);
+            if (before == null || before.hash() != feature.hash()) {
+                changed.add(feature);
+            }
+        });
+    }
+
+    private boolean touchesAny(TileKey key, List<Feature> features) {
+        double size = 1.0 / (1 << key.z());
+        double margin = size * buffer / VectorTileEncoder.EXTENT;
+        double fromX = key.x() * size - margin;
+        double fromY = key.y() * size - margin;
+        for (Feature feature : features) {
+            if (feature.intersects(fromX, fromY, fromX + size + 2 * margin, fromY + size + 2 * margin)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Network buildNetwork() {
+        long start = System.currentTimeMillis();
+        Map<Long, List<StopPosition>> sequences = sequences(routeStopRepository.findAllStopPositions());
+
+        Map<Long, Feature> routes = new HashMap<>();
+        for (Route route : routeRepository.findAll()) {
+            Feature feature = routeFeature(route, sequences.get(route.getId()));
+            if (feature != null) {
+                routes.put(route.getId(), feature);
+            }
+        }
+
+        Map<Long, Feature> stops = new HashMap<>();
+        for (Stop stop : stopRepository.findByIsActive(true)) {
+            stops.put(stop.getId(), stopFeature(stop));
+        }
+
+        log.debug("Built tile network of {} routes and {} stops in {} ms", routes.size(), stops.size(),
+            System.currentTimeMillis() - start);
+        return new Network(routes, stops, fingerprint(routes, stops));
+    }
+
+    private static Map<Long, List<StopPosition>> sequences(List<StopPosition> positions) {
+        Map<Long, List<StopPosition>> sequences = new HashMap<>();
+        for (StopPosition position : positions) {
+            sequences.computeIfAbsent(position.getRouteId(), id -> new ArrayList<>()).add(position);
+        }
+        return sequences;
+    }
+
+    /**
+     * @return null for inactive routes and routes with fewer than two stops
+     */
+    private Feature routeFeature(Route route, List<StopPosition> stops) {
+        if (!Boolean.TRUE.equals(route.getIsActive()) || stops == null || stops.size() < 2) {
+            return null;
+        }
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("routeId", route.getId());
+        properties.put("routeNumber", route.getRouteNumber());
+        properties.put("name", route.getName());
+        properties.put("routeType", route.getRouteType() != null ? route.getRouteType().name() : null);
+        properties.put("color", route.getColor());
+        double[][] shape = routeShape(stops);
+        return Feature.of(route.getId(), properties, shape[0], shape[1]);
+    }
+
+    private static Feature stopFeature(Stop stop) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        properties.put("stopId", stop.getId());
+        properties.put("name", stop.getName());
+        properties.put("stopCode", stop.getStopCode());
+        properties.put("wheelchair", Boolean.TRUE.equals(stop.getHasWheelchairAccess()));
+        double[] xs = {worldX(stop.getLongitude().doubleValue())};
+        double[] ys = {worldY(stop.getLatitude().doubleValue())};
+        return Feature.of(stop.getId(), properties, xs, ys);
+    }
+
+    private static long fingerprint(Map<Long, Feature> routes, Map<Long, Feature> stops) {
+        long fingerprint = 17;
+        for (Map<Long, Feature> features : List.of(routes, stops)) {
+            long sum = 0;
+            for (Feature feature : features.values()) {
+                sum += feature.id() * 31 + feature.hash();
+            }
+            fingerprint = fingerprint * 31 + sum;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Street geometry between consecutive stops where it was precomputed,
+     * straight lines elsewhere
+     */
+    private double[][] routeShape(List<StopPosition> stops) {
+        List<double[]> points = new ArrayList<>();
+        for (int i = 0; i < stops.size(); i++) {
+            StopPosition stop = stops.get(i);
+            points.add(new double[]{stop.getLatitude().doubleValue(), stop.getLongitude().doubleValue()});
+            if (i + 1 < stops.size()) {
+                double[][] segment = segmentGeometryService.getSegment(stop.getStopId(), stops.get(i + 1).getStopId());
+                if (segment != null) {
+                    for (int p = 1; p < segment[0].length - 1; p++) {
+                        points.add(new double[]{segment[0][p], segment[1][p]});
+                    }
+                }
+            }
+        }
+        double[] xs = new double[points.size()];
+        double[] ys = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            xs[i] = worldX(points.get(i)[1]);
+            ys[i] = worldY(points.get(i)[0]);
+        }
+        return new double[][]{xs, ys};
+    }
+
+    private byte[] render(Network network, TileKey key) {
+        double scale = (double) (1 << key.z()) * VectorTileEncoder.EXTENT;
+        double originX = (double) key.x() * VectorTileEncoder.EXTENT;
+        double originY = (double) key.y() * VectorTileEncoder.EXTENT;
+        double size = 1.0 / (1 << key.z());
+        double margin = size * buffer / VectorTileEncoder.EXTENT;
+        double fromX = key.x() * size - margin;
+        double fromY = key.y() * size - margin;
+        double toX = fromX + size + 2 * margin;
+        double toY = fromY + size + 2 * margin;
+
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        for (Feature route : network.routes().values()) {
+            if (route.intersects(fromX, fromY, toX, toY)) {
+                List<int[][]> parts = clip(route, scale, originX, originY);
+                encoder.addLineStrings(ROUTES_LAYER, route.id(), route.properties(), parts);
+            }
+        }
+        if (key.z() >= stopMinZoom) {
+            for (Feature stop : network.stops().values()) {
+                if (stop.intersects(fromX, fromY, toX, toY)) {
+                    encoder.addPoint(STOPS_LAYER, stop.id(), stop.properties(),
+                        (int) Math.round(stop.xs()[0] * scale - originX),
+                        (int) Math.round(stop.ys()[0] * scale - originY));
+                }
+            }
+        }
+        return encoder.isEmpty() ? new byte[0] : encoder.encode();
+    }
+
+    /**
+     * Cuts a line to the buffered tile square (Liang-Barsky per segment) and
+     * drops points within the simplification tolerance of the previous one
+     */
+    private List<int[][]> clip(Feature line, double scale, double originX, double originY) {
+        double low = -buffer;
+        double high = VectorTileEncoder.EXTENT + buffer;
+        List<int[][]> parts = new ArrayList<>();
+        PartBuilder part = new PartBuilder(line.xs().length);
+        for (int i = 1; i < line.xs().length; i++) {
+            double x0 = line.xs()[i - 1] * scale - originX;
+            double y0 = line.ys()[i - 1] * scale - originY;
+            double dx = line.xs()[i] * scale - originX - x0;
+            double dy = line.ys()[i] * scale - originY - y0;
+            double[] range = {0, 1};
+            if (!clipEdge(-dx, x0 - low, range) || !clipEdge(dx, high - x0, range)
+                    || !clipEdge(-dy, y0 - low, range) || !clipEdge(dy, high - y0, range)) {
+                part.finish(parts);
+                continue;
+            }
+            if (range[0] > 0 || part.isEmpty()) {
+                part.finish(parts);
+                part.add(x0 + range[0] * dx, y0 + range[0] * dy, true);
+            }
+            boolean leaves = range[1] < 1;
+            part.add(x0 + range[1] * dx, y0 + range[1] * dy, leaves || i == line.xs().length - 1);
+            if (leaves) {
+                part.finish(parts);
+            }
+        }
+        part.finish(parts);
+        return parts;
+    }
+
+    private static boolean clipEdge(double p, double q, double[] range) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        double t = q / p;
+        if (p < 0) {
+            if (t > range[1]) {
+                return false;
+            }
+            range[0] = Math.max(range[0], t);
+        } else {
+            if (t < range[0]) {
+                return false;
+            }
+            range[1] = Math.min(range[1], t);
+        }
+        return true;
+    }
+
+    private final class PartBuilder {
+        private final int[] xs;
+        private final int[] ys;
+        private int size;
+
+        PartBuilder(int capacity) {
+            xs = new int[2 * capacity];
+            ys = new int[2 * capacity];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void add(double x, double y, boolean keep) {
+            int px = (int) Math.round(x);
+            int py = (int) Math.round(y);
+            if (size > 0) {
+                int dx = px - xs[size - 1];
+                int dy = py - ys[size - 1];
+                if ((dx == 0 && dy == 0) || (!keep && Math.abs(dx) < simplifyTolerance
+                        && Math.abs(dy) < simplifyTolerance)) {
+                    return;
+                }
+            }
+            xs[size] = px;
+            ys[size] = py;
+            size++;
+        }
+
+        void finish(List<int[][]> parts) {
+            if (size >= 2) {
+                parts.add(new int[][]{Arrays.copyOf(xs, size), Arrays.copyOf(ys, size)});
+            }
+            size = 0;
+        }
+    }
+
+    private static double worldX(double lon) {
+        return (lon + 180) / 360;
+    }
+
+    private static double worldY(double lat) {
+        double sin = Math.sin(Math.toRadians(Math.max(-85.05112878, Math.min(85.05112878, lat))));
+        return 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+    }
+
+    private Path tileRoot() {
+        return Paths.get(cacheDir, TILE_DIR);
+    }
+
+    private Path tilePath(TileKey key) {
+        return tileRoot().resolve(Paths.get(String.valueOf(key.z()), String.valueOf(key.x()), key.y() + TILE_SUFFIX));
+    }
+
+    /**
+     * Keeps the disk cache if it was rendered from the same network, drops
+     * its tiles otherwise
+     */
+    private void loadDiskCache(long fingerprint) {
+        Path root = tileRoot();
+        Path fingerprintFile = root.resolve(FINGERPRINT_FILE);
+        try {
+            String stored = Files.exists(fingerprintFile) ? Files.readString(fingerprintFile).trim() : null;
+            if (!Long.toHexString(fingerprint).equals(stored)) {
+                deleteTiles(root);
+                writeFingerprint(fingerprint);
+                return;
+            }
+            try (Stream<Path> files = Files.walk(root, 3)) {
+                files.filter(file -> file.getFileName().toString().endsWith(TILE_SUFFIX)).forEach(file -> {
+                    Path relative = root.relativize(file);
+                    String name = relative.getFileName().toString();
+                    diskTiles.put(new TileKey(Integer.parseInt(relative.getName(0).toString()),
+                        Integer.parseInt(relative.getName(1).toString()),
+                        Integer.parseInt(name.substring(0, name.length() - TILE_SUFFIX.length()))), Boolean.TRUE);
+                });
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not load the tile disk cache from {}: {}", root, e.getMessage());
+            diskTiles.clear();
+        }
+    }
+
+    private void writeFingerprint(long fingerprint) {
+        try {
+            Files.createDirectories(tileRoot());
+            Files.writeString(tileRoot().resolve(FINGERPRINT_FILE), Long.toHexString(fingerprint));
+        } catch (IOException e) {
+            log.warn("Could not write the tile cache fingerprint: {}", e.getMessage());
+        }
+    }
+
+    private byte[] readDisk(TileKey key) {
+        try {
+            return Files.readAllBytes(tilePath(key));
+        } catch (IOException e) {
+            synchronized (cacheLock) {
+                diskTiles.remove(key);
+            }
+            return null;
+        }
+    }
+
+    private void writeDisk(TileKey key, byte[] tile) {
+        Path path = tilePath(key);
+        try {
+            Files.createDirectories(path.getParent());
+            Path temp = Files.createTempFile(path.getParent(), "tile", TEMP_SUFFIX);
+            Files.write(temp, tile);
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            diskTiles.put(key, Boolean.TRUE);
+        } catch (IOException e) {
+            log.warn("Could not write tile {} to disk: {}", key, e.getMessage());
+        }
+    }
+
+    private void deleteDisk(TileKey key) {
+        try {
+            Files.deleteIfExists(tilePath(key));
+        } catch (IOException e) {
+            log.warn("Could not delete tile {} from disk: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the tile files under the tile directory and the z/x directories
+     * they leave empty; anything else placed there is kept
+     */
+    private static void deleteTiles(Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(root, 3)) {
+            for (Path file : files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).toList()) {
+                String name = file.getFileName().toString();
+                if (Files.isRegularFile(file) && (name.endsWith(TILE_SUFFIX) || name.endsWith(TEMP_SUFFIX))) {
+                    Files.delete(file);
+                } else if (Files.isDirectory(file) && !file.equals(root) && isEmpty(file)) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static boolean isEmpty(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return entries.findAny().isEmpty();
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.bustransport.route.timetable;
+
+import com.bustransport.route.enums.DepartureStatus;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable timetable of one route for one service day: the stop sequence and
+ * every trip's departure time at each stop, stored trip-major in flat arrays.
+ * Real-time state (delays, statuses, materialized departure ids) is layered on
+ * top and replaced copy-on-write, so readers never need a lock.
+ */
+public final class PatternTimetable {
+
+    private static final DepartureStatus[] STATUSES = DepartureStatus.values();
+
+    private final long routeId;
+    private final String routeNumber;
+    private final String routeName;
+    private final int[] stops;
+    private final int[] dwellSecs;
+    private final long[] tripScheduleIds;
+    private final int[] plannedSecs;
+
+    // Per stop time, parallel to plannedSecs; null while nothing is recorded
+    private final long[] departureIds;
+    private final int[] delaySecs;
+    private final byte[] statuses;
+    private final int maxDelaySecs;
+    private final Map<Integer, String> statusMessages;
+
+    PatternTimetable(long routeId, String routeNumber, String routeName,
+                     int[] stops, int[] dwellSecs, long[] tripScheduleIds, int[] plannedSecs) {
+        this(routeId, routeNumber, routeName, stops, dwellSecs, tripScheduleIds, plannedSecs,
+            null, null, null, 0, Map.of());
+    }
+
+    private PatternTimetable(long routeId, String routeNumber, String routeName,
+                             int[] stops, int[] dwellSecs, long[] tripScheduleIds, int[] plannedSecs,
+                             long[] departureIds, int[] delaySecs, byte[] statuses, int maxDelaySecs,
+                             Map<Integer, String> statusMessages) {
+        this.routeId = routeId;
+        this.routeNumber = routeNumber;
+        this.routeName = routeName;
+        this.stops = stops;
+        this.dwellSecs = dwellSecs;
+        this.tripScheduleIds = tripScheduleIds;
+        this.plannedSecs = plannedSecs;
+        this.departureIds = departureIds;
+        this.delaySecs = delaySecs;
+        this.statuses = statuses;
+        this.maxDelaySecs = maxDelaySecs;
+        this.statusMessages = statusMessages;
+    }
+
+    public long getRouteId() {
+        return routeId;
+    }
+
+    public String getRouteNumber() {
+        return routeNumber;
+    }
+
+    public String getRouteName() {
+        return routeName;
+    }
+
+    public int length() {
+        return stops.length;
+    }
+
+    public int stop(int position) {
+        return stops[position];
+    }
+
+    public int tripCount() {
+        return tripScheduleIds.length;
+    }
+
+    public long scheduleId(int trip) {
+        return tripScheduleIds[trip];
+    }
+
+    int[] stops() {
+        return stops;
+    }
+
+    // Times
+
+    public int plannedDepartureSecs(int trip, int position) {
+        return plannedSecs[trip * stops.length + position];
+    }
+
+    public int plannedArrivalSecs(int trip, int position) {
+        return plannedDepartureSecs(trip, position) - dwellSecs[position];
+    }
+
+    public int delaySecs(int trip, int position) {
+        return delaySecs != null ? delaySecs[trip * stops.length + position] : 0;
+    }
+
+    public int departureSecs(int trip, int position) {
+        return plannedDepartureSecs(trip, position) + delaySecs(trip, position);
+    }
+
+    public int arrivalSecs(int trip, int position) {
+        return departureSecs(trip, position) - dwellSecs[position];
+    }
+
+    public int dwellSecs(int position) {
+        return dwellSecs[position];
+    }
+
+    // Real-time state
+
+    /**
+     * @return whether any delay, status or departure id has been recorded
+     */
+    public boolean hasRealtime() {
+        return statuses != null;
+    }
+
+    public DepartureStatus status(int trip, int position) {
+        return statuses != null ? STATUSES[statuses[trip * stops.length + position]] : DepartureStatus.ON_TIME;
+    }
+
+    public boolean isCancelled(int trip, int position) {
+        return status(trip, position) == DepartureStatus.CANCELLED;
+    }
+
+    /**
+     * @return the id of the materialized departure row, or null if there is none
+     */
+    public Long departureId(int trip, int position) {
+        if (departureIds == null) {
+            return null;
+        }
+        long id = departureIds[trip * stops.length + position];
+        return id != 0 ? id : null;
+    }
+
+    public String statusMessage(int trip, int position) {
+        return statusMessages.get(trip * stops.length + position);
+    }
+
+    // Queries
+
+    /**
+     * Earliest non-cancelled trip that actually departs the given position at
+     * or after {@code earliestSecs}, accounting for delays.
+     *
+     * @return the trip index, or -1 if there is none
+     */
+    public int earliestTrip(int position, int earliestSecs) {
+        int trip = firstPlannedAtOrAfter(position, earliestSecs - maxDelaySecs);
+        int best = -1;
+        int bestSecs = Integer.MAX_VALUE;
+        // Delays are never negative, so no trip planned after bestSecs can beat it
+        for (; trip < tripCount() && plannedDepartureSecs(trip, position) < bestSecs; trip++) {
+            int secs = departureSecs(trip, position);
+            if (secs >= earliestSecs && secs < bestSecs && !isCancelled(trip, position)) {
+                best = trip;
+                bestSecs = secs;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Index of the first trip planned to leave the position at or after the time
+     */
+    public int firstPlannedAtOrAfter(int position, int secs) {
+        int low = 0;
+        int high = tripCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (plannedDepartureSecs(mid, position) < secs) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Locates the trip of a schedule planned to leave the position at the given time
+     *
+     * @return the trip index, or -1 if the timetable has no such trip
+     */
+    public int findTrip(long scheduleId, int position, int plannedDepartureSecs) {
+        for (int trip = firstPlannedAtOrAfter(position, plannedDepartureSecs);
+             trip < tripCount() && plannedDepartureSecs(trip, position) == plannedDepartureSecs; trip++) {
+            if (tripScheduleIds[trip] == scheduleId) {
+                return trip;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Locates the stop time of a schedule's trip planned to leave the stop at the given time
+     *
+     * @return {trip, position}, or null if the timetable has no such stop time
+     */
+    public int[] locate(long scheduleId, int stop, int plannedDepartureSecs) {
+        for (int i = 0; i < stops.length; i++) {
+            if (stops[i] == stop) {
+                int trip = findTrip(scheduleId, i, plannedDepartureSecs);
+                if (trip >= 0) {
+                    return new int[]{trip, i};
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Real-time state of one stop time, located with {@link #locate}
+     */
+    public record StopTimeUpdate(int trip, int position, Long departureId, DepartureStatus status,
+                                 Integer delayMinutes, String statusMessage) {
+    }
+
+    /**
+     * Returns a copy with the real-time state of one stop time replaced.
+     * Only this pattern's arrays are copied.
+     */
+    public PatternTimetable withRealtime(int trip, int position, Long departureId, DepartureStatus status,
+                                         Integer delayMinutes, String statusMessage) {
+        return withRealtime(List.of(new StopTimeUpdate(trip, position, departureId, status, delayMinutes,
+            statusMessage)));
+    }
+
+    /**
+     * Returns a copy with the real-time state of several stop times replaced,
+     * e.g. a delay carried along a trip, copying this pattern's arrays once
+     */
+    public PatternTimetable withRealtime(List<StopTimeUpdate> updates) {
+        long[] ids = departureIds != null ? departureIds.clone() : new long[plannedSecs.length];
+        int[] delays = delaySecs != null ? delaySecs.clone() : new int[plannedSecs.length];
+        byte[] statusCodes = statuses != null ? statuses.clone() : new byte[plannedSecs.length];
+        Map<Integer, String> messages = new HashMap<>(statusMessages);
+        int maxDelay = maxDelaySecs;
+        for (StopTimeUpdate update : updates) {
+            int index = update.trip() * stops.length + update.position();
+            int delay = update.delayMinutes() != null && update.delayMinutes() > 0 ? update.delayMinutes() * 60 : 0;
+            ids[index] = update.departureId() != null ? update.departureId() : 0;
+            delays[index] = delay;
+            statusCodes[index] = (byte) (update.status() != null ? update.status() : DepartureStatus.ON_TIME).ordinal();
+            if (update.statusMessage() != null) {
+                messages.put(index, update.statusMessage());
+            } else {
+                messages.remove(index);
+            }
+            maxDelay = Math.max(maxDelay, delay);
+        }
+
+        return new PatternTimetable(routeId, routeNumber, routeName, stops, dwellSecs, tripScheduleIds,
+            plannedSecs, ids, delays, statusCodes, maxDelay, messages);
+    }
+
+    /**
+     * Bulk variant of {@link #withRealtime} used while building: applies
+     * every recorded departure in one pass.
+     */
+    PatternTimetable withRealtime(long[] ids, int[] delays, byte[] statusCodes, Map<Integer, String> messages) {
+        int maxDelay = delays != null ? Arrays.stream(delays).max().orElse(0) : 0;
+        return new PatternTimetable(routeId, routeNumber, routeName, stops, dwellSecs, tripScheduleIds,
+            plannedSecs, ids, delays, statusCodes, maxDelay, messages);
+    }
+
+    /**
+     * Approximate heap footprint of the arrays, for logging
+     */
+    long sizeInBytes() {
+        long bytes = 4L * (stops.length + dwellSecs.length + plannedSecs.length) + 8L * tripScheduleIds.length;
+        if (departureIds != null) {
+            bytes += 8L * departureIds.length;
+        }
+        if (delaySecs != null) {
+            bytes += 4L * delaySecs.length;
+        }
+        if (statuses != null) {
+            bytes += statuses.length;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,305 @@
+package com.bustransport.route.timetable;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Immutable, array-based copy of the network for one service day.
+ * Stops, route patterns and trips are addressed by dense int indices so that
+ * the journey planner never touches JPA entities or the database.
+ * All times are seconds after midnight of {@link #getServiceDate()}.
+ *
+ * <p>Each route is held in its own {@link PatternTimetable}; a change to one
+ * route produces a new snapshot that shares every other pattern, the stop
+ * table and the transfer graph with its predecessor.
+ */
+public final class TimetableSnapshot {
+
+    private static final AtomicLong VERSIONS = new AtomicLong();
+
+    private final LocalDate serviceDate;
+    private final long version;
+
+    // Stops
+    private final long[] stopIds;
+    private final String[] stopNames;
+    private final double[] stopLats;
+    private final double[] stopLons;
+    private final boolean[] stopRealTime;
+    private final Map<Long, Integer> stopIndexById;
+
+    // Patterns (one per route)
+    private final PatternTimetable[] patterns;
+    private final Map<Long, Integer> patternIndexByRoute;
+
+    // Patterns serving each stop
+    private final int[] stopPatternOffsets;
+    private final int[] stopPatterns;
+    private final int[] stopPatternPositions;
+
+    // Walking transfers between nearby stops
+    private final int[] transferOffsets;
+    private final int[] transferTargets;
+    private final int[] transferSecs;
+
+    TimetableSnapshot(LocalDate serviceDate,
+                      long[] stopIds, String[] stopNames, double[] stopLats, double[] stopLons,
+                      boolean[] stopRealTime, Map<Long, Integer> stopIndexById,
+                      PatternTimetable[] patterns,
+                      int[] transferOffsets, int[] transferTargets, int[] transferSecs) {
+        this(serviceDate, stopIds, stopNames, stopLats, stopLons, stopRealTime, stopIndexById,
+            patterns, indexStopPatterns(stopIds.length, patterns),
+            transferOffsets, transferTargets, transferSecs);
+    }
+
+    private TimetableSnapshot(LocalDate serviceDate,
+                              long[] stopIds, String[] stopNames, double[] stopLats, double[] stopLons,
+                              boolean[] stopRealTime, Map<Long, Integer> stopIndexById,
+                              PatternTimetable[] patterns, int[][] stopPatternIndex,
+                              int[] transferOffsets, int[] transferTargets, int[] transferSecs) {
+        this.serviceDate = serviceDate;
+        this.version = VERSIONS.incrementAndGet();
+        this.stopIds = stopIds;
+        this.stopNames = stopNames;
+        this.stopLats = stopLats;
+        this.stopLons = stopLons;
+        this.stopRealTime = stopRealTime;
+        this.stopIndexById = stopIndexById;
+        this.patterns = patterns;
+        this.stopPatternOffsets = stopPatternIndex[0];
+        this.stopPatterns = stopPatternIndex[1];
+        this.stopPatternPositions = stopPatternIndex[2];
+        this.transferOffsets = transferOffsets;
+        this.transferTargets = transferTargets;
+        this.transferSecs = transferSecs;
+
+        this.patternIndexByRoute = new HashMap<>(patterns.length * 2);
+        for (int p = 0; p < patterns.length; p++) {
+            patternIndexByRoute.put(patterns[p].getRouteId(), p);
+        }
+    }
+
+    /**
+     * Inverts pattern stop lists into a stop -> (pattern, position) index.
+     * Returns {offsets, patterns, positions}.
+     */
+    private static int[][] indexStopPatterns(int stopCount, PatternTimetable[] patterns) {
+        int[] offsets = new int[stopCount + 1];
+        for (PatternTimetable pattern : patterns) {
+            for (int stop : pattern.stops()) {
+                offsets[stop + 1]++;
+            }
+        }
+        for (int s = 0; s < stopCount; s++) {
+            offsets[s + 1] += offsets[s];
+        }
+        int[] cursor = Arrays.copyOf(offsets, stopCount);
+        int[] entryPatterns = new int[offsets[stopCount]];
+        int[] entryPositions = new int[offsets[stopCount]];
+        for (int p = 0; p < patterns.length; p++) {
+            int[] sequence = patterns[p].stops();
+            for (int i = 0; i < sequence.length; i++) {
+                int entry = cursor[sequence[i]]++;
+                entryPatterns[entry] = p;
+                entryPositions[entry] = i;
+            }
+        }
+        return new int[][]{offsets, entryPatterns, entryPositions};
+    }
+
+    public LocalDate getServiceDate() {
+        return serviceDate;
+    }
+
+    /**
+     * Unique per snapshot and increasing with every rebuild or patch, so callers
+     * can tell snapshots apart cheaply
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    // Stops
+
+    public int stopCount() {
+        return stopIds.length;
+    }
+
+    /**
+     * @return the dense index of a stop, or -1 if the stop is unknown or inactive
+     */
+    public int stopIndex(Long stopId) {
+        Integer index = stopIndexById.get(stopId);
+        return index != null ? index : -1;
+    }
+
+    public long stopId(int stop) {
+        return stopIds[stop];
+    }
+
+    public String stopName(int stop) {
+        return stopNames[stop];
+    }
+
+    public double stopLat(int stop) {
+        return stopLats[stop];
+    }
+
+    public double stopLon(int stop) {
+        return stopLons[stop];
+    }
+
+    public boolean stopHasRealTimeInfo(int stop) {
+        return stopRealTime[stop];
+    }
+
+    // Patterns
+
+    public int patternCount() {
+        return patterns.length;
+    }
+
+    public PatternTimetable pattern(int pattern) {
+        return patterns[pattern];
+    }
+
+    /**
+     * @return the pattern index of a route, or -1 if the route has no pattern today
+     */
+    public int patternIndex(Long routeId) {
+        Integer index = patternIndexByRoute.get(routeId);
+        return index != null ? index : -1;
+    }
+
+    public long patternRouteId(int pattern) {
+        return patterns[pattern].getRouteId();
+    }
+
+    public String patternRouteNumber(int pattern) {
+        return patterns[pattern].getRouteNumber();
+    }
+
+    public String patternRouteName(int pattern) {
+        return patterns[pattern].getRouteName();
+    }
+
+    public int patternLength(int pattern) {
+        return patterns[pattern].length();
+    }
+
+    public int patternStop(int pattern, int position) {
+        return patterns[pattern].stop(position);
+    }
+
+    // Trips (indices are local to their pattern)
+
+    public int tripCount(int pattern) {
+        return patterns[pattern].tripCount();
+    }
+
+    public long tripScheduleId(int pattern, int trip) {
+        return patterns[pattern].scheduleId(trip);
+    }
+
+    public int departureSecs(int pattern, int trip, int position) {
+        return patterns[pattern].departureSecs(trip, position);
+    }
+
+    public int arrivalSecs(int pattern, int trip, int position) {
+        return patterns[pattern].arrivalSecs(trip, position);
+    }
+
+    /**
+     * Finds the trip of a pattern that leaves the given position soonest at or
+     * after {@code earliestSecs}, skipping cancelled stop times.
+     *
+     * @return the trip index, or -1 if no trip departs late enough
+     */
+    public int earliestTrip(int pattern, int position, int earliestSecs) {
+        return patterns[pattern].earliestTrip(position, earliestSecs);
+    }
+
+    // Stop to pattern index
+
+    public int stopPatternStart(int stop) {
+        return stopPatternOffsets[stop];
+    }
+
+    public int stopPatternEnd(int stop) {
+        return stopPatternOffsets[stop + 1];
+    }
+
+    public int stopPattern(int entry) {
+        return stopPatterns[entry];
+    }
+
+    public int stopPatternPosition(int entry) {
+        return stopPatternPositions[entry];
+    }
+
+    // Transfers
+
+    public int transferStart(int stop) {
+        return transferOffsets[stop];
+    }
+
+    public int transferEnd(int stop) {
+        return transferOffsets[stop + 1];
+    }
+
+    public int transferTarget(int entry) {
+        return transferTargets[entry];
+    }
+
+    public int transferSecs(int entry) {
+        return transferSecs[entry];
+    }
+
+    // Incremental updates
+
+    /**
+     * Returns a snapshot with the pattern of {@code routeId} replaced by the
+     * given one, or removed when {@code pattern} is null.
+     */
+    TimetableSnapshot withPattern(long routeId, PatternTimetable pattern) {
+        int index = patternIndex(routeId);
+        PatternTimetable[] updated;
+        if (index >= 0 && pattern != null && pattern.stops() == patterns[index].stops()) {
+            // Same stop sequence (a real-time patch): the stop index still applies
+            updated = patterns.clone();
+            updated[index] = pattern;
+            return new TimetableSnapshot(serviceDate, stopIds, stopNames, stopLats, stopLons,
+                stopRealTime, stopIndexById, updated,
+                new int[][]{stopPatternOffsets, stopPatterns, stopPatternPositions},
+                transferOffsets, transferTargets, transferSecs);
+        } else if (index >= 0 && pattern != null) {
+            updated = patterns.clone();
+            updated[index] = pattern;
+        } else if (index >= 0) {
+            updated = new PatternTimetable[patterns.length - 1];
+            System.arraycopy(patterns, 0, updated, 0, index);
+            System.arraycopy(patterns, index + 1, updated, index, patterns.length - index - 1);
+        } else if (pattern != null) {
+            updated = Arrays.copyOf(patterns, patterns.length + 1);
+            updated[patterns.length] = pattern;
+        } else {
+            return this;
+        }
+        return new TimetableSnapshot(serviceDate, stopIds, stopNames, stopLats, stopLons,
+            stopRealTime, stopIndexById, updated, transferOffsets, transferTargets, transferSecs);
+    }
+
+    /**
+     * Approximate heap footprint of the snapshot arrays, for logging
+     */
+    long sizeInBytes() {
+        long bytes = 33L * stopIds.length + 8L * stopPatterns.length + 8L * transferTargets.length;
+        for (PatternTimetable pattern : patterns) {
+            bytes += pattern.sizeInBytes();
+        }
+        return bytes;
+    }
+}
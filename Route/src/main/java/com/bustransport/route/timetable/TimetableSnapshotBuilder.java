@@ -0,0 +1,305 @@
+package com.bustransport.route.timetable;
+
+import com.bustransport.route.calendar.ServiceCalendar;
+import com.bustransport.route.entity.Route;
+import com.bustransport.route.entity.RouteStop;
+import com.bustransport.route.entity.Schedule;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.repository.DepartureRepository;
+import com.bustransport.route.repository.DepartureRepository.DepartureState;
+import com.bustransport.route.repository.RouteRepository;
+import com.bustransport.route.repository.RouteStopRepository;
+import com.bustransport.route.repository.ScheduleRepository;
+import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.spatial.WalkingTransferGraph;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.ToIntFunction;
+import java.util.stream.Collectors;
+
+/**
+ * Loads routes, stops, schedules and departure states for one service day and
+ * flattens them into a {@link TimetableSnapshot}, either entirely or one route
+ * at a time.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class TimetableSnapshotBuilder {
+
+    // Used when a route stop has neither timeFromStart nor distanceFromStart
+    private static final int DEFAULT_SECONDS_BETWEEN_STOPS = 120;
+    private static final double DEFAULT_BUS_SPEED_KMH = 20.0;
+    // Departures belonging to a service day, including trips running past midnight
+    private static final int SERVICE_DAY_HOURS = 30;
+
+    private final StopRepository stopRepository;
+    private final RouteRepository routeRepository;
+    private final RouteStopRepository routeStopRepository;
+    private final ScheduleRepository scheduleRepository;
+    private final DepartureRepository departureRepository;
+    private final ServiceCalendar serviceCalendar;
+    private final WalkingTransferGraph transferGraph;
+
+    @Transactional(readOnly = true)
+    public TimetableSnapshot build(LocalDate serviceDate) {
+        long start = System.currentTimeMillis();
+
+        List<Stop> stops = stopRepository.findByIsActive(true);
+        Map<Long, Integer> stopIndexById = new HashMap<>(stops.size() * 2);
+        long[] stopIds = new long[stops.size()];
+        String[] stopNames = new String[stops.size()];
+        double[] stopLats = new double[stops.size()];
+        double[] stopLons = new double[stops.size()];
+        boolean[] stopRealTime = new boolean[stops.size()];
+        for (int i = 0; i < stops.size(); i++) {
+            Stop stop = stops.get(i);
+            stopIds[i] = stop.getId();
+            stopNames[i] = stop.getName();
+            stopLats[i] = stop.getLatitude().doubleValue();
+            stopLons[i] = stop.getLongitude().doubleValue();
+            stopRealTime[i] = Boolean.TRUE.equals(stop.getHasRealTimeInfo());
+            stopIndexById.put(stop.getId(), i);
+        }
+
+        Map<Long, List<RouteStop>> routeStopsByRoute = routeStopRepository.findAll().stream()
+            .collect(Collectors.groupingBy(rs -> rs.getRoute().getId()));
+
+        List<Schedule> schedules = scheduleRepository.findAllById(serviceCalendar.runningScheduleIds(serviceDate));
+        Map<Long, List<Schedule>> schedulesByRoute = schedules.stream()
+            .collect(Collectors.groupingBy(schedule -> schedule.getRoute().getId()));
+        Map<Long, Long> routeBySchedule = schedules.stream()
+            .collect(Collectors.toMap(Schedule::getId, schedule -> schedule.getRoute().getId()));
+
+        LocalDateTime dayStart = serviceDate.atStartOfDay();
+        Map<Long, List<DepartureState>> departuresByRoute = departureRepository
+            .findStatesByTimeRange(dayStart, dayStart.plusHours(SERVICE_DAY_HOURS)).stream()
+            .filter(state -> routeBySchedule.containsKey(state.getScheduleId()))
+            .collect(Collectors.groupingBy(state -> routeBySchedule.get(state.getScheduleId())));
+
+        List<Route> routes = routeRepository.findAll().stream()
+            .filter(Route::getIsActive)
+            .sorted(Comparator.comparing(Route::getId))
+            .toList();
+
+        List<PatternTimetable> patterns = new ArrayList<>(routes.size());
+        int trips = 0;
+        for (Route route : routes) {
+            List<RouteStop> routeStops = routeStopsByRoute.getOrDefault(route.getId(), List.of()).stream()
+                .sorted(Comparator.comparing(RouteStop::getStopSequence))
+                .toList();
+            PatternTimetable pattern = buildPattern(serviceDate, route, routeStops,
+                schedulesByRoute.getOrDefault(route.getId(), List.of()),
+                departuresByRoute.getOrDefault(route.getId(), List.of()),
+                stopId -> stopIndexById.getOrDefault(stopId, -1));
+            if (pattern != null) {
+                patterns.add(pattern);
+                trips += pattern.tripCount();
+            }
+        }
+
+        int[][] transfers = buildTransfers(stopIds, stopIndexById);
+        TimetableSnapshot snapshot = new TimetableSnapshot(serviceDate, stopIds, stopNames, stopLats, stopLons,
+            stopRealTime, stopIndexById, patterns.toArray(PatternTimetable[]::new),
+            transfers[0], transfers[1], transfers[2]);
+        log.info("Built timetable for {}: {} stops, {} patterns, {} trips, ~{} KB in {} ms", serviceDate,
+            stopIds.length, snapshot.patternCount(), trips, snapshot.sizeInBytes() / 1024,
+            System.currentTimeMillis() - start);
+        return snapshot;
+    }
+
+    /**
+     * Rebuilds the pattern of a single route against the stops of an existing
+     * snapshot. Runs in its own transaction because it is called after the
+     * transaction that changed the route has committed.
+     *
+     * @return the new pattern, or empty if the route no longer runs that day
+     */
+    @Transactional(readOnly = true, propagation = Propagation.REQUIRES_NEW)
+    public Optional<PatternTimetable> buildRoute(TimetableSnapshot base, Long routeId) {
+        Route route = routeRepository.findById(routeId).orElse(null);
+        if (route == null || !route.getIsActive()) {
+            return Optional.empty();
+        }
+        LocalDate serviceDate = base.getServiceDate();
+        List<Schedule> schedules = scheduleRepository.findAllById(
+            serviceCalendar.runningScheduleIds(routeId, serviceDate));
+        LocalDateTime dayStart = serviceDate.atStartOfDay();
+        List<DepartureState> departures = departureRepository.findStatesByRouteIdAndTimeRange(
+            routeId, dayStart, dayStart.plusHours(SERVICE_DAY_HOURS));
+        return Optional.ofNullable(buildPattern(serviceDate, route,
+            routeStopRepository.findByRouteIdOrderByStopSequence(routeId), schedules, departures, base::stopIndex));
+    }
+
+    /**
+     * Dwell time at every stop; trips leave the first stop without waiting
+     */
+    public static int[] dwellSecs(List<RouteStop> routeStops) {
+        int[] dwell = new int[routeStops.size()];
+        for (int i = 1; i < dwell.length; i++) {
+            Integer dwellTime = routeStops.get(i).getDwellTime();
+            dwell[i] = dwellTime != null ? dwellTime : 0;
+        }
+        return dwell;
+    }
+
+    /**
+     * Departure offset of every stop relative to the trip start, derived from
+     * timeFromStart, then distanceFromStart, then a fixed per-stop estimate.
+     */
+    public static int[] departureOffsets(List<RouteStop> routeStops, int[] dwellSecs) {
+        int[] offsets = new int[routeStops.size()];
+        for (int i = 1; i < routeStops.size(); i++) {
+            RouteStop routeStop = routeStops.get(i);
+            int arrival;
+            if (routeStop.getTimeFromStart() != null) {
+                arrival = routeStop.getTimeFromStart().toSecondOfDay();
+            } else if (routeStop.getDistanceFromStart() != null) {
+                arrival = (int) (routeStop.getDistanceFromStart().doubleValue() / DEFAULT_BUS_SPEED_KMH * 3600);
+            } else {
+                arrival = offsets[i - 1] + DEFAULT_SECONDS_BETWEEN_STOPS;
+            }
+            // Never allow a trip to arrive before it left the previous stop
+            arrival = Math.max(arrival, offsets[i - 1] + 1);
+            offsets[i] = arrival + dwellSecs[i];
+        }
+        return offsets;
+    }
+
+    /**
+     * Expands the schedules of a route into a pattern and overlays the recorded
+     * real-time state of its departures.
+     *
+     * @param routeStops route stops ordered by sequence
+     * @return the pattern, or null if the route has fewer than two active stops
+     */
+    private PatternTimetable buildPattern(LocalDate serviceDate, Route route, List<RouteStop> routeStops,
+                                          List<Schedule> schedules, List<DepartureState> departures,
+                                          ToIntFunction<Long> stopIndex) {
+        int[] stopSequence = new int[routeStops.size()];
+        boolean complete = routeStops.size() >= 2;
+        for (int i = 0; i < routeStops.size() && complete; i++) {
+            stopSequence[i] = stopIndex.applyAsInt(routeStops.get(i).getStop().getId());
+            complete = stopSequence[i] >= 0;
+        }
+        if (!complete) {
+            log.debug("Skipping route {} in timetable: fewer than two active stops", route.getRouteNumber());
+            return null;
+        }
+
+        int[] dwell = dwellSecs(routeStops);
+        int[] offsets = departureOffsets(routeStops, dwell);
+
+        // Expand every schedule into trip start times, merged in departure order
+        List<long[]> starts = new ArrayList<>();
+        for (Schedule schedule : schedules) {
+            if (schedule.getFrequency() == null || schedule.getFrequency() <= 0) {
+                continue;
+            }
+            int first = schedule.getFirstDeparture().toSecondOfDay();
+            int last = schedule.getLastDeparture().toSecondOfDay();
+            for (int t = first; t <= last; t += schedule.getFrequency() * 60) {
+                starts.add(new long[]{t, schedule.getId()});
+            }
+        }
+        starts.sort(Comparator.comparingLong(s -> s[0]));
+
+        int[] times = new int[starts.size() * stopSequence.length];
+        long[] scheduleIds = new long[starts.size()];
+        for (int trip = 0; trip < starts.size(); trip++) {
+            int startSecs = (int) starts.get(trip)[0];
+            scheduleIds[trip] = starts.get(trip)[1];
+            for (int i = 0; i < stopSequence.length; i++) {
+                times[trip * stopSequence.length + i] = startSecs + offsets[i];
+            }
+        }
+
+        PatternTimetable pattern = new PatternTimetable(route.getId(), route.getRouteNumber(), route.getName(),
+            stopSequence, dwell, scheduleIds, times);
+        return departures.isEmpty() ? pattern : withDepartures(serviceDate, pattern, departures, stopIndex);
+    }
+
+    private PatternTimetable withDepartures(LocalDate serviceDate, PatternTimetable pattern,
+                                            List<DepartureState> departures, ToIntFunction<Long> stopIndex) {
+        int size = pattern.tripCount() * pattern.length();
+        long[] ids = new long[size];
+        int[] delays = new int[size];
+        byte[] statuses = new byte[size];
+        Map<Integer, String> messages = new HashMap<>();
+        LocalDateTime dayStart = serviceDate.atStartOfDay();
+        int matched = 0;
+
+        for (DepartureState departure : departures) {
+            int stop = stopIndex.applyAsInt(departure.getStopId());
+            if (stop < 0) {
+                continue;
+            }
+            int plannedSecs = (int) Duration.between(dayStart, departure.getDepartureTime()).getSeconds();
+            int[] stopTime = pattern.locate(departure.getScheduleId(), stop, plannedSecs);
+            if (stopTime == null) {
+                continue;
+            }
+            int index = stopTime[0] * pattern.length() + stopTime[1];
+            ids[index] = departure.getId();
+            Integer delayMinutes = departure.getDelayMinutes();
+            delays[index] = delayMinutes != null && delayMinutes > 0 ? delayMinutes * 60 : 0;
+            statuses[index] = (byte) (departure.getStatus() != null
+                ? departure.getStatus() : DepartureStatus.ON_TIME).ordinal();
+            if (departure.getStatusMessage() != null) {
+                messages.put(index, departure.getStatusMessage());
+            }
+            matched++;
+        }
+
+        if (matched < departures.size()) {
+            log.debug("Route {}: {} of {} departures do not match a scheduled trip", pattern.getRouteNumber(),
+                departures.size() - matched, departures.size());
+        }
+        return matched == 0 ? pattern : pattern.withRealtime(ids, delays, statuses, messages);
+    }
+
+    /**
+     * Walking transfers between active stops from the precomputed transfer
+     * graph, indexed by stop. Returns {offsets, targets, seconds}.
+     */
+    private int[][] buildTransfers(long[] stopIds, Map<Long, Integer> stopIndexById) {
+        int stopCount = stopIds.length;
+        int[] offsets = new int[stopCount + 1];
+        WalkingTransferGraph.Edges[] edges = new WalkingTransferGraph.Edges[stopCount];
+        for (int s = 0; s < stopCount; s++) {
+            edges[s] = transferGraph.edges(stopIds[s]);
+            offsets[s + 1] = offsets[s] + edges[s].size();
+        }
+
+        int[] targets = new int[offsets[stopCount]];
+        int[] seconds = new int[offsets[stopCount]];
+        int edgeCount = 0;
+        for (int s = 0; s < stopCount; s++) {
+            offsets[s] = edgeCount;
+            for (int e = 0; e < edges[s].size(); e++) {
+                Integer to = stopIndexById.get(edges[s].stopIds()[e]);
+                if (to != null) {
+                    targets[edgeCount] = to;
+                    seconds[edgeCount++] = edges[s].walkSecs()[e];
+                }
+            }
+        }
+        offsets[stopCount] = edgeCount;
+        return new int[][]{offsets, Arrays.copyOf(targets, edgeCount), Arrays.copyOf(seconds, edgeCount)};
+    }
+}
@@ -0,0 +1,155 @@
+package com.bustransport.route.timetable;
+
+import com.bustransport.route.event.DepartureChangedEvent;
+import com.bustransport.route.event.ServiceCalendarChangedEvent;
+import com.bustransport.route.event.TimetableChangedEvent;
+import com.bustransport.route.event.TripDeparturesChangedEvent;
+import com.bustransport.route.timetable.PatternTimetable.StopTimeUpdate;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Holds the timetable snapshot used by the journey planner and departure
+ * boards. Today's snapshot is built at startup and kept current by rebuilding
+ * only the route whose schedules changed and by patching departures as their
+ * real-time status changes, a whole trip at a time for propagated delays; a
+ * periodic full rebuild picks up stop and route edits. Readers just dereference the current snapshot; writers are
+ * serialized and publish a new snapshot with one atomic swap.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class TimetableSnapshotService {
+
+    private static final int MAX_OTHER_DATES = 7;
+
+    private final TimetableSnapshotBuilder snapshotBuilder;
+
+    private final AtomicReference<TimetableSnapshot> current = new AtomicReference<>();
+    private final Map<LocalDate, TimetableSnapshot> otherDates = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void initialize() {
+        refresh();
+    }
+
+    @Scheduled(fixedDelayString = "${timetable.refresh-interval-ms:900000}",
+               initialDelayString = "${timetable.refresh-interval-ms:900000}")
+    public void refresh() {
+        try {
+            synchronized (writeLock) {
+                current.set(snapshotBuilder.build(LocalDate.now()));
+            }
+            otherDates.clear();
+        } catch (Exception e) {
+            log.error("Failed to rebuild timetable snapshot", e);
+        }
+    }
+
+    public TimetableSnapshot getSnapshot(LocalDate serviceDate) {
+        TimetableSnapshot snapshot = current.get();
+        if (snapshot != null && snapshot.getServiceDate().equals(serviceDate)) {
+            return snapshot;
+        }
+        if (snapshot == null && serviceDate.equals(LocalDate.now())) {
+            synchronized (writeLock) {
+                if (current.get() == null) {
+                    current.set(snapshotBuilder.build(serviceDate));
+                }
+                return current.get();
+            }
+        }
+        if (otherDates.size() >= MAX_OTHER_DATES) {
+            otherDates.clear();
+        }
+        return otherDates.computeIfAbsent(serviceDate, snapshotBuilder::build);
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTimetableChanged(TimetableChangedEvent event) {
+        try {
+            synchronized (writeLock) {
+                TimetableSnapshot snapshot = current.get();
+                if (snapshot == null) {
+                    return;
+                }
+                long start = System.currentTimeMillis();
+                PatternTimetable pattern = snapshotBuilder.buildRoute(snapshot, event.getRouteId()).orElse(null);
+                current.set(snapshot.withPattern(event.getRouteId(), pattern));
+                log.debug("Rebuilt timetable of route {} in {} ms", event.getRouteId(),
+                    System.currentTimeMillis() - start);
+            }
+            otherDates.clear();
+        } catch (Exception e) {
+            log.error("Failed to rebuild timetable of route {}", event.getRouteId(), e);
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onCalendarChanged(ServiceCalendarChangedEvent event) {
+        TimetableSnapshot snapshot = current.get();
+        if (snapshot != null && snapshot.getServiceDate().equals(event.getServiceDate())) {
+            refresh();
+        } else {
+            otherDates.remove(event.getServiceDate());
+        }
+    }
+
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onDepartureChanged(DepartureChangedEvent event) {
+        patch(event.getRouteId(), List.of(event));
+    }
+
+    /**
+     * Patches every departure of the trip into one copy of its pattern
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onTripDeparturesChanged(TripDeparturesChangedEvent event) {
+        patch(event.getRouteId(), event.getDepartures());
+    }
+
+    private void patch(Long routeId, List<DepartureChangedEvent> departures) {
+        departures.forEach(departure -> otherDates.remove(departure.getDepartureTime().toLocalDate()));
+        synchronized (writeLock) {
+            TimetableSnapshot snapshot = current.get();
+            if (snapshot == null) {
+                return;
+            }
+            int patternIndex = snapshot.patternIndex(routeId);
+            if (patternIndex < 0) {
+                return;
+            }
+            PatternTimetable pattern = snapshot.pattern(patternIndex);
+            List<StopTimeUpdate> updates = new ArrayList<>(departures.size());
+            for (DepartureChangedEvent departure : departures) {
+                int stop = snapshot.stopIndex(departure.getStopId());
+                int plannedSecs = (int) Duration.between(snapshot.getServiceDate().atStartOfDay(),
+                    departure.getDepartureTime()).getSeconds();
+                int[] stopTime = stop < 0 ? null : pattern.locate(departure.getScheduleId(), stop, plannedSecs);
+                if (stopTime == null) {
+                    log.debug("Departure {} does not match a trip in the timetable", departure.getDepartureId());
+                    continue;
+                }
+                updates.add(new StopTimeUpdate(stopTime[0], stopTime[1], departure.getDepartureId(),
+                    departure.getStatus(), departure.getDelayMinutes(), departure.getStatusMessage()));
+            }
+            if (!updates.isEmpty()) {
+                current.set(snapshot.withPattern(routeId, pattern.withRealtime(updates)));
+            }
+        }
+    }
+}
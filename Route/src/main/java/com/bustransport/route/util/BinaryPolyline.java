@@ -0,0 +1,79 @@
+package com.bustransport.route.util;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Compact binary polyline: the point count followed by zigzag varint deltas of
+ * microdegree coordinates. A typical stop-to-stop street geometry takes 2-4
+ * bytes per point instead of ~40 for the equivalent JSON.
+ */
+public final class BinaryPolyline {
+
+    private static final double SCALE = 1e6;
+
+    private BinaryPolyline() {
+    }
+
+    public static byte[] encode(double[] lats, double[] lons) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + lats.length * 4);
+        writeVarint(out, lats.length);
+        long previousLat = 0;
+        long previousLon = 0;
+        for (int i = 0; i < lats.length; i++) {
+            long lat = Math.round(lats[i] * SCALE);
+            long lon = Math.round(lons[i] * SCALE);
+            writeVarint(out, zigzag(lat - previousLat));
+            writeVarint(out, zigzag(lon - previousLon));
+            previousLat = lat;
+            previousLon = lon;
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * @return {latitudes, longitudes}
+     */
+    public static double[][] decode(byte[] bytes) {
+        int[] cursor = {0};
+        int count = (int) readVarint(bytes, cursor);
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        long lat = 0;
+        long lon = 0;
+        for (int i = 0; i < count; i++) {
+            lat += unzigzag(readVarint(bytes, cursor));
+            lon += unzigzag(readVarint(bytes, cursor));
+            lats[i] = lat / SCALE;
+            lons[i] = lon / SCALE;
+        }
+        return new double[][]{lats, lons};
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarint(byte[] bytes, int[] cursor) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[cursor[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,191 @@
+package com.bustransport.route.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Concave hull of a point set (Park and Oh's edge digging): starting from the
+ * convex hull, every edge that is long compared to its distance to the
+ * nearest inner point is replaced by two edges through that point, as long
+ * as the polygon stays simple and keeps every point inside. Points are
+ * projected onto a local plane, which is accurate enough at city scale.
+ */
+public final class ConcaveHull {
+
+    private ConcaveHull() {
+    }
+
+    /**
+     * @param concavity   edge length / digging distance above which an edge is dug in;
+     *                    higher values give a shape closer to the convex hull
+     * @param minEdgeMeters edges shorter than this are kept as they are
+     * @return the hull as a closed ring {latitudes, longitudes}, or null for fewer than three points
+     */
+    public static double[][] compute(double[] lats, double[] lons, double concavity, double minEdgeMeters) {
+        int n = lats.length;
+        if (n < 3) {
+            return null;
+        }
+        double originLat = lats[0];
+        double originLon = lons[0];
+        double metersPerLon = Math.toRadians(GeoUtils.EARTH_RADIUS_METERS) * Math.cos(Math.toRadians(originLat));
+        double metersPerLat = Math.toRadians(GeoUtils.EARTH_RADIUS_METERS);
+        double[] x = new double[n];
+        double[] y = new double[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = (lons[i] - originLon) * metersPerLon;
+            y[i] = (lats[i] - originLat) * metersPerLat;
+        }
+
+        List<Integer> hull = convexHull(x, y);
+        if (hull.size() < 3) {
+            return null;
+        }
+        boolean[] onHull = new boolean[n];
+        hull.forEach(i -> onHull[i] = true);
+
+        int edge = 0;
+        while (edge < hull.size()) {
+            int a = hull.get(edge);
+            int b = hull.get((edge + 1) % hull.size());
+            double length = Math.hypot(x[b] - x[a], y[b] - y[a]);
+            int candidate = -1;
+            double nearest = Double.MAX_VALUE;
+            if (length > minEdgeMeters) {
+                for (int p = 0; p < n; p++) {
+                    if (!onHull[p]) {
+                        double distance = segmentDistance(x, y, p, a, b);
+                        // Points beyond the ends of the edge belong to a neighbouring edge
+                        if (distance >= 0 && distance < nearest) {
+                            nearest = distance;
+                            candidate = p;
+                        }
+                    }
+                }
+            }
+            if (candidate >= 0) {
+                double digging = Math.min(Math.hypot(x[candidate] - x[a], y[candidate] - y[a]),
+                    Math.hypot(x[candidate] - x[b], y[candidate] - y[b]));
+                if (digging > 0 && length / digging > concavity
+                        && !crossesHull(x, y, hull, edge, candidate)
+                        && !enclosesPoints(x, y, onHull, a, candidate, b)) {
+                    hull.add(edge + 1, candidate);
+                    onHull[candidate] = true;
+                    // Re-examine the first of the two new edges
+                    continue;
+                }
+            }
+            edge++;
+        }
+
+        double[] ringLats = new double[hull.size() + 1];
+        double[] ringLons = new double[hull.size() + 1];
+        for (int i = 0; i <= hull.size(); i++) {
+            int point = hull.get(i % hull.size());
+            ringLats[i] = lats[point];
+            ringLons[i] = lons[point];
+        }
+        return new double[][]{ringLats, ringLons};
+    }
+
+    /**
+     * Andrew's monotone chain, counter-clockwise without collinear points
+     */
+    private static List<Integer> convexHull(double[] x, double[] y) {
+        Integer[] order = new Integer[x.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (i, j) -> x[i] != x[j] ? Double.compare(x[i], x[j]) : Double.compare(y[i], y[j]));
+
+        int[] hull = new int[2 * order.length];
+        int size = 0;
+        for (int i : order) {
+            while (size >= 2 && cross(x, y, hull[size - 2], hull[size - 1], i) <= 0) {
+                size--;
+            }
+            hull[size++] = i;
+        }
+        int lower = size + 1;
+        for (int k = order.length - 2; k >= 0; k--) {
+            int i = order[k];
+            while (size >= lower && cross(x, y, hull[size - 2], hull[size - 1], i) <= 0) {
+                size--;
+            }
+            hull[size++] = i;
+        }
+        List<Integer> result = new ArrayList<>(size);
+        for (int i = 0; i < size - 1; i++) {
+            result.add(hull[i]);
+        }
+        return result;
+    }
+
+    private static double cross(double[] x, double[] y, int o, int a, int b) {
+        return (x[a] - x[o]) * (y[b] - y[o]) - (y[a] - y[o]) * (x[b] - x[o]);
+    }
+
+    /**
+     * Distance from p to the edge a-b, or -1 if p does not project onto the edge
+     */
+    private static double segmentDistance(double[] x, double[] y, int p, int a, int b) {
+        double dx = x[b] - x[a];
+        double dy = y[b] - y[a];
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared == 0 ? -1 : ((x[p] - x[a]) * dx + (y[p] - y[a]) * dy) / lengthSquared;
+        if (t <= 0 || t >= 1) {
+            return -1;
+        }
+        return Math.hypot(x[p] - (x[a] + t * dx), y[p] - (y[a] + t * dy));
+    }
+
+    /**
+     * Whether the edges a-p and p-b replacing hull edge {@code edge} would
+     * cross any other hull edge
+     */
+    private static boolean crossesHull(double[] x, double[] y, List<Integer> hull, int edge, int p) {
+        int a = hull.get(edge);
+        int b = hull.get((edge + 1) % hull.size());
+        for (int e = 0; e < hull.size(); e++) {
+            if (e == edge) {
+                continue;
+            }
+            int c = hull.get(e);
+            int d = hull.get((e + 1) % hull.size());
+            if ((c != a && d != a && segmentsIntersect(x, y, a, p, c, d))
+                    || (c != b && d != b && segmentsIntersect(x, y, p, b, c, d))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean segmentsIntersect(double[] x, double[] y, int a, int b, int c, int d) {
+        double d1 = cross(x, y, c, d, a);
+        double d2 = cross(x, y, c, d, b);
+        double d3 = cross(x, y, a, b, c);
+        double d4 = cross(x, y, a, b, d);
+        return ((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0));
+    }
+
+    /**
+     * Whether digging to p would leave any inner point outside the polygon
+     */
+    private static boolean enclosesPoints(double[] x, double[] y, boolean[] onHull, int a, int p, int b) {
+        for (int q = 0; q < x.length; q++) {
+            if (onHull[q] || q == p) {
+                continue;
+            }
+            double c1 = cross(x, y, a, p, q);
+            double c2 = cross(x, y, p, b, q);
+            double c3 = cross(x, y, b, a, q);
+            boolean hasNegative = c1 < 0 || c2 < 0 || c3 < 0;
+            boolean hasPositive = c1 > 0 || c2 > 0 || c3 > 0;
+            if (!(hasNegative && hasPositive)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
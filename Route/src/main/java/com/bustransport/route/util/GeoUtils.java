@@ -0,0 +1,38 @@
+package com.bustransport.route.util;
+
+/**
+ * Plain double-based geodesic helpers for in-memory network code
+ */
+public final class GeoUtils {
+
+    public static final double EARTH_RADIUS_METERS = 6_371_000d;
+
+    // ~5 km/h, the walking speed used throughout path planning
+    public static final double WALK_SPEED_MPS = 5.0 / 3.6;
+
+    private GeoUtils() {
+    }
+
+    /**
+     * Haversine distance between two points in meters
+     */
+    public static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2) +
+                   Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) *
+                   Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return EARTH_RADIUS_METERS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    public static int walkSeconds(double meters) {
+        return (int) Math.ceil(meters / WALK_SPEED_MPS);
+    }
+
+    /**
+     * Latitude span in degrees covering the given distance
+     */
+    public static double metersToLatDegrees(double meters) {
+        return Math.toDegrees(meters / EARTH_RADIUS_METERS);
+    }
+}
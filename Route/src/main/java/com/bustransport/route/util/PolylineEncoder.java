@@ -0,0 +1,63 @@
+package com.bustransport.route.util;
+
+/**
+ * Google encoded polyline algorithm at precision 5 (1e-5 degrees, the Google
+ * Maps default) or 6 (1e-6, as used by OSRM and Valhalla). Points are appended
+ * straight from coordinate arrays into one builder, so several geometries can
+ * be chained into a single polyline without intermediate lists.
+ */
+public final class PolylineEncoder {
+
+    private final double factor;
+    private final StringBuilder out;
+    private long previousLat;
+    private long previousLon;
+
+    public PolylineEncoder(int precision) {
+        this(precision, 64);
+    }
+
+    public PolylineEncoder(int precision, int expectedPoints) {
+        if (precision != 5 && precision != 6) {
+            throw new IllegalArgumentException("Polyline precision must be 5 or 6, got " + precision);
+        }
+        this.factor = precision == 6 ? 1e6 : 1e5;
+        // Typical deltas take 2-4 characters per coordinate
+        this.out = new StringBuilder(expectedPoints * 6);
+    }
+
+    public static String encode(double[] lats, double[] lons, int precision) {
+        return new PolylineEncoder(precision, lats.length).append(lats, lons).toString();
+    }
+
+    public PolylineEncoder append(double[] lats, double[] lons) {
+        for (int i = 0; i < lats.length; i++) {
+            append(lats[i], lons[i]);
+        }
+        return this;
+    }
+
+    public PolylineEncoder append(double lat, double lon) {
+        long scaledLat = Math.round(lat * factor);
+        long scaledLon = Math.round(lon * factor);
+        writeValue(scaledLat - previousLat);
+        writeValue(scaledLon - previousLon);
+        previousLat = scaledLat;
+        previousLon = scaledLon;
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return out.toString();
+    }
+
+    private void writeValue(long delta) {
+        long value = delta < 0 ? ~(delta << 1) : delta << 1;
+        while (value >= 0x20) {
+            out.append((char) ((0x20 | (value & 0x1f)) + 63));
+            value >>= 5;
+        }
+        out.append((char) (value + 63));
+    }
+}
@@ -0,0 +1,268 @@
+package com.bustransport.route.cache;
+
+import com.bustransport.route.cache.CacheDependencyRegistry.CachedEntry;
+import com.bustransport.route.cache.TwoLevelCacheManager.LocalCacheSpec;
+import com.bustransport.route.dto.response.RouteDTO;
+import com.bustransport.route.dto.response.RouteStopDTO;
+import com.bustransport.route.dto.response.StopDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Two replicas over one shared tier, each with its own local tier. Redis is
+ * replaced by a concurrent map for the shared tier, an in-memory registry,
+ * and a channel that hands every published message to both replicas.
+ */
+class CacheInvalidatorTest {
+
+    private static final String CHANNEL = "cache-evictions";
+
+    private final CacheManager redis = new ConcurrentMapCacheManager("stops", "routes", "optimalPaths");
+    private final InMemoryRegistry registry = new InMemoryRegistry();
+    private final List<Replica> replicas = new ArrayList<>();
+
+    private Replica first;
+    private Replica second;
+
+    private final class Replica {
+
+        private final CacheManager cacheManager;
+        private final CacheInvalidator invalidator;
+
+        Replica() {
+            cacheManager = new DependencyTrackingCacheManager(new TwoLevelCacheManager(redis, Map.of(
+                "stops", new LocalCacheSpec(100, 60_000),
+                "routes", new LocalCacheSpec(100, 60_000),
+                "optimalPaths", new LocalCacheSpec(100, 60_000)), new GenericJackson2JsonRedisSerializer(),
+                new SimpleMeterRegistry()), registry);
+            StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+            doAnswer(invocation -> {
+                byte[] body = invocation.<String>getArgument(1).getBytes(StandardCharsets.UTF_8);
+                replicas.forEach(replica -> replica.invalidator.onMessage(
+                    new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8), body), null));
+                return 1L;
+            }).when(redisTemplate).convertAndSend(anyString(), anyString());
+            invalidator = new CacheInvalidator(cacheManager, registry, redisTemplate);
+            ReflectionTestUtils.setField(invalidator, "channel", CHANNEL);
+        }
+
+        Cache cache(String name) {
+            return cacheManager.getCache(name);
+        }
+
+        /**
+         * What a read through the caching aspect sees: the cached value, or
+         * the loaded one after storing it
+         */
+        Object read(String name, Object key, Object loaded) {
+            Cache cache = cache(name);
+            Cache.ValueWrapper cached = cache.get(key);
+            if (cached != null) {
+                return cached.get();
+            }
+            cache.put(key, loaded);
+            return loaded;
+        }
+
+        Object local(String name, Object key) {
+            LocalCache local = (LocalCache) ReflectionTestUtils.getField(
+                ReflectionTestUtils.getField(cache(name), "delegate"), "local");
+            Cache.ValueWrapper value = local.get(key);
+            return value != null ? value.get() : null;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        first = new Replica();
+        second = new Replica();
+        replicas.add(first);
+        replicas.add(second);
+    }
+
+    @Test
+    void evictsOnlyTheEntriesDerivedFromAChangedStop() {
+        first.read("stops", 7L, stop(7L));
+        first.read("stops", 8L, stop(8L));
+        first.read("routes", 1L, route(1L, 7L, 8L));
+        first.read("routes", 2L, route(2L, 8L));
+        first.read("optimalPaths", "a_b", "journey");
+
+        first.invalidator.invalidate(List.of(EntityRef.stop(7L)));
+
+        assertThat(first.cache("stops").get(7L)).isNull();
+        assertThat(first.cache("routes").get(1L)).isNull();
+        assertThat(first.cache("optimalPaths").get("a_b")).isNull();
+        assertThat(first.cache("stops").get(8L)).isNotNull();
+        assertThat(first.cache("routes").get(2L)).isNotNull();
+        // The dependencies of the evicted entries are released, the others kept
+        assertThat(registry.entries(EntityRef.stop(7L))).isEmpty();
+        assertThat(registry.entries(EntityRef.stop(8L)))
+            .containsExactlyInAnyOrder(new CachedEntry("stops", 8L), new CachedEntry("routes", 1L),
+                new CachedEntry("routes", 2L));
+    }
+
+    @Test
+    void evictsTheLocalTierOfTheOtherReplica() {
+        first.read("stops", 7L, stop(7L));
+        second.read("stops", 7L, stop(99L));
+        second.read("optimalPaths", "a_b", "journey");
+        assertThat(second.local("stops", 7L)).isEqualTo(stop(7L));
+
+        first.invalidator.invalidate(List.of(EntityRef.stop(7L)));
+
+        assertThat(second.local("stops", 7L)).isNull();
+        assertThat(second.local("optimalPaths", "a_b")).isNull();
+        assertThat(second.cache("stops").get(7L)).isNull();
+    }
+
+    @Test
+    void clearsEveryReplicaAfterABulkChange() {
+        first.read("routes", 1L, route(1L, 7L));
+        second.read("routes", 1L, route(1L, 7L));
+        second.read("stops", 8L, stop(8L));
+
+        first.invalidator.clearAll();
+
+        assertThat(second.local("routes", 1L)).isNull();
+        assertThat(second.local("stops", 8L)).isNull();
+        assertThat(second.cache("routes").get(1L)).isNull();
+    }
+
+    @Test
+    void ignoresEvictionsForCachesWithoutALocalTier() {
+        second.read("stops", 7L, stop(7L));
+
+        second.invalidator.onMessage(new DefaultMessage(CHANNEL.getBytes(StandardCharsets.UTF_8),
+            "other-replica\nE\twalkRouteGeometry\tS1_2_3_4\nC\tunknown".getBytes(StandardCharsets.UTF_8)), null);
+
+        assertThat(second.local("stops", 7L)).isEqualTo(stop(7L));
+    }
+
+    @Test
+    void dropsAValueLoadedBeforeAChangeCommitted() {
+        Cache stops = first.cache("stops");
+        assertThat(stops.get(7L)).isNull();
+        // The change commits and is invalidated while the old stop is loaded
+        second.invalidator.invalidate(List.of(EntityRef.stop(7L)));
+
+        stops.put(7L, stop(7L));
+
+        assertThat(stops.get(7L)).isNull();
+        assertThat(redis.getCache("stops").get(7L)).isNull();
+        assertThat(first.read("stops", 7L, stop(70L))).isEqualTo(stop(70L));
+        assertThat(stops.get(7L).get()).isEqualTo(stop(70L));
+    }
+
+    @Test
+    void evictsAValueStoredWhileAChangeWasInvalidated() {
+        Cache stops = first.cache("stops");
+        assertThat(stops.get(7L)).isNull();
+        // Passes the first check, then the invalidation runs before the value is stored
+        registry.onTrack = () -> second.invalidator.invalidate(List.of(EntityRef.stop(7L)));
+
+        stops.put(7L, stop(7L));
+
+        assertThat(redis.getCache("stops").get(7L)).isNull();
+        assertThat(first.local("stops", 7L)).isNull();
+    }
+
+    @Test
+    void cachesTheNextLoadAfterAnUnrelatedChange() {
+        Cache stops = first.cache("stops");
+        assertThat(stops.get(7L)).isNull();
+        // Any invalidation counts: it cannot tell what the value will depend on
+        second.invalidator.invalidate(List.of(EntityRef.route(1L)));
+        stops.put(7L, stop(7L));
+        assertThat(stops.get(7L)).isNull();
+
+        assertThat(first.read("stops", 7L, stop(7L))).isEqualTo(stop(7L));
+
+        assertThat(stops.get(7L)).isNotNull();
+        assertThat(registry.entries(EntityRef.stop(7L))).containsExactly(new CachedEntry("stops", 7L));
+    }
+
+    private static StopDTO stop(Long id) {
+        return StopDTO.builder().id(id).stopCode("S" + id).name("Stop " + id).build();
+    }
+
+    private static RouteDTO route(Long id, Long... stopIds) {
+        List<RouteStopDTO> stops = new ArrayList<>();
+        for (Long stopId : stopIds) {
+            stops.add(RouteStopDTO.builder().routeId(id).stop(stop(stopId)).build());
+        }
+        return RouteDTO.builder().id(id).routeNumber(String.valueOf(id)).stops(stops).build();
+    }
+
+    /**
+     * The registry's sets and generation counter, without Redis
+     */
+    private static final class InMemoryRegistry extends CacheDependencyRegistry {
+
+        private final Map<EntityRef, Set<CachedEntry>> sets = new HashMap<>();
+        private long generation;
+        private Runnable onTrack;
+
+        InMemoryRegistry() {
+            super(null);
+        }
+
+        @Override
+        public synchronized void track(String cache, Object key, Collection<EntityRef> refs) {
+            refs.forEach(ref -> sets.computeIfAbsent(ref, r -> new HashSet<>()).add(new CachedEntry(cache, key)));
+            if (onTrack != null) {
+                Runnable hook = onTrack;
+                onTrack = null;
+                hook.run();
+            }
+        }
+
+        @Override
+        public synchronized Set<CachedEntry> release(Collection<EntityRef> refs) {
+            Set<CachedEntry> entries = new HashSet<>();
+            refs.forEach(ref -> {
+                Set<CachedEntry> set = sets.remove(ref);
+                if (set != null) {
+                    entries.addAll(set);
+                }
+            });
+            return entries;
+        }
+
+        @Override
+        public synchronized long generation() {
+            return generation;
+        }
+
+        @Override
+        public synchronized void advanceGeneration() {
+            generation++;
+        }
+
+        synchronized Set<CachedEntry> entries(EntityRef ref) {
+            return sets.getOrDefault(ref, Set.of());
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.bustransport.route.cache;
+
+import com.bustransport.route.dto.response.RouteDTO;
+import com.bustransport.route.dto.response.RouteStopDTO;
+import com.bustransport.route.dto.response.StopDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.Cache;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class LocalCacheTest {
+
+    private final LocalCache cache = new LocalCache("routes", 2, 60_000, new GenericJackson2JsonRedisSerializer());
+
+    @Test
+    void givesEveryReaderItsOwnCopy() {
+        RouteDTO route = route();
+        cache.put(1L, route);
+        // The caller keeps using what it stored
+        route.setName("Changed by the caller");
+
+        RouteDTO first = cache.get(1L, RouteDTO.class);
+        first.setName("Changed by a reader");
+        first.getStops().get(0).getStop().setName("Changed deep down");
+        first.getStops().add(RouteStopDTO.builder().stopSequence(2).build());
+
+        RouteDTO second = cache.get(1L, RouteDTO.class);
+        assertThat(second).isNotSameAs(first).isEqualTo(route());
+    }
+
+    @Test
+    void keepsACachedNull() {
+        cache.put(1L, null);
+
+        Cache.ValueWrapper value = cache.get(1L);
+
+        assertThat(value).isNotNull();
+        assertThat(value.get()).isNull();
+    }
+
+    @Test
+    void dropsTheLeastRecentlyUsedEntryBeyondItsSize() {
+        cache.put(1L, "one");
+        cache.put(2L, "two");
+        cache.get(1L);
+        cache.put(3L, "three");
+
+        assertThat(cache.get(2L)).isNull();
+        assertThat(cache.get(1L, String.class)).isEqualTo("one");
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void expiresEntriesAfterTheirTimeToLive() {
+        LocalCache expired = new LocalCache("routes", 2, -1, new GenericJackson2JsonRedisSerializer());
+        expired.put(1L, "one");
+
+        assertThat(expired.get(1L)).isNull();
+        assertThat(expired.size()).isZero();
+    }
+
+    private static RouteDTO route() {
+        List<RouteStopDTO> stops = new ArrayList<>();
+        stops.add(RouteStopDTO.builder()
+            .stopSequence(1)
+            .stop(StopDTO.builder().id(7L).name("Central").build())
+            .build());
+        return RouteDTO.builder().id(1L).routeNumber("10").name("Central - Harbour").stops(stops).build();
+    }
+}
@@ -0,0 +1,161 @@
+package com.bustransport.route.config;
+
+import com.bustransport.route.dto.response.OptimalPathResponse;
+import com.bustransport.route.dto.response.OptimalPathResponse.Coordinate;
+import com.bustransport.route.dto.response.OptimalPathResponse.PathSegment;
+import com.bustransport.route.dto.response.RouteDTO;
+import com.bustransport.route.dto.response.RouteStopDTO;
+import com.bustransport.route.dto.response.ScheduleDTO;
+import com.bustransport.route.dto.response.StopDTO;
+import com.bustransport.route.enums.RouteType;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.enums.StopType;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Every type a cache holds must come back from Redis as the same type
+ */
+class CacheConfigTest {
+
+    private static final LocalDateTime CREATED = LocalDateTime.of(2024, 3, 1, 8, 30, 15);
+
+    private final GenericJackson2JsonRedisSerializer serializer = CacheConfig.cacheValueSerializer();
+
+    @Test
+    void stop() {
+        assertRoundTrip(stop(7L));
+    }
+
+    @Test
+    void stopsOfARoute() {
+        assertRoundTrip(new ArrayList<>(List.of(stop(7L), stop(8L))));
+    }
+
+    @Test
+    void route() {
+        RouteDTO route = RouteDTO.builder()
+            .id(3L)
+            .routeNumber("10")
+            .name("Central - Harbour")
+            .routeType(RouteType.BUS)
+            .startStopId(7L)
+            .endStopId(8L)
+            .totalDistance(new BigDecimal("12.45"))
+            .estimatedDuration(35)
+            .isActive(true)
+            .color("#0055AA")
+            .polyline("_p~iF~ps|U_ulLnnqC")
+            .stops(List.of(RouteStopDTO.builder()
+                .id(30L)
+                .routeId(3L)
+                .stop(stop(7L))
+                .stopSequence(1)
+                .distanceFromStart(new BigDecimal("0.00"))
+                .timeFromStart(LocalTime.of(0, 0))
+                .dwellTime(30)
+                .build()))
+            .createdAt(CREATED)
+            .updatedAt(CREATED)
+            .build();
+
+        assertRoundTrip(route);
+    }
+
+    @Test
+    void schedulesOfARoute() {
+        ScheduleDTO schedule = ScheduleDTO.builder()
+            .id(5L)
+            .routeId(3L)
+            .routeName("Central - Harbour")
+            .serviceType(ServiceType.WEEKDAY)
+            .startTime(LocalTime.of(6, 0))
+            .endTime(LocalTime.of(22, 30))
+            .frequency(15)
+            .firstDeparture(LocalTime.of(6, 0))
+            .lastDeparture(LocalTime.of(22, 30))
+            .validFrom(LocalDate.of(2024, 1, 1))
+            .isActive(true)
+            .build();
+
+        assertRoundTrip(new ArrayList<>(List.of(schedule)));
+    }
+
+    @Test
+    void walkRouteGeometry() {
+        assertRoundTrip(new ArrayList<>(List.of(coordinate("33.58910000", "-7.60310000"),
+            coordinate("33.59500000", "-7.61000000"))));
+    }
+
+    @Test
+    void optimalPath() {
+        OptimalPathResponse path = OptimalPathResponse.builder()
+            .totalDistance(new BigDecimal("4.20"))
+            .totalDuration(27)
+            .departureTime(CREATED)
+            .arrivalTime(CREATED.plusMinutes(27))
+            .transfers(0)
+            .segments(List.of(
+                PathSegment.builder()
+                    .type("walk")
+                    .toStopName("Central")
+                    .distance(new BigDecimal("0.30"))
+                    .duration(4)
+                    .departureTime(CREATED)
+                    .arrivalTime(CREATED.plusMinutes(4))
+                    .path(List.of(coordinate("33.58800000", "-7.60200000"), coordinate("33.58910000", "-7.60310000")))
+                    .build(),
+                PathSegment.builder()
+                    .type("transit")
+                    .routeNumber("10")
+                    .fromStopName("Central")
+                    .toStopName("Harbour")
+                    .distance(new BigDecimal("3.90"))
+                    .duration(23)
+                    .departureTime(CREATED.plusMinutes(4))
+                    .arrivalTime(CREATED.plusMinutes(27))
+                    .encodedPath("_p~iF~ps|U")
+                    .build()))
+            .mapPolyline("_p~iF~ps|U_ulLnnqC")
+            .polylinePrecision(5)
+            .build();
+
+        assertRoundTrip(path);
+    }
+
+    private void assertRoundTrip(Object value) {
+        Object read = serializer.deserialize(serializer.serialize(value));
+
+        assertThat(read).isInstanceOf(value.getClass()).isEqualTo(value);
+    }
+
+    private static StopDTO stop(Long id) {
+        return StopDTO.builder()
+            .id(id)
+            .stopCode("S" + id)
+            .name("Stop " + id)
+            .latitude(new BigDecimal("33.58910000"))
+            .longitude(new BigDecimal("-7.60310000"))
+            .stopType(StopType.TERMINAL)
+            .isActive(true)
+            .hasWheelchairAccess(true)
+            .hasShelter(false)
+            .hasRealTimeInfo(false)
+            .createdAt(CREATED)
+            .updatedAt(CREATED)
+            .build();
+    }
+
+    private static Coordinate coordinate(String lat, String lon) {
+        return new Coordinate(new BigDecimal(lat), new BigDecimal(lon));
+    }
+}
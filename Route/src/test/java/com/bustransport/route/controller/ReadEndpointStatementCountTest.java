@@ -0,0 +1,321 @@
+package com.bustransport.route.controller;
+
+import com.bustransport.route.calendar.ServiceCalendar;
+import com.bustransport.route.entity.Departure;
+import com.bustransport.route.entity.Route;
+import com.bustransport.route.entity.RouteStop;
+import com.bustransport.route.entity.Schedule;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.enums.RouteType;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.mapper.DepartureMapperImpl;
+import com.bustransport.route.mapper.RouteMapperImpl;
+import com.bustransport.route.mapper.RouteStopMapperImpl;
+import com.bustransport.route.mapper.ScheduleMapperImpl;
+import com.bustransport.route.mapper.StopMapperImpl;
+import com.bustransport.route.search.SearchIndex;
+import com.bustransport.route.service.DelayPropagationService;
+import com.bustransport.route.service.DepartureBoardService;
+import com.bustransport.route.service.DepartureService;
+import com.bustransport.route.service.RouteService;
+import com.bustransport.route.service.ScheduleService;
+import com.bustransport.route.service.StopService;
+import com.bustransport.route.spatial.StopSpatialIndex;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Statements each read endpoint issues, counted by Hibernate. The fixture
+ * has several routes, stops per route and departures per schedule, so a
+ * fetch plan that falls back to lazy loading per row raises the count.
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Import({RouteService.class, StopService.class, DepartureService.class, ScheduleService.class, RouteMapperImpl.class,
+    RouteStopMapperImpl.class, StopMapperImpl.class, DepartureMapperImpl.class, ScheduleMapperImpl.class})
+class ReadEndpointStatementCountTest {
+
+    private static final int ROUTES = 5;
+    private static final int STOPS_PER_ROUTE = 4;
+
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private RouteService routeService;
+    @Autowired
+    private StopService stopService;
+    @Autowired
+    private DepartureService departureService;
+    @Autowired
+    private ScheduleService scheduleService;
+
+    @MockBean
+    private SearchIndex searchIndex;
+    @MockBean
+    private StopSpatialIndex stopSpatialIndex;
+    @MockBean
+    private ServiceCalendar serviceCalendar;
+    @MockBean
+    private TimetableSnapshotService timetableService;
+    @MockBean
+    private DepartureBoardService departureBoardService;
+    @MockBean
+    private DelayPropagationService delayPropagationService;
+
+    private MockMvc mockMvc;
+    private Statistics statistics;
+    private final List<Route> routes = new ArrayList<>();
+    private final List<Stop> stops = new ArrayList<>();
+    private Departure departure;
+
+    @BeforeEach
+    void setUp() {
+        mockMvc = MockMvcBuilders
+            .standaloneSetup(new RouteController(routeService), new StopController(stopService),
+                new DepartureController(departureService, departureBoardService))
+            .setCustomArgumentResolvers(new PageableHandlerMethodArgumentResolver())
+            .build();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        for (int s = 0; s < ROUTES + STOPS_PER_ROUTE - 1; s++) {
+            stops.add(entityManager.persist(stop(s)));
+        }
+        for (int r = 0; r < ROUTES; r++) {
+            // Consecutive routes share all but one stop
+            Route route = entityManager.persist(route(r));
+            for (int i = 0; i < STOPS_PER_ROUTE; i++) {
+                entityManager.persist(RouteStop.builder()
+                    .route(route)
+                    .stop(stops.get(r + i))
+                    .stopSequence(i + 1)
+                    .timeFromStart(LocalTime.of(0, 3 * i))
+                    .build());
+            }
+            for (int hour : new int[]{6, 7}) {
+                Schedule schedule = entityManager.persist(schedule(route, hour));
+                for (int i = 0; i < STOPS_PER_ROUTE; i++) {
+                    Departure persisted = entityManager.persist(Departure.builder()
+                        .schedule(schedule)
+                        .stop(stops.get(r + i))
+                        .departureTime(LocalDateTime.of(2024, 1, 15, hour, 3 * i))
+                        .status(DepartureStatus.DELAYED)
+                        .delayMinutes(2)
+                        .build());
+                    departure = departure == null ? persisted : departure;
+                }
+            }
+            routes.add(route);
+        }
+        // Start every request from an empty persistence context
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+    }
+
+    @Test
+    void routeById() throws Exception {
+        mockMvc.perform(get("/routes/{id}", routes.get(0).getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.stops.length()").value(STOPS_PER_ROUTE))
+            .andExpect(jsonPath("$.stops[3].stop.stopCode").value("S3"));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void routeByNumber() throws Exception {
+        mockMvc.perform(get("/routes/number/{number}", "R1"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.stops.length()").value(STOPS_PER_ROUTE));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void routesByType() throws Exception {
+        mockMvc.perform(get("/routes/type/{type}", RouteType.BUS))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(ROUTES))
+            .andExpect(jsonPath("$[4].stops.length()").value(STOPS_PER_ROUTE));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void routePage() throws Exception {
+        mockMvc.perform(get("/routes").param("isActive", "true").param("page", "0").param("size", "3"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.content.length()").value(3))
+            .andExpect(jsonPath("$.content[2].stops.length()").value(STOPS_PER_ROUTE));
+
+        // Page, count, then one batch of route stops and one of their stops
+        assertStatements(4);
+    }
+
+    @Test
+    void routesServingAStop() throws Exception {
+        mockMvc.perform(get("/routes/stop/{stopId}", stops.get(3).getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(4))
+            .andExpect(jsonPath("$[0].stops.length()").value(STOPS_PER_ROUTE));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void routeSearch() throws Exception {
+        when(searchIndex.searchRouteIds(anyString(), anyInt()))
+            .thenReturn(routes.stream().map(Route::getId).toList());
+
+        mockMvc.perform(get("/routes/search").param("query", "route"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(ROUTES))
+            .andExpect(jsonPath("$[4].stops.length()").value(STOPS_PER_ROUTE));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void stopById() throws Exception {
+        mockMvc.perform(get("/stops/{id}", stops.get(2).getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.stopCode").value("S2"));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void stopByCode() throws Exception {
+        mockMvc.perform(get("/stops/code/{code}", "S2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.name").value("Stop 2"));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void stopPage() throws Exception {
+        mockMvc.perform(get("/stops").param("isActive", "true").param("page", "0").param("size", "3"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.content.length()").value(3))
+            .andExpect(jsonPath("$.totalElements").value(stops.size()));
+
+        // Page and count
+        assertStatements(2);
+    }
+
+    @Test
+    void stopsOfARoute() throws Exception {
+        mockMvc.perform(get("/stops/route/{routeId}", routes.get(1).getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(STOPS_PER_ROUTE))
+            .andExpect(jsonPath("$[0].stopCode").value("S1"))
+            .andExpect(jsonPath("$[3].stopCode").value("S4"));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void departureById() throws Exception {
+        mockMvc.perform(get("/departures/{id}", departure.getId()))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.stopName").value("Stop 0"))
+            .andExpect(jsonPath("$.routeNumber").value("R0"));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void departuresByStatus() throws Exception {
+        mockMvc.perform(get("/departures/status/{status}", DepartureStatus.DELAYED))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.length()").value(ROUTES * 2 * STOPS_PER_ROUTE));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void departuresOfARouteInATimeRange() {
+        assertThat(departureService.getDeparturesByRouteAndTimeRange(routes.get(0).getId(),
+            LocalDateTime.of(2024, 1, 15, 0, 0), LocalDateTime.of(2024, 1, 16, 0, 0)))
+            .hasSize(2 * STOPS_PER_ROUTE)
+            .allSatisfy(dto -> assertThat(dto.getRouteNumber()).isEqualTo("R0"));
+
+        assertStatements(1);
+    }
+
+    @Test
+    void schedulesOfARoute() {
+        assertThat(scheduleService.getSchedulesByRoute(routes.get(0).getId(), null))
+            .hasSize(2)
+            .allSatisfy(dto -> assertThat(dto.getRouteName()).isEqualTo("Route 0"));
+
+        assertStatements(1);
+    }
+
+    private void assertStatements(long expected) {
+        assertThat(statistics.getPrepareStatementCount()).as("SQL statements").isEqualTo(expected);
+    }
+
+    private static Stop stop(int index) {
+        return Stop.builder()
+            .stopCode("S" + index)
+            .name("Stop " + index)
+            .latitude(new BigDecimal("33.5").add(BigDecimal.valueOf(index, 3)))
+            .longitude(new BigDecimal("-7.6"))
+            .build();
+    }
+
+    private Route route(int index) {
+        return Route.builder()
+            .routeNumber("R" + index)
+            .name("Route " + index)
+            .routeType(RouteType.BUS)
+            .startStopId(stops.get(index).getId())
+            .endStopId(stops.get(index + STOPS_PER_ROUTE - 1).getId())
+            .build();
+    }
+
+    private static Schedule schedule(Route route, int hour) {
+        return Schedule.builder()
+            .route(route)
+            .serviceType(ServiceType.WEEKDAY)
+            .startTime(LocalTime.of(hour, 0))
+            .endTime(LocalTime.of(hour, 30))
+            .frequency(30)
+            .firstDeparture(LocalTime.of(hour, 0))
+            .lastDeparture(LocalTime.of(hour, 0))
+            .build();
+    }
+}
@@ -0,0 +1,203 @@
+package com.bustransport.route.gtfs;
+
+import com.bustransport.route.PostgresContainerTest;
+import com.bustransport.route.cache.CacheInvalidator;
+import com.bustransport.route.calendar.ServiceCalendar;
+import com.bustransport.route.dto.response.GtfsImportReport;
+import com.bustransport.route.enums.GtfsImportMode;
+import com.bustransport.route.mapper.ScheduleMapperImpl;
+import com.bustransport.route.search.SearchIndex;
+import com.bustransport.route.service.DepartureMaterializationService;
+import com.bustransport.route.spatial.StopSpatialIndex;
+import com.bustransport.route.spatial.WalkingTransferGraph;
+import com.bustransport.route.tiles.VectorTileService;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({GtfsImporter.class, ServiceCalendar.class, ScheduleMapperImpl.class})
+class GtfsImporterTest extends PostgresContainerTest {
+
+    private static final Path SAMPLE_FEED = Path.of("src/test/resources/gtfs/sample-feed");
+
+    @Autowired
+    private GtfsImporter importer;
+    @Autowired
+    private ServiceCalendar serviceCalendar;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private DepartureMaterializationService materializationService;
+    @MockBean
+    private TimetableSnapshotService snapshotService;
+    @MockBean
+    private StopSpatialIndex stopSpatialIndex;
+    @MockBean
+    private WalkingTransferGraph transferGraph;
+    @MockBean
+    private SearchIndex searchIndex;
+    @MockBean
+    private VectorTileService vectorTileService;
+    @MockBean
+    private CacheInvalidator cacheInvalidator;
+
+    @TempDir
+    private Path tempDir;
+
+    @Test
+    void importsTheSampleFeed() throws IOException {
+        GtfsImportReport report = importer.importFeed(feed(line -> true), GtfsImportMode.FULL);
+
+        // The station is not a boarding point
+        assertThat(report.getStopsRead()).isEqualTo(4);
+        assertThat(report.getRoutesRead()).isEqualTo(2);
+        assertThat(report.getTripsRead()).isEqualTo(6);
+        assertThat(report.getSchedulesCreated()).isEqualTo(3);
+    }
+
+    @Test
+    void mapsCalendarDatesOntoScheduleExceptions() throws IOException {
+        importer.importFeed(feed(line -> true), GtfsImportMode.FULL);
+        Long weekday = scheduleId("10", LocalTime.of(6, 0));
+
+        assertThat(serviceCalendar.isRunning(weekday, LocalDate.of(2025, 4, 30))).isTrue();
+        // Removed Thursday, added Saturday
+        assertThat(serviceCalendar.isRunning(weekday, LocalDate.of(2025, 5, 1))).isFalse();
+        assertThat(serviceCalendar.isRunning(weekday, LocalDate.of(2025, 5, 3))).isTrue();
+        assertThat(serviceCalendar.isRunning(weekday, LocalDate.of(2025, 5, 10))).isFalse();
+        assertThat(jdbcTemplate.queryForList(
+            "SELECT exception_type FROM service_calendar_exceptions WHERE schedule_id = ? ORDER BY service_date",
+            String.class, weekday)).containsExactly("REMOVED", "ADDED");
+    }
+
+    @Test
+    void carriesTripsAfterMidnightToTheNextDay() throws IOException {
+        GtfsImportReport report = importer.importFeed(feed(line -> true), GtfsImportMode.FULL);
+        Long night = scheduleId("10", LocalTime.of(1, 10));
+
+        assertThat(report.getTripsCarriedOver()).isEqualTo(1);
+        // The 24:30 trip of an unknown service has no day to be carried from
+        assertThat(report.getTripsRejected()).isEqualTo(1);
+        assertThat(serviceCalendar.isRunning(night, LocalDate.of(2025, 4, 30))).isTrue();
+        // After the removed Thursday
+        assertThat(serviceCalendar.isRunning(night, LocalDate.of(2025, 5, 2))).isFalse();
+        // After the Friday and the added Saturday
+        assertThat(serviceCalendar.isRunning(night, LocalDate.of(2025, 5, 3))).isTrue();
+        assertThat(serviceCalendar.isRunning(night, LocalDate.of(2025, 5, 4))).isTrue();
+        assertThat(serviceCalendar.isRunning(night, LocalDate.of(2025, 5, 5))).isFalse();
+        assertThat(serviceCalendar.isRunning(night, LocalDate.of(2026, 1, 1))).isTrue();
+    }
+
+    @Test
+    void carriesNoTripOfAServiceThatNeverRuns() throws IOException {
+        // WK loses its weekdays and its added date
+        GtfsImportReport report = importer.importFeed(feed(line -> !line.startsWith("WK,2025"),
+            line -> line.startsWith("WK,1") ? "WK,0,0,0,0,0,0,0,20250101,20251231" : line), GtfsImportMode.FULL);
+
+        assertThat(report.getTripsCarriedOver()).isZero();
+        assertThat(report.getTripsRejected()).isEqualTo(1);
+    }
+
+    @Test
+    void keepsTheExactDatesOfDatedOnlyServices() throws IOException {
+        importer.importFeed(feed(line -> true), GtfsImportMode.FULL);
+        Long festival = scheduleId("20", LocalTime.of(10, 0));
+
+        assertThat(serviceCalendar.isRunning(festival, LocalDate.of(2025, 7, 14))).isTrue();
+        assertThat(serviceCalendar.isRunning(festival, LocalDate.of(2025, 8, 15))).isTrue();
+        assertThat(serviceCalendar.isRunning(festival, LocalDate.of(2025, 7, 15))).isFalse();
+        assertThat(serviceCalendar.isRunning(festival, LocalDate.of(2025, 8, 14))).isFalse();
+    }
+
+    @Test
+    void diffImportOfAnUnchangedFeedKeepsTheSchedules() throws IOException {
+        importer.importFeed(feed(line -> true), GtfsImportMode.FULL);
+        Long weekday = scheduleId("10", LocalTime.of(6, 0));
+
+        GtfsImportReport report = importer.importFeed(feed(line -> true), GtfsImportMode.DIFF);
+
+        assertThat(report.getSchedulesCreated()).isZero();
+        assertThat(report.getSchedulesDeactivated()).isZero();
+        assertThat(scheduleId("10", LocalTime.of(6, 0))).isEqualTo(weekday);
+    }
+
+    @Test
+    void fullImportDeactivatesWhatLeftTheFeed() throws IOException {
+        importer.importFeed(feed(line -> true), GtfsImportMode.FULL);
+
+        // Route 20, its trip, its service and the stop only it serves are gone
+        GtfsImportReport report = importer.importFeed(
+            feed(line -> !line.contains("R2") && !line.contains("S4") && !line.contains("FEST")),
+            GtfsImportMode.FULL);
+
+        assertThat(report.getStopsDeactivated()).isEqualTo(1);
+        assertThat(report.getRoutesDeactivated()).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT is_active FROM stops WHERE stop_code = 'S4'", Boolean.class)).isFalse();
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT is_active FROM routes WHERE route_number = '20'", Boolean.class)).isFalse();
+        assertThat(jdbcTemplate.queryForObject(
+            "SELECT is_active FROM routes WHERE route_number = '10'", Boolean.class)).isTrue();
+    }
+
+    private Long scheduleId(String routeNumber, LocalTime firstDeparture) {
+        return jdbcTemplate.queryForObject("SELECT s.id FROM schedules s JOIN routes r ON r.id = s.route_id " +
+            "WHERE r.route_number = ? AND s.first_departure = ? AND s.is_active = true",
+            Long.class, routeNumber, firstDeparture);
+    }
+
+    private Path feed(Predicate<String> keep) throws IOException {
+        return feed(keep, UnaryOperator.identity());
+    }
+
+    /**
+     * Zips the sample feed, keeping the header and the lines {@code keep}
+     * accepts, as {@code edit} rewrites them
+     */
+    private Path feed(Predicate<String> keep, UnaryOperator<String> edit) throws IOException {
+        Path zip = Files.createTempFile(tempDir, "feed", ".zip");
+        try (ZipOutputStream out = new ZipOutputStream(Files.newOutputStream(zip));
+             Stream<Path> files = Files.list(SAMPLE_FEED)) {
+            for (Path file : files.toList()) {
+                List<String> lines = Files.readAllLines(file);
+                out.putNextEntry(new ZipEntry(file.getFileName().toString()));
+                write(out, lines.get(0));
+                for (String line : lines.subList(1, lines.size())) {
+                    if (keep.test(line)) {
+                        write(out, edit.apply(line));
+                    }
+                }
+                out.closeEntry();
+            }
+        }
+        return zip;
+    }
+
+    private static void write(OutputStream out, String line) throws IOException {
+        out.write((line + "\n").getBytes());
+    }
+}
@@ -0,0 +1,91 @@
+package com.bustransport.route.planner;
+
+import com.bustransport.route.timetable.TimetableFixture;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Route 1 runs 0 -> 1 -> 2 every five minutes, route 2 connects stop 1 to
+ * stop 3 twice, and stop 3 is also a four-minute walk from stop 2
+ */
+class RaptorPlannerTest {
+
+    private static final int[] ORIGIN = {0};
+    private static final int[] NO_WALK = {0};
+    private static final int[] TARGETS = {1, 2, 3};
+
+    private final RaptorPlanner planner = new RaptorPlanner();
+    private TimetableSnapshot timetable;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(planner, "maxTransfers", 4);
+        timetable = new TimetableFixture(4)
+            .route(new int[]{0, 1, 2}, new int[]{0, 200, 400}, 0, 300, 600, 900)
+            .route(new int[]{1, 3}, new int[]{0, 150}, 250, 700)
+            .walk(2, 3, 240)
+            .build();
+    }
+
+    @Test
+    void profileMatchesASeparateSearchForEveryDepartureOfTheWindow() {
+        int start = 60;
+        int window = 840;
+        int step = 60;
+
+        TravelTimeProfile profile = planner.profile(timetable, ORIGIN, NO_WALK, TARGETS, start, window, step, null);
+
+        for (int t = 0; t < TARGETS.length; t++) {
+            int min = Integer.MAX_VALUE;
+            long sum = 0;
+            int count = 0;
+            for (int departure = start; departure <= start + window; departure += step) {
+                int arrival = new RaptorSearch(timetable, 5).run(ORIGIN, NO_WALK, departure).arrival(TARGETS[t]);
+                if (arrival != RaptorSearch.UNREACHED) {
+                    min = Math.min(min, arrival - departure);
+                    sum += arrival - departure;
+                    count++;
+                }
+            }
+            RaptorSearch first = new RaptorSearch(timetable, 5).run(ORIGIN, NO_WALK, start);
+
+            assertThat(profile.isReachable(t)).isTrue();
+            assertThat(profile.minTravelSecs(t)).as("min to target %d", t).isEqualTo(min);
+            assertThat(profile.avgTravelSecs(t)).as("avg to target %d", t).isEqualTo((int) (sum / count));
+            assertThat(profile.travelSecs(t)).as("travel to target %d", t)
+                .isEqualTo(first.arrival(TARGETS[t]) - start);
+            assertThat(profile.transfers(t)).isEqualTo(first.trips(TARGETS[t]) - 1);
+        }
+    }
+
+    @Test
+    void profileOfASingleDepartureIsThatDeparture() {
+        TravelTimeProfile profile = planner.profile(timetable, ORIGIN, NO_WALK, TARGETS, 0, 0, 60, null);
+
+        // Changes to route 2 at stop 1, rather than walking from stop 2 at 640
+        assertThat(profile.travelSecs(2)).isEqualTo(400);
+        assertThat(profile.minTravelSecs(2)).isEqualTo(400);
+        assertThat(profile.avgTravelSecs(2)).isEqualTo(400);
+        assertThat(profile.transfers(2)).isEqualTo(1);
+    }
+
+    @Test
+    void clampsANegativeTransferLimitToDirectTrips() {
+        // Reaching stop 3 by route 2 at 400 needs a transfer
+        Journey journey = planner.plan(timetable, ORIGIN, NO_WALK, new int[]{3}, new int[]{0}, 0, -5)
+            .orElseThrow();
+        assertThat(journey.getTransfers()).isZero();
+        assertThat(journey.getArrivalSecs()).isEqualTo(640);
+
+        TravelTimeProfile profile = planner.profile(timetable, ORIGIN, NO_WALK, TARGETS, 0, 300, 60, -2);
+        assertThat(profile.travelSecs(2)).isEqualTo(640);
+        assertThat(profile.transfers(2)).isZero();
+
+        ReachableStops reachable = planner.reachable(timetable, ORIGIN, NO_WALK, 0, 3600, Integer.MIN_VALUE);
+        assertThat(reachable.size()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,174 @@
+package com.bustransport.route.planner;
+
+import com.bustransport.route.timetable.TimetableFixture;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RaptorSearchTest {
+
+    private static final int[] ORIGIN = {0};
+    private static final int[] NO_WALK = {0};
+
+    @Test
+    void needsOneRoundPerTrip() {
+        TimetableSnapshot timetable = new TimetableFixture(3)
+            .route(new int[]{0, 1}, new int[]{0, 100}, 0)
+            .route(new int[]{1, 2}, new int[]{0, 100}, 200)
+            .build();
+
+        RaptorSearch oneTrip = new RaptorSearch(timetable, 1).run(ORIGIN, NO_WALK, 0);
+        assertThat(oneTrip.arrival(1)).isEqualTo(100);
+        assertThat(oneTrip.arrival(2)).isEqualTo(RaptorSearch.UNREACHED);
+        assertThat(oneTrip.trips(2)).isEqualTo(-1);
+
+        RaptorSearch twoTrips = new RaptorSearch(timetable, 2).run(ORIGIN, NO_WALK, 0);
+        assertThat(twoTrips.arrival(2)).isEqualTo(300);
+        assertThat(twoTrips.trips(2)).isEqualTo(2);
+    }
+
+    @Test
+    void rebuildsJourneyAcrossRounds() {
+        TimetableSnapshot timetable = new TimetableFixture(5)
+            .route(new int[]{0, 1}, new int[]{0, 100}, 0)
+            .route(new int[]{2, 3}, new int[]{0, 100}, 100, 200)
+            .route(new int[]{3, 4}, new int[]{0, 100}, 250, 320)
+            .walk(1, 2, 60)
+            .build();
+
+        Journey journey = new RaptorSearch(timetable, 3)
+            .withTargets(new int[]{4}, new int[]{30})
+            .run(ORIGIN, NO_WALK, 0)
+            .bestJourney()
+            .orElseThrow();
+
+        assertThat(journey.getArrivalSecs()).isEqualTo(450);
+        assertThat(journey.getTransfers()).isEqualTo(2);
+        assertThat(types(journey)).containsExactly(JourneyLeg.Type.ACCESS, JourneyLeg.Type.TRANSIT,
+            JourneyLeg.Type.TRANSFER, JourneyLeg.Type.TRANSIT, JourneyLeg.Type.TRANSIT, JourneyLeg.Type.EGRESS);
+        // Missed the 100 trip while walking, so boards the 200 one
+        JourneyLeg second = journey.getLegs().get(3);
+        assertThat(second.getFromStop()).isEqualTo(2);
+        assertThat(second.getDepartureSecs()).isEqualTo(200);
+        assertThat(journey.getLegs().get(4).getDepartureSecs()).isEqualTo(320);
+    }
+
+    @Test
+    void prefersFewerTripsAtTheSameArrival() {
+        TimetableSnapshot timetable = new TimetableFixture(3)
+            .route(new int[]{0, 2}, new int[]{0, 300}, 0)
+            .route(new int[]{0, 1}, new int[]{0, 100}, 0)
+            .route(new int[]{1, 2}, new int[]{0, 200}, 100)
+            .build();
+
+        Journey journey = new RaptorSearch(timetable, 2)
+            .withTargets(new int[]{2}, new int[]{0})
+            .run(ORIGIN, NO_WALK, 0)
+            .bestJourney()
+            .orElseThrow();
+
+        assertThat(journey.getArrivalSecs()).isEqualTo(300);
+        assertThat(journey.getTransfers()).isZero();
+    }
+
+    @Test
+    void walksStartFromTheRideNotFromAnotherWalk() {
+        // Stop 2 is reached by the ride at 300, and earlier on foot from stop 1 at 150
+        TimetableSnapshot timetable = new TimetableFixture(4)
+            .route(new int[]{0, 1, 2}, new int[]{0, 100, 300}, 0)
+            .walk(1, 2, 50)
+            .walk(2, 3, 30)
+            .build();
+
+        RaptorSearch search = new RaptorSearch(timetable, 1)
+            .withTargets(new int[]{3}, new int[]{0})
+            .run(ORIGIN, NO_WALK, 0);
+
+        assertThat(search.arrival(2)).isEqualTo(150);
+        // 1 -> 2 -> 3 would chain two walks
+        assertThat(search.arrival(3)).isEqualTo(330);
+
+        Journey journey = search.bestJourney().orElseThrow();
+        assertThat(types(journey)).containsExactly(JourneyLeg.Type.ACCESS, JourneyLeg.Type.TRANSIT,
+            JourneyLeg.Type.TRANSFER, JourneyLeg.Type.EGRESS);
+        JourneyLeg ride = journey.getLegs().get(1);
+        assertThat(ride.getToStop()).isEqualTo(2);
+        assertThat(ride.getArrivalSecs()).isEqualTo(300);
+        JourneyLeg walk = journey.getLegs().get(2);
+        assertThat(walk.getFromStop()).isEqualTo(2);
+        assertThat(walk.getDepartureSecs()).isEqualTo(300);
+        assertThat(walk.getArrivalSecs()).isEqualTo(330);
+    }
+
+    @Test
+    void boardsAfterAWalkThatBeatTheRide() {
+        TimetableSnapshot timetable = new TimetableFixture(4)
+            .route(new int[]{0, 1, 2}, new int[]{0, 100, 300}, 0)
+            .route(new int[]{2, 3}, new int[]{0, 100}, 200)
+            .walk(1, 2, 50)
+            .build();
+
+        Journey journey = new RaptorSearch(timetable, 2)
+            .withTargets(new int[]{3}, new int[]{0})
+            .run(ORIGIN, NO_WALK, 0)
+            .bestJourney()
+            .orElseThrow();
+
+        assertThat(journey.getArrivalSecs()).isEqualTo(300);
+        assertThat(types(journey)).containsExactly(JourneyLeg.Type.ACCESS, JourneyLeg.Type.TRANSIT,
+            JourneyLeg.Type.TRANSFER, JourneyLeg.Type.TRANSIT, JourneyLeg.Type.EGRESS);
+        JourneyLeg first = journey.getLegs().get(1);
+        assertThat(first.getToStop()).isEqualTo(1);
+        assertThat(first.getArrivalSecs()).isEqualTo(100);
+        JourneyLeg walk = journey.getLegs().get(2);
+        assertThat(walk.getDepartureSecs()).isEqualTo(100);
+        assertThat(walk.getArrivalSecs()).isEqualTo(150);
+    }
+
+    @Test
+    void leavesJustInTimeForTheFirstRide() {
+        TimetableSnapshot timetable = new TimetableFixture(2)
+            .route(new int[]{0, 1}, new int[]{0, 100}, 600)
+            .build();
+
+        Journey journey = new RaptorSearch(timetable, 1)
+            .withTargets(new int[]{1}, new int[]{0})
+            .run(ORIGIN, new int[]{120}, 0)
+            .bestJourney()
+            .orElseThrow();
+
+        JourneyLeg access = journey.getLegs().get(0);
+        assertThat(access.getDepartureSecs()).isEqualTo(480);
+        assertThat(access.getArrivalSecs()).isEqualTo(600);
+        assertThat(journey.getDepartureSecs()).isEqualTo(480);
+    }
+
+    @Test
+    void reusedLabelsMatchAFreshSearchAtEveryEarlierDeparture() {
+        TimetableSnapshot timetable = new TimetableFixture(4)
+            .route(new int[]{0, 1, 2}, new int[]{0, 200, 400}, 0, 300, 600, 900)
+            .route(new int[]{1, 3}, new int[]{0, 150}, 250, 700)
+            .walk(2, 3, 240)
+            .build();
+
+        // Latest departure first, as the range search runs them
+        RaptorSearch reused = new RaptorSearch(timetable, 2);
+        for (int departure = 900; departure >= 0; departure -= 60) {
+            reused.run(ORIGIN, NO_WALK, departure);
+            RaptorSearch fresh = new RaptorSearch(timetable, 2).run(ORIGIN, NO_WALK, departure);
+            for (int stop = 0; stop < timetable.stopCount(); stop++) {
+                assertThat(reused.arrival(stop)).as("stop %d leaving at %d", stop, departure)
+                    .isEqualTo(fresh.arrival(stop));
+                assertThat(reused.trips(stop)).as("trips to stop %d leaving at %d", stop, departure)
+                    .isEqualTo(fresh.trips(stop));
+            }
+        }
+    }
+
+    private static List<JourneyLeg.Type> types(Journey journey) {
+        return journey.getLegs().stream().map(JourneyLeg::getType).toList();
+    }
+}
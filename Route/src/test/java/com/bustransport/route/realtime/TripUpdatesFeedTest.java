@@ -0,0 +1,157 @@
+package com.bustransport.route.realtime;
+
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.event.DepartureChangedEvent;
+import com.bustransport.route.event.TripDeparturesChangedEvent;
+import com.bustransport.route.realtime.TripUpdatesFeed.Feed;
+import com.bustransport.route.service.DepartureMaterializationService;
+import com.bustransport.route.timetable.TimetableFixture;
+import com.bustransport.route.timetable.TimetableSnapshotBuilder;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import com.bustransport.route.util.ProtobufMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Route 1 runs stops 1-2-3 at 08:00 and 08:15, five minutes between stops;
+ * route 2 runs stops 3-4 at 08:30. The feed is decoded with the field
+ * numbers and wire types of gtfs-realtime.proto.
+ */
+class TripUpdatesFeedTest {
+
+    private static final LocalDate SERVICE_DATE = LocalDate.of(2024, 1, 15);
+    private static final int EIGHT = 8 * 3600;
+
+    private final TimetableSnapshotBuilder snapshotBuilder = mock(TimetableSnapshotBuilder.class);
+    private final TimetableSnapshotService timetable = new TimetableSnapshotService(snapshotBuilder);
+    private final TimetableSnapshotService snapshotService = mock(TimetableSnapshotService.class);
+    private final TripUpdatesFeed feed = new TripUpdatesFeed(snapshotService);
+
+    @BeforeEach
+    void setUp() {
+        when(snapshotBuilder.build(any())).thenReturn(new TimetableFixture(4)
+            .route(new int[]{0, 1, 2}, new int[]{0, 300, 600}, EIGHT, EIGHT + 900)
+            .route(new int[]{2, 3}, new int[]{0, 240}, EIGHT + 1800)
+            .build());
+        timetable.refresh();
+        // The fixture runs on a fixed date, the feed asks for today's snapshot
+        when(snapshotService.getSnapshot(any())).thenAnswer(invocation -> timetable.getSnapshot(SERVICE_DATE));
+    }
+
+    @Test
+    void encodesADelayForTheRestOfTheTrip() {
+        timetable.onDepartureChanged(departure(7L, 100L, 2L, EIGHT + 300, DepartureStatus.DELAYED, 10));
+
+        Feed encoded = feed.getFeed();
+
+        ProtobufMessage message = ProtobufMessage.parse(encoded.body());
+        ProtobufMessage header = message.message(1);
+        assertThat(header.string(1)).isEqualTo("2.0");
+        assertThat(header.varint(2)).isZero(); // FULL_DATASET
+        assertThat(header.varint(3)).isEqualTo(encoded.timestampMillis() / 1000);
+
+        // Only the delayed trip
+        ProtobufMessage entity = message.message(2);
+        String tripId = DepartureMaterializationService.tripId(100L, SERVICE_DATE, EIGHT);
+        assertThat(entity.string(1)).isEqualTo(tripId);
+        assertThat(entity.has(4)).isFalse();
+        ProtobufMessage tripUpdate = entity.message(3);
+        ProtobufMessage trip = tripUpdate.message(1);
+        assertThat(trip.string(1)).isEqualTo(tripId);
+        assertThat(trip.string(2)).isEqualTo("08:00:00");
+        assertThat(trip.string(3)).isEqualTo("20240115");
+        assertThat(trip.string(5)).isEqualTo("1");
+        assertThat(trip.has(4)).isFalse();
+
+        List<ProtobufMessage> stopTimeUpdates = tripUpdate.messages(2);
+        assertThat(stopTimeUpdates).extracting(update -> update.varint(1)).containsExactly(2L, 3L);
+        assertThat(stopTimeUpdates).extracting(update -> update.string(4)).containsExactly("2", "3");
+        assertThat(stopTimeUpdates).extracting(update -> update.message(2).varint(1)).containsExactly(600L, 0L);
+        assertThat(stopTimeUpdates).extracting(update -> update.message(3).varint(1)).containsExactly(600L, 0L);
+        assertThat(stopTimeUpdates).allMatch(update -> !update.has(5));
+    }
+
+    @Test
+    void encodesCancelledTripsAndSkippedStops() {
+        timetable.onTripDeparturesChanged(new TripDeparturesChangedEvent(1L, "T2", List.of(
+            departure(11L, 101L, 1L, EIGHT + 900, DepartureStatus.CANCELLED, null),
+            departure(12L, 101L, 2L, EIGHT + 1200, DepartureStatus.CANCELLED, null),
+            departure(13L, 101L, 3L, EIGHT + 1500, DepartureStatus.CANCELLED, null))));
+        timetable.onDepartureChanged(departure(14L, 100L, 3L, EIGHT + 600, DepartureStatus.CANCELLED, null));
+
+        List<ProtobufMessage> entities = ProtobufMessage.parse(feed.getFeed().body()).messages(2);
+
+        assertThat(entities).extracting(entity -> entity.string(1)).containsExactly(
+            DepartureMaterializationService.tripId(100L, SERVICE_DATE, EIGHT),
+            DepartureMaterializationService.tripId(101L, SERVICE_DATE, EIGHT + 900));
+        ProtobufMessage skipped = entities.get(0).message(3);
+        assertThat(skipped.message(1).has(4)).isFalse();
+        ProtobufMessage stopTimeUpdate = skipped.message(2);
+        assertThat(stopTimeUpdate.varint(1)).isEqualTo(3L);
+        assertThat(stopTimeUpdate.varint(5)).isEqualTo(1L); // SKIPPED
+        assertThat(stopTimeUpdate.has(2)).isFalse();
+        assertThat(stopTimeUpdate.has(3)).isFalse();
+
+        ProtobufMessage cancelled = entities.get(1).message(3);
+        assertThat(cancelled.message(1).varint(4)).isEqualTo(3L); // CANCELED
+        assertThat(cancelled.has(2)).isFalse();
+    }
+
+    @Test
+    void isEmptyWithoutRealtimeState() {
+        ProtobufMessage message = ProtobufMessage.parse(feed.getFeed().body());
+
+        assertThat(message.has(1)).isTrue();
+        assertThat(message.has(2)).isFalse();
+    }
+
+    @Test
+    void returnsTheSameBytesWithinASecond() {
+        Feed first = feed.getFeed();
+        timetable.onDepartureChanged(departure(7L, 100L, 2L, EIGHT + 300, DepartureStatus.DELAYED, 10));
+
+        assertThat(feed.getFeed()).isSameAs(first);
+        age(1_000);
+        Feed next = feed.getFeed();
+        assertThat(next.body()).isNotSameAs(first.body());
+        assertThat(ProtobufMessage.parse(next.body()).messages(2)).hasSize(1);
+    }
+
+    @Test
+    void keepsAnAgedFeedWhileTheSnapshotIsUnchanged() {
+        timetable.onDepartureChanged(departure(7L, 100L, 2L, EIGHT + 300, DepartureStatus.DELAYED, 10));
+        Feed first = feed.getFeed();
+
+        age(60_000);
+        assertThat(feed.getFeed().body()).isSameAs(first.body());
+
+        timetable.onDepartureChanged(departure(8L, 200L, 3L, EIGHT + 1800, DepartureStatus.DELAYED, 2));
+        Feed next = feed.getFeed();
+        assertThat(next.body()).isNotSameAs(first.body());
+        assertThat(ProtobufMessage.parse(next.body()).messages(2)).hasSize(2);
+    }
+
+    /**
+     * Moves the encoding time of the current feed back
+     */
+    private void age(long millis) {
+        Feed current = (Feed) ReflectionTestUtils.getField(feed, "current");
+        ReflectionTestUtils.setField(feed, "current",
+            new Feed(current.body(), current.timestampMillis() - millis, current.snapshotVersion()));
+    }
+
+    private static DepartureChangedEvent departure(Long departureId, Long scheduleId, Long stopId, int plannedSecs,
+                                                   DepartureStatus status, Integer delayMinutes) {
+        return new DepartureChangedEvent(departureId, scheduleId / 100, scheduleId, stopId,
+            SERVICE_DATE.atStartOfDay().plusSeconds(plannedSecs), status, delayMinutes, null);
+    }
+}
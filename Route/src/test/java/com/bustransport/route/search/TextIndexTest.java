@@ -0,0 +1,97 @@
+package com.bustransport.route.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TextIndexTest {
+
+    private final TextIndex index = new TextIndex();
+
+    @Test
+    void ranksExactThenPrefixThenWordThenSubstringThenFuzzy() {
+        index.put(5, "Centrl Park");
+        index.put(4, "Decentralized Depot");
+        index.put(3, "Old Central Market");
+        index.put(2, "Central Station");
+        index.put(1, "Central");
+        index.put(6, "Harbour");
+
+        assertThat(index.search("central", 10)).containsExactly(1L, 2L, 3L, 4L, 5L);
+    }
+
+    @Test
+    void breaksTiesWithTheShorterFieldThenTheLowerId() {
+        index.put(1, "Central Bus Station Annex");
+        index.put(2, "Central Station");
+        index.put(3, "Central Station");
+
+        assertThat(index.search("central", 10)).containsExactly(2L, 3L, 1L);
+    }
+
+    @Test
+    void keepsTheBestMatchesWithinTheLimit() {
+        for (long id = 1; id <= 20; id++) {
+            index.put(id, "Stop " + id + " Market");
+        }
+        index.put(100, "Market");
+
+        assertThat(index.search("market", 3)).containsExactly(100L, 1L, 2L);
+    }
+
+    @Test
+    void matchesAnyFieldWithoutAccentsOrPunctuation() {
+        index.put(1, "L12", "Gare de l'Océan");
+
+        assertThat(index.search("ocean", 5)).containsExactly(1L);
+        assertThat(index.search("GARE-DE", 5)).containsExactly(1L);
+        assertThat(index.search("l12", 5)).containsExactly(1L);
+    }
+
+    @Test
+    void oneLetterOnlyMatchesTheStartOfAField() {
+        index.put(1, "Marché Central");
+        index.put(2, "Old Market");
+
+        assertThat(index.search("m", 5)).containsExactly(1L);
+    }
+
+    @Test
+    void twoLettersAlsoMatchWordStartsButNotSubstrings() {
+        index.put(1, "Marché Central");
+        index.put(2, "Old Market");
+        index.put(3, "Zaman");
+
+        assertThat(index.search("ma", 5)).containsExactly(1L, 2L);
+        // No trigram to find misspellings with either
+        assertThat(index.search("mx", 5)).isEmpty();
+    }
+
+    @Test
+    void threeLettersFindSubstrings() {
+        index.put(3, "Zaman");
+
+        assertThat(index.search("man", 5)).containsExactly(3L);
+    }
+
+    @Test
+    void forgetsReplacedAndRemovedDocuments() {
+        index.put(1, "Harbour");
+        index.put(2, "Lighthouse");
+        index.put(1, "Beach");
+        index.remove(2);
+
+        assertThat(index.search("harbour", 5)).isEmpty();
+        assertThat(index.search("lighthouse", 5)).isEmpty();
+        assertThat(index.search("beach", 5)).containsExactly(1L);
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    void returnsNothingForAnEmptyQueryOrLimit() {
+        index.put(1, "Central");
+
+        assertThat(index.search(" - ", 5)).isEmpty();
+        assertThat(index.search("central", 0)).isEmpty();
+    }
+}
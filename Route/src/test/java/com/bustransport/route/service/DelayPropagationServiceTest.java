@@ -0,0 +1,195 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.entity.Departure;
+import com.bustransport.route.entity.Route;
+import com.bustransport.route.entity.RouteStop;
+import com.bustransport.route.entity.Schedule;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.enums.RouteType;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.event.DepartureChangedEvent;
+import com.bustransport.route.event.TripDeparturesChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.event.ApplicationEvents;
+import org.springframework.test.context.event.RecordApplicationEvents;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * One trip over five stops, a minute of dwell at each, and a second trip of
+ * the same schedule right behind it
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "departures.propagation.decay=0.9",
+    "departures.propagation.dwell-recovery=0.5"
+})
+@Import(DelayPropagationService.class)
+@RecordApplicationEvents
+class DelayPropagationServiceTest {
+
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 15, 8, 0);
+    private static final int STOPS = 5;
+
+    @Autowired
+    private DelayPropagationService propagationService;
+    @Autowired
+    private TestEntityManager entityManager;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private ApplicationEvents events;
+
+    private final List<Departure> trip = new ArrayList<>();
+    private final List<Departure> nextTrip = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        List<Stop> stops = new ArrayList<>();
+        for (int i = 0; i < STOPS; i++) {
+            stops.add(entityManager.persist(Stop.builder()
+                .stopCode("S" + i)
+                .name("Stop " + i)
+                .latitude(new BigDecimal("33.5").add(BigDecimal.valueOf(i, 3)))
+                .longitude(new BigDecimal("-7.6"))
+                .build()));
+        }
+        Route route = entityManager.persist(Route.builder()
+            .routeNumber("R1")
+            .name("Route 1")
+            .routeType(RouteType.BUS)
+            .startStopId(stops.get(0).getId())
+            .endStopId(stops.get(STOPS - 1).getId())
+            .build());
+        for (int i = 0; i < STOPS; i++) {
+            entityManager.persist(RouteStop.builder()
+                .route(route)
+                .stop(stops.get(i))
+                .stopSequence(i + 1)
+                .dwellTime(60)
+                .build());
+        }
+        Schedule schedule = entityManager.persist(Schedule.builder()
+            .route(route)
+            .serviceType(ServiceType.WEEKDAY)
+            .startTime(LocalTime.of(8, 0))
+            .endTime(LocalTime.of(8, 30))
+            .frequency(30)
+            .firstDeparture(LocalTime.of(8, 0))
+            .lastDeparture(LocalTime.of(8, 30))
+            .build());
+        for (int i = 0; i < STOPS; i++) {
+            trip.add(entityManager.persist(departure(schedule, stops.get(i), "T1", START.plusMinutes(5L * i))));
+            nextTrip.add(entityManager.persist(departure(schedule, stops.get(i), "T2",
+                START.plusMinutes(30 + 5L * i))));
+        }
+        entityManager.flush();
+    }
+
+    @Test
+    void decaysTheDelayAtEveryLaterStop() {
+        assertThat(report(trip.get(0), 10)).isEqualTo(4);
+
+        // 600 s * 0.9 - 30 s of dwell recovered at each stop: 510, 429, 356, 290 s
+        assertThat(delays(trip)).containsExactly(10, 9, 7, 6, 5);
+        assertThat(statuses(trip)).containsOnly(DepartureStatus.DELAYED);
+        // One event for the trip, not one per stop
+        assertThat(events.stream(DepartureChangedEvent.class)).isEmpty();
+        assertThat(events.stream(TripDeparturesChangedEvent.class)).hasSize(1);
+        TripDeparturesChangedEvent event = events.stream(TripDeparturesChangedEvent.class).findFirst().orElseThrow();
+        assertThat(event.getTripId()).isEqualTo("T1");
+        assertThat(event.getDepartures())
+            .extracting(DepartureChangedEvent::getDepartureId, DepartureChangedEvent::getDelayMinutes)
+            .containsExactly(
+                tuple(trip.get(1).getId(), 9),
+                tuple(trip.get(2).getId(), 7),
+                tuple(trip.get(3).getId(), 6),
+                tuple(trip.get(4).getId(), 5));
+    }
+
+    @Test
+    void stopsAtTheEndOfTheTrip() {
+        report(trip.get(2), 10);
+
+        assertThat(delays(trip)).containsExactly(0, 0, 10, 9, 7);
+        // The next trip of the same schedule has its own delay, if any
+        assertThat(delays(nextTrip)).containsOnly(0);
+
+        assertThat(report(trip.get(STOPS - 1), 3)).isZero();
+        assertThat(events.stream(TripDeparturesChangedEvent.class)).hasSize(1);
+    }
+
+    @Test
+    void keepsALaterStopThatReportedItsOwnDelay() {
+        Departure reported = trip.get(3);
+        reported.setStatus(DepartureStatus.DELAYED);
+        reported.setDelayMinutes(2);
+        reported.setReportedAt(START.plusMinutes(16));
+        entityManager.flush();
+
+        assertThat(report(trip.get(0), 10)).isEqualTo(2);
+
+        assertThat(delays(trip)).containsExactly(10, 9, 7, 2, 0);
+    }
+
+    @Test
+    void clearsAPropagatedDelayOnceTheTripIsBackOnTime() {
+        report(trip.get(0), 10);
+
+        report(trip.get(1), 0);
+
+        assertThat(delays(trip)).containsExactly(10, 0, 0, 0, 0);
+        assertThat(statuses(trip).subList(1, STOPS)).containsOnly(DepartureStatus.ON_TIME);
+    }
+
+    /**
+     * Records a delay on a departure the way the status update does, then propagates it
+     */
+    private int report(Departure reported, int delayMinutes) {
+        Departure departure = entityManager.find(Departure.class, reported.getId());
+        departure.setStatus(delayMinutes > 0 ? DepartureStatus.DELAYED : DepartureStatus.ON_TIME);
+        departure.setDelayMinutes(delayMinutes);
+        departure.setReportedAt(LocalDateTime.now());
+        entityManager.flush();
+        int changed = propagationService.propagate(departure);
+        entityManager.clear();
+        return changed;
+    }
+
+    private List<Integer> delays(List<Departure> departures) {
+        return departures.stream()
+            .map(departure -> jdbcTemplate.queryForObject("SELECT delay_minutes FROM departures WHERE id = ?",
+                Integer.class, departure.getId()))
+            .toList();
+    }
+
+    private List<DepartureStatus> statuses(List<Departure> departures) {
+        return departures.stream()
+            .map(departure -> DepartureStatus.valueOf(jdbcTemplate.queryForObject(
+                "SELECT status FROM departures WHERE id = ?", String.class, departure.getId())))
+            .toList();
+    }
+
+    private static Departure departure(Schedule schedule, Stop stop, String tripId, LocalDateTime time) {
+        return Departure.builder()
+            .schedule(schedule)
+            .stop(stop)
+            .tripId(tripId)
+            .departureTime(time)
+            .build();
+    }
+}
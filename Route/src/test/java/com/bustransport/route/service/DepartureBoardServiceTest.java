@@ -0,0 +1,210 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.controller.DepartureController;
+import com.bustransport.route.dto.response.DepartureDTO;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.event.DepartureChangedEvent;
+import com.bustransport.route.event.TimetableChangedEvent;
+import com.bustransport.route.exception.ResourceNotFoundException;
+import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.service.DepartureBoardService.Board;
+import com.bustransport.route.timetable.TimetableFixture;
+import com.bustransport.route.timetable.TimetableSnapshot;
+import com.bustransport.route.timetable.TimetableSnapshotBuilder;
+import com.bustransport.route.timetable.TimetableSnapshotService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Route 1 runs stops 1-2-3 three times, ten minutes apart; route 2 runs
+ * stops 2-4 once and route 3 stops 4-5. The first trip leaves ten minutes
+ * from now, so stop 2 sees route 1 at +15, +25 and +35 minutes and route 2
+ * at +16.
+ */
+class DepartureBoardServiceTest {
+
+    private static final long STOP = 2L;
+
+    private final TimetableSnapshotBuilder snapshotBuilder = mock(TimetableSnapshotBuilder.class);
+    private final TimetableSnapshotService timetableService = new TimetableSnapshotService(snapshotBuilder);
+    private final StopRepository stopRepository = mock(StopRepository.class);
+    private final DepartureBoardService boardService = new DepartureBoardService(timetableService, stopRepository);
+
+    private LocalDate today;
+    private int start;
+
+    @BeforeEach
+    void setUp() {
+        today = LocalDate.now();
+        start = LocalTime.now().toSecondOfDay() + 600;
+        TimetableSnapshot snapshot = new TimetableFixture(5)
+            .on(today)
+            .route(new int[]{0, 1, 2}, new int[]{0, 300, 600}, start, start + 600, start + 1200)
+            .route(new int[]{1, 3}, new int[]{0, 300}, start + 360)
+            .route(new int[]{3, 4}, new int[]{0, 300}, start)
+            .build();
+        // Late in the evening the board window runs into tomorrow, which has no service
+        when(snapshotBuilder.build(any())).thenAnswer(invocation -> today.equals(invocation.getArgument(0))
+            ? snapshot : new TimetableFixture(5).on(invocation.getArgument(0)).build());
+        timetableService.refresh();
+
+        ReflectionTestUtils.setField(boardService, "boardSize", 20);
+        ReflectionTestUtils.setField(boardService, "windowMinutes", 180);
+        ReflectionTestUtils.setField(boardService, "maxAgeSeconds", 60);
+        ReflectionTestUtils.setField(boardService, "idleMinutes", 10);
+    }
+
+    @Test
+    void listsTheNextDeparturesOfEveryRouteServingTheStop() {
+        Board board = boardService.getBoard(STOP);
+
+        assertThat(board.getStopName()).isEqualTo("Stop 2");
+        List<DepartureDTO> departures = board.toDTO(10).getDepartures();
+        assertThat(departures).extracting(DepartureDTO::getRouteNumber).containsExactly("R1", "R2", "R1", "R1");
+        assertThat(departures).extracting(DepartureDTO::getDepartureTime).containsExactly(
+            at(start + 300), at(start + 360), at(start + 900), at(start + 1500));
+        assertThat(board.toDTO(2).getDepartures()).hasSize(2);
+        // Served from memory until something changes
+        assertThat(boardService.getBoard(STOP)).isSameAs(board);
+    }
+
+    @Test
+    void tagsEachPrefixOfTheBoard() {
+        Board board = boardService.getBoard(STOP);
+
+        assertThat(board.etag(2)).startsWith("W/\"2-2-").endsWith("\"");
+        assertThat(board.etag(2)).isEqualTo(board.etag(2));
+        assertThat(board.etag(2)).isNotEqualTo(board.etag(3));
+        // A limit past the end tags the whole board
+        assertThat(board.etag(10)).isEqualTo(board.etag(4));
+    }
+
+    @Test
+    void keepsTheTagOfDeparturesThatDidNotChange() {
+        Board before = boardService.getBoard(STOP);
+
+        // The last departure of the board is delayed
+        timetableService.onDepartureChanged(departure(7L, 1L, 102L, start + 1500, DepartureStatus.DELAYED, 5));
+
+        Board after = boardService.getBoard(STOP);
+        assertThat(after).isNotSameAs(before);
+        assertThat(after.etag(3)).isEqualTo(before.etag(3));
+        assertThat(after.etag(4)).isNotEqualTo(before.etag(4));
+    }
+
+    @Test
+    void rebuildsOnADepartureStatusChange() {
+        Board before = boardService.getBoard(STOP);
+
+        timetableService.onDepartureChanged(departure(7L, 1L, 100L, start + 300, DepartureStatus.DELAYED, 5));
+
+        Board after = boardService.getBoard(STOP);
+        assertThat(after).isNotSameAs(before);
+        DepartureDTO first = after.toDTO(10).getDepartures().get(0);
+        assertThat(first.getId()).isEqualTo(7L);
+        assertThat(first.getStatus()).isEqualTo(DepartureStatus.DELAYED);
+        assertThat(first.getDelayMinutes()).isEqualTo(5);
+        assertThat(first.getActualDepartureTime()).isEqualTo(at(start + 600));
+
+        timetableService.onDepartureChanged(departure(8L, 2L, 200L, start + 360, DepartureStatus.CANCELLED, null));
+
+        assertThat(boardService.getBoard(STOP).toDTO(10).getDepartures())
+            .extracting(DepartureDTO::getRouteNumber).containsExactly("R1", "R1", "R1");
+    }
+
+    @Test
+    void rebuildsOnlyWhenAPatternServingTheStopIsReplaced() {
+        Board before = boardService.getBoard(STOP);
+
+        // Route 3 does not serve stop 2
+        timetableService.onDepartureChanged(departure(9L, 3L, 300L, start, DepartureStatus.DELAYED, 5));
+        assertThat(boardService.getBoard(STOP)).isSameAs(before);
+
+        // A schedule edit adds a trip to route 1
+        TimetableSnapshot snapshot = timetableService.getSnapshot(today);
+        when(snapshotBuilder.buildRoute(snapshot, 1L)).thenReturn(Optional.of(new TimetableFixture(5)
+            .on(today)
+            .route(new int[]{0, 1, 2}, new int[]{0, 300, 600}, start - 240, start, start + 600, start + 1200)
+            .build()
+            .pattern(0)));
+        timetableService.onTimetableChanged(new TimetableChangedEvent(1L, 100L));
+
+        Board after = boardService.getBoard(STOP);
+        assertThat(after).isNotSameAs(before);
+        assertThat(after.toDTO(10).getDepartures()).extracting(DepartureDTO::getDepartureTime)
+            .startsWith(at(start + 60), at(start + 300));
+    }
+
+    @Test
+    void answersAMatchingIfNoneMatchWithNotModified() throws Exception {
+        MockMvc mockMvc = MockMvcBuilders
+            .standaloneSetup(new DepartureController(mock(DepartureService.class), boardService))
+            .build();
+        String etag = mockMvc.perform(get("/departures/board/{stopId}", STOP).param("limit", "2"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.departures.length()").value(2))
+            .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+        assertThat(etag).isEqualTo(boardService.getBoard(STOP).etag(2));
+
+        mockMvc.perform(get("/departures/board/{stopId}", STOP).param("limit", "2")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified())
+            .andExpect(content().string(""));
+
+        // A change past the first two departures keeps their tag
+        timetableService.onDepartureChanged(departure(7L, 1L, 102L, start + 1500, DepartureStatus.DELAYED, 5));
+        mockMvc.perform(get("/departures/board/{stopId}", STOP).param("limit", "2")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isNotModified());
+
+        timetableService.onDepartureChanged(departure(8L, 1L, 100L, start + 300, DepartureStatus.DELAYED, 3));
+        mockMvc.perform(get("/departures/board/{stopId}", STOP).param("limit", "2")
+                .header(HttpHeaders.IF_NONE_MATCH, etag))
+            .andExpect(status().isOk())
+            .andExpect(header().string(HttpHeaders.ETAG, boardService.getBoard(STOP).etag(2)))
+            .andExpect(jsonPath("$.departures[0].delayMinutes").value(3));
+    }
+
+    @Test
+    void returnsAnEmptyBoardForAStopOutsideTheTimetable() {
+        when(stopRepository.findById(eq(6L))).thenReturn(Optional.of(Stop.builder().id(6L).name("Depot").build()));
+        when(stopRepository.findById(eq(99L))).thenReturn(Optional.empty());
+
+        assertThat(boardService.getBoard(6L).getStopName()).isEqualTo("Depot");
+        assertThat(boardService.getBoard(6L).toDTO(10).getDepartures()).isEmpty();
+        assertThatThrownBy(() -> boardService.getBoard(99L)).isInstanceOf(ResourceNotFoundException.class);
+    }
+
+    private LocalDateTime at(int secs) {
+        return today.atStartOfDay().plusSeconds(secs);
+    }
+
+    private DepartureChangedEvent departure(Long departureId, Long routeId, Long scheduleId, int plannedSecs,
+                                            DepartureStatus status, Integer delayMinutes) {
+        return new DepartureChangedEvent(departureId, routeId, scheduleId, STOP + (routeId == 3L ? 2 : 0),
+            at(plannedSecs), status, delayMinutes, null);
+    }
+}
@@ -0,0 +1,183 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.PostgresContainerTest;
+import com.bustransport.route.calendar.ServiceCalendar;
+import com.bustransport.route.entity.Route;
+import com.bustransport.route.entity.RouteStop;
+import com.bustransport.route.entity.Schedule;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.enums.RouteType;
+import com.bustransport.route.enums.ServiceType;
+import com.bustransport.route.repository.RouteRepository;
+import com.bustransport.route.repository.RouteStopRepository;
+import com.bustransport.route.repository.ScheduleRepository;
+import com.bustransport.route.repository.StopRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.when;
+
+/**
+ * Runs outside a test transaction: every schedule day is written in its
+ * own transaction, which must see the committed fixture.
+ */
+@DataJpaTest(properties = "departures.materialization.horizon-days=2")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(DepartureMaterializationService.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class DepartureMaterializationServiceTest extends PostgresContainerTest {
+
+    private static final LocalDate TODAY = LocalDate.now();
+
+    @Autowired
+    private DepartureMaterializationService materializationService;
+    @Autowired
+    private StopRepository stopRepository;
+    @Autowired
+    private RouteRepository routeRepository;
+    @Autowired
+    private RouteStopRepository routeStopRepository;
+    @Autowired
+    private ScheduleRepository scheduleRepository;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @MockBean
+    private ServiceCalendar serviceCalendar;
+
+    private Route route;
+    private final List<Stop> stops = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        for (int i = 0; i < 3; i++) {
+            stops.add(stopRepository.save(Stop.builder()
+                .stopCode("S" + i)
+                .name("Stop " + i)
+                .latitude(new BigDecimal("33.5").add(BigDecimal.valueOf(i, 3)))
+                .longitude(new BigDecimal("-7.6"))
+                .build()));
+        }
+        route = routeRepository.save(Route.builder()
+            .routeNumber("R1")
+            .name("Route 1")
+            .routeType(RouteType.BUS)
+            .startStopId(stops.get(0).getId())
+            .endStopId(stops.get(2).getId())
+            .build());
+        int[] minutesFromStart = {0, 5, 12};
+        for (int i = 0; i < stops.size(); i++) {
+            routeStopRepository.save(RouteStop.builder()
+                .route(route)
+                .stop(stops.get(i))
+                .stopSequence(i + 1)
+                .timeFromStart(LocalTime.of(0, minutesFromStart[i]))
+                .dwellTime(30)
+                .build());
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.execute("TRUNCATE departures, schedules, route_stops, routes, stops CASCADE");
+    }
+
+    @Test
+    void expandsTheFrequencyRuleIntoEveryStopOfEveryTrip() {
+        Schedule schedule = schedule(LocalTime.of(6, 0), LocalTime.of(7, 0), 30);
+        runningEveryDay(schedule);
+
+        materializationService.materializeHorizon();
+
+        // Three trips a day over the two days of the horizon, three stops each
+        assertThat(count()).isEqualTo(2 * 3 * 3);
+        LocalDateTime start = TODAY.atTime(6, 30);
+        assertThat(jdbcTemplate.query("SELECT stop_id, arrival_time, departure_time FROM departures "
+                + "WHERE trip_id = ? ORDER BY departure_time",
+            (rs, row) -> tuple(rs.getLong(1), rs.getTimestamp(2).toLocalDateTime(),
+                rs.getTimestamp(3).toLocalDateTime()),
+            DepartureMaterializationService.tripId(schedule.getId(), TODAY, 6 * 3600 + 30 * 60)))
+            .containsExactly(
+                tuple(stops.get(0).getId(), start, start),
+                tuple(stops.get(1).getId(), start.plusMinutes(5), start.plusMinutes(5).plusSeconds(30)),
+                tuple(stops.get(2).getId(), start.plusMinutes(12), start.plusMinutes(12).plusSeconds(30)));
+    }
+
+    @Test
+    void fillsOnlyTheDayThatRolledIntoTheHorizon() {
+        Schedule schedule = schedule(LocalTime.of(6, 0), LocalTime.of(7, 0), 30);
+        runningEveryDay(schedule);
+        materializationService.materializeHorizon();
+        jdbcTemplate.update("UPDATE departures SET status = 'DELAYED', delay_minutes = 4 WHERE trip_id = ?",
+            DepartureMaterializationService.tripId(schedule.getId(), TODAY.plusDays(1), 6 * 3600));
+
+        // The nightly run a day later: one more day at the end of the horizon
+        ReflectionTestUtils.setField(materializationService, "horizonDays", 3);
+        materializationService.materializeHorizon();
+
+        assertThat(count()).isEqualTo(3 * 3 * 3);
+        String newDay = DepartureMaterializationService.tripId(schedule.getId(), TODAY.plusDays(2), 0)
+            .replace("0000", "%");
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM departures WHERE trip_id LIKE ?",
+            Integer.class, newDay)).isEqualTo(3 * 3);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM departures WHERE delay_minutes = 4",
+            Integer.class)).isEqualTo(3);
+    }
+
+    @Test
+    void skipsAnInvalidScheduleAndWritesTheOthers() {
+        Schedule reversed = schedule(LocalTime.of(9, 0), LocalTime.of(8, 0), 15);
+        Schedule valid = schedule(LocalTime.of(6, 0), LocalTime.of(6, 0), 30);
+        runningEveryDay(reversed, valid);
+
+        materializationService.materializeHorizon();
+
+        assertThat(jdbcTemplate.queryForList("SELECT DISTINCT schedule_id FROM departures", Long.class))
+            .containsExactly(valid.getId());
+        assertThat(count()).isEqualTo(2 * 3);
+    }
+
+    private Schedule schedule(LocalTime firstDeparture, LocalTime lastDeparture, int frequency) {
+        return scheduleRepository.save(Schedule.builder()
+            .route(route)
+            .serviceType(ServiceType.WEEKDAY)
+            .startTime(firstDeparture)
+            .endTime(lastDeparture)
+            .frequency(frequency)
+            .firstDeparture(firstDeparture)
+            .lastDeparture(lastDeparture)
+            .build());
+    }
+
+    private void runningEveryDay(Schedule... schedules) {
+        List<Long> ids = Arrays.stream(schedules).map(Schedule::getId).toList();
+        when(serviceCalendar.runningScheduleIds(any(LocalDate.class))).thenReturn(ids);
+        when(serviceCalendar.isRunning(anyLong(), any())).thenReturn(true);
+    }
+
+    private int count() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM departures", Integer.class);
+    }
+}
@@ -0,0 +1,208 @@
+package com.bustransport.route.service;
+
+import com.bustransport.route.dto.response.OptimalPathResponse.Coordinate;
+import com.bustransport.route.dto.response.StopDTO;
+import com.bustransport.route.entity.RouteSegmentGeometry;
+import com.bustransport.route.event.SegmentGeometryChangedEvent;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.repository.RouteSegmentGeometryRepository;
+import com.bustransport.route.repository.RouteStopRepository;
+import com.bustransport.route.repository.RouteStopRepository.StopPosition;
+import com.bustransport.route.repository.StopRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestTemplate;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.client.ExpectedCount.once;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class SegmentGeometryServiceTest {
+
+    private static final String OSRM = "http://osrm.test";
+
+    private final RouteSegmentGeometryRepository geometryRepository = mock(RouteSegmentGeometryRepository.class);
+    private final RouteStopRepository routeStopRepository = mock(RouteStopRepository.class);
+    private final StopRepository stopRepository = mock(StopRepository.class);
+    private final ApplicationEventPublisher eventPublisher = mock(ApplicationEventPublisher.class);
+
+    private MockRestServiceServer osrm;
+    private RoutingService routingService;
+    private SegmentGeometryService service;
+
+    private record Position(Long routeId, Long stopId, BigDecimal latitude, BigDecimal longitude)
+            implements StopPosition {
+
+        @Override
+        public Long getRouteId() {
+            return routeId;
+        }
+
+        @Override
+        public Long getStopId() {
+            return stopId;
+        }
+
+        @Override
+        public BigDecimal getLatitude() {
+            return latitude;
+        }
+
+        @Override
+        public BigDecimal getLongitude() {
+            return longitude;
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        RestTemplate restTemplate = new RestTemplate();
+        osrm = MockRestServiceServer.bindTo(restTemplate).build();
+        routingService = new RoutingService(restTemplate);
+        ReflectionTestUtils.setField(routingService, "osrmBaseUrl", OSRM);
+        service = new SegmentGeometryService(geometryRepository, routeStopRepository, stopRepository,
+            routingService, eventPublisher);
+        ReflectionTestUtils.setField(service, "maxRequestsPerRun", 500);
+    }
+
+    @Test
+    void storesTheStreetPathOfEachConsecutivePair() {
+        when(routeStopRepository.findAllStopPositions()).thenReturn(List.of(
+            position(1L, 10L, "33.5000", "-7.6000"),
+            position(1L, 11L, "33.5100", "-7.6100"),
+            // Next route: no segment between 11 and 20
+            position(2L, 20L, "33.6000", "-7.7000"),
+            position(2L, 21L, "33.6100", "-7.7100")));
+        expectRoute("-7.6000,33.5000;-7.6100,33.5100",
+            "[[-7.6,33.5],[-7.605,33.504],[-7.61,33.51]]");
+        expectRoute("-7.7000,33.6000;-7.7100,33.6100",
+            "[[-7.7,33.6],[-7.71,33.61]]");
+
+        service.precomputeMissing();
+
+        osrm.verify();
+        double[][] segment = service.getSegment(10L, 11L);
+        assertThat(segment[0]).containsExactly(33.5, 33.504, 33.51);
+        assertThat(segment[1]).containsExactly(-7.6, -7.605, -7.61);
+        assertThat(service.getSegment(20L, 21L)[0]).containsExactly(33.6, 33.61);
+        assertThat(service.getSegment(11L, 20L)).isNull();
+
+        ArgumentCaptor<RouteSegmentGeometry> saved = ArgumentCaptor.forClass(RouteSegmentGeometry.class);
+        verify(geometryRepository, times(2)).save(saved.capture());
+        assertThat(saved.getAllValues()).extracting(RouteSegmentGeometry::getPointCount).containsExactly(3, 2);
+        ArgumentCaptor<SegmentGeometryChangedEvent> event = ArgumentCaptor.forClass(SegmentGeometryChangedEvent.class);
+        verify(eventPublisher).publishEvent(event.capture());
+        assertThat(event.getValue().getFromStopIds()).containsExactlyInAnyOrder(10L, 20L);
+    }
+
+    @Test
+    void leavesPairsOsrmCannotRouteForTheNextRun() {
+        when(routeStopRepository.findAllStopPositions()).thenReturn(List.of(
+            position(1L, 10L, "33.5000", "-7.6000"),
+            position(1L, 11L, "33.5100", "-7.6100")));
+        osrm.expect(once(), requestTo(routeUrl("-7.6000,33.5000;-7.6100,33.5100")))
+            .andRespond(withServerError());
+
+        service.precomputeMissing();
+
+        osrm.verify();
+        assertThat(service.getSegment(10L, 11L)).isNull();
+        verify(geometryRepository, never()).save(any());
+        verify(eventPublisher, never()).publishEvent(any());
+
+        osrm.reset();
+        expectRoute("-7.6000,33.5000;-7.6100,33.5100", "[[-7.6,33.5],[-7.61,33.51]]");
+        service.precomputeMissing();
+        osrm.verify();
+        assertThat(service.getSegment(10L, 11L)).isNotNull();
+    }
+
+    @Test
+    void fallsBackToAStraightLineWhenOsrmFails() {
+        osrm.expect(once(), requestTo(OSRM + "/route/v1/foot/-7.6000,33.5000;-7.6100,33.5100" +
+                "?overview=full&geometries=geojson"))
+            .andRespond(withServerError());
+
+        List<Coordinate> path = routingService.getWalkingRouteGeometry(
+            new BigDecimal("33.5000"), new BigDecimal("-7.6000"), new BigDecimal("33.5100"), new BigDecimal("-7.6100"));
+
+        osrm.verify();
+        assertThat(path).hasSize(2);
+        assertThat(path.get(0).getLat()).isEqualByComparingTo("33.5000");
+        assertThat(path.get(1).getLon()).isEqualByComparingTo("-7.6100");
+    }
+
+    @Test
+    void dropsTheGeometriesOfAStopThatMoved() {
+        when(routeStopRepository.findAllStopPositions()).thenReturn(List.of(
+            position(1L, 10L, "33.5000", "-7.6000"),
+            position(1L, 11L, "33.5100", "-7.6100")));
+        expectRoute("-7.6000,33.5000;-7.6100,33.5100", "[[-7.6,33.5],[-7.61,33.51]]");
+        service.precomputeMissing();
+
+        // ~10 m: still the same place on the road
+        service.onStopChanged(new StopChangedEvent(stop(11L, "33.51009", "-7.6100")));
+        assertThat(service.getSegment(10L, 11L)).isNotNull();
+        verify(geometryRepository, never()).deleteByStopId(any());
+
+        // ~110 m
+        service.onStopChanged(new StopChangedEvent(stop(11L, "33.5110", "-7.6100")));
+        assertThat(service.getSegment(10L, 11L)).isNull();
+        verify(geometryRepository).deleteByStopId(11L);
+    }
+
+    @Test
+    void ignoresStopsWithoutAGeometry() {
+        when(routeStopRepository.findAllStopPositions()).thenReturn(List.of(
+            position(1L, 10L, "33.5000", "-7.6000"),
+            position(1L, 11L, "33.5100", "-7.6100")));
+        expectRoute("-7.6000,33.5000;-7.6100,33.5100", "[[-7.6,33.5],[-7.61,33.51]]");
+        service.precomputeMissing();
+
+        service.onStopChanged(new StopChangedEvent(stop(12L, "34.0000", "-7.0000")));
+
+        assertThat(service.getSegment(10L, 11L)).isNotNull();
+        verify(geometryRepository, never()).deleteByStopId(any());
+    }
+
+    private void expectRoute(String coordinates, String geoJsonCoordinates) {
+        osrm.expect(once(), requestTo(routeUrl(coordinates)))
+            .andExpect(method(HttpMethod.GET))
+            .andRespond(withSuccess("{\"code\":\"Ok\",\"routes\":[{\"geometry\":{\"type\":\"LineString\"," +
+                "\"coordinates\":" + geoJsonCoordinates + "}}]}", MediaType.APPLICATION_JSON));
+    }
+
+    private static String routeUrl(String coordinates) {
+        return OSRM + "/route/v1/driving/" + coordinates + "?overview=full&geometries=geojson";
+    }
+
+    private static StopPosition position(Long routeId, Long stopId, String lat, String lon) {
+        return new Position(routeId, stopId, new BigDecimal(lat), new BigDecimal(lon));
+    }
+
+    private static StopDTO stop(Long id, String lat, String lon) {
+        StopDTO stop = new StopDTO();
+        stop.setId(id);
+        stop.setLatitude(new BigDecimal(lat));
+        stop.setLongitude(new BigDecimal(lon));
+        return stop;
+    }
+}
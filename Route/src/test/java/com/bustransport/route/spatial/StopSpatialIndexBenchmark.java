@@ -0,0 +1,115 @@
+package com.bustransport.route.spatial;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Nearby-stop search through the Haversine table scan the stop repository
+ * used to run, against the in-memory grid, at 10k and 100k stops. The SQL
+ * side runs on H2 in PostgreSQL mode, so its absolute numbers are only
+ * indicative. Run with {@code mvn test -Dtest=StopSpatialIndexBenchmark -Dbenchmark=true}.
+ */
+@EnabledIfSystemProperty(named = "benchmark", matches = "true")
+class StopSpatialIndexBenchmark {
+
+    private static final String NEARBY_SQL = "SELECT id FROM stops s WHERE s.is_active = true AND " +
+        "(6371 * acos(cos(radians(?)) * cos(radians(CAST(s.latitude AS double precision))) * " +
+        "cos(radians(CAST(s.longitude AS double precision)) - radians(?)) + " +
+        "sin(radians(?)) * sin(radians(CAST(s.latitude AS double precision))))) <= ? " +
+        "ORDER BY (6371 * acos(cos(radians(?)) * cos(radians(CAST(s.latitude AS double precision))) * " +
+        "cos(radians(CAST(s.longitude AS double precision)) - radians(?)) + " +
+        "sin(radians(?)) * sin(radians(CAST(s.latitude AS double precision)))))";
+
+    // Stops spread over a ~40 x 40 km city
+    private static final double MIN_LAT = 33.45;
+    private static final double MIN_LON = -7.80;
+    private static final double SPAN_DEGREES = 0.36;
+    private static final double RADIUS_METERS = 500;
+    private static final int QUERIES = 200;
+
+    @Test
+    void tenThousandStops() {
+        run(10_000);
+    }
+
+    @Test
+    void hundredThousandStops() {
+        run(100_000);
+    }
+
+    private void run(int stopCount) {
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(
+            "jdbc:h2:mem:stops" + stopCount + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1", "sa", "");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+        jdbc.execute("CREATE TABLE stops (id BIGINT PRIMARY KEY, latitude NUMERIC(10, 8), " +
+            "longitude NUMERIC(11, 8), is_active BOOLEAN)");
+
+        Random random = new Random(42);
+        SpatialGrid grid = new SpatialGrid(0.01);
+        List<Object[]> rows = new ArrayList<>(stopCount);
+        for (long id = 1; id <= stopCount; id++) {
+            BigDecimal lat = BigDecimal.valueOf(MIN_LAT + random.nextDouble() * SPAN_DEGREES)
+                .setScale(8, RoundingMode.HALF_UP);
+            BigDecimal lon = BigDecimal.valueOf(MIN_LON + random.nextDouble() * SPAN_DEGREES)
+                .setScale(8, RoundingMode.HALF_UP);
+            rows.add(new Object[]{id, lat, lon, true});
+            grid.put(id, lat.doubleValue(), lon.doubleValue());
+        }
+        jdbc.batchUpdate("INSERT INTO stops (id, latitude, longitude, is_active) VALUES (?, ?, ?, ?)", rows);
+
+        double[][] queries = new double[QUERIES][];
+        for (int q = 0; q < QUERIES; q++) {
+            queries[q] = new double[]{MIN_LAT + random.nextDouble() * SPAN_DEGREES,
+                MIN_LON + random.nextDouble() * SPAN_DEGREES};
+        }
+
+        // Warm up both paths and check they agree
+        for (double[] query : queries) {
+            assertThat(gridIds(grid, query)).isEqualTo(sqlIds(jdbc, query));
+        }
+
+        long sqlStart = System.nanoTime();
+        for (double[] query : queries) {
+            sqlIds(jdbc, query);
+        }
+        long sqlNanos = (System.nanoTime() - sqlStart) / QUERIES;
+
+        int rounds = 50;
+        long gridStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (double[] query : queries) {
+                grid.within(query[0], query[1], RADIUS_METERS);
+            }
+        }
+        long gridNanos = (System.nanoTime() - gridStart) / (QUERIES * rounds);
+
+        System.out.printf("%,d stops, %.0f m radius: SQL %,d us/query, grid %,d us/query (%.0fx)%n",
+            stopCount, RADIUS_METERS, sqlNanos / 1000, gridNanos / 1000, (double) sqlNanos / gridNanos);
+        jdbc.execute("DROP ALL OBJECTS");
+        assertThat(gridNanos).isLessThan(sqlNanos);
+    }
+
+    private static Set<Long> sqlIds(JdbcTemplate jdbc, double[] query) {
+        double km = RADIUS_METERS / 1000;
+        return new HashSet<>(jdbc.queryForList(NEARBY_SQL, Long.class,
+            query[0], query[1], query[0], km, query[0], query[1], query[0]));
+    }
+
+    private static Set<Long> gridIds(SpatialGrid grid, double[] query) {
+        Set<Long> ids = new HashSet<>();
+        grid.within(query[0], query[1], RADIUS_METERS).forEach(hit -> ids.add(hit.getId()));
+        return ids;
+    }
+}
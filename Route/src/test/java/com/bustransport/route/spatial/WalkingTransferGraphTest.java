@@ -0,0 +1,203 @@
+package com.bustransport.route.spatial;
+
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.mapper.StopMapper;
+import com.bustransport.route.mapper.StopMapperImpl;
+import com.bustransport.route.repository.StopRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+/**
+ * Stops along a meridian, 0.001 degrees of latitude (~111 m) apart per unit
+ * of {@code stop(name, offset)}; with a detour factor of 1.15 the 400 m
+ * radius joins stops up to three units apart. Runs outside a test
+ * transaction: the graph writes in transactions of its own.
+ */
+@DataJpaTest(properties = {
+    "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+    "planner.transfer-radius-meters=400",
+    "planner.transfers.detour-factor=1.15"
+})
+@Import({WalkingTransferGraph.class, StopSpatialIndex.class, StopMapperImpl.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WalkingTransferGraphTest {
+
+    @Autowired
+    private WalkingTransferGraph graph;
+    @Autowired
+    private StopSpatialIndex spatialIndex;
+    @Autowired
+    private StopRepository stopRepository;
+    @Autowired
+    private StopMapper stopMapper;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Stop a;
+    private Stop b;
+    private Stop far;
+
+    @BeforeEach
+    void setUp() {
+        a = stop("A", 0);
+        b = stop("B", 3);
+        far = stop("F", 100);
+        spatialIndex.load();
+        graph.rebuild();
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("DELETE FROM stop_transfers");
+        jdbcTemplate.update("DELETE FROM stops");
+    }
+
+    @Test
+    void joinsStopsWithinTheRadiusOnRebuild() {
+        // 334 m * 1.15 = 384 m
+        assertThat(neighbours(a)).containsOnlyKeys(b.getId());
+        assertThat(neighbours(b)).containsOnlyKeys(a.getId());
+        assertThat(neighbours(far)).isEmpty();
+        assertThat(rows()).isEqualTo(1);
+    }
+
+    @Test
+    void addsTheTransfersOfANewStop() {
+        Stop added = stop("C", 1);
+
+        changed(added);
+
+        assertThat(neighbours(added)).containsOnlyKeys(a.getId(), b.getId());
+        assertThat(neighbours(a)).containsOnlyKeys(b.getId(), added.getId());
+        assertThat(neighbours(b)).containsOnlyKeys(a.getId(), added.getId());
+        assertThat(rows()).isEqualTo(3);
+        assertMatchesARebuild();
+    }
+
+    @Test
+    void movesTheTransfersOfAMovedStop() {
+        Stop moved = stop("C", 1);
+        changed(moved);
+
+        moved.setLatitude(latitude(101));
+        changed(stopRepository.save(moved));
+
+        assertThat(neighbours(moved)).containsOnlyKeys(far.getId());
+        assertThat(neighbours(far)).containsOnlyKeys(moved.getId());
+        assertThat(neighbours(a)).containsOnlyKeys(b.getId());
+        assertThat(neighbours(b)).containsOnlyKeys(a.getId());
+        assertThat(rows()).isEqualTo(2);
+        assertMatchesARebuild();
+    }
+
+    @Test
+    void ignoresAMoveTooSmallToMatter() {
+        Stop moved = stop("C", 1);
+        changed(moved);
+        Map<Long, Integer> before = neighbours(moved);
+        jdbcTemplate.update("DELETE FROM stop_transfers");
+
+        moved.setLongitude(moved.getLongitude().add(new BigDecimal("0.000001")));
+        changed(stopRepository.save(moved));
+
+        assertThat(neighbours(moved)).isEqualTo(before);
+        assertThat(rows()).isZero();
+    }
+
+    @Test
+    void detachesADeactivatedStopFromEveryNeighbour() {
+        Stop removed = stop("C", 1);
+        changed(removed);
+
+        removed.setIsActive(false);
+        changed(stopRepository.save(removed));
+
+        assertThat(neighbours(removed)).isEmpty();
+        // The pair it was not part of survives
+        assertThat(neighbours(a)).containsOnly(entry(b.getId(), neighbours(b).get(a.getId())));
+        assertThat(neighbours(b)).containsOnlyKeys(a.getId());
+        assertThat(rows()).isEqualTo(1);
+        assertMatchesARebuild();
+    }
+
+    @Test
+    void rejectsADetourFactorBelowOne() {
+        ReflectionTestUtils.setField(graph, "detourFactor", 0.5);
+        try {
+            assertThatThrownBy(graph::validate)
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("detour-factor");
+            ReflectionTestUtils.setField(graph, "detourFactor", 0.0);
+            assertThatThrownBy(graph::validate).isInstanceOf(IllegalStateException.class);
+        } finally {
+            ReflectionTestUtils.setField(graph, "detourFactor", 1.15);
+        }
+    }
+
+    /**
+     * Publishes a stop change to the index and the graph, as the stop
+     * service does after its commit
+     */
+    private void changed(Stop stop) {
+        StopChangedEvent event = new StopChangedEvent(stopMapper.toDTO(stop));
+        spatialIndex.onStopChanged(event);
+        graph.onStopChanged(event);
+    }
+
+    private void assertMatchesARebuild() {
+        List<Stop> stops = stopRepository.findAll();
+        Map<Long, Map<Long, Integer>> incremental = new HashMap<>();
+        stops.forEach(stop -> incremental.put(stop.getId(), neighbours(stop)));
+        int incrementalRows = rows();
+
+        graph.rebuild();
+
+        stops.forEach(stop -> assertThat(neighbours(stop)).as("transfers of stop %s", stop.getStopCode())
+            .isEqualTo(incremental.get(stop.getId())));
+        assertThat(rows()).isEqualTo(incrementalRows);
+    }
+
+    private Map<Long, Integer> neighbours(Stop stop) {
+        WalkingTransferGraph.Edges edges = graph.edges(stop.getId());
+        Map<Long, Integer> neighbours = new HashMap<>();
+        for (int e = 0; e < edges.size(); e++) {
+            neighbours.put(edges.stopIds()[e], edges.walkSecs()[e]);
+        }
+        return neighbours;
+    }
+
+    private int rows() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM stop_transfers", Integer.class);
+    }
+
+    private Stop stop(String code, int offset) {
+        return stopRepository.save(Stop.builder()
+            .stopCode(code)
+            .name("Stop " + code)
+            .latitude(latitude(offset))
+            .longitude(new BigDecimal("-7.6"))
+            .build());
+    }
+
+    private static BigDecimal latitude(int offset) {
+        return new BigDecimal("33.5").add(BigDecimal.valueOf(offset, 3));
+    }
+}
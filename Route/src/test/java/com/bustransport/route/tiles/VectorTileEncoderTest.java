@@ -0,0 +1,102 @@
+package com.bustransport.route.tiles;
+
+import com.bustransport.route.util.ProtobufMessage;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VectorTileEncoderTest {
+
+    // Command integers: id in the low three bits, count above
+    private static final long MOVE_TO_1 = 9;
+    private static final long LINE_TO_1 = 10;
+    private static final long LINE_TO_2 = 18;
+
+    @Test
+    void encodesAPointWithZigzaggedCoordinates() {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addPoint("stops", 7, properties("name", "A", "rank", 3), 10, -5);
+
+        ProtobufMessage layer = layers(encoder).get(0);
+        assertThat(layer.varint(15)).isEqualTo(2);
+        assertThat(layer.string(1)).isEqualTo("stops");
+        assertThat(layer.varint(5)).isEqualTo(VectorTileEncoder.EXTENT);
+        ProtobufMessage feature = layer.message(2);
+        assertThat(feature.varint(1)).isEqualTo(7);
+        assertThat(feature.varint(3)).isEqualTo(1);
+        // zigzag(10) = 20, zigzag(-5) = 9
+        assertThat(feature.packed(4)).containsExactly(MOVE_TO_1, 20, 9);
+    }
+
+    @Test
+    void encodesEachPartRelativeToTheEndOfThePreviousOne() {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addLineStrings("routes", 1, properties("routeNumber", "10"), List.of(
+            part(new int[]{0, 10, 10}, new int[]{0, 0, 10}),
+            // Too short to draw
+            part(new int[]{99}, new int[]{99}),
+            part(new int[]{20, 25}, new int[]{20, 15})));
+
+        ProtobufMessage feature = layers(encoder).get(0).message(2);
+        assertThat(feature.varint(3)).isEqualTo(2);
+        assertThat(feature.packed(4)).containsExactly(
+            MOVE_TO_1, 0, 0, LINE_TO_2, 20, 0, 0, 20,
+            MOVE_TO_1, 20, 20, LINE_TO_1, 10, 9);
+    }
+
+    @Test
+    void sharesKeysAndValuesWithinALayer() {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addPoint("stops", 1, properties("name", "A", "wheelchair", true), 0, 0);
+        encoder.addPoint("stops", 2, properties("name", "B", "wheelchair", true, "zone", null), 0, 0);
+
+        ProtobufMessage layer = layers(encoder).get(0);
+        assertThat(layer.strings(3)).containsExactly("name", "wheelchair");
+        List<ProtobufMessage> values = layer.messages(4);
+        assertThat(values).hasSize(3);
+        assertThat(values.get(0).string(1)).isEqualTo("A");
+        assertThat(values.get(1).varint(7)).isEqualTo(1);
+        assertThat(values.get(2).string(1)).isEqualTo("B");
+        // Null properties are left out
+        assertThat(layer.messages(2).get(1).packed(2)).containsExactly(0, 2, 1, 1);
+    }
+
+    @Test
+    void encodesNumbersByType() {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addPoint("stops", 1, properties("id", -3L, "distance", 1.5), 0, 0);
+
+        List<ProtobufMessage> values = layers(encoder).get(0).messages(4);
+        // sint64 zigzag: -3 -> 5
+        assertThat(values.get(0).varint(6)).isEqualTo(5);
+        assertThat(values.get(1).doubleValue(3)).isEqualTo(1.5);
+    }
+
+    @Test
+    void skipsLinesWithoutADrawablePart() {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addLineStrings("routes", 1, Map.of(), List.<int[][]>of(part(new int[]{5}, new int[]{5})));
+
+        assertThat(encoder.isEmpty()).isTrue();
+    }
+
+    private static List<ProtobufMessage> layers(VectorTileEncoder encoder) {
+        return ProtobufMessage.parse(encoder.encode()).messages(3);
+    }
+
+    private static int[][] part(int[] xs, int[] ys) {
+        return new int[][]{xs, ys};
+    }
+
+    private static Map<String, Object> properties(Object... keysAndValues) {
+        Map<String, Object> properties = new LinkedHashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            properties.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return properties;
+    }
+}
@@ -0,0 +1,211 @@
+package com.bustransport.route.tiles;
+
+import com.bustransport.route.dto.response.StopDTO;
+import com.bustransport.route.entity.Route;
+import com.bustransport.route.entity.Stop;
+import com.bustransport.route.enums.RouteType;
+import com.bustransport.route.event.StopChangedEvent;
+import com.bustransport.route.repository.RouteRepository;
+import com.bustransport.route.repository.RouteStopRepository;
+import com.bustransport.route.repository.RouteStopRepository.StopPosition;
+import com.bustransport.route.repository.StopRepository;
+import com.bustransport.route.service.SegmentGeometryService;
+import com.bustransport.route.util.ProtobufMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Zoom 2 keeps the geometry easy to follow: route 1 runs east along
+ * latitude 10 through all four tiles of row 1, stop 3 stands alone in
+ * tile (3, 2).
+ */
+class VectorTileServiceTest {
+
+    private final RouteRepository routeRepository = mock(RouteRepository.class);
+    private final RouteStopRepository routeStopRepository = mock(RouteStopRepository.class);
+    private final StopRepository stopRepository = mock(StopRepository.class);
+
+    @TempDir
+    private Path cacheDir;
+
+    private VectorTileService service;
+    private final Route route = Route.builder().id(1L).routeNumber("1").name("One").routeType(RouteType.BUS).build();
+    private final Stop west = stop(1L, 10, -170);
+    private final Stop east = stop(2L, 10, 170);
+    private final Stop alone = stop(3L, -60, 100);
+
+    @BeforeEach
+    void setUp() {
+        service = new VectorTileService(routeRepository, routeStopRepository, stopRepository,
+            mock(SegmentGeometryService.class));
+        ReflectionTestUtils.setField(service, "maxZoom", 16);
+        ReflectionTestUtils.setField(service, "stopMinZoom", 0);
+        ReflectionTestUtils.setField(service, "buffer", 64);
+        ReflectionTestUtils.setField(service, "simplifyTolerance", 16);
+        ReflectionTestUtils.setField(service, "memoryCacheSize", 10);
+        ReflectionTestUtils.setField(service, "diskCacheSize", 10);
+        ReflectionTestUtils.setField(service, "cacheDir", cacheDir.toString());
+        service.createCaches();
+
+        when(routeRepository.findAll()).thenReturn(List.of(route));
+        when(routeStopRepository.findAllStopPositions())
+            .thenReturn(List.of(position(west), position(east)));
+        when(stopRepository.findByIsActive(true)).thenReturn(List.of(west, east, alone));
+    }
+
+    @Test
+    void clipsARouteToTheBufferedTile() {
+        service.initialize();
+
+        List<ProtobufMessage> layers = ProtobufMessage.parse(service.getTile(2, 1, 1)).messages(3);
+
+        assertThat(layers).extracting(layer -> layer.string(1)).containsExactly(VectorTileService.ROUTES_LAYER);
+        long[] geometry = layers.get(0).message(2).packed(4);
+        // Enters at the left edge of the buffer and leaves at the right one, on the same row
+        assertThat(geometry).hasSize(6);
+        assertThat(geometry[1]).isEqualTo(zigzag(-64));
+        assertThat(geometry[3]).isEqualTo(10);
+        assertThat(geometry[4]).isEqualTo(zigzag(VectorTileEncoder.EXTENT + 2 * 64));
+        assertThat(geometry[5]).isZero();
+    }
+
+    @Test
+    void keepsEmptyTilesOffTheDisk() throws IOException {
+        service.initialize();
+
+        assertThat(service.getTile(2, 0, 0)).isEmpty();
+        assertThat(service.getTile(2, 0, 1)).isNotEmpty();
+
+        assertThat(tileFiles()).containsExactly("2/0/1.mvt");
+    }
+
+    @Test
+    void dropsTheLeastRecentlyUsedTileBeyondTheDiskLimit() throws IOException {
+        ReflectionTestUtils.setField(service, "diskCacheSize", 2);
+        ReflectionTestUtils.setField(service, "memoryCacheSize", 0);
+        service.createCaches();
+        service.initialize();
+
+        service.getTile(2, 0, 1);
+        service.getTile(2, 1, 1);
+        // Read back from disk, so the second tile is now the least recently used
+        service.getTile(2, 0, 1);
+        service.getTile(2, 2, 1);
+
+        assertThat(tileFiles()).containsExactlyInAnyOrder("2/0/1.mvt", "2/2/1.mvt");
+    }
+
+    @Test
+    void deletesOnlyItsOwnFilesWhenTheNetworkChanged() throws IOException {
+        Path tiles = Files.createDirectories(cacheDir.resolve("vector-tiles/2/0"));
+        Files.writeString(cacheDir.resolve("vector-tiles/network.fingerprint"), "stale");
+        Files.write(tiles.resolve("1.mvt"), new byte[]{1});
+        Files.writeString(cacheDir.resolve("vector-tiles/README"), "kept");
+        Files.writeString(cacheDir.resolve("notes.txt"), "kept");
+
+        service.initialize();
+
+        assertThat(tileFiles()).isEmpty();
+        assertThat(cacheDir.resolve("vector-tiles/2")).doesNotExist();
+        assertThat(cacheDir.resolve("vector-tiles/README")).exists();
+        assertThat(cacheDir.resolve("notes.txt")).exists();
+    }
+
+    @Test
+    void keepsTheDiskCacheOfAnUnchangedNetworkAcrossRestarts() throws IOException {
+        service.initialize();
+        byte[] tile = service.getTile(2, 0, 1);
+
+        setUp();
+        service.initialize();
+
+        assertThat(tileFiles()).containsExactly("2/0/1.mvt");
+        assertThat(service.getTile(2, 0, 1)).isEqualTo(tile);
+    }
+
+    @Test
+    void rebuildsOnlyTheChangedStop() throws IOException {
+        service.initialize();
+        service.getTile(2, 0, 1);
+        service.getTile(2, 3, 2);
+        Stop moved = stop(3L, -61, 100);
+        when(stopRepository.findAllById(any())).thenReturn(List.of(moved));
+
+        service.onStopChanged(new StopChangedEvent(StopDTO.builder().id(3L).build()));
+
+        assertThat(tileFiles()).containsExactly("2/0/1.mvt");
+        verify(routeRepository, times(1)).findAll();
+        verify(stopRepository, times(1)).findByIsActive(true);
+        // Served by no route
+        verify(routeStopRepository, never()).findStopPositionsByRouteIds(any());
+        ProtobufMessage stop = ProtobufMessage.parse(service.getTile(2, 3, 2)).message(3).message(2);
+        assertThat(stop.varint(1)).isEqualTo(3);
+    }
+
+    private List<String> tileFiles() throws IOException {
+        Path root = cacheDir.resolve("vector-tiles");
+        if (!Files.exists(root)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.walk(root)) {
+            return files.filter(file -> file.toString().endsWith(".mvt"))
+                .map(file -> root.relativize(file).toString().replace('\\', '/'))
+                .toList();
+        }
+    }
+
+    private static long zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+    private static Stop stop(Long id, double latitude, double longitude) {
+        return Stop.builder()
+            .id(id)
+            .stopCode("S" + id)
+            .name("Stop " + id)
+            .latitude(BigDecimal.valueOf(latitude))
+            .longitude(BigDecimal.valueOf(longitude))
+            .build();
+    }
+
+    private StopPosition position(Stop stop) {
+        return new StopPosition() {
+            @Override
+            public Long getRouteId() {
+                return route.getId();
+            }
+
+            @Override
+            public Long getStopId() {
+                return stop.getId();
+            }
+
+            @Override
+            public BigDecimal getLatitude() {
+                return stop.getLatitude();
+            }
+
+            @Override
+            public BigDecimal getLongitude() {
+                return stop.getLongitude();
+            }
+        };
+    }
+}
@@ -0,0 +1,86 @@
+package com.bustransport.route.timetable;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds small hand-made {@link TimetableSnapshot}s for planner tests. Stop i
+ * gets id i + 1; every route is one pattern whose trips all take the same
+ * time between stops.
+ */
+public final class TimetableFixture {
+
+    private final int stopCount;
+    private final List<PatternTimetable> patterns = new ArrayList<>();
+    private final List<List<int[]>> transfers = new ArrayList<>();
+    private LocalDate serviceDate = LocalDate.of(2024, 1, 15);
+
+    public TimetableFixture(int stopCount) {
+        this.stopCount = stopCount;
+        for (int s = 0; s < stopCount; s++) {
+            transfers.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Adds a route over {@code stops}, leaving the first stop at each of
+     * {@code tripStarts} and reaching stop i {@code offsets[i]} seconds later
+     */
+    public TimetableFixture route(int[] stops, int[] offsets, int... tripStarts) {
+        long routeId = patterns.size() + 1;
+        int[] times = new int[tripStarts.length * stops.length];
+        long[] scheduleIds = new long[tripStarts.length];
+        for (int trip = 0; trip < tripStarts.length; trip++) {
+            scheduleIds[trip] = routeId * 100 + trip;
+            for (int i = 0; i < stops.length; i++) {
+                times[trip * stops.length + i] = tripStarts[trip] + offsets[i];
+            }
+        }
+        patterns.add(new PatternTimetable(routeId, "R" + routeId, "Route " + routeId,
+            stops, new int[stops.length], scheduleIds, times));
+        return this;
+    }
+
+    /**
+     * Sets the day the timetable runs on, 2024-01-15 by default
+     */
+    public TimetableFixture on(LocalDate serviceDate) {
+        this.serviceDate = serviceDate;
+        return this;
+    }
+
+    /**
+     * Adds a one-way walking transfer
+     */
+    public TimetableFixture walk(int from, int to, int secs) {
+        transfers.get(from).add(new int[]{to, secs});
+        return this;
+    }
+
+    public TimetableSnapshot build() {
+        long[] stopIds = new long[stopCount];
+        String[] names = new String[stopCount];
+        Map<Long, Integer> indexById = new HashMap<>();
+        int[] offsets = new int[stopCount + 1];
+        for (int s = 0; s < stopCount; s++) {
+            stopIds[s] = s + 1;
+            names[s] = "Stop " + (s + 1);
+            indexById.put(stopIds[s], s);
+            offsets[s + 1] = offsets[s] + transfers.get(s).size();
+        }
+        int[] targets = new int[offsets[stopCount]];
+        int[] secs = new int[offsets[stopCount]];
+        for (int s = 0; s < stopCount; s++) {
+            for (int e = 0; e < transfers.get(s).size(); e++) {
+                targets[offsets[s] + e] = transfers.get(s).get(e)[0];
+                secs[offsets[s] + e] = transfers.get(s).get(e)[1];
+            }
+        }
+        return new TimetableSnapshot(serviceDate, stopIds, names,
+            new double[stopCount], new double[stopCount], new boolean[stopCount], indexById,
+            patterns.toArray(PatternTimetable[]::new), offsets, targets, secs);
+    }
+}
@@ -0,0 +1,192 @@
+package com.bustransport.route.timetable;
+
+import com.bustransport.route.enums.DepartureStatus;
+import com.bustransport.route.event.DepartureChangedEvent;
+import com.bustransport.route.event.TimetableChangedEvent;
+import com.bustransport.route.event.TripDeparturesChangedEvent;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Route 1 runs stops 1-2-3 at 08:00 and 08:15, five minutes between stops;
+ * route 2 runs stops 3-4 at 08:30
+ */
+class TimetableSnapshotServiceTest {
+
+    private static final LocalDate SERVICE_DATE = LocalDate.of(2024, 1, 15);
+    private static final int EIGHT = 8 * 3600;
+
+    private final TimetableSnapshotBuilder snapshotBuilder = mock(TimetableSnapshotBuilder.class);
+    private final TimetableSnapshotService service = new TimetableSnapshotService(snapshotBuilder);
+
+    @BeforeEach
+    void setUp() {
+        TimetableSnapshot snapshot = new TimetableFixture(4)
+            .route(new int[]{0, 1, 2}, new int[]{0, 300, 600}, EIGHT, EIGHT + 900)
+            .route(new int[]{2, 3}, new int[]{0, 240}, EIGHT + 1800)
+            .build();
+        when(snapshotBuilder.build(any())).thenReturn(snapshot);
+        service.refresh();
+    }
+
+    @Test
+    void rebuildsOnlyTheChangedRoute() {
+        TimetableSnapshot before = snapshot();
+        PatternTimetable otherRoute = before.pattern(before.patternIndex(2L));
+        // One more trip at 08:30, now running on to stop 4
+        when(snapshotBuilder.buildRoute(before, 1L)).thenReturn(Optional.of(new PatternTimetable(1L, "R1", "Route 1",
+            new int[]{0, 1, 2, 3}, new int[4], new long[]{100, 101, 102},
+            times(new int[]{0, 300, 600, 900}, EIGHT, EIGHT + 900, EIGHT + 1800))));
+
+        service.onTimetableChanged(new TimetableChangedEvent(1L, 102L));
+
+        TimetableSnapshot after = snapshot();
+        assertThat(after.getVersion()).isGreaterThan(before.getVersion());
+        assertThat(after.pattern(after.patternIndex(2L))).isSameAs(otherRoute);
+        int route = after.patternIndex(1L);
+        assertThat(after.tripCount(route)).isEqualTo(3);
+        assertThat(after.earliestTrip(route, 1, EIGHT + 1201)).isEqualTo(2);
+        assertThat(routesAt(after, 3)).containsExactlyInAnyOrder(1L, 2L);
+        // Readers of the old snapshot are unaffected
+        assertThat(before.tripCount(before.patternIndex(1L))).isEqualTo(2);
+        assertThat(routesAt(before, 3)).containsExactly(2L);
+    }
+
+    @Test
+    void dropsARouteLeftWithoutTrips() {
+        when(snapshotBuilder.buildRoute(any(), eq(1L))).thenReturn(Optional.empty());
+
+        service.onTimetableChanged(new TimetableChangedEvent(1L, null));
+
+        TimetableSnapshot after = snapshot();
+        assertThat(after.patternIndex(1L)).isNegative();
+        assertThat(routesAt(after, 0)).isEmpty();
+        assertThat(routesAt(after, 2)).containsExactly(2L);
+        int route = after.patternIndex(2L);
+        assertThat(after.departureSecs(route, after.earliestTrip(route, 0, EIGHT), 0)).isEqualTo(EIGHT + 1800);
+    }
+
+    @Test
+    void keepsTheSnapshotWhenTheRebuildFails() {
+        TimetableSnapshot before = snapshot();
+        when(snapshotBuilder.buildRoute(any(), eq(1L))).thenThrow(new IllegalStateException("database down"));
+
+        service.onTimetableChanged(new TimetableChangedEvent(1L, null));
+
+        assertThat(snapshot()).isSameAs(before);
+    }
+
+    @Test
+    void findsTheNextDepartureOnThePlannedTimetable() {
+        TimetableSnapshot snapshot = snapshot();
+        int route = snapshot.patternIndex(1L);
+
+        // Stop 2 is served at 08:05 and 08:20
+        assertThat(snapshot.earliestTrip(route, 1, EIGHT)).isZero();
+        assertThat(snapshot.earliestTrip(route, 1, EIGHT + 300)).isZero();
+        assertThat(snapshot.earliestTrip(route, 1, EIGHT + 301)).isEqualTo(1);
+        assertThat(snapshot.earliestTrip(route, 1, EIGHT + 1201)).isEqualTo(-1);
+        assertThat(snapshot.tripScheduleId(route, 1)).isEqualTo(101L);
+    }
+
+    @Test
+    void findsTheNextDepartureWithItsDelay() {
+        TimetableSnapshot before = snapshot();
+        int route = before.patternIndex(1L);
+        assertThat(before.earliestTrip(route, 1, EIGHT + 600)).isEqualTo(1);
+
+        service.onDepartureChanged(departure(7L, 100L, 2L, EIGHT + 300, DepartureStatus.DELAYED, 10));
+
+        TimetableSnapshot after = snapshot();
+        // 08:05 is now 08:15, still ahead of the 08:20
+        assertThat(after.earliestTrip(route, 1, EIGHT + 600)).isZero();
+        assertThat(after.departureSecs(route, 0, 1)).isEqualTo(EIGHT + 900);
+        assertThat(after.pattern(route).departureId(0, 1)).isEqualTo(7L);
+        assertThat(after.pattern(route).status(0, 1)).isEqualTo(DepartureStatus.DELAYED);
+        // Same stops: the stop index is shared, not rebuilt
+        assertThat(routesAt(after, 1)).containsExactly(1L);
+        assertThat(before.departureSecs(route, 0, 1)).isEqualTo(EIGHT + 300);
+    }
+
+    @Test
+    void skipsACancelledDeparture() {
+        service.onDepartureChanged(departure(8L, 100L, 2L, EIGHT + 300, DepartureStatus.CANCELLED, null));
+
+        TimetableSnapshot snapshot = snapshot();
+        int route = snapshot.patternIndex(1L);
+        assertThat(snapshot.earliestTrip(route, 1, EIGHT)).isEqualTo(1);
+        // Only at that stop
+        assertThat(snapshot.earliestTrip(route, 0, EIGHT)).isZero();
+    }
+
+    @Test
+    void patchesAWholeTripAtOnce() {
+        TimetableSnapshot before = snapshot();
+
+        service.onTripDeparturesChanged(new TripDeparturesChangedEvent(1L, "T1", List.of(
+            departure(11L, 101L, 2L, EIGHT + 1200, DepartureStatus.DELAYED, 4),
+            departure(12L, 101L, 3L, EIGHT + 1500, DepartureStatus.DELAYED, 3))));
+
+        TimetableSnapshot after = snapshot();
+        assertThat(after.getVersion()).isGreaterThan(before.getVersion());
+        int route = after.patternIndex(1L);
+        assertThat(after.departureSecs(route, 1, 0)).isEqualTo(EIGHT + 900);
+        assertThat(after.departureSecs(route, 1, 1)).isEqualTo(EIGHT + 1440);
+        assertThat(after.departureSecs(route, 1, 2)).isEqualTo(EIGHT + 1680);
+        assertThat(after.earliestTrip(route, 2, EIGHT + 1500)).isEqualTo(1);
+    }
+
+    @Test
+    void ignoresADepartureNotInTheTimetable() {
+        TimetableSnapshot before = snapshot();
+
+        // No trip of the schedule at 08:10
+        service.onDepartureChanged(departure(9L, 100L, 2L, EIGHT + 600, DepartureStatus.DELAYED, 5));
+        // Route 3 does not run
+        service.onTripDeparturesChanged(new TripDeparturesChangedEvent(3L, "T9", List.of(
+            new DepartureChangedEvent(10L, 3L, 300L, 1L, SERVICE_DATE.atTime(8, 0), DepartureStatus.DELAYED, 5,
+                null))));
+
+        assertThat(snapshot()).isSameAs(before);
+    }
+
+    private TimetableSnapshot snapshot() {
+        return service.getSnapshot(SERVICE_DATE);
+    }
+
+    private static DepartureChangedEvent departure(Long departureId, Long scheduleId, Long stopId, int plannedSecs,
+                                                   DepartureStatus status, Integer delayMinutes) {
+        LocalDateTime time = SERVICE_DATE.atStartOfDay().plusSeconds(plannedSecs);
+        return new DepartureChangedEvent(departureId, 1L, scheduleId, stopId, time, status, delayMinutes, null);
+    }
+
+    private static int[] times(int[] offsets, int... tripStarts) {
+        int[] times = new int[tripStarts.length * offsets.length];
+        for (int trip = 0; trip < tripStarts.length; trip++) {
+            for (int i = 0; i < offsets.length; i++) {
+                times[trip * offsets.length + i] = tripStarts[trip] + offsets[i];
+            }
+        }
+        return times;
+    }
+
+    private static List<Long> routesAt(TimetableSnapshot snapshot, int stop) {
+        List<Long> routes = new ArrayList<>();
+        for (int entry = snapshot.stopPatternStart(stop); entry < snapshot.stopPatternEnd(stop); entry++) {
+            routes.add(snapshot.pattern(snapshot.stopPattern(entry)).getRouteId());
+        }
+        return routes;
+    }
+}
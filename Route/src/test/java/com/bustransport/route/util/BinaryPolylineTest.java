@@ -0,0 +1,70 @@
+package com.bustransport.route.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class BinaryPolylineTest {
+
+    @Test
+    void roundTripsToTheMicrodegree() {
+        Random random = new Random(7);
+        double[] lats = new double[500];
+        double[] lons = new double[500];
+        double lat = 33.57;
+        double lon = -7.62;
+        for (int i = 0; i < lats.length; i++) {
+            lat += (random.nextDouble() - 0.5) * 0.002;
+            lon += (random.nextDouble() - 0.5) * 0.002;
+            lats[i] = lat;
+            lons[i] = lon;
+        }
+
+        double[][] decoded = BinaryPolyline.decode(BinaryPolyline.encode(lats, lons));
+
+        assertThat(decoded[0]).hasSize(lats.length);
+        for (int i = 0; i < lats.length; i++) {
+            assertThat(decoded[0][i]).isCloseTo(lats[i], within(0.5e-6));
+            assertThat(decoded[1][i]).isCloseTo(lons[i], within(0.5e-6));
+        }
+    }
+
+    @Test
+    void keepsExtremeCoordinatesAndSigns() {
+        double[] lats = {-90, 90, 0, -0.000001, 45.123456};
+        double[] lons = {-180, 180, 0, 0.000001, -179.999999};
+
+        double[][] decoded = BinaryPolyline.decode(BinaryPolyline.encode(lats, lons));
+
+        assertThat(decoded[0]).containsExactly(lats);
+        assertThat(decoded[1]).containsExactly(lons);
+    }
+
+    @Test
+    void encodesAnEmptyPathAsItsCount() {
+        byte[] encoded = BinaryPolyline.encode(new double[0], new double[0]);
+
+        assertThat(encoded).containsExactly(0);
+        assertThat(BinaryPolyline.decode(encoded)[0]).isEmpty();
+    }
+
+    @Test
+    void takesAFewBytesPerStreetPoint() {
+        // Points ~10 m apart, as on a stop-to-stop street geometry
+        int count = 200;
+        double[] lats = new double[count];
+        double[] lons = new double[count];
+        for (int i = 0; i < count; i++) {
+            lats[i] = 33.57 + i * 0.00009;
+            lons[i] = -7.62 - i * 0.00007;
+        }
+
+        byte[] encoded = BinaryPolyline.encode(lats, lons);
+
+        // Count, two 4-byte varints for the first point, then 2 + 2 bytes per later point
+        assertThat(encoded).hasSize(2 + 8 + (count - 1) * 4);
+    }
+}
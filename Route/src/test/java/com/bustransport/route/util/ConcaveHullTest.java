@@ -0,0 +1,153 @@
+package com.bustransport.route.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ConcaveHullTest {
+
+    private static final double LAT = 33.5;
+    private static final double LON = -7.6;
+    private static final double STEP = 0.001;
+
+    @Test
+    void needsThreePointsThatAreNotOnALine() {
+        assertThat(ConcaveHull.compute(new double[]{LAT, LAT + STEP}, new double[]{LON, LON}, 2, 0)).isNull();
+        assertThat(ConcaveHull.compute(new double[]{LAT, LAT + STEP, LAT + 2 * STEP},
+            new double[]{LON, LON, LON}, 2, 0)).isNull();
+    }
+
+    @Test
+    void returnsAClosedRing() {
+        double[][] ring = ConcaveHull.compute(new double[]{LAT, LAT, LAT + STEP}, new double[]{LON, LON + STEP, LON},
+            2, 0);
+
+        assertThat(ring[0]).hasSize(4);
+        assertThat(ring[0][3]).isEqualTo(ring[0][0]);
+        assertThat(ring[1][3]).isEqualTo(ring[1][0]);
+    }
+
+    @Test
+    void keepsTheConvexHullWhenNothingIsWorthDigging() {
+        // The corners of a square and points strictly inside it
+        Random random = new Random(7);
+        double[] lats = new double[40];
+        double[] lons = new double[40];
+        for (int i = 0; i < lats.length; i++) {
+            lats[i] = LAT + (i < 4 ? (i / 2) * 10 : 1 + random.nextDouble() * 8) * STEP;
+            lons[i] = LON + (i < 4 ? (i % 2) * 10 : 1 + random.nextDouble() * 8) * STEP;
+        }
+
+        double[][] shallow = ConcaveHull.compute(lats, lons, 1000, 0);
+        double[][] shortEdges = ConcaveHull.compute(lats, lons, 1.5, 5000);
+
+        assertThat(shallow[0]).hasSize(5);
+        assertThat(shortEdges[0]).hasSize(5);
+        assertThat(area(shallow)).isCloseTo(100 * STEP * STEP, within(1e-9));
+    }
+
+    @Test
+    void digsIntoTheNotchAndKeepsEveryPoint() {
+        double[][] points = uShape();
+
+        double[][] convex = ConcaveHull.compute(points[0], points[1], 1000, 0);
+        double[][] ring = ConcaveHull.compute(points[0], points[1], 1.5, 0);
+
+        assertThat(area(ring)).isLessThan(0.9 * area(convex));
+        for (int i = 0; i < points[0].length; i++) {
+            assertThat(covers(ring, points[0][i], points[1][i])).as("point %d", i).isTrue();
+        }
+        assertThat(isSimple(ring)).isTrue();
+        // The middle of the notch is left out
+        assertThat(covers(ring, LAT + 9 * STEP, LON + 10 * STEP)).isFalse();
+    }
+
+    /**
+     * Stops roughly on a 20 x 10 grid with a notch 12 wide and 4 deep cut
+     * from the middle of its top side
+     */
+    private static double[][] uShape() {
+        Random random = new Random(42);
+        List<double[]> points = new ArrayList<>();
+        for (int row = 0; row <= 10; row++) {
+            for (int col = 0; col <= 20; col++) {
+                if (row >= 7 && col >= 4 && col <= 16) {
+                    continue;
+                }
+                points.add(new double[]{LAT + (row + jitter(random)) * STEP, LON + (col + jitter(random)) * STEP});
+            }
+        }
+        double[] lats = new double[points.size()];
+        double[] lons = new double[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            lats[i] = points.get(i)[0];
+            lons[i] = points.get(i)[1];
+        }
+        return new double[][]{lats, lons};
+    }
+
+    private static double jitter(Random random) {
+        return (random.nextDouble() - 0.5) * 0.3;
+    }
+
+    private static double area(double[][] ring) {
+        double twice = 0;
+        for (int i = 0; i < ring[0].length - 1; i++) {
+            twice += ring[1][i] * ring[0][i + 1] - ring[1][i + 1] * ring[0][i];
+        }
+        return Math.abs(twice) / 2;
+    }
+
+    /**
+     * Inside the ring or on one of its edges
+     */
+    private static boolean covers(double[][] ring, double lat, double lon) {
+        boolean inside = false;
+        for (int i = 0, j = ring[0].length - 2; i < ring[0].length - 1; j = i++) {
+            double lat1 = ring[0][i], lon1 = ring[1][i], lat2 = ring[0][j], lon2 = ring[1][j];
+            double cross = (lon2 - lon1) * (lat - lat1) - (lat2 - lat1) * (lon - lon1);
+            if (Math.abs(cross) < 1e-12 && lon >= Math.min(lon1, lon2) - 1e-12 && lon <= Math.max(lon1, lon2) + 1e-12
+                    && lat >= Math.min(lat1, lat2) - 1e-12 && lat <= Math.max(lat1, lat2) + 1e-12) {
+                return true;
+            }
+            if ((lat1 > lat) != (lat2 > lat) && lon < (lon2 - lon1) * (lat - lat1) / (lat2 - lat1) + lon1) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    private static boolean isSimple(double[][] ring) {
+        int edges = ring[0].length - 1;
+        for (int e = 0; e < edges; e++) {
+            for (int f = e + 2; f < edges; f++) {
+                if (e == 0 && f == edges - 1) {
+                    continue;
+                }
+                if (cross(ring, e, f)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean cross(double[][] ring, int e, int f) {
+        double d1 = side(ring, f, e), d2 = side(ring, f, e + 1);
+        double d3 = side(ring, e, f), d4 = side(ring, e, f + 1);
+        return d1 * d2 < 0 && d3 * d4 < 0;
+    }
+
+    /**
+     * Side of point p relative to the edge starting at vertex e
+     */
+    private static double side(double[][] ring, int e, int p) {
+        return (ring[1][e + 1] - ring[1][e]) * (ring[0][p] - ring[0][e])
+            - (ring[0][e + 1] - ring[0][e]) * (ring[1][p] - ring[1][e]);
+    }
+}
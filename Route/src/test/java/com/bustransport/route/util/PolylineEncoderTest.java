@@ -0,0 +1,89 @@
+package com.bustransport.route.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class PolylineEncoderTest {
+
+    // Reference sample from the encoded polyline algorithm documentation
+    private static final double[] LATS = {38.5, 40.7, 43.252};
+    private static final double[] LONS = {-120.2, -120.95, -126.453};
+
+    @Test
+    void matchesTheReferenceEncoding() {
+        assertThat(PolylineEncoder.encode(LATS, LONS, 5)).isEqualTo("_p~iF~ps|U_ulLnnqC_mqNvxq`@");
+    }
+
+    @Test
+    void roundTripsAtPrecisionSix() {
+        String encoded = PolylineEncoder.encode(LATS, LONS, 6);
+
+        List<double[]> decoded = decode(encoded, 1e6);
+        assertThat(decoded).hasSize(3);
+        for (int i = 0; i < LATS.length; i++) {
+            assertThat(decoded.get(i)[0]).isCloseTo(LATS[i], within(1e-9));
+            assertThat(decoded.get(i)[1]).isCloseTo(LONS[i], within(1e-9));
+        }
+    }
+
+    @Test
+    void roundsToThePrecision() {
+        String encoded = PolylineEncoder.encode(new double[]{33.123456}, new double[]{-7.654321}, 5);
+
+        double[] point = decode(encoded, 1e5).get(0);
+        assertThat(point[0]).isCloseTo(33.12346, within(1e-9));
+        assertThat(point[1]).isCloseTo(-7.65432, within(1e-9));
+    }
+
+    @Test
+    void chainedGeometriesEncodeAsOneLine() {
+        PolylineEncoder chained = new PolylineEncoder(5)
+            .append(new double[]{LATS[0], LATS[1]}, new double[]{LONS[0], LONS[1]})
+            .append(new double[]{LATS[2]}, new double[]{LONS[2]});
+
+        assertThat(chained.toString()).isEqualTo(PolylineEncoder.encode(LATS, LONS, 5));
+    }
+
+    @Test
+    void encodesNothingForAnEmptyPath() {
+        assertThat(PolylineEncoder.encode(new double[0], new double[0], 6)).isEmpty();
+    }
+
+    @Test
+    void rejectsOtherPrecisions() {
+        assertThatThrownBy(() -> new PolylineEncoder(7))
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("7");
+    }
+
+    private static List<double[]> decode(String encoded, double factor) {
+        List<double[]> points = new ArrayList<>();
+        int index = 0;
+        long lat = 0;
+        long lon = 0;
+        while (index < encoded.length()) {
+            long[] value = new long[2];
+            for (int c = 0; c < 2; c++) {
+                long result = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = encoded.charAt(index++) - 63;
+                    result |= (long) (b & 0x1f) << shift;
+                    shift += 5;
+                } while (b >= 0x20);
+                value[c] = (result & 1) != 0 ? ~(result >> 1) : result >> 1;
+            }
+            lat += value[0];
+            lon += value[1];
+            points.add(new double[]{lat / factor, lon / factor});
+        }
+        return points;
+    }
+}